@@ -0,0 +1,132 @@
+/*
+Copyright (c) 2023, Livio Conzett
+All rights reserved.
+
+This source code is licensed under the BSD-style license found in the
+LICENSE file in the root directory of this source tree.
+*/
+
+package tech.livio.java6502;
+
+/**
+ * Compares interpreting one instruction at a time with running predecoded blocks from the block cache, with running
+ * blocks that have superinstructions fused in, and with running blocks that have been translated into their own
+ * classes.<br>
+ * Prints the result in emulated MHz (million instructions per second).<br>
+ * Run with: <code>java -cp out tech.livio.java6502.BlockCacheBenchmark</code>
+ */
+public class BlockCacheBenchmark {
+
+    private static final int WARMUP_ROUNDS = 20;
+    private static final int MEASURE_ROUNDS = 200;
+
+    // 0200 ldy #0
+    // 0202 ldx #0
+    // 0204 clc
+    // 0205 adc #1
+    // 0207 sta $0300,x
+    // 020a eor $10
+    // 020c inx
+    // 020d bne $0204
+    // 020f iny
+    // 0210 bne $0202
+    // 0212 ext
+    private static final String PROGRAM = "a0 00 a2 00 18 69 01 9d 00 03 45 10 e8 d0 f6 c8 d0 f1 80";
+
+    private final Memory memory;
+    private final Control control;
+    private final ProgramRunner runner;
+
+    /**
+     * Initialize the benchmark.
+     * @param blocks true to run from the block cache.
+     * @param fuse true to fuse superinstructions.
+     * @param translate true to translate hot blocks.
+     */
+    private BlockCacheBenchmark(boolean blocks, boolean fuse, boolean translate){
+        this.control = new Control();
+        this.memory = new Memory();
+        Stack stack = new Stack(this.memory, this.control);
+        Flags flags = new Flags();
+        InstructionSet is = new InstructionSet(this.memory, stack, flags, this.control);
+        AddressingMode am = new AddressingMode(this.memory);
+        this.runner = new ProgramRunner(this.memory, stack, flags, is, am, this.control);
+        this.control.setDoOnExt(e -> {});
+
+        if(blocks){
+            BlockCache cache = new BlockCache(this.memory);
+            this.memory.setBlockCache(cache);
+            this.runner.setBlockCache(cache);
+            if(fuse){
+                cache.setSuperinstructions(Superinstructions.ALL);
+            }
+        }
+
+        if(translate){
+            this.runner.setTranslator(new BlockTranslator());
+        }
+
+        this.memory.load((short) 0x0200, PROGRAM);
+    }
+
+    /**
+     * Runs the program once up to the ext instruction.
+     * @param blocks true to run from the block cache.
+     * @return amount of steps or blocks run.
+     */
+    private long runProgram(boolean blocks){
+        this.memory.setProgramCounter((short) 0x0200);
+        this.control.setRun(true);
+
+        long count = 0;
+        while(this.control.getRun()){
+            if(blocks){
+                this.runner.runBlock();
+            } else {
+                this.runner.step();
+            }
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * Measures running the program and returns the emulated MHz.
+     * @param blocks true to run from the block cache.
+     * @param instructions amount of instructions in one run of the program.
+     * @return million instructions per second.
+     */
+    private double measure(boolean blocks, long instructions){
+        for(int i = 0; i < WARMUP_ROUNDS; i++){
+            this.runProgram(blocks);
+        }
+
+        long start = System.nanoTime();
+        for(int i = 0; i < MEASURE_ROUNDS; i++){
+            this.runProgram(blocks);
+        }
+        long time = System.nanoTime() - start;
+
+        return ((double) instructions * MEASURE_ROUNDS) / (time / 1000.0);
+    }
+
+    public static void main(String[] args){
+        BlockCacheBenchmark stepBench = new BlockCacheBenchmark(false, false, false);
+        BlockCacheBenchmark blockBench = new BlockCacheBenchmark(true, false, false);
+        BlockCacheBenchmark fusedBench = new BlockCacheBenchmark(true, true, false);
+        BlockCacheBenchmark translatedBench = new BlockCacheBenchmark(true, false, true);
+
+        // every step is one instruction.
+        long instructions = stepBench.runProgram(false);
+
+        double stepMhz = stepBench.measure(false, instructions);
+        double blockMhz = blockBench.measure(true, instructions);
+        double fusedMhz = fusedBench.measure(true, instructions);
+        double translatedMhz = translatedBench.measure(true, instructions);
+
+        System.out.printf("step:        %8.2f MHz%n", stepMhz);
+        System.out.printf("block cache: %8.2f MHz (%5.2f x)%n", blockMhz, blockMhz / stepMhz);
+        System.out.printf("fused:       %8.2f MHz (%5.2f x)%n", fusedMhz, fusedMhz / stepMhz);
+        System.out.printf("translated:  %8.2f MHz (%5.2f x)%n", translatedMhz, translatedMhz / stepMhz);
+    }
+}
@@ -0,0 +1,104 @@
+/*
+Copyright (c) 2023, Livio Conzett
+All rights reserved.
+
+This source code is licensed under the BSD-style license found in the
+LICENSE file in the root directory of this source tree.
+*/
+
+package tech.livio.java6502;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * Runs a program that writes to a few pages of a memory full of data, and takes a checkpoint every few thousand
+ * instructions: once as a delta {@link Checkpoint} and once as a full saved state. Prints the throughput, the time
+ * of one checkpoint and the bytes of memory one checkpoint holds.<br>
+ * Run with: <code>java -cp out tech.livio.java6502.CheckpointBenchmark</code>
+ */
+public class CheckpointBenchmark {
+
+    private static final int INTERVAL = 5000;
+    private static final int CHECKPOINTS = 4000;
+
+    // one store in every 7 instructions, to page 03, forever
+    // 0200 ldy #0
+    // 0202 ldx #0
+    // 0204 clc
+    // 0205 adc #1
+    // 0207 sta $0300,x
+    // 020a eor $10
+    // 020c inx
+    // 020d bne $0204
+    // 020f iny
+    // 0210 bne $0202
+    // 0212 jmp $0200
+    private static final String PROGRAM = "a0 00 a2 00 18 69 01 9d 00 03 45 10 e8 d0 f6 c8 d0 f1 4c 00 02";
+
+    /**
+     * Creates a simulator with every page of memory in use.
+     * @return simulator.
+     */
+    private static Sim6502 simulator(){
+        Sim6502 sim = new Sim6502();
+        sim.setBlockCache(true);
+        byte[] bytes = new byte[0x10000];
+        for(int i = 0; i < bytes.length; i++){
+            bytes[i] = (byte) (i * 7 + 1);
+        }
+        sim.load(bytes);
+        sim.load((short) 0x0200, PROGRAM);
+        sim.setProgramCounter((short) 0x0200);
+        return sim;
+    }
+
+    /**
+     * Runs the program with a checkpoint after every interval and prints the result.
+     * @param mode "none", "delta" or "full".
+     * @throws IOException never, the stream is in memory.
+     */
+    private static void measure(String mode) throws IOException{
+        Sim6502 sim = simulator();
+        ByteArrayOutputStream out = new ByteArrayOutputStream(0x11000);
+        WritableByteChannel channel = Channels.newChannel(out);
+
+        long runTime = 0;
+        long checkpointTime = 0;
+        long bytes = 0;
+        for(int i = 0; i < CHECKPOINTS; i++){
+            long start = System.nanoTime();
+            sim.runFor(INTERVAL);
+            long ran = System.nanoTime();
+            if(mode.equals("delta")){
+                Checkpoint checkpoint = sim.checkpoint();
+                // the first one holds every page
+                if(i > 0) bytes += checkpoint.getPageCount() * 0x100L;
+            } else if(mode.equals("full")){
+                out.reset();
+                sim.saveState(channel);
+                if(i > 0) bytes += out.size();
+            }
+            long end = System.nanoTime();
+            runTime += ran - start;
+            checkpointTime += end - ran;
+        }
+
+        double mhz = (double) INTERVAL * CHECKPOINTS / ((runTime + checkpointTime) / 1000.0);
+        System.out.printf("%-6s %8.2f MHz   checkpoint %7.2f us   %6d bytes%n", mode, mhz,
+                checkpointTime / 1000.0 / CHECKPOINTS, bytes / (CHECKPOINTS - 1));
+    }
+
+    public static void main(String[] args) throws IOException{
+        // warm up
+        measure("none");
+        measure("delta");
+        measure("full");
+
+        measure("none");
+        measure("delta");
+        measure("full");
+    }
+}
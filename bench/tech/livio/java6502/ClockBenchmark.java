@@ -0,0 +1,50 @@
+/*
+Copyright (c) 2023, Livio Conzett
+All rights reserved.
+
+This source code is licensed under the BSD-style license found in the
+LICENSE file in the root directory of this source tree.
+*/
+
+package tech.livio.java6502;
+
+/**
+ * Runs a busy loop unthrottled and at 1 MHz and 2 MHz, and prints the achieved clock frequency and the host CPU
+ * used for each.<br>
+ * Run with: <code>java -cp out tech.livio.java6502.ClockBenchmark</code>
+ */
+public class ClockBenchmark {
+
+    private static final long RUN_MILLIS = 3000;
+
+    // 0200 inx
+    // 0201 sta $0300,x
+    // 0204 jmp $0200
+    private static final String PROGRAM = "e8 9d 00 03 4c 00 02";
+
+    /**
+     * Runs the program in its own thread for a while and returns the clock report.
+     * @param hertz clock frequency, 0 for unthrottled.
+     * @return clock report.
+     * @throws InterruptedException if the main thread is interrupted.
+     */
+    private static ClockReport measure(long hertz) throws InterruptedException{
+        Sim6502 sim = new Sim6502();
+        sim.setDoOnManualHalt(e -> {});
+        sim.load((short) 0xfffc, "4c 00 02");
+        sim.load((short) 0x0200, PROGRAM);
+        sim.setClockFrequency(hertz);
+
+        sim.run();
+        Thread.sleep(RUN_MILLIS);
+        sim.stop();
+
+        return sim.getClockReport();
+    }
+
+    public static void main(String[] args) throws InterruptedException{
+        for(long hertz : new long[]{0, 1_000_000, 2_000_000}){
+            System.out.println(measure(hertz));
+        }
+    }
+}
@@ -0,0 +1,111 @@
+/*
+Copyright (c) 2023, Livio Conzett
+All rights reserved.
+
+This source code is licensed under the BSD-style license found in the
+LICENSE file in the root directory of this source tree.
+*/
+
+package tech.livio.java6502;
+
+/**
+ * Compares the switch the ProgramRunner dispatches op-codes through with a call through a table of lambdas, the
+ * predecoded table of the block cache with the operand read right before.<br>
+ * Prints the result in emulated MHz (million instructions per second).<br>
+ * Run with: <code>java -cp out tech.livio.java6502.DispatchBenchmark</code>
+ */
+public class DispatchBenchmark {
+
+    private static final int WARMUP_ROUNDS = 5;
+    private static final int MEASURE_ROUNDS = 10;
+    private static final int INSTRUCTIONS_PER_ROUND = 20_000_000;
+
+    // ldx #0, inx, adc #1, sta $0300,x, cmp $10, eor ($20),y, lsr a, jmp $0202
+    private static final String PROGRAM = "a2 00 e8 69 01 9d 00 03 c5 10 51 20 4a 4c 02 02";
+
+    private final Memory memory;
+    private final Registers registers;
+    private final InstructionSet is;
+    private final AddressingMode am;
+    private final Control control;
+
+    private DispatchBenchmark(){
+        this.control = new Control();
+        this.memory = new Memory();
+        this.registers = this.memory.getRegisters();
+        Stack stack = new Stack(this.memory, this.control);
+        Flags flags = new Flags();
+        this.is = new InstructionSet(this.memory, stack, flags, this.control);
+        this.am = new AddressingMode(this.memory);
+
+        this.memory.load((short) 0x0200, PROGRAM);
+        this.memory.setProgramCounter((short) 0x0200);
+        this.control.setRun(true);
+    }
+
+    /**
+     * Runs a number of instructions with the switch the ProgramRunner dispatches through.
+     * @param amount amount of instructions to run.
+     */
+    private void runSwitch(int amount){
+        for(int i = 0; i < amount; i++){
+            int opCode = this.memory.read(this.registers.pc);
+            this.registers.pc = (this.registers.pc + 1) & 0xffff;
+            this.registers.cycles += InstructionTable.CYCLES[opCode];
+            InstructionTable.execute(opCode, this.is, this.am);
+        }
+    }
+
+    /**
+     * Runs a number of instructions with the predecoded dispatch table.
+     * @param amount amount of instructions to run.
+     */
+    private void runTable(int amount){
+        for(int i = 0; i < amount; i++){
+            int opCode = this.memory.read(this.registers.pc);
+            AddressingModes mode = InstructionTable.MODES[opCode];
+            int operandAddress = (this.registers.pc + 1) & 0xffff;
+            int operand = switch (InstructionTable.operandLength(mode)) {
+                case 0 -> 0;
+                case 1 -> mode == AddressingModes.RELATIVE
+                        ? (operandAddress + (byte) this.memory.read(operandAddress)) & 0xffff
+                        : this.memory.read(operandAddress);
+                default -> this.memory.read(operandAddress) | this.memory.read(operandAddress + 1) << 8;
+            };
+            this.registers.pc = (operandAddress + InstructionTable.operandLength(mode)) & 0xffff;
+            this.registers.cycles += InstructionTable.CYCLES[opCode];
+            InstructionTable.NMOS_6502_DECODED[opCode].execute(this.is, this.am, operand);
+        }
+    }
+
+    /**
+     * Measures a run function and returns the emulated MHz.
+     * @param run function to measure
+     * @return million instructions per second.
+     */
+    private static double measure(java.util.function.IntConsumer run){
+        for(int i = 0; i < WARMUP_ROUNDS; i++){
+            run.accept(INSTRUCTIONS_PER_ROUND);
+        }
+
+        long start = System.nanoTime();
+        for(int i = 0; i < MEASURE_ROUNDS; i++){
+            run.accept(INSTRUCTIONS_PER_ROUND);
+        }
+        long time = System.nanoTime() - start;
+
+        return ((double) INSTRUCTIONS_PER_ROUND * MEASURE_ROUNDS) / (time / 1000.0);
+    }
+
+    public static void main(String[] args){
+        DispatchBenchmark switchBench = new DispatchBenchmark();
+        DispatchBenchmark tableBench = new DispatchBenchmark();
+
+        double switchMhz = measure(switchBench::runSwitch);
+        double tableMhz = measure(tableBench::runTable);
+
+        System.out.printf("switch dispatch: %8.2f MHz%n", switchMhz);
+        System.out.printf("table dispatch:  %8.2f MHz%n", tableMhz);
+        System.out.printf("switch / table:  %8.2f x%n", switchMhz / tableMhz);
+    }
+}
@@ -0,0 +1,86 @@
+/*
+Copyright (c) 2023, Livio Conzett
+All rights reserved.
+
+This source code is licensed under the BSD-style license found in the
+LICENSE file in the root directory of this source tree.
+*/
+
+package tech.livio.java6502;
+
+/**
+ * Runs the same program with the undo journal of reverse execution off and on, and prints the throughput of both in
+ * emulated MHz (million instructions per second) and how long stepping back takes.<br>
+ * Run with: <code>java -cp out tech.livio.java6502.JournalBenchmark</code>
+ */
+public class JournalBenchmark {
+
+    private static final long INSTRUCTIONS = 20_000_000;
+    private static final int ROUNDS = 5;
+    private static final int JOURNAL_BYTES = 16 << 20;
+    private static final int STEPS_BACK = 100_000;
+
+    // one store in every 7 instructions, forever
+    // 0200 ldy #0
+    // 0202 ldx #0
+    // 0204 clc
+    // 0205 adc #1
+    // 0207 sta $0300,x
+    // 020a eor $10
+    // 020c inx
+    // 020d bne $0204
+    // 020f iny
+    // 0210 bne $0202
+    // 0212 jmp $0200
+    private static final String PROGRAM = "a0 00 a2 00 18 69 01 9d 00 03 45 10 e8 d0 f6 c8 d0 f1 4c 00 02";
+
+    /**
+     * Creates a simulator with the program loaded.
+     * @param journal true to switch the journal on.
+     * @return simulator.
+     */
+    private static Sim6502 simulator(boolean journal){
+        Sim6502 sim = new Sim6502();
+        sim.setBlockCache(true);
+        if(journal) sim.setJournal(JOURNAL_BYTES);
+        sim.load((short) 0x0200, PROGRAM);
+        sim.setProgramCounter((short) 0x0200);
+        return sim;
+    }
+
+    /**
+     * Runs the program and returns the best of a few rounds.
+     * @param sim simulator.
+     * @return million instructions per second.
+     */
+    private static double measure(Sim6502 sim){
+        double best = 0;
+        for(int i = 0; i < ROUNDS; i++){
+            long start = System.nanoTime();
+            sim.runFor(INSTRUCTIONS);
+            long time = System.nanoTime() - start;
+            best = Math.max(best, INSTRUCTIONS / (time / 1000.0));
+        }
+        return best;
+    }
+
+    public static void main(String[] args){
+        // warm up
+        measure(simulator(false));
+        measure(simulator(true));
+
+        double off = measure(simulator(false));
+        Sim6502 sim = simulator(true);
+        double on = measure(sim);
+
+        long start = System.nanoTime();
+        for(int i = 0; i < STEPS_BACK; i++){
+            if(!sim.stepBack()) throw new IllegalStateException("the journal does not reach back far enough");
+        }
+        long stepBack = System.nanoTime() - start;
+
+        System.out.printf("journal off:  %8.2f MHz%n", off);
+        System.out.printf("journal on:   %8.2f MHz (%5.2f x), %d MiB%n", on, on / off, JOURNAL_BYTES >> 20);
+        System.out.printf("step back:    %8.2f us per instruction%n", stepBack / 1000.0 / STEPS_BACK);
+    }
+}
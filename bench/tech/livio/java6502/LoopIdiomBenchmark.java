@@ -0,0 +1,121 @@
+/*
+Copyright (c) 2023, Livio Conzett
+All rights reserved.
+
+This source code is licensed under the BSD-style license found in the
+LICENSE file in the root directory of this source tree.
+*/
+
+package tech.livio.java6502;
+
+/**
+ * Compares running a memory clear and copy, and a nested delay loop, from the block cache with running them as loop
+ * idioms.<br>
+ * Prints the result in emulated MHz (million instructions per second).<br>
+ * Run with: <code>java -cp out tech.livio.java6502.LoopIdiomBenchmark</code>
+ */
+public class LoopIdiomBenchmark {
+
+    private static final int WARMUP_ROUNDS = 200;
+    private static final int MEASURE_ROUNDS = 2000;
+
+    // clears 0x1000 - 0x2fff, then copies 0x1000 - 0x10ff to 0x3000 - 0x30ff
+    // 0200 lda #0
+    // 0202 sta $10
+    // 0204 ldx #$10
+    // 0206 stx $11
+    // 0208 ldx #$20
+    // 020a tay
+    // 020b sta ($10),y
+    // 020d iny
+    // 020e bne $020b
+    // 0210 inc $11
+    // 0212 dex
+    // 0213 bne $020b
+    // 0215 lda $1000,x
+    // 0218 sta $3000,x
+    // 021b inx
+    // 021c bne $0215
+    // 021e ext
+    private static final String FILL_COPY =
+            "a9 00 85 10 a2 10 86 11 a2 20 a8 91 10 c8 d0 fc e6 11 ca d0 f7 bd 00 10 9d 00 30 e8 d0 f8 80";
+
+    // waits 256 * 256 rounds
+    // 0200 ldy #0
+    // 0202 ldx #0
+    // 0204 dex
+    // 0205 bne $0204
+    // 0207 dey
+    // 0208 bne $0202
+    // 020a ext
+    private static final String DELAY = "a0 00 a2 00 ca d0 fe 88 d0 f9 80";
+
+    private final Memory memory;
+    private final Control control;
+    private final ProgramRunner runner;
+
+    /**
+     * Initialize the benchmark.
+     * @param program program to run from 0x0200.
+     * @param idioms true to run loop idioms.
+     */
+    private LoopIdiomBenchmark(String program, boolean idioms){
+        this.control = new Control();
+        this.memory = new Memory();
+        Stack stack = new Stack(this.memory, this.control);
+        Flags flags = new Flags();
+        InstructionSet is = new InstructionSet(this.memory, stack, flags, this.control);
+        AddressingMode am = new AddressingMode(this.memory);
+        this.runner = new ProgramRunner(this.memory, stack, flags, is, am, this.control);
+        this.control.setDoOnExt(e -> {});
+
+        BlockCache cache = new BlockCache(this.memory);
+        cache.setLoopIdioms(idioms);
+        this.memory.setBlockCache(cache);
+        this.runner.setBlockCache(cache);
+
+        this.memory.load((short) 0x0200, program);
+    }
+
+    /**
+     * Runs the program once up to the ext instruction.
+     * @return amount of instructions run.
+     */
+    private long runProgram(){
+        this.memory.setProgramCounter((short) 0x0200);
+        this.control.setRun(true);
+        return this.runner.runFor(Integer.MAX_VALUE);
+    }
+
+    /**
+     * Measures running the program and returns the emulated MHz.
+     * @return million instructions per second.
+     */
+    private double measure(){
+        for(int i = 0; i < WARMUP_ROUNDS; i++){
+            this.runProgram();
+        }
+
+        long instructions = 0;
+        long start = System.nanoTime();
+        for(int i = 0; i < MEASURE_ROUNDS; i++){
+            instructions += this.runProgram();
+        }
+        long time = System.nanoTime() - start;
+
+        return instructions / (time / 1000.0);
+    }
+
+    public static void main(String[] args){
+        String[] names = {"fill and copy", "delay"};
+        String[] programs = {FILL_COPY, DELAY};
+
+        for(int i = 0; i < programs.length; i++){
+            double blockMhz = new LoopIdiomBenchmark(programs[i], false).measure();
+            double idiomMhz = new LoopIdiomBenchmark(programs[i], true).measure();
+
+            System.out.printf("%-14s block cache: %9.2f MHz%n", names[i], blockMhz);
+            System.out.printf("%-14s loop idioms: %9.2f MHz (%6.2f x)%n", names[i], idiomMhz, idiomMhz / blockMhz);
+        }
+    }
+}
@@ -0,0 +1,84 @@
+/*
+Copyright (c) 2023, Livio Conzett
+All rights reserved.
+
+This source code is licensed under the BSD-style license found in the
+LICENSE file in the root directory of this source tree.
+*/
+
+package tech.livio.java6502;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * Measures how long saving and loading the state of a simulator takes, once with a few pages in use and once with
+ * every page in use, and prints the size of the state and the time of one save and one load.<br>
+ * Run with: <code>java -cp out tech.livio.java6502.MachineStateBenchmark</code>
+ */
+public class MachineStateBenchmark {
+
+    private static final int WARMUP_ROUNDS = 20_000;
+    private static final int MEASURE_ROUNDS = 20_000;
+
+    /**
+     * Measures saving and loading and prints the result.
+     * @param name name of the case.
+     * @param sim simulator to save and load.
+     * @throws IOException never, the streams are in memory.
+     */
+    private static void measure(String name, Sim6502 sim) throws IOException{
+        ByteArrayOutputStream out = new ByteArrayOutputStream(0x11000);
+        WritableByteChannel channel = Channels.newChannel(out);
+
+        for(int i = 0; i < WARMUP_ROUNDS; i++){
+            out.reset();
+            sim.saveState(channel);
+            sim.loadState(new ByteArrayInputStream(out.toByteArray()));
+        }
+
+        long start = System.nanoTime();
+        for(int i = 0; i < MEASURE_ROUNDS; i++){
+            out.reset();
+            sim.saveState(channel);
+        }
+        long save = System.nanoTime() - start;
+
+        byte[] state = out.toByteArray();
+        ByteArrayInputStream in = new ByteArrayInputStream(state);
+        start = System.nanoTime();
+        for(int i = 0; i < MEASURE_ROUNDS; i++){
+            in.reset();
+            sim.loadState(in);
+        }
+        long load = System.nanoTime() - start;
+
+        System.out.printf("%-12s %6d bytes   save %6.2f us   load %6.2f us%n", name, state.length,
+                save / 1000.0 / MEASURE_ROUNDS, load / 1000.0 / MEASURE_ROUNDS);
+    }
+
+    public static void main(String[] args) throws IOException{
+        // a program, its zero page, its stack and one page of data
+        Sim6502 sparse = new Sim6502();
+        sparse.setBlockCache(true);
+        sparse.load((short) 0x0200, "a0 00 a2 00 8a 65 10 9d 00 03 e8 d0 f8 88 d0 f3 80");
+        sparse.load((short) 0x0010, "07");
+        sparse.load((short) 0x01f0, "01 02 03");
+        sparse.load((short) 0x0300, "ff ".repeat(0x100));
+        sparse.load((short) 0xfffc, "00 02");
+
+        Sim6502 full = new Sim6502();
+        full.setBlockCache(true);
+        byte[] bytes = new byte[0x10000];
+        for(int i = 0; i < bytes.length; i++){
+            bytes[i] = (byte) (i * 7 + 1);
+        }
+        full.load(bytes);
+
+        measure("5 pages", sparse);
+        measure("256 pages", full);
+    }
+}
@@ -0,0 +1,77 @@
+/*
+Copyright (c) 2023, Livio Conzett
+All rights reserved.
+
+This source code is licensed under the BSD-style license found in the
+LICENSE file in the root directory of this source tree.
+*/
+
+package tech.livio.java6502;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Runs the same program with the memory only on the heap and with the memory kept in a mapped file, and prints the
+ * throughput of both in emulated MHz (million instructions per second).<br>
+ * Run with: <code>java -cp out tech.livio.java6502.MemoryFileBenchmark</code>
+ */
+public class MemoryFileBenchmark {
+
+    private static final long INSTRUCTIONS = 20_000_000;
+    private static final int ROUNDS = 5;
+
+    // one store in every 7 instructions, forever
+    // 0200 ldy #0
+    // 0202 ldx #0
+    // 0204 clc
+    // 0205 adc #1
+    // 0207 sta $0300,x
+    // 020a eor $10
+    // 020c inx
+    // 020d bne $0204
+    // 020f iny
+    // 0210 bne $0202
+    // 0212 jmp $0200
+    private static final String PROGRAM = "a0 00 a2 00 18 69 01 9d 00 03 45 10 e8 d0 f6 c8 d0 f1 4c 00 02";
+
+    /**
+     * Runs the program and returns the best of a few rounds.
+     * @param file file to keep the memory in, or null for the heap only.
+     * @return million instructions per second.
+     * @throws IOException if the file can not be mapped.
+     */
+    private static double measure(Path file) throws IOException{
+        Sim6502 sim = new Sim6502();
+        sim.setBlockCache(true);
+        sim.setMemoryFile(file);
+        sim.load((short) 0x0200, PROGRAM);
+        sim.setProgramCounter((short) 0x0200);
+
+        double best = 0;
+        for(int i = 0; i < ROUNDS; i++){
+            long start = System.nanoTime();
+            sim.runFor(INSTRUCTIONS);
+            long time = System.nanoTime() - start;
+            best = Math.max(best, INSTRUCTIONS / (time / 1000.0));
+        }
+        return best;
+    }
+
+    public static void main(String[] args) throws IOException{
+        Path file = Files.createTempFile("memory", ".bin");
+        try{
+            // warm up
+            measure(null);
+            measure(file);
+
+            double heap = measure(null);
+            double mapped = measure(file);
+            System.out.printf("heap:         %8.2f MHz%n", heap);
+            System.out.printf("mapped file:  %8.2f MHz (%5.2f x)%n", mapped, mapped / heap);
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+}
@@ -0,0 +1,65 @@
+/*
+Copyright (c) 2023, Livio Conzett
+All rights reserved.
+
+This source code is licensed under the BSD-style license found in the
+LICENSE file in the root directory of this source tree.
+*/
+
+package tech.livio.java6502;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Runs a binary program one instruction at a time and prints the op-code pairs it runs most often, to find out which
+ * superinstructions are worth having.<br>
+ * Run with:
+ * <code>java -cp out tech.livio.java6502.PairFrequencyReport program.bin loadAddress [startAddress] [maxInstructions] [top]</code><br>
+ * The addresses are hex. The program stops at an ext, or after maxInstructions (default 100'000'000).
+ */
+public class PairFrequencyReport {
+
+    /**
+     * Run the report.
+     * @param args file, load address, start address, maximum amount of instructions, amount of pairs to print.
+     * @throws IOException if the program can not be read.
+     */
+    public static void main(String[] args) throws IOException{
+        if(args.length < 2){
+            System.err.println("usage: PairFrequencyReport program.bin loadAddress [startAddress] [maxInstructions] [top]");
+            System.exit(1);
+        }
+
+        byte[] program = Files.readAllBytes(Path.of(args[0]));
+        int loadAddress = Integer.parseInt(args[1], 16);
+        int startAddress = args.length > 2 ? Integer.parseInt(args[2], 16) : loadAddress;
+        long maxInstructions = args.length > 3 ? Long.parseLong(args[3]) : 100_000_000L;
+        int top = args.length > 4 ? Integer.parseInt(args[4]) : 40;
+
+        Control control = new Control();
+        Memory memory = new Memory();
+        Stack stack = new Stack(memory, control);
+        Flags flags = new Flags();
+        InstructionSet is = new InstructionSet(memory, stack, flags, control);
+        AddressingMode am = new AddressingMode(memory);
+        ProgramRunner runner = new ProgramRunner(memory, stack, flags, is, am, control);
+        control.setDoOnExt(e -> {});
+
+        for(int i = 0; i < program.length; i++){
+            memory.write((loadAddress + i) & 0xffff, program[i] & 0xff);
+        }
+        Registers registers = memory.getRegisters();
+        registers.pc = startAddress;
+
+        PairFrequency frequency = new PairFrequency();
+        control.setRun(true);
+        for(long i = 0; i < maxInstructions && control.getRun(); i++){
+            frequency.record(registers.pc, memory.read(registers.pc));
+            runner.step();
+        }
+
+        System.out.print(frequency.report(top));
+    }
+}
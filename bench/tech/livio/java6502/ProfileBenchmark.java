@@ -0,0 +1,74 @@
+/*
+Copyright (c) 2023, Livio Conzett
+All rights reserved.
+
+This source code is licensed under the BSD-style license found in the
+LICENSE file in the root directory of this source tree.
+*/
+
+package tech.livio.java6502;
+
+import java.util.Map;
+
+/**
+ * Runs the same program one instruction at a time and from the block cache, each without and with a profile. Prints
+ * the throughput in emulated MHz (million instructions per second), then the hottest routines and instructions.<br>
+ * Run with: <code>java -cp out tech.livio.java6502.ProfileBenchmark</code>
+ */
+public class ProfileBenchmark {
+
+    private static final long INSTRUCTIONS = 50_000_000;
+
+    // one store in every 7 instructions, forever
+    // 0200 ldy #0
+    // 0202 ldx #0
+    // 0204 clc
+    // 0205 adc #1
+    // 0207 sta $0300,x
+    // 020a eor $10
+    // 020c inx
+    // 020d bne $0204
+    // 020f iny
+    // 0210 bne $0202
+    // 0212 jmp $0200
+    private static final String PROGRAM = "a0 00 a2 00 18 69 01 9d 00 03 45 10 e8 d0 f6 c8 d0 f1 4c 00 02";
+
+    /**
+     * Runs the program and prints the result.
+     * @param name name of the run.
+     * @param blockCache true to run from the block cache.
+     * @param profiled true to record a profile.
+     * @return the profile, or null if none has been recorded.
+     */
+    private static Profile measure(String name, boolean blockCache, boolean profiled){
+        Sim6502 sim = new Sim6502();
+        sim.setBlockCache(blockCache);
+        sim.load((short) 0x0200, PROGRAM);
+        sim.setProgramCounter((short) 0x0200);
+        if(profiled) sim.startProfile();
+
+        long start = System.nanoTime();
+        sim.runFor(INSTRUCTIONS);
+        long time = System.nanoTime() - start;
+        Profile profile = sim.stopProfile();
+
+        System.out.printf("%-20s %8.2f MHz%n", name, INSTRUCTIONS / (time / 1000.0));
+        return profile;
+    }
+
+    public static void main(String[] args){
+        Profile profile = null;
+        for(int i = 0; i < 3; i++){
+            measure("interpreter", false, false);
+            profile = measure("interpreter profiled", false, true);
+            measure("block cache", true, false);
+            measure("block cache profiled", true, true);
+        }
+
+        profile.setSymbols(Map.of(0x0200, "outer", 0x0204, "inner", 0x020f, "next"));
+        System.out.println();
+        System.out.print(profile.routines(10));
+        System.out.println();
+        System.out.print(profile.listing(10));
+    }
+}
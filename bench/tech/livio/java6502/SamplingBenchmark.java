@@ -0,0 +1,81 @@
+/*
+Copyright (c) 2023, Livio Conzett
+All rights reserved.
+
+This source code is licensed under the BSD-style license found in the
+LICENSE file in the root directory of this source tree.
+*/
+
+package tech.livio.java6502;
+
+import java.util.Map;
+
+/**
+ * Runs the same program from the block cache without sampling and with a sampler at 1 kHz and 10 kHz, one after the
+ * other for a few rounds. Prints the throughput in emulated MHz (million instructions per second) and the amount of
+ * samples, then the histogram and the collapsed call stacks of the last run.<br>
+ * Run with: <code>java -cp out tech.livio.java6502.SamplingBenchmark</code>
+ */
+public class SamplingBenchmark {
+
+    private static final long INSTRUCTIONS = 100_000_000;
+
+    // 0200 ldx #$ff
+    // 0202 txs
+    // 0203 jsr $0210
+    // 0206 jmp $0203
+    private static final String MAIN = "a2 ff 9a 20 10 02 4c 03 02";
+    // 0210 plp          jsr pushes the status too
+    // 0211 ldx #0
+    // 0213 jsr $0220
+    // 0216 inx
+    // 0217 bne $0213
+    // 0219 rts
+    private static final String FILL = "28 a2 00 20 20 02 e8 d0 fb 60";
+    // 0220 plp
+    // 0221 adc #1
+    // 0223 sta $0300,x
+    // 0226 rts
+    private static final String STORE = "28 69 01 9d 00 03 60";
+
+    /**
+     * Runs the program and prints the result.
+     * @param name name of the run.
+     * @param frequency samples per second, or 0 to take none.
+     * @return the samples, or null if none have been taken.
+     */
+    private static SampleProfile measure(String name, int frequency){
+        Sim6502 sim = new Sim6502();
+        sim.setBlockCache(true);
+        sim.load((short) 0x0200, MAIN);
+        sim.load((short) 0x0210, FILL);
+        sim.load((short) 0x0220, STORE);
+        sim.setProgramCounter((short) 0x0200);
+        if(frequency > 0) sim.startSampling(frequency);
+
+        long start = System.nanoTime();
+        sim.runFor(INSTRUCTIONS);
+        long time = System.nanoTime() - start;
+        SampleProfile samples = sim.stopSampling();
+
+        System.out.printf("%-14s %8.2f MHz", name, INSTRUCTIONS / (time / 1000.0));
+        if(samples != null) System.out.printf("   %6d samples", samples.getSampleCount());
+        System.out.println();
+        return samples;
+    }
+
+    public static void main(String[] args){
+        SampleProfile samples = null;
+        for(int i = 0; i < 4; i++){
+            measure("not sampled", 0);
+            measure("sampled 1 kHz", 1000);
+            samples = measure("sampled 10 kHz", 10_000);
+        }
+
+        samples.setSymbols(Map.of(0x0200, "main", 0x0210, "fill", 0x0220, "store"));
+        System.out.println();
+        System.out.print(samples.histogram(5));
+        System.out.println();
+        System.out.print(samples.collapsedStacks());
+    }
+}
@@ -0,0 +1,96 @@
+/*
+Copyright (c) 2023, Livio Conzett
+All rights reserved.
+
+This source code is licensed under the BSD-style license found in the
+LICENSE file in the root directory of this source tree.
+*/
+
+package tech.livio.java6502;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Creates many simulators that run the same program from a 32 KiB ROM, once loaded as bytes and once as a shared
+ * {@link MemoryImage}, and prints the heap used per simulator for each.<br>
+ * Run with: <code>java -cp out tech.livio.java6502.SharedPagesBenchmark</code>
+ */
+public class SharedPagesBenchmark {
+
+    private static final int SIMULATORS = 5000;
+
+    // in the ROM at 0x8000, writes to the zero page and the stack
+    // 8000 ldx #$ff
+    // 8002 txs
+    // 8003 stx $10
+    // 8005 pha
+    // 8006 ext
+    private static final String PROGRAM = "a2 ff 9a 86 10 48 80";
+
+    /**
+     * Get the heap in use after a garbage collection.
+     * @return bytes.
+     */
+    private static long usedHeap(){
+        Runtime runtime = Runtime.getRuntime();
+        for(int i = 0; i < 5; i++){
+            System.gc();
+            try{
+                Thread.sleep(50);
+            } catch (InterruptedException e){
+                Thread.currentThread().interrupt();
+            }
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    /**
+     * Creates the simulators, runs the program on each and returns the heap used per simulator.
+     * @param rom bytes of the whole memory.
+     * @param shared true to load the ROM as one shared image, false to load the bytes into every simulator.
+     * @return bytes per simulator.
+     */
+    private static long measure(byte[] rom, boolean shared){
+        MemoryImage image = new MemoryImage(rom);
+        long before = usedHeap();
+
+        List<Sim6502> sims = new ArrayList<>();
+        for(int i = 0; i < SIMULATORS; i++){
+            Sim6502 sim = new Sim6502();
+            sim.setDoOnExt(e -> {});
+            if(shared){
+                sim.load(image);
+            } else {
+                sim.load(rom);
+            }
+            sim.setProgramCounter((short) 0x8000);
+            sim.runFor(100);
+            sims.add(sim);
+        }
+
+        long perSimulator = (usedHeap() - before) / sims.size();
+        // keep them reachable until they are measured
+        if(sims.get(0).getProgramCounter() != (short) 0x8006) throw new IllegalStateException("program did not end");
+        return perSimulator;
+    }
+
+    public static void main(String[] args){
+        byte[] rom = new byte[0x10000];
+        for(int i = 0x8000; i < rom.length; i++){
+            rom[i] = (byte) (i * 13);
+        }
+        Memory memory = new Memory();
+        memory.load(rom);
+        memory.load((short) 0x8000, PROGRAM);
+        rom = memory.snapshot();
+
+        // the shared run first, so garbage of the other run can not be collected while it is measured.
+        long shared = measure(rom, true);
+        long copied = measure(rom, false);
+
+        System.out.printf("%d simulators with a 32 KiB ROM%n", SIMULATORS);
+        System.out.printf("bytes loaded:  %7d bytes per simulator%n", copied);
+        System.out.printf("shared image:  %7d bytes per simulator%n", shared);
+    }
+}
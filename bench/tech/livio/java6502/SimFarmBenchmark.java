@@ -0,0 +1,124 @@
+/*
+Copyright (c) 2023, Livio Conzett
+All rights reserved.
+
+This source code is licensed under the BSD-style license found in the
+LICENSE file in the root directory of this source tree.
+*/
+
+package tech.livio.java6502;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Runs the same amount of jobs on a {@link SimFarm} with 1, 2, 4, ... up to all cores of the host and prints the
+ * throughput for each, and for comparison with one new simulator in its own thread per job.<br>
+ * Run with: <code>java -cp out tech.livio.java6502.SimFarmBenchmark</code>
+ */
+public class SimFarmBenchmark {
+
+    private static final int JOBS = 400;
+
+    // 256 * 256 rounds of a small checksum
+    // 0200 ldy #0
+    // 0202 ldx #0
+    // 0204 txa
+    // 0205 adc $10
+    // 0207 sta $0300,x
+    // 020a inx
+    // 020b bne $0204
+    // 020d dey
+    // 020e bne $0202
+    // 0210 ext
+    private static final String PROGRAM = "a0 00 a2 00 8a 65 10 9d 00 03 e8 d0 f8 88 d0 f3 80";
+
+    /**
+     * Creates the jobs, each with another seed.
+     * @return jobs.
+     */
+    private static List<SimJob> jobs(){
+        List<SimJob> jobs = new ArrayList<>();
+        for(int i = 0; i < JOBS; i++){
+            Memory memory = new Memory();
+            memory.load((short) 0x0200, PROGRAM);
+            memory.write(0x10, i);
+            byte[] image = memory.getMemoryRange((short) 0x0000, (short) 0x03ff);
+            jobs.add(new SimJob(image, (short) 0x0200, Long.MAX_VALUE, Long.MAX_VALUE,
+                    (short) 0x0300, (short) 0x03ff));
+        }
+        return jobs;
+    }
+
+    /**
+     * Runs all jobs on a farm and returns the emulated MHz summed over all threads.
+     * @param threads threads of the farm.
+     * @param jobs jobs to run.
+     * @return million instructions per second.
+     */
+    private static double measure(int threads, List<SimJob> jobs){
+        try(SimFarm farm = new SimFarm(threads, sim -> sim.setBlockCache(true))){
+            long start = System.nanoTime();
+            List<CompletableFuture<SimResult>> futures = new ArrayList<>();
+            for(SimJob job : jobs){
+                futures.add(farm.submit(job));
+            }
+
+            long instructions = 0;
+            for(CompletableFuture<SimResult> future : futures){
+                instructions += future.join().getInstructions();
+            }
+            long time = System.nanoTime() - start;
+
+            return instructions / (time / 1000.0);
+        }
+    }
+
+    /**
+     * Runs all jobs the old way, a new simulator with its own thread for every job, all started at once.
+     * @param jobs jobs to run.
+     * @return million instructions per second.
+     */
+    private static double measureThreadPerJob(List<SimJob> jobs){
+        long start = System.nanoTime();
+        List<Sim6502> sims = new ArrayList<>();
+        for(SimJob job : jobs){
+            Sim6502 sim = new Sim6502();
+            sim.setBlockCache(true);
+            sim.setDoOnExt(e -> {});
+            sim.load(job.getImage());
+            sim.setProgramCounter(job.getStartAddress());
+            sim.run();
+            sims.add(sim);
+        }
+
+        long instructions = 0;
+        for(Sim6502 sim : sims){
+            sim.waitForProgramEnd();
+            instructions += sim.getInstructionCount();
+        }
+        long time = System.nanoTime() - start;
+
+        return instructions / (time / 1000.0);
+    }
+
+    public static void main(String[] args){
+        List<SimJob> jobs = jobs();
+        int cores = Runtime.getRuntime().availableProcessors();
+
+        // warm up
+        measure(cores, jobs);
+
+        System.out.printf("%d jobs, %d cores%n", JOBS, cores);
+        double single = 0;
+        for(int threads = 1; ; threads = Math.min(threads * 2, cores)){
+            double mhz = measure(threads, jobs);
+            if(threads == 1) single = mhz;
+            System.out.printf("farm, %3d threads:  %9.2f MHz (%5.2f x)%n", threads, mhz, mhz / single);
+            if(threads == cores) break;
+        }
+        double threadPerJob = measureThreadPerJob(jobs);
+        System.out.printf("thread per job:     %9.2f MHz (%5.2f x)%n", threadPerJob, threadPerJob / single);
+    }
+}
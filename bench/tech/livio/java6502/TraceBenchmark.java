@@ -0,0 +1,122 @@
+/*
+Copyright (c) 2023, Livio Conzett
+All rights reserved.
+
+This source code is licensed under the BSD-style license found in the
+LICENSE file in the root directory of this source tree.
+*/
+
+package tech.livio.java6502;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Runs the same program without a trace, one instruction at a time and from the block cache, with a trace and with a
+ * compact trace recorded to a temporary file. Prints the throughput in emulated MHz (million instructions per second),
+ * the bytes of the trace per instruction and how many instructions were dropped because the writer fell behind. Then
+ * does the same for a program that reads a device in every 5 instructions, and times the reconstruction of the full
+ * trace from the compact one.<br>
+ * Run with: <code>java -cp out tech.livio.java6502.TraceBenchmark</code>
+ */
+public class TraceBenchmark {
+
+    private static final long INSTRUCTIONS = 50_000_000;
+
+    // one store in every 7 instructions, forever
+    // 0200 ldy #0
+    // 0202 ldx #0
+    // 0204 clc
+    // 0205 adc #1
+    // 0207 sta $0300,x
+    // 020a eor $10
+    // 020c inx
+    // 020d bne $0204
+    // 020f iny
+    // 0210 bne $0202
+    // 0212 jmp $0200
+    private static final String PROGRAM = "a0 00 a2 00 18 69 01 9d 00 03 45 10 e8 d0 f6 c8 d0 f1 4c 00 02";
+    // reads a device in every 5 instructions, forever
+    // 0200 lda $d000
+    // 0203 and #3
+    // 0205 beq $020c
+    // 0207 inc $0400
+    // 020a bne $0200
+    // 020c inc $0401
+    // 020f jmp $0200
+    private static final String DEVICE_PROGRAM = "ad 00 d0 29 03 f0 06 ee 00 04 d0 f5 ee 01 04 4c 00 02";
+
+    /**
+     * Runs a program and prints the result.
+     * @param name name of the run.
+     * @param program program.
+     * @param blockCache true to run from the block cache.
+     * @param trace file to record the trace to, or null for none.
+     * @param compact true to record a compact trace instead of a full one.
+     * @throws IOException if the trace can not be written.
+     */
+    private static void measure(String name, String program, boolean blockCache, Path trace, boolean compact)
+            throws IOException{
+        Sim6502 sim = new Sim6502();
+        sim.setBlockCache(blockCache);
+        sim.attachDevice(new Device() {
+            private int seed = 1;
+
+            @Override
+            public int read(int address){
+                this.seed = this.seed * 1103515245 + 12345;
+                return this.seed >>> 16;
+            }
+
+            @Override
+            public void write(int address, int value){
+                // nothing to do
+            }
+        }, (short) 0xd000, (short) 0xd0ff);
+        sim.load((short) 0x0200, program);
+        sim.setProgramCounter((short) 0x0200);
+        if(trace != null && compact){
+            sim.startCompactTrace(trace);
+        } else if(trace != null){
+            sim.startTrace(trace);
+        }
+
+        long start = System.nanoTime();
+        sim.runFor(INSTRUCTIONS);
+        sim.stopCompactTrace();
+        long dropped = sim.stopTrace();
+        long time = System.nanoTime() - start;
+
+        System.out.printf("%-14s %8.2f MHz", name, INSTRUCTIONS / (time / 1000.0));
+        if(trace != null){
+            System.out.printf("   %7.4f bytes per instruction   %d dropped", (double) Files.size(trace) / INSTRUCTIONS,
+                    dropped);
+        }
+        System.out.println();
+    }
+
+    public static void main(String[] args) throws IOException{
+        Path trace = Files.createTempFile("trace", ".bin");
+        Path compact = Files.createTempFile("compact", ".bin");
+        try{
+            for(int i = 0; i < 2; i++){
+                measure("interpreter", PROGRAM, false, null, false);
+                measure("block cache", PROGRAM, true, null, false);
+                measure("traced", PROGRAM, true, trace, false);
+                measure("compact", PROGRAM, true, compact, true);
+                measure("device traced", DEVICE_PROGRAM, true, trace, false);
+                measure("device compact", DEVICE_PROGRAM, true, compact, true);
+            }
+
+            long start = System.nanoTime();
+            TraceReconstructor.reconstruct(compact, trace);
+            long time = System.nanoTime() - start;
+            System.out.printf("reconstructed  %8.2f MHz   %7.4f bytes per instruction%n",
+                    INSTRUCTIONS / (time / 1000.0), (double) Files.size(trace) / INSTRUCTIONS);
+        } finally{
+            Files.deleteIfExists(trace);
+            Files.deleteIfExists(compact);
+        }
+    }
+}
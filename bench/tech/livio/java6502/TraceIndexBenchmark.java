@@ -0,0 +1,104 @@
+/*
+Copyright (c) 2023, Livio Conzett
+All rights reserved.
+
+This source code is licensed under the BSD-style license found in the
+LICENSE file in the root directory of this source tree.
+*/
+
+package tech.livio.java6502;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+/**
+ * Records a trace of a program, builds its index and times queries on it. Prints the time to build the index, its
+ * size per instruction and for every query how many instructions it has found and how long it took, the first time
+ * and after it has run a few times.<br>
+ * Run with: <code>java -cp out tech.livio.java6502.TraceIndexBenchmark</code>
+ */
+public class TraceIndexBenchmark {
+
+    private static final long INSTRUCTIONS = 50_000_000;
+
+    // one store in every 7 instructions, forever
+    // 0200 ldy #0
+    // 0202 ldx #0
+    // 0204 clc
+    // 0205 adc #1
+    // 0207 sta $0300,x
+    // 020a eor $10
+    // 020c inx
+    // 020d bne $0204
+    // 020f iny
+    // 0210 bne $0202
+    // 0212 jmp $0200
+    private static final String PROGRAM = "a0 00 a2 00 18 69 01 9d 00 03 45 10 e8 d0 f6 c8 d0 f1 4c 00 02";
+
+    /**
+     * Runs a query a few times and prints the result.
+     * @param name name of the query.
+     * @param query query, gives the positions it has found.
+     */
+    private static void measure(String name, Supplier<long[]> query){
+        long start = System.nanoTime();
+        int found = query.get().length;
+        long first = System.nanoTime() - start;
+        long best = Long.MAX_VALUE;
+        for(int i = 0; i < 20; i++){
+            start = System.nanoTime();
+            query.get();
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        System.out.printf("%-26s %9d found   %9.3f ms first   %9.3f ms after%n", name, found, first / 1e6,
+                best / 1e6);
+    }
+
+    public static void main(String[] args) throws IOException{
+        Path trace = Files.createTempFile("trace", ".bin");
+        Path directory = Files.createTempDirectory("index");
+        try{
+            Sim6502 sim = new Sim6502();
+            sim.setBlockCache(true);
+            sim.load((short) 0x0200, PROGRAM);
+            sim.setProgramCounter((short) 0x0200);
+            sim.startTrace(trace, -1, Long.MAX_VALUE, true);
+            sim.runFor(INSTRUCTIONS);
+            sim.stopTrace();
+
+            long start = System.nanoTime();
+            TraceIndex index = TraceIndex.build(trace, directory);
+            long time = System.nanoTime() - start;
+            long bytes = 0;
+            try(Stream<Path> files = Files.list(directory)){
+                for(Path file : files.toList()){
+                    bytes += Files.size(file);
+                }
+            }
+            System.out.printf("built in %.2f s, %.2f MHz, %.2f bytes per instruction%n", time / 1e9,
+                    INSTRUCTIONS / (time / 1000.0), (double) bytes / INSTRUCTIONS);
+
+            measure("executions of $0212", () -> index.executionsOf(0x0212));
+            measure("executions of $e1a0", () -> index.executionsOf(0xe1a0));
+            measure("writes to $0300", () -> index.writesTo(0x0300));
+            measure("accesses to $10", () -> index.accessesTo(0x10));
+            measure("first time a == $ff", () -> new long[]{index.findFirst(TraceIndex.Register.A, 0xff)});
+            measure("first time y == $ff", () -> new long[]{index.findFirst(TraceIndex.Register.Y, 0xff)});
+            measure("first time sp == $00", () -> new long[]{index.findFirst(TraceIndex.Register.SP, 0x00)});
+            measure("all times y == $80", () -> index.findAll(TraceIndex.Register.Y, 0x80));
+        } finally{
+            Files.deleteIfExists(trace);
+            if(Files.exists(directory)){
+                try(Stream<Path> files = Files.list(directory)){
+                    for(Path file : files.toList()){
+                        Files.delete(file);
+                    }
+                }
+                Files.delete(directory);
+            }
+        }
+    }
+}
@@ -9,12 +9,22 @@ LICENSE file in the root directory of this source tree.
 package tech.livio.java6502;
 
 /**
- * This class handles the Addressing Modes for the Operations
+ * This class handles the Addressing Modes for the Operations.<br>
+ * Every addressing mode returns the effective address of the operand as an unsigned int. The value is only read from
+ * memory by the operations that need it (see {@link #read(int)}), so resolving an operand never allocates.<br>
+ * When an addressing mode is called, the program counter points at the first operand byte. Afterwards it points at
+ * the next op-code.<br>
+ * The indexed modes that cost an extra cycle when the index crosses a page remember if it did. The operations that
+ * read through them use {@link #readIndexed(int)}, which counts the extra cycle. Stores and read-modify-write
+ * operations always take the same amount of cycles and never count it.
  * @author Livio Conzett
  * @version 22.10.2022
  */
 class AddressingMode {
     private final Memory memory;
+    private final Registers registers;
+    // 1 if the last absolute indexed or indirect indexed address crossed a page, 0 if not.
+    private int pageCrossed;
 
     /**
      * Initialize the class.
@@ -22,44 +32,57 @@ class AddressingMode {
      */
     public AddressingMode(Memory memory) {
         this.memory = memory;
+        this.registers = memory.getRegisters();
+    }
+
+    /**
+     * Reads the byte at the program counter and increments the program counter.
+     * @return unsigned operand byte.
+     */
+    private int fetch(){
+        int value = this.memory.read(this.registers.pc);
+        this.registers.pc = (this.registers.pc + 1) & 0xffff;
+        return value;
+    }
+
+    /**
+     * Reads the two bytes at the program counter as a little endian address and increments the program counter twice.
+     * @return address.
+     */
+    private int fetchAddress(){
+        int low = this.fetch();
+        return low | (this.fetch() << 8);
     }
 
     /**
      * Immediate addressing mode.<br>
-     * Increments the program counter and returns the byte at that place.
-     * @return byte to work with
+     * The operand is the byte at the program counter. Returns that address and increments the program counter.
+     * @return address of the operand
      */
-    public AddressingModeReturn immediate(){
-        this.memory.incrementProgramCounter();
-        return new AddressingModeReturn(this.memory.getCurrentByte(),this.memory.getProgramCounter());
+    public int immediate(){
+        int address = this.registers.pc;
+        this.registers.pc = (address + 1) & 0xffff;
+        return address;
     }
 
     /**
      * Absolute addressing mode.<br>
-     * The two following bytes from the program counter hold the low and high byte of an address respectively.
-     * Gets the byte at that address.<br>
+     * The two bytes at the program counter hold the low and high byte of an address respectively.
+     * Returns that address.<br>
      * Program counter gets incremented twice.
-     * @return Byte at absolute address.
+     * @return absolute address.
      */
-    public AddressingModeReturn absolute(){
-        this.memory.incrementProgramCounter();
-        byte low = this.memory.getCurrentByte();
-        this.memory.incrementProgramCounter();
-        byte high = this.memory.getCurrentByte();
-        short address = Util.bytesToAddress(low,high);
-        return new AddressingModeReturn(this.memory.getByteAtAddress(address),address);
+    public int absolute(){
+        return this.fetchAddress();
     }
 
     /**
      * Zero Page addressing mode.<br>
-     * Increment the program counter. The byte at that position is the address on the Zero Page to get the byte from.
-     * @return Byte on the Zero Page.
+     * The byte at the program counter is the address on the Zero Page. Increments the program counter.
+     * @return address on the Zero Page.
      */
-    public AddressingModeReturn zeroPage(){
-        this.memory.incrementProgramCounter();
-        byte low = this.memory.getCurrentByte();
-        short address = Util.bytesToAddress(low,(byte) 0x00);
-        return new AddressingModeReturn(this.memory.getByteAtAddress(address),address);
+    public int zeroPage(){
+        return this.fetch();
     }
 
     /**
@@ -69,132 +92,205 @@ class AddressingMode {
      * consecutive address.
      * @return address
      */
-    public AddressingModeReturn indirectAbsolute(){
-        this.memory.incrementProgramCounter();
-        byte low = this.memory.getCurrentByte();
-        this.memory.incrementProgramCounter();
-        byte high = this.memory.getCurrentByte();
-        short address = Util.bytesToAddress(low,high);
-        low = this.memory.getByteAtAddress(address);
-        high = this.memory.getByteAtAddress((short) (address +1));
-        short finalAddress = Util.bytesToAddress(low,high);
-        return new AddressingModeReturn(this.memory.getByteAtAddress(finalAddress), finalAddress);
+    public int indirectAbsolute(){
+        return this.indirectAbsolute(this.fetchAddress());
+    }
+
+    /**
+     * Indirect Absolute addressing mode with an already fetched operand.
+     * @param address address the jump address is stored at.
+     * @return address
+     */
+    public int indirectAbsolute(int address){
+        int low = this.memory.read(address);
+        int high = this.memory.read(address + 1);
+        return low | (high << 8);
     }
 
     /**
      * Absolute Index addressing mode.<br>
-     * The two following bytes from the program counter hold the low and high byte of an address respectively.
-     * Add a value to that address and then gets the byte at that address.<br>
+     * The two bytes at the program counter hold the low and high byte of an address respectively.
+     * Add a value to that address and return it.<br>
      * @param addValue Value to add to the address.
-     * @return Byte at that address.
+     * @return address plus the value.
      */
-    public AddressingModeReturn absoluteIndex(byte addValue){
-        this.memory.incrementProgramCounter();
-        byte low = this.memory.getCurrentByte();
-        this.memory.incrementProgramCounter();
-        byte high = this.memory.getCurrentByte();
-        short address = Util.bytesToAddress(low,high);
-        address = (short) (address + Util.unsignByte(addValue));
-        return new AddressingModeReturn(this.memory.getByteAtAddress(address),address);
+    public int absoluteIndex(int addValue){
+        return this.index(this.fetchAddress(), addValue);
+    }
+
+    /**
+     * Adds an index to an address and remembers if that crossed a page.
+     * @param address address to add the index to.
+     * @param addValue index.
+     * @return address plus the index.
+     */
+    private int index(int address, int addValue){
+        int indexed = (address + (addValue & 0xff)) & 0xffff;
+        this.pageCrossed = ((address ^ indexed) & 0xff00) == 0 ? 0 : 1;
+        return indexed;
     }
 
     /**
      * Absolute Index X addressing mode.<br>
-     * The two following bytes from the program counter hold the low and high byte of an address respectively.
-     * Add value of X register to that address and then gets the byte at that address.<br>
-     * @return Byte at that address.
+     * The two bytes at the program counter hold the low and high byte of an address respectively.
+     * Add value of X register to that address and return it.<br>
+     * @return address plus the X register.
      */
-    public AddressingModeReturn absoluteIndexX(){
-        return this.absoluteIndex(this.memory.getRegisterX());
+    public int absoluteIndexX(){
+        return this.absoluteIndex(this.registers.x);
+    }
+
+    /**
+     * Absolute Index X addressing mode with an already fetched operand.
+     * @param address absolute address.
+     * @return address plus the X register.
+     */
+    public int absoluteIndexX(int address){
+        return this.index(address, this.registers.x);
     }
 
     /**
      * Absolute Index Y addressing mode.<br>
-     * The two following bytes from the program counter hold the low and high byte of an address respectively.
-     * Add value of Y register to that address and then gets the byte at that address.<br>
-     * @return Byte at that address.
+     * The two bytes at the program counter hold the low and high byte of an address respectively.
+     * Add value of Y register to that address and return it.<br>
+     * @return address plus the Y register.
+     */
+    public int absoluteIndexY(){
+        return this.absoluteIndex(this.registers.y);
+    }
+
+    /**
+     * Absolute Index Y addressing mode with an already fetched operand.
+     * @param address absolute address.
+     * @return address plus the Y register.
      */
-    public AddressingModeReturn absoluteIndexY(){
-        return this.absoluteIndex(this.memory.getRegisterY());
+    public int absoluteIndexY(int address){
+        return this.index(address, this.registers.y);
     }
 
     /**
      * Zero-Page Index addressing mode.<br>
-     * The following byte from the program counter holds the address on the Zero-Page Memory.
-     * Add a value to that address and then gets the byte at that address.<br>
+     * The byte at the program counter holds the address on the Zero-Page Memory.
+     * Add a value to that address and return it.<br>
      * @param addValue Value to add to the address.
-     * @return Byte at that address.
+     * @return address plus the value.
      */
-    public AddressingModeReturn zeroPageIndex(byte addValue){
-        this.memory.incrementProgramCounter();
-        byte low = this.memory.getCurrentByte();
-        short address = Util.bytesToAddress(low,(byte)0x00);
-        address = (short) (address + Util.unsignByte(addValue));
-        return new AddressingModeReturn(this.memory.getByteAtAddress(address),address);
+    public int zeroPageIndex(int addValue){
+        return this.fetch() + (addValue & 0xff);
     }
 
     /**
      * Zero-Page Index X addressing mode.<br>
-     * The following byte from the program counter holds an address in the Zero-Page Memory.
-     * Add value of X register to that address and then gets the byte at that address.<br>
-     * @return Byte at that address.
+     * The byte at the program counter holds an address in the Zero-Page Memory.
+     * Add value of X register to that address and return it.<br>
+     * @return address plus the X register.
+     */
+    public int zeroPageIndexX(){
+        return this.zeroPageIndex(this.registers.x);
+    }
+
+    /**
+     * Zero-Page Index X addressing mode with an already fetched operand.
+     * @param address address on the Zero-Page.
+     * @return address plus the X register.
      */
-    public AddressingModeReturn zeroPageIndexX(){
-        return this.zeroPageIndex(this.memory.getRegisterX());
+    public int zeroPageIndexX(int address){
+        return address + this.registers.x;
     }
 
     /**
      * Zero-Page Index Y addressing mode.<br>
-     * The following byte from the program counter holds an address in the Zero-Page Memory.
-     * Add value of Y register to that address and then gets the byte at that address.<br>
-     * @return Byte at that address.
+     * The byte at the program counter holds an address in the Zero-Page Memory.
+     * Add value of Y register to that address and return it.<br>
+     * @return address plus the Y register.
+     */
+    public int zeroPageIndexY(){
+        return this.zeroPageIndex(this.registers.y);
+    }
+
+    /**
+     * Zero-Page Index Y addressing mode with an already fetched operand.
+     * @param address address on the Zero-Page.
+     * @return address plus the Y register.
      */
-    public AddressingModeReturn zeroPageIndexY(){
-        return this.zeroPageIndex(this.memory.getRegisterY());
+    public int zeroPageIndexY(int address){
+        return address + this.registers.y;
     }
 
     /**
      * Indexed Indirect Addressing.<br>
-     * The following byte from the program counter plus the x register is the Zero-Page address of the low byte
-     * of an absolut address. The byte after that is the high byte. This returns the byte at that Absolute address.
-     * @return byte at the address.
+     * The byte at the program counter plus the x register is the Zero-Page address of the low byte
+     * of an absolut address. The byte after that is the high byte. This returns that Absolute address.
+     * @return the absolute address.
      */
-    public AddressingModeReturn indexedIndirect(){
-        this.memory.incrementProgramCounter();
-        byte base = this.memory.getCurrentByte();
-        byte basePlus = (byte) (base + Util.unsignByte(this.memory.getRegisterX()));
-        byte low = this.memory.getByteAtAddress(basePlus);
-        byte high = this.memory.getByteAtAddress((short)(basePlus + 1));
-        short address = Util.bytesToAddress(low,high);
-        return new AddressingModeReturn(this.memory.getByteAtAddress(address),address);
+    public int indexedIndirect(){
+        return this.indexedIndirect(this.fetch());
+    }
+
+    /**
+     * Indexed Indirect Addressing with an already fetched operand.
+     * @param address address on the Zero-Page.
+     * @return the absolute address.
+     */
+    public int indexedIndirect(int address){
+        int basePlus = (address + this.registers.x) & 0xff;
+        int low = this.memory.read(basePlus);
+        int high = this.memory.read(basePlus + 1);
+        return low | (high << 8);
     }
 
     /**
      * Indirect Indexed Addressing.<br>
-     * The following byte from the program counter is the Zero-Page address of the low byte
-     * of an absolut address. The byte after that is the high byte. This returns the byte at that Absolute address.
-     * Then it adds the byte in the y register to the Absolute address and returns the byte at the addresses place.
-     * @return byte at the address.
+     * The byte at the program counter is the Zero-Page address of the low byte
+     * of an absolut address. The byte after that is the high byte.
+     * Then it adds the byte in the y register to the Absolute address and returns that address.
+     * @return the absolute address plus the y register.
      */
-    public AddressingModeReturn indirectIndexed(){
-        this.memory.incrementProgramCounter();
-        byte low = this.memory.getByteAtAddress(this.memory.getCurrentByte());
-        byte high = this.memory.getByteAtAddress((short)(this.memory.getCurrentByte() + 1));
-        short address = (short)(Util.bytesToAddress(low,high) + Util.unsignByte(this.memory.getRegisterY()));
-        return new AddressingModeReturn(this.memory.getByteAtAddress(address),address);
+    public int indirectIndexed(){
+        return this.indirectIndexed(this.fetch());
+    }
+
+    /**
+     * Indirect Indexed Addressing with an already fetched operand.
+     * @param address address on the Zero-Page.
+     * @return the absolute address plus the y register.
+     */
+    public int indirectIndexed(int address){
+        int low = this.memory.read(address);
+        int high = this.memory.read(address + 1);
+        return this.index(low | (high << 8), this.registers.y);
     }
 
     /**
      * Relative Addressing mode.<br>
-     * Increments the program counter and gets the byte at that position. That byte is the distance to jump
-     * from the program counter (positive or negative). Returns the new address.
+     * The byte at the program counter is the distance to jump from the address of that byte (positive or negative).
+     * Returns the new address.
      * @return address.
      */
-    public AddressingModeReturn relative(){
-        this.memory.incrementProgramCounter();
-        byte dif = this.memory.getCurrentByte();
-        short address = (short)(this.memory.getProgramCounter() + dif);
-        return new AddressingModeReturn(this.memory.getByteAtAddress(address),address);
+    public int relative(){
+        int operandAddress = this.registers.pc;
+        byte dif = (byte) this.fetch();
+        return (operandAddress + dif) & 0xffff;
+    }
+
+    /**
+     * Reads the operand at an effective address returned by one of the addressing modes.
+     * @param address effective address.
+     * @return byte at the address.
+     */
+    public byte read(int address){
+        return (byte) this.memory.read(address);
+    }
+
+    /**
+     * Reads the operand at an address returned by an absolute indexed or an indirect indexed addressing mode.<br>
+     * Counts the extra cycle if the index crossed a page.
+     * @param address effective address.
+     * @return byte at the address.
+     */
+    public byte readIndexed(int address){
+        this.registers.cycles += this.pageCrossed;
+        return (byte) this.memory.read(address);
     }
 
 }
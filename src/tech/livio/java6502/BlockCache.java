@@ -0,0 +1,313 @@
+/*
+Copyright (c) 2023, Livio Conzett
+All rights reserved.
+
+This source code is licensed under the BSD-style license found in the
+LICENSE file in the root directory of this source tree.
+*/
+
+package tech.livio.java6502;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Cache of predecoded blocks of straight-line code, indexed by the address of their first op-code.<br>
+ * A block is decoded the first time the program counter lands on its start address and reused until memory it was
+ * decoded from gets written to. Writes are reported by {@link Memory} and invalidate every block in the written page,
+ * so self-modifying code keeps working.
+ */
+class BlockCache {
+
+    // longest run of instructions decoded into one block.
+    static final int MAX_INSTRUCTIONS = 32;
+
+    // longest op-code sequence of a superinstruction.
+    private static final int MAX_FUSED = 3;
+
+    // the fill, copy and delay loops read at most this many bytes of code.
+    private static final int IDIOM_BYTES = 24;
+
+    private static final int PAGES = 256;
+
+    private final Memory memory;
+    private final DecodedBlock[] blocks;
+    // blocks that have been decoded from each page.
+    private final List<List<DecodedBlock>> pageBlocks;
+    // true if there is at least one decoded block in the page. Checked on every write.
+    private final boolean[] codePages;
+    // superinstructions to fuse, by their first op-code.
+    private final Superinstruction[][] superinstructions;
+    // true to look for fill and copy loops when decoding.
+    private boolean loopIdioms;
+
+    /**
+     * Initialize the cache.
+     * @param memory Memory object the blocks are decoded from.
+     */
+    BlockCache(Memory memory){
+        this.memory = memory;
+        this.blocks = new DecodedBlock[0x10000];
+        this.codePages = new boolean[PAGES];
+        this.superinstructions = new Superinstruction[256][0];
+        this.pageBlocks = new ArrayList<>(PAGES);
+        for(int i = 0; i < PAGES; i++){
+            this.pageBlocks.add(new ArrayList<>());
+        }
+    }
+
+    /**
+     * Get the block starting at an address. Decodes it if it is not in the cache.<br>
+     * Code is never decoded from the pages of a device, reading them could change the device.
+     * @param address address of the first op-code of the block.
+     * @return decoded block, or null if the first instruction lies in the pages of a device.
+     */
+    DecodedBlock get(int address){
+        DecodedBlock block = this.blocks[address];
+        if(block == null){
+            block = this.decode(address);
+            if(block == null) return null;
+            // the loops read a few bytes past the block.
+            if(this.loopIdioms && !this.memory.hasDevice(address, IDIOM_BYTES)){
+                block.idiom = LoopIdiom.recognise(this.memory, address);
+                block.delay = DelayLoop.recognise(this.memory, address);
+            }
+            this.blocks[address] = block;
+            for(int page : block.pages){
+                this.pageBlocks.get(page).add(block);
+                this.codePages[page] = true;
+            }
+        }
+        return block;
+    }
+
+    /**
+     * Has to be called on every write to memory. Invalidates the blocks in the page of the address.
+     * @param address address that has been written to.
+     */
+    void written(int address){
+        int page = (address & 0xffff) >>> 8;
+        if(this.codePages[page]){
+            this.invalidatePage(page);
+        }
+    }
+
+    /**
+     * Invalidates every block that has been decoded from a page.
+     * @param page page number (high byte of the address).
+     */
+    void invalidatePage(int page){
+        List<DecodedBlock> decoded = this.pageBlocks.get(page);
+
+        for(DecodedBlock block : decoded){
+            block.valid = false;
+            if(this.blocks[block.start] == block){
+                this.blocks[block.start] = null;
+            }
+            // a block crossing a page boundary is listed in the other page too.
+            for(int other : block.pages){
+                if(other != page) this.pageBlocks.get(other).remove(block);
+            }
+        }
+
+        decoded.clear();
+        this.codePages[page] = false;
+    }
+
+    /**
+     * Invalidates every block in the cache.
+     */
+    void invalidateAll(){
+        for(int page = 0; page < PAGES; page++){
+            if(this.codePages[page]){
+                this.invalidatePage(page);
+            }
+        }
+    }
+
+    /**
+     * Set the superinstructions the cache fuses when it decodes blocks. Throws away all decoded blocks.
+     * @param superinstructions superinstructions to fuse. Empty to turn fusion off.
+     */
+    void setSuperinstructions(Collection<Superinstruction> superinstructions){
+        List<List<Superinstruction>> byOpCode = new ArrayList<>(256);
+        for(int i = 0; i < 256; i++){
+            byOpCode.add(new ArrayList<>());
+        }
+        for(Superinstruction superinstruction : superinstructions){
+            byOpCode.get(superinstruction.opCodes[0]).add(superinstruction);
+        }
+
+        for(int i = 0; i < 256; i++){
+            List<Superinstruction> candidates = byOpCode.get(i);
+            // try the longest sequence first
+            candidates.sort(Comparator.comparingInt((Superinstruction f) -> f.opCodes.length).reversed());
+            this.superinstructions[i] = candidates.toArray(new Superinstruction[0]);
+        }
+
+        this.invalidateAll();
+    }
+
+    /**
+     * Switches the recognition of fill, copy and delay loops on or off. Throws away all decoded blocks.
+     * @param loopIdioms true to mark blocks that are fill or copy loops with their {@link LoopIdiom} and delay loops
+     * with their {@link DelayLoop}.
+     */
+    void setLoopIdioms(boolean loopIdioms){
+        this.loopIdioms = loopIdioms;
+        this.invalidateAll();
+    }
+
+    /**
+     * Decodes the instructions starting at an address until one of them can change the program counter or the
+     * block is {@link #MAX_INSTRUCTIONS} long. Sequences that match a superinstruction are decoded into one entry.
+     * @param start address of the first op-code.
+     * @return decoded block.
+     */
+    private DecodedBlock decode(int start){
+        int[] opCodes = new int[MAX_INSTRUCTIONS];
+        DecodedInstruction[] handlers = new DecodedInstruction[MAX_INSTRUCTIONS];
+        int[] operands = new int[MAX_INSTRUCTIONS];
+        int[] nextAddresses = new int[MAX_INSTRUCTIONS];
+        int[] instructionCounts = new int[MAX_INSTRUCTIONS];
+        int[] cycles = new int[MAX_INSTRUCTIONS];
+        int[] pages = new int[MAX_INSTRUCTIONS * 2 * MAX_FUSED];
+        int pageCount = 0;
+
+        int address = start;
+        int length = 0;
+
+        while(length < MAX_INSTRUCTIONS){
+            if(!this.decodable(address)) break;
+            Superinstruction fused = this.findSuperinstruction(address);
+            int count = fused == null ? 1 : fused.opCodes.length;
+
+            opCodes[length] = this.memory.read(address);
+
+            int opCode = 0;
+            int operand = 0;
+            int operandSlot = 0;
+            boolean wrapped = false;
+
+            for(int i = 0; i < count; i++){
+                opCode = this.memory.read(address);
+                AddressingModes mode = InstructionTable.MODES[opCode];
+                int operandAddress = (address + 1) & 0xffff;
+                int next = (operandAddress + InstructionTable.operandLength(mode)) & 0xffff;
+
+                // the operands of a superinstruction are packed 16 bits each.
+                if(InstructionTable.operandLength(mode) > 0){
+                    operand |= this.decodeOperand(mode, operandAddress) << (16 * operandSlot);
+                    operandSlot++;
+                }
+
+                cycles[length] += InstructionTable.CYCLES[opCode];
+                pageCount = addPage(pages, pageCount, address >>> 8);
+                pageCount = addPage(pages, pageCount, ((next - 1) & 0xffff) >>> 8);
+
+                wrapped = next <= address;
+                address = next;
+            }
+
+            handlers[length] = fused == null ? InstructionTable.NMOS_6502_DECODED[opCode] : fused.handler;
+            operands[length] = operand;
+            nextAddresses[length] = address;
+            instructionCounts[length] = count;
+            length++;
+
+            // stop at the end of memory, so a block never wraps around to the zero page.
+            if(InstructionTable.ENDS_BLOCK[opCode] || wrapped) break;
+        }
+
+        if(length == 0) return null;
+
+        return new DecodedBlock(
+                start,
+                length,
+                Arrays.copyOf(opCodes, length),
+                Arrays.copyOf(handlers, length),
+                Arrays.copyOf(operands, length),
+                Arrays.copyOf(nextAddresses, length),
+                Arrays.copyOf(instructionCounts, length),
+                Arrays.copyOf(cycles, length),
+                Arrays.copyOf(pages, pageCount)
+        );
+    }
+
+    /**
+     * Checks if the instruction at an address can be decoded without reading from a device.
+     * @param address address of the op-code.
+     * @return false if the op-code or one of its operand bytes lies in the pages of a device.
+     */
+    private boolean decodable(int address){
+        if(this.memory.hasDevice(address, 1)) return false;
+        int length = 1 + InstructionTable.operandLength(InstructionTable.MODES[this.memory.read(address)]);
+        return !this.memory.hasDevice(address, length);
+    }
+
+    /**
+     * Looks for a superinstruction that matches the code at an address.
+     * @param address address of the first op-code.
+     * @return the longest matching superinstruction, or null if there is none.
+     */
+    private Superinstruction findSuperinstruction(int address){
+        for(Superinstruction candidate : this.superinstructions[this.memory.read(address)]){
+            if(this.matches(candidate, address)) return candidate;
+        }
+        return null;
+    }
+
+    /**
+     * Checks if the code at an address is the sequence of a superinstruction.
+     * @param superinstruction superinstruction to check.
+     * @param address address of the first op-code.
+     * @return true if all op-codes match and the sequence does not wrap around the end of memory.
+     */
+    private boolean matches(Superinstruction superinstruction, int address){
+        for(int opCode : superinstruction.opCodes){
+            if(!this.decodable(address) || this.memory.read(address) != opCode) return false;
+
+            int next = (address + 1 + InstructionTable.operandLength(InstructionTable.MODES[opCode])) & 0xffff;
+            if(next <= address) return false;
+            address = next;
+        }
+        return true;
+    }
+
+    /**
+     * Reads the operand of an instruction.
+     * @param mode addressing mode of the instruction.
+     * @param address address of the first operand byte.
+     * @return the value for immediate, the branch target for relative, and the operand bytes for all other modes.
+     */
+    private int decodeOperand(AddressingModes mode, int address){
+        return switch (InstructionTable.operandLength(mode)) {
+            case 0 -> 0;
+            case 1 -> {
+                int operand = this.memory.read(address);
+                // same target as AddressingMode.relative()
+                if(mode == AddressingModes.RELATIVE) yield (address + (byte) operand) & 0xffff;
+                yield operand;
+            }
+            default -> this.memory.read(address) | (this.memory.read(address + 1) << 8);
+        };
+    }
+
+    /**
+     * Adds a page to a list of pages if it is not in there yet.
+     * @param pages list of pages.
+     * @param count amount of pages in the list.
+     * @param page page to add.
+     * @return new amount of pages in the list.
+     */
+    private static int addPage(int[] pages, int count, int page){
+        for(int i = 0; i < count; i++){
+            if(pages[i] == page) return count;
+        }
+        pages[count] = page;
+        return count + 1;
+    }
+}
@@ -0,0 +1,468 @@
+/*
+Copyright (c) 2023, Livio Conzett
+All rights reserved.
+
+This source code is licensed under the BSD-style license found in the
+LICENSE file in the root directory of this source tree.
+*/
+
+package tech.livio.java6502;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Translates hot {@link DecodedBlock}s into hidden classes.<br>
+ * Every translated block gets its own class with one call site per instruction. The operands and the addresses of the
+ * following instructions are constants in the code. That way the JIT sees a single handler at every call site and can
+ * inline the whole block.<br>
+ * The generated code is the equivalent of:
+ * <pre>
+ *     registers.pc = next0;
+ *     block.handlers[0].execute(is, am, operand0);
+ *     if(!block.valid) return;
+ *     registers.pc = next1;
+ *     ...
+ * </pre>
+ * Blocks with an ext (0x80) are never translated, so the end of the program always runs in the interpreter.
+ */
+class BlockTranslator {
+
+    // how many times a block has to be entered before it gets translated.
+    static final int DEFAULT_THRESHOLD = 1000;
+
+    private static final String PACKAGE = "tech/livio/java6502/";
+
+    // the class file version before stack map frames were required. The verifier infers the types itself.
+    private static final int CLASS_VERSION = 49;
+
+    private static final int ACC_PUBLIC = 0x0001;
+    private static final int ACC_FINAL = 0x0010;
+    private static final int ACC_SUPER = 0x0020;
+
+    private static final int CONSTANT_UTF8 = 1;
+    private static final int CONSTANT_INTEGER = 3;
+    private static final int CONSTANT_CLASS = 7;
+    private static final int CONSTANT_FIELD = 9;
+    private static final int CONSTANT_METHOD = 10;
+    private static final int CONSTANT_INTERFACE_METHOD = 11;
+    private static final int CONSTANT_NAME_AND_TYPE = 12;
+
+    private static final int ICONST_0 = 0x03;
+    private static final int BIPUSH = 0x10;
+    private static final int SIPUSH = 0x11;
+    private static final int LDC_W = 0x13;
+    private static final int ALOAD = 0x19;
+    private static final int ALOAD_0 = 0x2a;
+    private static final int AALOAD = 0x32;
+    private static final int IFNE = 0x9a;
+    private static final int RETURN = 0xb1;
+    private static final int GETFIELD = 0xb4;
+    private static final int PUTFIELD = 0xb5;
+    private static final int INVOKESPECIAL = 0xb7;
+    private static final int INVOKEINTERFACE = 0xb9;
+
+    private final MethodHandles.Lookup lookup;
+    private int threshold;
+    private long translated;
+
+    /**
+     * Initialize the translator.
+     */
+    BlockTranslator(){
+        this.lookup = MethodHandles.lookup();
+        this.threshold = DEFAULT_THRESHOLD;
+    }
+
+    /**
+     * Get the amount of block entries after which a block gets translated.
+     * @return threshold.
+     */
+    int getThreshold(){
+        return this.threshold;
+    }
+
+    /**
+     * Set the amount of block entries after which a block gets translated.
+     * @param threshold threshold, at least 1.
+     */
+    void setThreshold(int threshold){
+        this.threshold = Math.max(1, threshold);
+    }
+
+    /**
+     * Get the amount of blocks that have been translated.
+     * @return amount of translated blocks.
+     */
+    long getTranslated(){
+        return this.translated;
+    }
+
+    /**
+     * Checks if a block may be translated.
+     * @param block block to check.
+     * @return false if the block contains an ext.
+     */
+    static boolean canTranslate(DecodedBlock block){
+        for(int opCode : block.opCodes){
+            if(opCode == 0x80) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Translates a block into a hidden class.
+     * @param block block to translate.
+     * @return the translated code, or null if the block can not be translated.
+     */
+    CompiledBlock translate(DecodedBlock block){
+        if(!canTranslate(block)) return null;
+
+        byte[] classFile = new ClassWriter(block).write();
+
+        try {
+            Class<?> hidden = this.lookup.defineHiddenClass(classFile, true).lookupClass();
+            CompiledBlock compiled = (CompiledBlock) hidden.getDeclaredConstructor().newInstance();
+            this.translated++;
+            return compiled;
+        } catch (ReflectiveOperationException e){
+            throw new IllegalStateException("Could not translate the block at " + Util.hexToString((short) block.start), e);
+        }
+    }
+
+    /**
+     * Writes the class file of one translated block.
+     */
+    private static final class ClassWriter {
+
+        private final DecodedBlock block;
+        private final ByteArrayOutputStream constants;
+        private final Map<String, Integer> constantIndex;
+        private int constantCount;
+
+        /**
+         * Initialize the writer.
+         * @param block block to translate.
+         */
+        ClassWriter(DecodedBlock block){
+            this.block = block;
+            this.constants = new ByteArrayOutputStream();
+            this.constantIndex = new HashMap<>();
+            // index 0 of the constant pool is not used.
+            this.constantCount = 1;
+        }
+
+        /**
+         * Writes the whole class file.
+         * @return bytes of the class file.
+         */
+        byte[] write(){
+            int thisClass = this.classConstant(PACKAGE + "TranslatedBlock");
+            int superClass = this.classConstant("java/lang/Object");
+            int compiledBlock = this.classConstant(PACKAGE + "CompiledBlock");
+
+            byte[] constructor = this.constructor();
+            byte[] run = this.run();
+
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            try (DataOutputStream out = new DataOutputStream(bytes)) {
+                out.writeInt(0xcafebabe);
+                out.writeShort(0);
+                out.writeShort(CLASS_VERSION);
+
+                out.writeShort(this.constantCount);
+                this.constants.writeTo(out);
+
+                out.writeShort(ACC_FINAL | ACC_SUPER);
+                out.writeShort(thisClass);
+                out.writeShort(superClass);
+                // interfaces
+                out.writeShort(1);
+                out.writeShort(compiledBlock);
+                // fields
+                out.writeShort(0);
+                // methods
+                out.writeShort(2);
+                out.write(constructor);
+                out.write(run);
+                // attributes
+                out.writeShort(0);
+            } catch (IOException e){
+                // can not happen with a ByteArrayOutputStream
+                throw new IllegalStateException(e);
+            }
+            return bytes.toByteArray();
+        }
+
+        /**
+         * Writes the default constructor.
+         * @return bytes of the method.
+         */
+        private byte[] constructor(){
+            int objectInit = this.memberConstant(CONSTANT_METHOD, "java/lang/Object", "<init>", "()V");
+
+            Code code = new Code();
+            code.op(ALOAD_0);
+            code.op(INVOKESPECIAL);
+            code.u2(objectInit);
+            code.op(RETURN);
+
+            return this.method("<init>", "()V", 1, 1, code);
+        }
+
+        /**
+         * Writes the run method with one call per instruction of the block.
+         * @return bytes of the method.
+         */
+        private byte[] run(){
+            int pc = this.memberConstant(CONSTANT_FIELD, PACKAGE + "Registers", "pc", "I");
+            int handlers = this.memberConstant(CONSTANT_FIELD, PACKAGE + "DecodedBlock", "handlers",
+                    "[L" + PACKAGE + "DecodedInstruction;");
+            int valid = this.memberConstant(CONSTANT_FIELD, PACKAGE + "DecodedBlock", "valid", "Z");
+            int execute = this.memberConstant(CONSTANT_INTERFACE_METHOD, PACKAGE + "DecodedInstruction", "execute",
+                    "(L" + PACKAGE + "InstructionSet;L" + PACKAGE + "AddressingMode;I)V");
+
+            // locals: 0 this, 1 block, 2 is, 3 am, 4 registers
+            Code code = new Code();
+            for(int i = 0; i < this.block.length; i++){
+                // registers.pc = next address
+                code.op(ALOAD);
+                code.u1(4);
+                this.pushInt(code, this.block.nextAddresses[i]);
+                code.op(PUTFIELD);
+                code.u2(pc);
+
+                // block.handlers[i].execute(is, am, operand)
+                code.op(ALOAD_0 + 1);
+                code.op(GETFIELD);
+                code.u2(handlers);
+                this.pushInt(code, i);
+                code.op(AALOAD);
+                code.op(ALOAD_0 + 2);
+                code.op(ALOAD_0 + 3);
+                this.pushInt(code, this.block.operands[i]);
+                code.op(INVOKEINTERFACE);
+                code.u2(execute);
+                code.u1(4);
+                code.u1(0);
+
+                if(i < this.block.length - 1){
+                    // if(!block.valid) return;
+                    code.op(ALOAD_0 + 1);
+                    code.op(GETFIELD);
+                    code.u2(valid);
+                    code.op(IFNE);
+                    // jump over the ifne itself and the return
+                    code.u2(4);
+                    code.op(RETURN);
+                }
+            }
+            code.op(RETURN);
+
+            String descriptor = "(L" + PACKAGE + "DecodedBlock;L" + PACKAGE + "InstructionSet;L" + PACKAGE
+                    + "AddressingMode;L" + PACKAGE + "Registers;)V";
+            return this.method("run", descriptor, 4, 5, code);
+        }
+
+        /**
+         * Pushes an int constant onto the operand stack.
+         * @param code code to add to.
+         * @param value value to push.
+         */
+        private void pushInt(Code code, int value){
+            if(value >= 0 && value <= 5){
+                code.op(ICONST_0 + value);
+            } else if(value >= Byte.MIN_VALUE && value <= Byte.MAX_VALUE){
+                code.op(BIPUSH);
+                code.u1(value);
+            } else if(value >= Short.MIN_VALUE && value <= Short.MAX_VALUE){
+                code.op(SIPUSH);
+                code.u2(value);
+            } else {
+                code.op(LDC_W);
+                code.u2(this.intConstant(value));
+            }
+        }
+
+        /**
+         * Writes a public method with a code attribute.
+         * @param name name of the method.
+         * @param descriptor descriptor of the method.
+         * @param maxStack maximum depth of the operand stack.
+         * @param maxLocals amount of local variables, including this and the parameters.
+         * @param code code of the method.
+         * @return bytes of the method.
+         */
+        private byte[] method(String name, String descriptor, int maxStack, int maxLocals, Code code){
+            int nameIndex = this.utf8Constant(name);
+            int descriptorIndex = this.utf8Constant(descriptor);
+            int codeIndex = this.utf8Constant("Code");
+            byte[] bytecode = code.toByteArray();
+
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            try (DataOutputStream out = new DataOutputStream(bytes)) {
+                out.writeShort(ACC_PUBLIC);
+                out.writeShort(nameIndex);
+                out.writeShort(descriptorIndex);
+                // attributes
+                out.writeShort(1);
+                out.writeShort(codeIndex);
+                // length of the code attribute
+                out.writeInt(2 + 2 + 4 + bytecode.length + 2 + 2);
+                out.writeShort(maxStack);
+                out.writeShort(maxLocals);
+                out.writeInt(bytecode.length);
+                out.write(bytecode);
+                // exception table
+                out.writeShort(0);
+                // attributes of the code attribute
+                out.writeShort(0);
+            } catch (IOException e){
+                // can not happen with a ByteArrayOutputStream
+                throw new IllegalStateException(e);
+            }
+            return bytes.toByteArray();
+        }
+
+        /**
+         * Adds a UTF8 constant to the pool if it is not in there yet.
+         * @param value string.
+         * @return index of the constant.
+         */
+        private int utf8Constant(String value){
+            return this.constant("utf8:" + value, out -> {
+                out.writeByte(CONSTANT_UTF8);
+                out.writeUTF(value);
+            });
+        }
+
+        /**
+         * Adds an integer constant to the pool if it is not in there yet.
+         * @param value integer.
+         * @return index of the constant.
+         */
+        private int intConstant(int value){
+            return this.constant("int:" + value, out -> {
+                out.writeByte(CONSTANT_INTEGER);
+                out.writeInt(value);
+            });
+        }
+
+        /**
+         * Adds a class constant to the pool if it is not in there yet.
+         * @param name internal name of the class.
+         * @return index of the constant.
+         */
+        private int classConstant(String name){
+            int nameIndex = this.utf8Constant(name);
+            return this.constant("class:" + name, out -> {
+                out.writeByte(CONSTANT_CLASS);
+                out.writeShort(nameIndex);
+            });
+        }
+
+        /**
+         * Adds a field, method or interface method constant to the pool if it is not in there yet.
+         * @param tag tag of the constant.
+         * @param owner internal name of the class the member belongs to.
+         * @param name name of the member.
+         * @param descriptor descriptor of the member.
+         * @return index of the constant.
+         */
+        private int memberConstant(int tag, String owner, String name, String descriptor){
+            int ownerIndex = this.classConstant(owner);
+            int nameIndex = this.utf8Constant(name);
+            int descriptorIndex = this.utf8Constant(descriptor);
+            int nameAndType = this.constant("nat:" + name + ":" + descriptor, out -> {
+                out.writeByte(CONSTANT_NAME_AND_TYPE);
+                out.writeShort(nameIndex);
+                out.writeShort(descriptorIndex);
+            });
+            return this.constant("member:" + owner + "." + name + ":" + descriptor, out -> {
+                out.writeByte(tag);
+                out.writeShort(ownerIndex);
+                out.writeShort(nameAndType);
+            });
+        }
+
+        /**
+         * Adds a constant to the pool if there is no constant with the same key yet.
+         * @param key key identifying the constant.
+         * @param entry writes the entry of the constant.
+         * @return index of the constant.
+         */
+        private int constant(String key, ConstantEntry entry){
+            Integer index = this.constantIndex.get(key);
+            if(index != null) return index;
+
+            try {
+                entry.write(new DataOutputStream(this.constants));
+            } catch (IOException e){
+                // can not happen with a ByteArrayOutputStream
+                throw new IllegalStateException(e);
+            }
+            int newIndex = this.constantCount++;
+            this.constantIndex.put(key, newIndex);
+            return newIndex;
+        }
+    }
+
+    /**
+     * Writes one entry of the constant pool.
+     */
+    @FunctionalInterface
+    private interface ConstantEntry {
+
+        /**
+         * Write the entry.
+         * @param out stream to write to.
+         * @throws IOException never, the stream writes to memory.
+         */
+        void write(DataOutputStream out) throws IOException;
+    }
+
+    /**
+     * Bytecode of a method.
+     */
+    private static final class Code {
+
+        private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+
+        /**
+         * Add an op-code.
+         * @param opCode op-code.
+         */
+        void op(int opCode){
+            this.bytes.write(opCode);
+        }
+
+        /**
+         * Add one byte.
+         * @param value byte.
+         */
+        void u1(int value){
+            this.bytes.write(value);
+        }
+
+        /**
+         * Add two bytes, big endian.
+         * @param value short.
+         */
+        void u2(int value){
+            this.bytes.write(value >> 8);
+            this.bytes.write(value);
+        }
+
+        /**
+         * Get the bytecode.
+         * @return bytes of the code.
+         */
+        byte[] toByteArray(){
+            return this.bytes.toByteArray();
+        }
+    }
+}
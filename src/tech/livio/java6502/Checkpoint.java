@@ -0,0 +1,114 @@
+/*
+Copyright (c) 2023, Livio Conzett
+All rights reserved.
+
+This source code is licensed under the BSD-style license found in the
+LICENSE file in the root directory of this source tree.
+*/
+
+package tech.livio.java6502;
+
+/**
+ * The state of a simulator at one point of its run, taken with {@link Sim6502#checkpoint()}.<br>
+ * A checkpoint only holds the registers and the pages of memory that have changed since the checkpoint before it, its
+ * parent. The first checkpoint of a simulator holds every page. Putting a simulator back into a checkpoint with
+ * {@link Sim6502#restore(Checkpoint)} takes every page from the newest checkpoint of the chain that has it.<br>
+ * The pages are shared with the simulator and with the other checkpoints, never copied. A checkpoint keeps its
+ * parents, and so their pages, as long as it is kept itself.
+ */
+public class Checkpoint {
+
+    private final Checkpoint parent;
+    // for every page its bytes, or null if it has not changed since the parent. Never written to.
+    private final byte[][] pages;
+    private final int pageCount;
+
+    final int a;
+    final int x;
+    final int y;
+    final int sp;
+    final byte p;
+    final int pc;
+    final long cycles;
+    final long instructions;
+    // run flag and interrupt lines, bits of Control
+    final int status;
+
+    /**
+     * Initialize the checkpoint.
+     * @param parent checkpoint the pages are relative to, or null if the pages are the whole memory.
+     * @param pages for every page its bytes, or null if it has not changed since the parent.
+     * @param registers registers.
+     * @param p processor status register.
+     * @param instructions amount of instructions run so far.
+     * @param status run flag and interrupt lines.
+     */
+    Checkpoint(Checkpoint parent, byte[][] pages, Registers registers, byte p, long instructions, int status){
+        this.parent = parent;
+        this.pages = pages;
+        int count = 0;
+        for(byte[] page : pages){
+            if(page != null) count++;
+        }
+        this.pageCount = count;
+        this.a = registers.a;
+        this.x = registers.x;
+        this.y = registers.y;
+        this.sp = registers.sp;
+        this.p = p;
+        this.pc = registers.pc;
+        this.cycles = registers.cycles;
+        this.instructions = instructions;
+        this.status = status;
+    }
+
+    /**
+     * Get the checkpoint this one only holds the changes to.
+     * @return parent, or null if this checkpoint holds the whole memory.
+     */
+    public Checkpoint getParent(){
+        return this.parent;
+    }
+
+    /**
+     * Get the amount of pages this checkpoint holds, the ones that have changed since its parent.
+     * @return 0 to 256.
+     */
+    public int getPageCount(){
+        return this.pageCount;
+    }
+
+    /**
+     * Get the amount of instructions the simulator had run at the checkpoint.
+     * @return amount of instructions.
+     */
+    public long getInstructionCount(){
+        return this.instructions;
+    }
+
+    /**
+     * Get the amount of clock cycles the simulator had run at the checkpoint.
+     * @return amount of clock cycles.
+     */
+    public long getCycleCount(){
+        return this.cycles;
+    }
+
+    /**
+     * Puts together the whole memory of the checkpoint from it and its parents.
+     * @return for every page its bytes, or null for a page that no checkpoint of the chain holds.
+     */
+    byte[][] resolvePages(){
+        byte[][] resolved = new byte[0x100][];
+        int missing = resolved.length;
+        for(Checkpoint checkpoint = this; checkpoint != null && missing > 0; checkpoint = checkpoint.parent){
+            for(int page = 0; page < resolved.length; page++){
+                if(resolved[page] == null && checkpoint.pages[page] != null){
+                    resolved[page] = checkpoint.pages[page];
+                    missing--;
+                }
+            }
+        }
+        return resolved;
+    }
+}
@@ -0,0 +1,81 @@
+/*
+Copyright (c) 2023, Livio Conzett
+All rights reserved.
+
+This source code is licensed under the BSD-style license found in the
+LICENSE file in the root directory of this source tree.
+*/
+
+package tech.livio.java6502;
+
+import java.util.Locale;
+
+/**
+ * How fast the program has run in its own thread, compared to the clock frequency it was set to, and how much of a
+ * host core that took.
+ */
+public class ClockReport {
+
+    private final long targetFrequency;
+    private final long cycles;
+    private final long elapsedNanos;
+    private final long cpuNanos;
+
+    /**
+     * Initialize the report.
+     * @param targetFrequency clock frequency in Hz the program was set to. 0 if it ran as fast as it could.
+     * @param cycles clock cycles run.
+     * @param elapsedNanos wall clock time the cycles took.
+     * @param cpuNanos host CPU time the thread used. Negative if the JVM can not measure it.
+     */
+    ClockReport(long targetFrequency, long cycles, long elapsedNanos, long cpuNanos){
+        this.targetFrequency = targetFrequency;
+        this.cycles = cycles;
+        this.elapsedNanos = elapsedNanos;
+        this.cpuNanos = cpuNanos;
+    }
+
+    /**
+     * Get the clock frequency the program was set to.
+     * @return frequency in Hz. 0 if the program ran as fast as it could.
+     */
+    public long getTargetFrequency(){
+        return this.targetFrequency;
+    }
+
+    /**
+     * Get the clock frequency the program actually ran at.
+     * @return frequency in Hz. 0 if it has not run yet.
+     */
+    public double getAchievedFrequency(){
+        if(this.elapsedNanos <= 0) return 0;
+        return this.cycles * 1e9 / this.elapsedNanos;
+    }
+
+    /**
+     * Get the share of one host core the thread of the program used.
+     * @return percent of one core. NaN if the JVM can not measure it.
+     */
+    public double getHostCpuPercent(){
+        if(this.cpuNanos < 0 || this.elapsedNanos <= 0) return Double.NaN;
+        return 100.0 * this.cpuNanos / this.elapsedNanos;
+    }
+
+    /**
+     * Returns the report as one line, e.g.
+     * "target 1.000 MHz, achieved 0.999 MHz (99.9 %), host CPU 2.1 %".
+     * @return report.
+     */
+    @Override
+    public String toString(){
+        double achieved = this.getAchievedFrequency();
+        String frequencies;
+        if(this.targetFrequency == 0){
+            frequencies = String.format(Locale.ROOT, "target unthrottled, achieved %.3f MHz", achieved / 1e6);
+        } else {
+            frequencies = String.format(Locale.ROOT, "target %.3f MHz, achieved %.3f MHz (%.1f %%)",
+                    this.targetFrequency / 1e6, achieved / 1e6, 100.0 * achieved / this.targetFrequency);
+        }
+        return frequencies + String.format(Locale.ROOT, ", host CPU %.1f %%", this.getHostCpuPercent());
+    }
+}
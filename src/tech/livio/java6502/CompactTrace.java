@@ -0,0 +1,185 @@
+/*
+Copyright (c) 2023, Livio Conzett
+All rights reserved.
+
+This source code is licensed under the BSD-style license found in the
+LICENSE file in the root directory of this source tree.
+*/
+
+package tech.livio.java6502;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Records a run in a few bytes, so {@link TraceReconstructor} can run it again and write the full trace of it.<br>
+ * The simulator runs the same instructions every time it starts in the same state, so everything that follows from
+ * the program, like the outcome of a branch or the address an rts returns to, is left out. Only what comes from
+ * outside the program is recorded: the state it starts in, every value read from a device, the interrupts and the
+ * state after memory has been changed from outside.<br>
+ * The file, all numbers big endian:
+ * <pre>
+ *     int   magic number "CTRC"
+ *     short version, {@link #VERSION}
+ *     short 256 times, for every page -1 if a device handles it, otherwise the page it shows, see
+ *           {@link Memory#getLayout()}
+ *     then one event after the other, starting with a snapshot:
+ *     byte  {@link #SNAPSHOT}
+ *     long  instruction count
+ *     bytes saved state after that many instructions, see {@link MachineState}
+ *     or
+ *     byte  {@link #READS}
+ *     byte  amount of values, 1 - 255
+ *     bytes values read from devices, in the order the program read them
+ *     or
+ *     byte  {@link #JUMP}
+ *     long  instruction count
+ *     short address the program counter has been set to by an interrupt, after that many instructions
+ *     or
+ *     byte  {@link #END}
+ *     long  instruction count the recording has ended at
+ * </pre>
+ */
+class CompactTrace {
+
+    // "CTRC" in ASCII
+    static final int MAGIC = 0x43545243;
+    static final short VERSION = 1;
+    // kinds of events.
+    static final int SNAPSHOT = 1;
+    static final int READS = 2;
+    static final int JUMP = 3;
+    static final int END = 4;
+
+    private final MachineState machineState;
+    private final DataOutputStream out;
+    // the same stream, for the machine state.
+    private final WritableByteChannel channel;
+    // values read from devices that have not been written yet.
+    private final byte[] reads;
+    private int readCount;
+    // first failure while writing. The program is not stopped by it, it is thrown when the recording is stopped.
+    private IOException failure;
+
+    /**
+     * Initialize the recording, create the file and write the state the program starts in.
+     * @param memory memory, for the pages of the devices and mirrors.
+     * @param machineState state of the simulator.
+     * @param file path of the file. Is overwritten if it exists.
+     * @param instructionCount instructions run so far.
+     * @throws IOException if the file can not be written.
+     */
+    CompactTrace(Memory memory, MachineState machineState, Path file, long instructionCount) throws IOException{
+        this.machineState = machineState;
+        this.out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file), 1 << 16));
+        this.channel = Channels.newChannel(this.out);
+        this.reads = new byte[0xff];
+        try{
+            this.out.writeInt(MAGIC);
+            this.out.writeShort(VERSION);
+            for(int page : memory.getLayout()){
+                this.out.writeShort(page);
+            }
+        } catch(IOException e){
+            this.out.close();
+            throw e;
+        }
+        this.snapshot(instructionCount);
+        if(this.failure != null){
+            this.out.close();
+            throw this.failure;
+        }
+    }
+
+    /**
+     * Records the whole state, after it has been changed from outside the program.
+     * @param instructionCount instructions run so far.
+     */
+    void snapshot(long instructionCount){
+        try{
+            this.writeReads();
+            this.out.writeByte(SNAPSHOT);
+            this.out.writeLong(instructionCount);
+            this.machineState.save(this.channel);
+        } catch(IOException e){
+            this.fail(e);
+        }
+    }
+
+    /**
+     * Records a value the program has read from a device.
+     * @param value value, 0x00 - 0xff.
+     */
+    void recordRead(int value){
+        this.reads[this.readCount++] = (byte) value;
+        if(this.readCount == this.reads.length){
+            try{
+                this.writeReads();
+            } catch(IOException e){
+                this.fail(e);
+            }
+        }
+    }
+
+    /**
+     * Records that an interrupt has set the program counter.
+     * @param instructionCount instructions run before.
+     * @param pc new program counter.
+     */
+    void recordJump(long instructionCount, int pc){
+        try{
+            this.writeReads();
+            this.out.writeByte(JUMP);
+            this.out.writeLong(instructionCount);
+            this.out.writeShort(pc);
+        } catch(IOException e){
+            this.fail(e);
+        }
+    }
+
+    /**
+     * Ends the recording and closes the file.
+     * @param instructionCount instructions run so far.
+     * @throws IOException if writing the file has failed, now or while recording.
+     */
+    void close(long instructionCount) throws IOException{
+        try{
+            this.writeReads();
+            this.out.writeByte(END);
+            this.out.writeLong(instructionCount);
+        } catch(IOException e){
+            this.fail(e);
+        }
+        try{
+            this.out.close();
+        } catch(IOException e){
+            this.fail(e);
+        }
+        if(this.failure != null) throw this.failure;
+    }
+
+    /**
+     * Writes the values read from devices that have not been written yet.
+     * @throws IOException if the file can not be written.
+     */
+    private void writeReads() throws IOException{
+        if(this.readCount == 0) return;
+        this.out.writeByte(READS);
+        this.out.writeByte(this.readCount);
+        this.out.write(this.reads, 0, this.readCount);
+        this.readCount = 0;
+    }
+
+    /**
+     * Remembers the first failure.
+     * @param e failure.
+     */
+    private void fail(IOException e){
+        if(this.failure == null) this.failure = e;
+    }
+}
@@ -0,0 +1,26 @@
+/*
+Copyright (c) 2023, Livio Conzett
+All rights reserved.
+
+This source code is licensed under the BSD-style license found in the
+LICENSE file in the root directory of this source tree.
+*/
+
+package tech.livio.java6502;
+
+/**
+ * A {@link DecodedBlock} that has been translated into its own class by the {@link BlockTranslator}.
+ */
+@FunctionalInterface
+interface CompiledBlock {
+
+    /**
+     * Run the instructions of the block.<br>
+     * Stops early if the block gets invalidated by one of its own writes.
+     * @param block block the code was translated from.
+     * @param is InstructionSet to run the operations on.
+     * @param am AddressingMode used to resolve the operands.
+     * @param registers register file of the cpu.
+     */
+    void run(DecodedBlock block, InstructionSet is, AddressingMode am, Registers registers);
+}
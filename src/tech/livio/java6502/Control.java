@@ -8,15 +8,28 @@ LICENSE file in the root directory of this source tree.
 
 package tech.livio.java6502;
 
+import java.util.concurrent.atomic.AtomicInteger;
+
 /**
- * Holds control data for the 6502 simulator. Has nothing to do with the actual 6502 chip.
+ * Holds control data for the 6502 simulator. Has nothing to do with the actual 6502 chip.<br>
+ * The run flag and the two interrupt lines are bits of one status word, so other threads can stop the program or call
+ * an interrupt, and the thread running the program sees all of it with one read.
  */
 public class Control {
 
-    private boolean skipIncrement;
-    private boolean run;
-    private boolean interrupt;
-    private boolean nonMaskableInterrupt;
+    // bits of the status word.
+    static final int RUN = 1;
+    static final int INTERRUPT = 1 << 1;
+    static final int NON_MASKABLE_INTERRUPT = 1 << 2;
+    // memory has been changed from outside the program. Wakes up a program that waits in an idle loop.
+    static final int WAKE = 1 << 3;
+    // the sampler asks for the program counter and the call stack.
+    static final int SAMPLE = 1 << 4;
+
+    private final AtomicInteger status;
+    // true when the run flag is false. Not volatile, so the run loop can read it after every instruction. Only meant
+    // to see the program stop itself (ext, stack overflow). Stops from other threads are seen in the status word.
+    private boolean halted;
     private ProgramCallBack doOnExt;
     private ProgramCallBack doOnStackOverflow;
     private ProgramCallBack doOnManualHalt;
@@ -26,6 +39,7 @@ public class Control {
      * Initialize all the variables.
      */
     Control(){
+        this.status = new AtomicInteger();
         this.reset();
     }
 
@@ -33,12 +47,9 @@ public class Control {
      * Resets the whole control object.
      */
     void reset(){
-        // set to true in the beginning since the program counter is on the begin vector
-        this.skipIncrement = true;
-        this.run = false;
+        this.status.set(0);
+        this.halted = true;
         this.doneOnStackOverFlow = false;
-        this.interrupt = false;
-        this.nonMaskableInterrupt = false;
         this.doOnExt = (new ProgramCallBack() {
             @Override
             public void run(short e) {
@@ -60,39 +71,38 @@ public class Control {
     }
 
     /**
-     * Returns the boolean value of the skipIncrement control flag.<br>
-     * This flag is set when a 6502 instruction loads the programCounter with a value and doesn't want you to increment
-     * the programCounter yet.<br>
-     * Eg: The JMP instruction sets the programCounter to a value, but doesn't execute it yet. In order for the next
-     * iteration of the simulation loop to run that instruction the programCounter must not be incremented.
-     * @return true if method doesn't want you to increment the programCounter.
+     * Get the run flag.
+     * @return true if run is set.
      */
-    boolean getSkipNextIncrement(){
-        return this.skipIncrement;
+    boolean getRun(){
+        return (this.status.get() & RUN) != 0;
     }
 
     /**
-     * Sets the control flag skipIncrement to true.<br>
-     * This will stop the simulation loop from incrementing the programCounter.
+     * Get the status word with the run flag and the interrupt lines.
+     * @return {@link #RUN}, {@link #INTERRUPT} and {@link #NON_MASKABLE_INTERRUPT} bits.
      */
-    void setSkipNextIncrement(){
-        this.skipIncrement = true;
+    int getStatus(){
+        return this.status.get();
     }
 
     /**
-     * Sets the control flag skipIncrement to false.<br>
-     * This will allow the simulation loop to increment the programCounter.
+     * Tells if the run flag is false, without the cost of reading the status word.<br>
+     * Is sure to be right for the thread that set the run flag. Other threads might see it late.
+     * @return true if the program has stopped.
      */
-    void allowNextIncrement(){
-        this.skipIncrement = false;
+    boolean getHalted(){
+        return this.halted;
     }
 
     /**
-     * Get the run flag.
-     * @return true if run is set.
+     * Set the run flag and both interrupt lines at once, like from a saved state.
+     * @param status {@link #RUN}, {@link #INTERRUPT} and {@link #NON_MASKABLE_INTERRUPT} bits. Others are ignored.
      */
-    boolean getRun(){
-        return this.run;
+    void setStatus(int status){
+        this.setBit(INTERRUPT, (status & INTERRUPT) != 0);
+        this.setBit(NON_MASKABLE_INTERRUPT, (status & NON_MASKABLE_INTERRUPT) != 0);
+        this.setRun((status & RUN) != 0);
     }
 
     /**
@@ -100,7 +110,8 @@ public class Control {
      * @param run value the run flag should be set to.
      */
     void setRun(boolean run){
-        this.run = run;
+        this.setBit(RUN, run);
+        this.halted = !run;
         if(run){
             this.doneOnStackOverFlow = false;
         }
@@ -161,14 +172,14 @@ public class Control {
      * Set the interrupt
      */
     void setInterrupt(){
-        this.interrupt = true;
+        this.setBit(INTERRUPT, true);
     }
 
     /**
      * Reset the interrupt
      */
     void clearInterrupt(){
-        this.interrupt = false;
+        this.setBit(INTERRUPT, false);
     }
 
     /**
@@ -176,21 +187,21 @@ public class Control {
      * @return value of flag
      */
     boolean getInterrupt(){
-        return this.interrupt;
+        return (this.status.get() & INTERRUPT) != 0;
     }
 
     /**
      * Set the NMI
      */
     void setNonMaskableInterrupt(){
-        this.nonMaskableInterrupt = true;
+        this.setBit(NON_MASKABLE_INTERRUPT, true);
     }
 
     /**
      * Reset the NMI
      */
     void clearNonMaskableInterrupt(){
-        this.nonMaskableInterrupt = false;
+        this.setBit(NON_MASKABLE_INTERRUPT, false);
     }
 
     /**
@@ -198,7 +209,47 @@ public class Control {
      * @return value of flag
      */
     boolean getNonMaskableInterrupt(){
-        return this.nonMaskableInterrupt;
+        return (this.status.get() & NON_MASKABLE_INTERRUPT) != 0;
+    }
+
+    /**
+     * Tell a program that waits in an idle loop that memory has been changed from outside.
+     */
+    void setWake(){
+        this.setBit(WAKE, true);
+    }
+
+    /**
+     * Reset the wake flag.
+     */
+    void clearWake(){
+        this.setBit(WAKE, false);
+    }
+
+    /**
+     * Ask the thread running the program to take a sample for the sampler.
+     */
+    void setSample(){
+        this.setBit(SAMPLE, true);
+    }
+
+    /**
+     * Reset the sample flag.
+     */
+    void clearSample(){
+        this.setBit(SAMPLE, false);
+    }
+
+    /**
+     * Sets or clears a bit of the status word without losing bits other threads set at the same time.
+     * @param bit bit to change.
+     * @param value true to set the bit, false to clear it.
+     */
+    private void setBit(int bit, boolean value){
+        int old;
+        do{
+            old = this.status.get();
+        } while(!this.status.compareAndSet(old, value ? old | bit : old & ~bit));
     }
 
 }
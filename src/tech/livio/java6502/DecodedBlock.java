@@ -0,0 +1,90 @@
+/*
+Copyright (c) 2023, Livio Conzett
+All rights reserved.
+
+This source code is licensed under the BSD-style license found in the
+LICENSE file in the root directory of this source tree.
+*/
+
+package tech.livio.java6502;
+
+import java.util.Arrays;
+
+/**
+ * A run of straight-line 6502 code that has been decoded once.<br>
+ * Holds the handler, the operand and the address of the following instruction for every instruction in the block.
+ * A fused sequence of instructions (see {@link Superinstruction}) counts as one instruction of the block.
+ * A block ends with the first instruction that can change the program counter.
+ */
+class DecodedBlock {
+
+    final int start;
+    final int length;
+    final int[] opCodes;
+    final DecodedInstruction[] handlers;
+    final int[] operands;
+    final int[] nextAddresses;
+    // amount of 6502 instructions of every entry. More than one for a superinstruction.
+    final int[] instructionCounts;
+    // clock cycles of every entry, see InstructionTable.CYCLES.
+    final int[] cycles;
+    // sum of the instruction counts and of the cycles of all entries.
+    final int instructions;
+    final int totalCycles;
+    // pages the bytes of the block lie in. Mostly one, two if the block crosses a page boundary.
+    final int[] pages;
+
+    // set to false as soon as memory the block was decoded from gets written to.
+    boolean valid;
+
+    // how many times the block has been entered. Used to find hot blocks to translate.
+    int executions;
+    // translated code of the block. null as long as the block is interpreted.
+    CompiledBlock compiled;
+    // the block is a fill or copy loop that can run as one bulk operation. null if it is not.
+    LoopIdiom idiom;
+    // the block is a delay loop whose result can be computed directly. null if it is not.
+    DelayLoop delay;
+
+    /**
+     * Initialize the block.
+     * @param start address of the first op-code.
+     * @param length amount of instructions in the block.
+     * @param opCodes op-code of every instruction. The first op-code of the sequence for a superinstruction.
+     * @param handlers handler of every instruction.
+     * @param operands decoded operand of every instruction.
+     * @param nextAddresses address of the op-code following every instruction.
+     * @param instructionCounts amount of 6502 instructions of every entry.
+     * @param cycles clock cycles of every entry.
+     * @param pages pages the block was decoded from.
+     */
+    DecodedBlock(int start, int length, int[] opCodes, DecodedInstruction[] handlers, int[] operands,
+                 int[] nextAddresses, int[] instructionCounts, int[] cycles, int[] pages){
+        this.start = start;
+        this.length = length;
+        this.opCodes = opCodes;
+        this.handlers = handlers;
+        this.operands = operands;
+        this.nextAddresses = nextAddresses;
+        this.instructionCounts = instructionCounts;
+        this.cycles = cycles;
+        this.pages = pages;
+        this.valid = true;
+
+        this.instructions = Arrays.stream(instructionCounts).sum();
+        this.totalCycles = Arrays.stream(cycles).sum();
+    }
+
+    /**
+     * Counts the entries that have run when the block stopped early because it overwrote itself.<br>
+     * Only the last entry can jump, so the program counter is right behind the entry that did the write.
+     * @param programCounter program counter after the block stopped.
+     * @return amount of entries that have run.
+     */
+    int entriesRunUntil(int programCounter){
+        for(int i = 0; i < this.length - 1; i++){
+            if(this.nextAddresses[i] == programCounter) return i + 1;
+        }
+        return this.length;
+    }
+}
@@ -0,0 +1,26 @@
+/*
+Copyright (c) 2023, Livio Conzett
+All rights reserved.
+
+This source code is licensed under the BSD-style license found in the
+LICENSE file in the root directory of this source tree.
+*/
+
+package tech.livio.java6502;
+
+/**
+ * One entry of the predecoded dispatch table.<br>
+ * Runs an op-code like {@link InstructionTable#execute(int, InstructionSet, AddressingMode)}, but the operand bytes
+ * have already been read when the block was decoded.
+ */
+@FunctionalInterface
+interface DecodedInstruction {
+
+    /**
+     * Run the operation on an already fetched operand.
+     * @param is InstructionSet to run the operation on.
+     * @param am AddressingMode used to resolve the indexed and indirect operands.
+     * @param operand operand decoded by the {@link BlockCache}.
+     */
+    void execute(InstructionSet is, AddressingMode am, int operand);
+}
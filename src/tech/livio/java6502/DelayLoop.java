@@ -0,0 +1,306 @@
+/*
+Copyright (c) 2023, Livio Conzett
+All rights reserved.
+
+This source code is licensed under the BSD-style license found in the
+LICENSE file in the root directory of this source tree.
+*/
+
+package tech.livio.java6502;
+
+/**
+ * A delay loop that only counts a register down (or up) to 0. Its result is computed directly instead of running every
+ * round.<br>
+ * The recognised shapes:
+ * <pre>
+ *     simple:          nested:              nested, reloading the inner count:
+ *     loop nop ...     loop dex             outer ldx #n
+ *          dex              bne loop        inner dex
+ *          bne loop         dey                   bne inner
+ *                           bne loop              dey
+ *                                                 bne outer
+ * </pre>
+ * Any of <code>inx dex iny dey</code> can count, the nested loops count one register in the inner and the other one in
+ * the outer loop. The simple loop can have <code>nop</code> instructions before the count.<br>
+ * The loops do not touch the memory, so the result only depends on the registers. Registers, flags and cycles end up
+ * the same as running the loop one instruction at a time. If not all rounds fit in the limits it is given, the loop runs
+ * as many whole rounds as fit and stops at its first instruction, just like it would after that many rounds.
+ */
+class DelayLoop {
+
+    private static final int NOP = 0xea;
+    // more nop instructions in a row are not a delay loop any more, but some kind of padding.
+    private static final int MAX_NOPS = 16;
+
+    // address of the first op-code, of the inner loop and of the instruction after the inner and the whole loop.
+    private final int start;
+    private final int innerStart;
+    private final int innerEnd;
+    private final int end;
+
+    private final boolean innerX;
+    // +1 for inx / iny, -1 for dex / dey.
+    private final int innerStep;
+    private final int nops;
+    // extra cycles of the taken bne of the inner loop. 1, or 2 if it branches to another page.
+    private final int innerPenalty;
+
+    private final boolean nested;
+    private final int outerStep;
+    private final int outerPenalty;
+    // the outer loop sets the inner register to reloadValue every round.
+    private final boolean reload;
+    private final int reloadValue;
+
+    /**
+     * Initialize the loop.
+     * @param start address of the first op-code.
+     * @param innerStart address of the first op-code of the inner loop.
+     * @param innerEnd address after the bne of the inner loop.
+     * @param end address after the last bne.
+     * @param innerX true if the inner loop counts with X, false for Y.
+     * @param innerStep +1 or -1.
+     * @param nops amount of nop instructions in the inner loop.
+     * @param nested true if there is an outer loop counting the other register.
+     * @param outerStep +1 or -1. Unused if not nested.
+     * @param reload true if the outer loop loads the inner register with an immediate value.
+     * @param reloadValue value the inner register is loaded with.
+     */
+    private DelayLoop(int start, int innerStart, int innerEnd, int end, boolean innerX, int innerStep, int nops,
+                      boolean nested, int outerStep, boolean reload, int reloadValue){
+        this.start = start;
+        this.innerStart = innerStart;
+        this.innerEnd = innerEnd;
+        this.end = end;
+        this.innerX = innerX;
+        this.innerStep = innerStep;
+        this.nops = nops;
+        this.innerPenalty = ((innerStart ^ innerEnd) & 0xff00) == 0 ? 1 : 2;
+        this.nested = nested;
+        this.outerStep = outerStep;
+        this.outerPenalty = ((start ^ end) & 0xff00) == 0 ? 1 : 2;
+        this.reload = reload;
+        this.reloadValue = reloadValue;
+    }
+
+    /**
+     * Checks if the code at an address is a delay loop.
+     * @param memory memory to read the code from.
+     * @param start address of the first op-code.
+     * @return the loop, or null if the code is not one of the shapes.
+     */
+    static DelayLoop recognise(Memory memory, int start){
+        int address = start;
+
+        // ldx #n or ldy #n
+        int opCode = memory.read(address);
+        boolean reload = opCode == 0xa2 || opCode == 0xa0;
+        int reloadValue = 0;
+        if(reload){
+            reloadValue = memory.read(address + 1);
+            address += 2;
+        }
+
+        int innerStart = address;
+        int nops = 0;
+        while(memory.read(address) == NOP && nops < MAX_NOPS && address < 0xffff){
+            address++;
+            nops++;
+        }
+
+        int innerStep = step(memory.read(address));
+        if(innerStep == 0) return null;
+        boolean innerX = indexX(memory.read(address));
+        if(reload && innerX != (opCode == 0xa2)) return null;
+
+        int innerEnd = branchBack(memory, address + 1, innerStart);
+        if(innerEnd < 0) return null;
+
+        // dey / dex and a bne back to the start
+        int outerStep = step(memory.read(innerEnd));
+        if(outerStep != 0 && indexX(memory.read(innerEnd)) != innerX && nops == 0){
+            int end = branchBack(memory, innerEnd + 1, start);
+            if(end >= 0){
+                return new DelayLoop(start, innerStart, innerEnd, end, innerX, innerStep, nops,
+                        true, outerStep, reload, reloadValue);
+            }
+        }
+
+        // a load of the count followed by a simple loop is left to the block of the simple loop.
+        if(reload) return null;
+        return new DelayLoop(start, innerStart, innerEnd, innerEnd, innerX, innerStep, nops,
+                false, 0, false, 0);
+    }
+
+    /**
+     * Get the direction an op-code counts a register in.
+     * @param opCode op-code.
+     * @return +1 for inx and iny, -1 for dex and dey, 0 for any other op-code.
+     */
+    private static int step(int opCode){
+        if(opCode == 0xe8 || opCode == 0xc8) return 1;
+        if(opCode == 0xca || opCode == 0x88) return -1;
+        return 0;
+    }
+
+    /**
+     * Checks if a counting op-code counts the X register.
+     * @param opCode one of inx, dex, iny, dey.
+     * @return true for inx and dex.
+     */
+    private static boolean indexX(int opCode){
+        return opCode == 0xe8 || opCode == 0xca;
+    }
+
+    /**
+     * Checks if there is a bne to a target at an address.
+     * @param memory memory to read the code from.
+     * @param address address of the bne op-code.
+     * @param target address the bne has to branch to.
+     * @return address after the bne, or -1 if there is no such bne.
+     */
+    private static int branchBack(Memory memory, int address, int target){
+        if(address + 2 > 0xffff || memory.read(address) != 0xd0) return -1;
+        // same target as AddressingMode.relative()
+        int branchTarget = (address + 1 + (byte) memory.read(address + 1)) & 0xffff;
+        return branchTarget == target ? address + 2 : -1;
+    }
+
+    /**
+     * Get the amount of rounds a loop runs until the counting register is 0.
+     * @param value value of the register at the start of the first round.
+     * @param step +1 or -1.
+     * @return 1 to 256.
+     */
+    private static int rounds(int value, int step){
+        if(value == 0) return 256;
+        return step > 0 ? 256 - value : value;
+    }
+
+    /**
+     * Get the amount of whole rounds that fit in the limits.<br>
+     * Every round after the first one costs the same. The taken branch of the last round is saved.
+     * @param rounds rounds until the loop ends.
+     * @param firstInstructions instructions of the first round.
+     * @param firstCycles cycles of the first round, with the taken branch.
+     * @param instructions instructions of every other round.
+     * @param cycles cycles of every other round, with the taken branch.
+     * @param lastSaving cycles of the taken branch that the last round saves.
+     * @param maxInstructions instructions that may run.
+     * @param maxCycles cycles that may run.
+     * @return 0 to rounds.
+     */
+    private static long fit(long rounds, long firstInstructions, long firstCycles, long instructions, long cycles,
+                            long lastSaving, long maxInstructions, long maxCycles){
+        long fitting = 0;
+        if(firstInstructions <= maxInstructions && firstCycles <= maxCycles){
+            fitting = Math.min(rounds, 1 + Math.min((maxInstructions - firstInstructions) / instructions,
+                    (maxCycles - firstCycles) / cycles));
+        }
+        // all rounds might still fit without the taken branch of the last round.
+        if(fitting == rounds - 1
+                && firstInstructions + (rounds - 1) * instructions <= maxInstructions
+                && firstCycles + (rounds - 1) * cycles - lastSaving <= maxCycles){
+            fitting = rounds;
+        }
+        return fitting;
+    }
+
+    /**
+     * Runs as many rounds of the loop as fit in the limits.
+     * @param registers registers.
+     * @param flags flags.
+     * @param maxInstructions instructions that may run.
+     * @param maxCycles cycles that may run.
+     * @return amount of instructions that have run. 0 if not even one round fits. Nothing has been changed then.
+     */
+    long run(Registers registers, Flags flags, long maxInstructions, long maxCycles){
+        if(this.nested){
+            long instructions = this.runNested(registers, flags, maxInstructions, maxCycles);
+            // the nested loop without reload starts with the inner loop. Its rounds might still fit.
+            if(instructions > 0 || this.start != this.innerStart) return instructions;
+        }
+        return this.runInner(registers, flags, maxInstructions, maxCycles);
+    }
+
+    /**
+     * Runs as many rounds of the inner loop as fit in the limits.<br>
+     * Stops after the inner loop, even if it is nested.
+     * @param registers registers.
+     * @param flags flags.
+     * @param maxInstructions instructions that may run.
+     * @param maxCycles cycles that may run.
+     * @return amount of instructions that have run.
+     */
+    private long runInner(Registers registers, Flags flags, long maxInstructions, long maxCycles){
+        int value = this.innerX ? registers.x : registers.y;
+        int rounds = rounds(value, this.innerStep);
+
+        // nop ..., inx / dex, bne
+        long instructions = this.nops + 2;
+        long cycles = 2 * instructions + this.innerPenalty;
+        long fitting = fit(rounds, instructions, cycles, instructions, cycles, this.innerPenalty,
+                maxInstructions, maxCycles);
+        if(fitting == 0) return 0;
+
+        value = (value + (int) fitting * this.innerStep) & 0xff;
+        this.setRegister(registers, this.innerX, value);
+        flags.setZeroNegative((byte) value);
+        registers.cycles += fitting * cycles - (fitting == rounds ? this.innerPenalty : 0);
+        registers.pc = fitting == rounds ? this.innerEnd : this.innerStart;
+
+        return fitting * instructions;
+    }
+
+    /**
+     * Runs as many rounds of the outer loop as fit in the limits.
+     * @param registers registers.
+     * @param flags flags.
+     * @param maxInstructions instructions that may run.
+     * @param maxCycles cycles that may run.
+     * @return amount of instructions that have run.
+     */
+    private long runNested(Registers registers, Flags flags, long maxInstructions, long maxCycles){
+        int inner = this.innerX ? registers.x : registers.y;
+        int outer = this.innerX ? registers.y : registers.x;
+        int rounds = rounds(outer, this.outerStep);
+
+        // the first inner loop counts from the register or from the reload value. Every other one counts from 0.
+        int firstInnerRounds = rounds(this.reload ? this.reloadValue : inner, this.innerStep);
+        int innerRounds = this.reload ? firstInnerRounds : 256;
+
+        // [ldx #n], inner rounds of dex, bne, then dey, bne
+        int reloadInstructions = this.reload ? 1 : 0;
+        long firstInstructions = reloadInstructions + 2L * firstInnerRounds + 2;
+        long firstCycles = 2 * firstInstructions + (firstInnerRounds - 1L) * this.innerPenalty + this.outerPenalty;
+        long instructions = reloadInstructions + 2L * innerRounds + 2;
+        long cycles = 2 * instructions + (innerRounds - 1L) * this.innerPenalty + this.outerPenalty;
+
+        long fitting = fit(rounds, firstInstructions, firstCycles, instructions, cycles, this.outerPenalty,
+                maxInstructions, maxCycles);
+        if(fitting == 0) return 0;
+
+        outer = (outer + (int) fitting * this.outerStep) & 0xff;
+        this.setRegister(registers, this.innerX, 0);
+        this.setRegister(registers, !this.innerX, outer);
+        flags.setZeroNegative((byte) outer);
+        registers.cycles += firstCycles + (fitting - 1) * cycles - (fitting == rounds ? this.outerPenalty : 0);
+        registers.pc = fitting == rounds ? this.end : this.start;
+
+        return firstInstructions + (fitting - 1) * instructions;
+    }
+
+    /**
+     * Sets the X or the Y register.
+     * @param registers registers.
+     * @param x true for X, false for Y.
+     * @param value new value.
+     */
+    private void setRegister(Registers registers, boolean x, int value){
+        if(x){
+            registers.x = value;
+        } else {
+            registers.y = value;
+        }
+    }
+}
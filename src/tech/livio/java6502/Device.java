@@ -0,0 +1,30 @@
+/*
+Copyright (c) 2023, Livio Conzett
+All rights reserved.
+
+This source code is licensed under the BSD-style license found in the
+LICENSE file in the root directory of this source tree.
+*/
+
+package tech.livio.java6502;
+
+/**
+ * A device on the bus, like a timer or a serial port, that handles the reads and writes of its pages itself.<br>
+ * See {@link Sim6502#attachDevice(Device, short, short)}.
+ */
+public interface Device {
+
+    /**
+     * Called when the program reads from an address of the device.
+     * @param address address read from. For a mirror, the address in the pages the device was attached to.
+     * @return value of the byte, only the lower 8 bits are used.
+     */
+    int read(int address);
+
+    /**
+     * Called when the program writes to an address of the device.
+     * @param address address written to. For a mirror, the address in the pages the device was attached to.
+     * @param value value written, 0x00 - 0xff.
+     */
+    void write(int address, int value);
+}
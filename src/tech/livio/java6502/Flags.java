@@ -22,24 +22,70 @@ package tech.livio.java6502;
  *     2<sup>1</sup> = Zero Flag            1 = Result Zero
  *     2<sup>0</sup> = Carry Flag           1 = True
  * </pre>
+ * The flags can be evaluated lazily. In that mode the operations only record their result and operands, and the
+ * negative, zero, carry and overflow flags are computed from that record when somebody reads them.
  * @author Livio Conzett
  */
 class Flags {
 
-    private boolean negative;
-    private boolean overFlow;
-    private boolean unused;
-    private boolean breakCommand;
-    private boolean decimalMode;
-    private boolean interruptDisabled;
-    private boolean zero;
-    private boolean carry;
+    // bits of the flags in the processor status register
+    private static final int CARRY = 1;
+    private static final int ZERO = 2;
+    private static final int INTERRUPT_DISABLE = 4;
+    private static final int DECIMAL_MODE = 8;
+    private static final int BREAK_COMMAND = 16;
+    private static final int UNUSED = 32;
+    private static final int OVER_FLOW = 64;
+    private static final int NEGATIVE = 128;
+
+    // kinds of operations that can be recorded in lazy mode.
+    private static final int LAZY_RESULT = 0;
+    private static final int LAZY_COMPARE = 1;
+    private static final int LAZY_ADD = 2;
+    private static final int LAZY_SUBTRACT = 3;
+
+    // the flags that each kind of operation sets.
+    private static final int RESULT_FLAGS = NEGATIVE | ZERO;
+    private static final int COMPARE_FLAGS = NEGATIVE | ZERO | CARRY;
+    private static final int ARITHMETIC_FLAGS = NEGATIVE | ZERO | CARRY | OVER_FLOW;
+
+    // holds the processor status register, NV_BDIZC
+    private final Registers registers;
+
+    // lazy evaluation
+    private boolean lazy;
+    // flags that still have to be computed from the recorded operation.
+    private int pending;
+    private int lazyKind;
+    private byte lazyResult;
+    private byte lazyLeft;
+    private byte lazyRight;
+    private int lazyAnswer;
 
 
     /**
      * Initializes the Status flags
      */
     public Flags(){
+        this(false);
+    }
+
+    /**
+     * Initializes the Status flags
+     * @param lazy true if the flags should be evaluated lazily.
+     */
+    public Flags(boolean lazy){
+        this(new Registers(), lazy);
+    }
+
+    /**
+     * Initializes the Status flags
+     * @param registers register file that holds the processor status register.
+     * @param lazy true if the flags should be evaluated lazily.
+     */
+    Flags(Registers registers, boolean lazy){
+        this.registers = registers;
+        this.lazy = lazy;
         this.reset();
     }
 
@@ -48,7 +94,24 @@ class Flags {
      */
     public void reset(){
         this.setWholeRegister((byte)0);
-        this.interruptDisabled = true;
+        this.setInterruptDisable(true);
+    }
+
+    /**
+     * Check if the flags are evaluated lazily.
+     * @return true if the flags are evaluated lazily.
+     */
+    public boolean isLazy(){
+        return this.lazy;
+    }
+
+    /**
+     * Switch lazy evaluation of the flags on or off. Pending flags are computed before switching.
+     * @param lazy true if the flags should be evaluated lazily.
+     */
+    public void setLazy(boolean lazy){
+        this.materialize(this.pending);
+        this.lazy = lazy;
     }
 
     /**
@@ -58,18 +121,8 @@ class Flags {
      * @return the processor flags as one byte
      */
     public byte getWholeRegister(){
-        byte registerP = 0;
-
-        if(this.carry) registerP += 1;
-        if(this.zero) registerP += 2;
-        if(this.interruptDisabled) registerP += 4;
-        if(this.decimalMode) registerP += 8;
-        if(this.breakCommand) registerP += 16;
-        if(this.unused) registerP += 32;
-        if(this.overFlow) registerP += 64;
-        if(this.negative) registerP += 128;
-
-        return registerP;
+        if(this.pending != 0) this.materialize(this.pending);
+        return (byte) this.registers.p;
     }
 
     /**
@@ -78,14 +131,176 @@ class Flags {
      * @param statusRegister Byte of all the status Flags.
      */
     public void setWholeRegister(byte statusRegister){
-        this.carry = (((statusRegister) & 1) == 1);
-        this.zero = (((statusRegister) & 2) == 2);
-        this.interruptDisabled = (((statusRegister) & 4) == 4);
-        this.decimalMode = (((statusRegister) & 8) == 8);
-        this.breakCommand = (((statusRegister) & 16) == 16);
-        this.unused = true;
-        this.overFlow = (((statusRegister) & 64) == 64);
-        this.negative = (((statusRegister) & 128) == 128);
+        this.pending = 0;
+        this.registers.p = (statusRegister & 0xff) | UNUSED;
+    }
+
+    /**
+     * Sets the zero and negative flag according to the result of an operation.
+     * @param result result of the operation.
+     */
+    public void setZeroNegative(byte result){
+        if(this.lazy){
+            this.record(LAZY_RESULT, RESULT_FLAGS);
+            this.lazyResult = result;
+            return;
+        }
+        this.set(ZERO, result == 0);
+        this.set(NEGATIVE, result < 0);
+    }
+
+    /**
+     * Sets the negative, zero and carry flags according to a compare of a register with a value.
+     * @param register the value in the register.
+     * @param memory the value the register is compared to.
+     */
+    public void setCompare(byte register, byte memory){
+        if(this.lazy){
+            this.record(LAZY_COMPARE, COMPARE_FLAGS);
+            this.lazyLeft = register;
+            this.lazyRight = memory;
+            return;
+        }
+        this.set(NEGATIVE, register < memory);
+        this.set(ZERO, register == memory);
+        this.set(CARRY, register >= memory);
+    }
+
+    /**
+     * Sets the negative, zero, carry and overflow flags according to a binary add with carry.
+     * @param accumulator value of the accumulator before the add.
+     * @param value value that was added.
+     * @param answer unsigned sum of accumulator, value and carry.
+     */
+    public void setAdd(byte accumulator, byte value, int answer){
+        if(this.lazy){
+            this.record(LAZY_ADD, ARITHMETIC_FLAGS);
+            this.lazyLeft = accumulator;
+            this.lazyRight = value;
+            this.lazyAnswer = answer;
+            return;
+        }
+        this.setAddFlags(accumulator, value, answer);
+    }
+
+    /**
+     * Sets the negative, zero, carry and overflow flags according to a binary subtract with carry.
+     * @param accumulator value of the accumulator before the subtraction.
+     * @param value value that was subtracted.
+     * @param answer unsigned accumulator minus value minus the inverted carry.
+     */
+    public void setSubtract(byte accumulator, byte value, int answer){
+        if(this.lazy){
+            this.record(LAZY_SUBTRACT, ARITHMETIC_FLAGS);
+            this.lazyLeft = accumulator;
+            this.lazyRight = value;
+            this.lazyAnswer = answer;
+            return;
+        }
+        this.setSubtractFlags(accumulator, value, answer);
+    }
+
+    /**
+     * Records an operation in lazy mode. Flags of the previous record that the new one doesn't set are computed
+     * first, so they don't get lost.
+     * @param kind kind of the operation.
+     * @param flags flags the operation sets.
+     */
+    private void record(int kind, int flags){
+        int keep = this.pending & ~flags;
+        if(keep != 0) this.materialize(keep);
+        this.lazyKind = kind;
+        this.pending = flags;
+    }
+
+    /**
+     * Computes pending flags from the recorded operation.
+     * @param flags flags to compute.
+     */
+    private void materialize(int flags){
+        flags &= this.pending;
+        if(flags == 0) return;
+
+        int saved = this.registers.p;
+
+        switch (this.lazyKind) {
+            case LAZY_RESULT -> {
+                this.set(ZERO, this.lazyResult == 0);
+                this.set(NEGATIVE, this.lazyResult < 0);
+            }
+            case LAZY_COMPARE -> {
+                this.set(NEGATIVE, this.lazyLeft < this.lazyRight);
+                this.set(ZERO, this.lazyLeft == this.lazyRight);
+                this.set(CARRY, this.lazyLeft >= this.lazyRight);
+            }
+            case LAZY_ADD -> this.setAddFlags(this.lazyLeft, this.lazyRight, this.lazyAnswer);
+            default -> this.setSubtractFlags(this.lazyLeft, this.lazyRight, this.lazyAnswer);
+        }
+
+        // only take over the flags that were asked for.
+        this.registers.p = (this.registers.p & flags) | (saved & ~flags);
+        this.pending &= ~flags;
+    }
+
+    /**
+     * Sets the flags of a binary add with carry.
+     * @param accumulator value of the accumulator before the add.
+     * @param value value that was added.
+     * @param answer unsigned sum of accumulator, value and carry.
+     */
+    private void setAddFlags(byte accumulator, byte value, int answer){
+        byte result = (byte) answer;
+        this.set(CARRY, answer > 255);
+        this.set(OVER_FLOW, Util.areLikeSigned(value, accumulator) && (answer > 127 || answer < -128));
+        this.set(ZERO, result == 0);
+        this.set(NEGATIVE, result < 0);
+    }
+
+    /**
+     * Sets the flags of a binary subtract with carry.
+     * @param accumulator value of the accumulator before the subtraction.
+     * @param value value that was subtracted.
+     * @param answer unsigned accumulator minus value minus the inverted carry.
+     */
+    private void setSubtractFlags(byte accumulator, byte value, int answer){
+        byte result = (byte) answer;
+        this.set(CARRY, answer >= 0);
+        this.set(OVER_FLOW, Util.areNotLikeSigned(value, accumulator) && (answer > 127 || answer < -128));
+        this.set(ZERO, result == 0);
+        this.set(NEGATIVE, result < 0);
+    }
+
+    /**
+     * Sets or clears a bit in the register.
+     * @param flag bit of the flag.
+     * @param value true to set the bit.
+     */
+    private void set(int flag, boolean value){
+        if(value){
+            this.registers.p |= flag;
+        } else {
+            this.registers.p &= ~flag;
+        }
+    }
+
+    /**
+     * Gets a flag, computes it first if it is pending.
+     * @param flag bit of the flag.
+     * @return true if the bit is set.
+     */
+    private boolean get(int flag){
+        if((this.pending & flag) != 0) this.materialize(flag);
+        return (this.registers.p & flag) != 0;
+    }
+
+    /**
+     * Overwrites a flag. It doesn't have to be computed anymore.
+     * @param flag bit of the flag.
+     * @param value value of the flag.
+     */
+    private void overwrite(int flag, boolean value){
+        this.pending &= ~flag;
+        this.set(flag, value);
     }
 
     /**
@@ -93,7 +308,7 @@ class Flags {
      * @param carryFlag Value of carry flag.
      */
     public void setCarry(boolean carryFlag) {
-        this.carry = carryFlag;
+        this.overwrite(CARRY, carryFlag);
     }
 
     /**
@@ -101,7 +316,7 @@ class Flags {
      * @return Status of the carry flag.
      */
     public boolean getCarry(){
-        return this.carry;
+        return this.get(CARRY);
     }
 
     /**
@@ -109,7 +324,7 @@ class Flags {
      * @return 1 if true, 0 if false.
      */
     public int getCarryInt(){
-        if(this.carry){
+        if(this.get(CARRY)){
             return 1;
         }
         return 0;
@@ -119,7 +334,7 @@ class Flags {
      * @param zeroFlag Value of zero flag.
      */
     public void setZero(boolean zeroFlag) {
-        this.zero = zeroFlag;
+        this.overwrite(ZERO, zeroFlag);
     }
 
     /**
@@ -127,7 +342,7 @@ class Flags {
      * @return Status of the zero flag.
      */
     public boolean getZero(){
-        return this.zero;
+        return this.get(ZERO);
     }
 
     /**
@@ -135,7 +350,7 @@ class Flags {
      * @param interruptDisabledFlag Value of interruptDisabled flag.
      */
     public void setInterruptDisable(boolean interruptDisabledFlag) {
-        this.interruptDisabled = interruptDisabledFlag;
+        this.set(INTERRUPT_DISABLE, interruptDisabledFlag);
     }
 
     /**
@@ -143,7 +358,7 @@ class Flags {
      * @return Status of the interruptDisabled flag.
      */
     public boolean getInterruptDisable(){
-        return this.interruptDisabled;
+        return (this.registers.p & INTERRUPT_DISABLE) != 0;
     }
 
     /**
@@ -151,7 +366,7 @@ class Flags {
      * @param decimalModeFlag Value of decimalMode flag.
      */
     public void setDecimalMode(boolean decimalModeFlag) {
-        this.decimalMode = decimalModeFlag;
+        this.set(DECIMAL_MODE, decimalModeFlag);
     }
 
     /**
@@ -159,7 +374,7 @@ class Flags {
      * @return Status of the decimalMode flag.
      */
     public boolean getDecimalMode(){
-        return this.decimalMode;
+        return (this.registers.p & DECIMAL_MODE) != 0;
     }
 
     /**
@@ -167,7 +382,7 @@ class Flags {
      * @param breakCommandFlag Value of breakCommand flag.
      */
     public void setBreakCommand(boolean breakCommandFlag) {
-        this.breakCommand = breakCommandFlag;
+        this.set(BREAK_COMMAND, breakCommandFlag);
     }
 
     /**
@@ -175,7 +390,7 @@ class Flags {
      * @return Status of the breakCommand flag.
      */
     public boolean getBreakCommand(){
-        return this.breakCommand;
+        return (this.registers.p & BREAK_COMMAND) != 0;
     }
 
     /**
@@ -183,7 +398,7 @@ class Flags {
      * @param overFlowFlag Value of overFlow flag.
      */
     public void setOverFlow(boolean overFlowFlag) {
-        this.overFlow = overFlowFlag;
+        this.overwrite(OVER_FLOW, overFlowFlag);
     }
 
     /**
@@ -191,7 +406,7 @@ class Flags {
      * @return Status of the overFlow flag.
      */
     public boolean getOverFlow(){
-        return this.overFlow;
+        return this.get(OVER_FLOW);
     }
 
     /**
@@ -199,7 +414,7 @@ class Flags {
      * @param negativeFlag Value of negative flag.
      */
     public void setNegative(boolean negativeFlag) {
-        this.negative = negativeFlag;
+        this.overwrite(NEGATIVE, negativeFlag);
     }
 
     /**
@@ -207,7 +422,7 @@ class Flags {
      * @return Status of the negative flag.
      */
     public boolean getNegative(){
-        return this.negative;
+        return this.get(NEGATIVE);
     }
 
 }
@@ -21,6 +21,7 @@ class InstructionSet {
     private final Stack stack;
     private final Flags flags;
     private final Control control;
+    private final Registers registers;
 
     /**
      * Initialize tha class
@@ -33,56 +34,48 @@ class InstructionSet {
         this.stack = stack;
         this.flags = flags;
         this.control = control;
+        this.registers = memory.getRegisters();
     }
 
     /**
      * Add to accumulator with carry.
-     * @param value AddressingModeReturn object with value to add to accumulator
+     * @param value value to add to accumulator
      */
-    void adc(AddressingModeReturn value){
-        // clear the overflow bit
-        this.flags.setOverFlow(false);
-        byte number = value.getValue();
-
-        boolean likeSigned = Util.areLikeSigned(number,this.memory.getRegisterA());
+    void adc(byte value){
+        byte accumulator = this.memory.getRegisterA();
 
         if(this.flags.getDecimalMode()){
+            // clear the overflow bit
+            this.flags.setOverFlow(false);
 
-            int bcd = Util.bcdToDec(number);
-            int ans = bcd + this.memory.getRegisterA() + this.flags.getCarryInt();
+            int bcd = Util.bcdToDec(value);
+            int ans = bcd + accumulator + this.flags.getCarryInt();
 
             // set the carry flag if the ans is over 99 since we are in bcd mode.
             this.flags.setCarry(ans > 99);
             // cut off the overflow
             this.memory.setRegisterA(Util.decToBcd((byte)(ans % 99)));
+            this.flags.setZeroNegative(this.memory.getRegisterA());
+            return;
         }
-        else{
-            int ans = Util.unsignByte(this.memory.getRegisterA()) +
-                        Util.unsignByte(number) +
-                        this.flags.getCarryInt();
-
-            // 255 is the highest number that can be saved in one byte.
-            this.flags.setCarry(ans > 255);
-            this.memory.setRegisterA((byte)ans);
-
-            if(likeSigned && (ans > 127 || ans < -128)){
-                this.flags.setOverFlow(true);
-            }
-        }
 
-        this.flags.setZero(this.memory.getRegisterA()==0);
-        this.flags.setNegative(this.memory.getRegisterA()<0);
+        int ans = Util.unsignByte(accumulator) +
+                    Util.unsignByte(value) +
+                    this.flags.getCarryInt();
+
+        this.memory.setRegisterA((byte)ans);
+        // carry, overflow, zero and negative all follow from the operands and the answer.
+        this.flags.setAdd(accumulator, value, ans);
     }
 
     /**
      * ANDs a byte with the accumulator.
-     * @param value AddressingModeReturn object with value to AND with accumulator
+     * @param value value to AND with accumulator
      */
-    void and(AddressingModeReturn value){
-        byte number = value.getValue();
+    void and(byte value){
+        byte number = value;
         this.memory.setRegisterA((byte)(this.memory.getRegisterA() & number));
-        this.flags.setZero(this.memory.getRegisterA()==0);
-        this.flags.setNegative(this.memory.getRegisterA()<0);
+        this.flags.setZeroNegative(this.memory.getRegisterA());
     }
 
     /**
@@ -98,26 +91,43 @@ class InstructionSet {
 
         int shift = regA << 1;
         this.memory.setRegisterA((byte)shift);
-        this.flags.setZero(this.memory.getRegisterA()==0);
-        this.flags.setNegative(this.memory.getRegisterA()<0);
+        this.flags.setZeroNegative(this.memory.getRegisterA());
     }
 
     /**
      * Accumulator Shift Left.<br>
      * Shifts the value at a memory address to the left.
+     * @param value value at the address.
      * @param address Address of the byte to shift left.
      */
-    void asl(AddressingModeReturn address){
-        byte value = address.getValue();
-
+    void asl(byte value, int address){
         // if the number to shift left is negative, it has a 1 in the msb.
         // if that is then shifted left it will overflow into the carry.
         this.flags.setCarry(value < 0);
 
         int shift = value << 1;
-        this.memory.setByteAtAddress(address.getAddress(),(byte)shift);
-        this.flags.setZero((byte)shift == 0);
-        this.flags.setNegative((byte)shift < 0);
+        this.memory.write(address & 0xffff,(byte)shift);
+        this.flags.setZeroNegative((byte)shift);
+    }
+
+    /**
+     * Accumulator Shift Left.<br>
+     * Reads the value at the address and then works on it.
+     * @param address Address of the byte to shift left.
+     */
+    void asl(int address){
+        this.asl((byte) this.memory.read(address), address);
+    }
+
+    /**
+     * Takes a branch.<br>
+     * A taken branch costs one extra cycle, two if it goes to another page than the next instruction.
+     * @param address address to branch to.
+     */
+    private void branch(int address){
+        int target = address & 0xffff;
+        this.registers.cycles += ((this.registers.pc ^ target) & 0xff00) == 0 ? 1 : 2;
+        this.registers.pc = target;
     }
 
     /**
@@ -125,10 +135,9 @@ class InstructionSet {
      * Branch to the address given if the carry flag is false
      * @param address address to branch to.
      */
-    void bcc(AddressingModeReturn address)      {
+    void bcc(int address)      {
         if(this.flags.getCarry()) return;
-        this.memory.setProgramCounter(address.getAddress());
-        this.control.setSkipNextIncrement();
+        this.branch(address);
     }
 
     /**
@@ -136,10 +145,9 @@ class InstructionSet {
      * Branch to the address given if the carry flag is true
      * @param address address to branch to.
      */
-    void bcs(AddressingModeReturn address){
+    void bcs(int address){
         if(!this.flags.getCarry()) return;
-        this.memory.setProgramCounter(address.getAddress());
-        this.control.setSkipNextIncrement();
+        this.branch(address);
     }
 
     /**
@@ -147,23 +155,22 @@ class InstructionSet {
      * Branch to the address given if the zero flag is true
      * @param address address to branch to.
      */
-    void beq(AddressingModeReturn address)  {
+    void beq(int address)  {
         if(!this.flags.getZero()) return;
-        this.memory.setProgramCounter(address.getAddress());
-        this.control.setSkipNextIncrement();
+        this.branch(address);
     }
 
     /**
      * ANDs a value with the accumulator without saving the result.
      * @param value value to AND the accumulator with.
      */
-    void bit(AddressingModeReturn value){
-        int number = value.getValue();
+    void bit(byte value){
+        int number = value;
         int ans = number & this.memory.getRegisterA();
 
         this.flags.setZero(ans == 0);
-        this.flags.setNegative(value.getValue() < 0);
-        this.flags.setOverFlow((value.getValue() & 0b01000000) == 0b01000000);
+        this.flags.setNegative(value < 0);
+        this.flags.setOverFlow((value & 0b01000000) == 0b01000000);
     }
 
     /**
@@ -171,10 +178,9 @@ class InstructionSet {
      * Branch to the address given if the negative flag is true.
      * @param address address to branch to.
      */
-    void bmi(AddressingModeReturn address){
+    void bmi(int address){
         if(!this.flags.getNegative()) return;
-        this.memory.setProgramCounter(address.getAddress());
-        this.control.setSkipNextIncrement();
+        this.branch(address);
     }
 
     /**
@@ -182,10 +188,9 @@ class InstructionSet {
      * Branch to the address given if the zero flag is false
      * @param address address to branch to.
      */
-    void bne(AddressingModeReturn address){
+    void bne(int address){
         if(this.flags.getZero()) return;
-        this.memory.setProgramCounter(address.getAddress());
-        this.control.setSkipNextIncrement();
+        this.branch(address);
     }
 
     /**
@@ -193,10 +198,18 @@ class InstructionSet {
      * Branch to the address given if the negative flag is false.
      * @param address address to branch to.
      */
-    void bpl(AddressingModeReturn address){
+    void bpl(int address){
         if(this.flags.getNegative()) return;
-        this.memory.setProgramCounter(address.getAddress());
-        this.control.setSkipNextIncrement();
+        this.branch(address);
+    }
+
+    /**
+     * Pushes an address onto the stack. First the high byte, then the low byte.
+     * @param address address to push.
+     */
+    void pushAddress(int address){
+        this.stack.push((byte)(address >> 8));
+        this.stack.push((byte)address);
     }
 
     /**
@@ -205,12 +218,9 @@ class InstructionSet {
      */
     void brk(){
 
-        this.memory.incrementProgramCounter();
-        byte[] address = Util.addressToBytes(this.memory.getProgramCounter());
-
-        // push the program-counter onto the stack
-        this.stack.push(address[1]);
-        this.stack.push(address[0]);
+        // push the program-counter onto the stack.
+        // it already points at the byte after the brk op-code.
+        this.pushAddress(this.registers.pc);
 
         // set the break flag
         this.flags.setBreakCommand(true);
@@ -223,8 +233,7 @@ class InstructionSet {
         // (don't know why)
         this.flags.setBreakCommand(false);
 
-        this.memory.setProgramCounter(this.memory.getBreakAddress());
-        this.control.setSkipNextIncrement();
+        this.registers.pc = Util.unsignShort(this.memory.getBreakAddress());
     }
 
     /**
@@ -232,10 +241,9 @@ class InstructionSet {
      * Branch to the address given if the overflow flag is false.
      * @param address Address to branch to.
      */
-    void bvc(AddressingModeReturn address){
+    void bvc(int address){
         if(this.flags.getOverFlow()) return;
-        this.memory.setProgramCounter(address.getAddress());
-        this.control.setSkipNextIncrement();
+        this.branch(address);
     }
 
     /**
@@ -243,10 +251,9 @@ class InstructionSet {
      * Branch to the address given if the overflow flag is true.
      * @param address Address to branch to.
      */
-    void bvs(AddressingModeReturn address){
+    void bvs(int address){
         if(!this.flags.getOverFlow()) return;
-        this.memory.setProgramCounter(address.getAddress());
-        this.control.setSkipNextIncrement();
+        this.branch(address);
     }
 
     /**
@@ -289,9 +296,7 @@ class InstructionSet {
      */
     void compare(byte register, byte memory){
 
-        this.flags.setNegative(register < memory);
-        this.flags.setZero(register == memory);
-        this.flags.setCarry((register == memory)||(register > memory));
+        this.flags.setCompare(register, memory);
     }
 
     /**
@@ -299,8 +304,8 @@ class InstructionSet {
      * Subtracts a value from the accumulator without saving the result. Status flags will be set accordingly.
      * @param value Value to compare accumulator to.
      */
-    void cmp(AddressingModeReturn value){
-        this.compare(this.memory.getRegisterA(),value.getValue());
+    void cmp(byte value){
+        this.compare(this.memory.getRegisterA(),value);
     }
 
     /**
@@ -308,8 +313,8 @@ class InstructionSet {
      * Subtracts a value from the register X without saving the result. Status flags will be set accordingly.
      * @param value Value to compare accumulator to.
      */
-    void cpx(AddressingModeReturn value){
-        this.compare(this.memory.getRegisterX(),value.getValue());
+    void cpx(byte value){
+        this.compare(this.memory.getRegisterX(),value);
     }
 
     /**
@@ -317,22 +322,31 @@ class InstructionSet {
      * Subtracts a value from the register Y without saving the result. Status flags will be set accordingly.
      * @param value Value to compare accumulator to.
      */
-    void cpy(AddressingModeReturn value){
-        this.compare(this.memory.getRegisterY(),value.getValue());
+    void cpy(byte value){
+        this.compare(this.memory.getRegisterY(),value);
     }
 
     /**
      * Decrement Memory by One<br>
      * Decrements a value in memory by one.
+     * @param value value at the address.
      * @param address address of value to decrement.
      */
-    void dec(AddressingModeReturn address){
-        byte ans = (byte)(address.getValue() - 1);
+    void dec(byte value, int address){
+        byte ans = (byte)(value - 1);
 
-        this.flags.setZero(ans == 0);
-        this.flags.setNegative(ans < 0);
+        this.flags.setZeroNegative(ans);
 
-        this.memory.setByteAtAddress(address.getAddress(),ans);
+        this.memory.write(address & 0xffff,ans);
+    }
+
+    /**
+     * Decrement Memory by One<br>
+     * Reads the value at the address and then works on it.
+     * @param address address of value to decrement.
+     */
+    void dec(int address){
+        this.dec((byte) this.memory.read(address), address);
     }
 
     /**
@@ -342,8 +356,7 @@ class InstructionSet {
     void dex(){
         byte ans = (byte)(this.memory.getRegisterX() - 1);
 
-        this.flags.setZero(ans == 0);
-        this.flags.setNegative(ans < 0);
+        this.flags.setZeroNegative(ans);
 
         this.memory.setRegisterX(ans);
     }
@@ -355,8 +368,7 @@ class InstructionSet {
     void dey(){
         byte ans = (byte)(this.memory.getRegisterY() - 1);
 
-        this.flags.setZero(ans == 0);
-        this.flags.setNegative(ans < 0);
+        this.flags.setZeroNegative(ans);
 
         this.memory.setRegisterY(ans);
     }
@@ -366,11 +378,10 @@ class InstructionSet {
      * Result will be stored in Accumulator.
      * @param value value to xor with Accumulator.
      */
-    void eor(AddressingModeReturn value) {
-        byte ans = (byte)(this.memory.getRegisterA() ^ value.getValue());
+    void eor(byte value) {
+        byte ans = (byte)(this.memory.getRegisterA() ^ value);
 
-        this.flags.setNegative(ans < 0);
-        this.flags.setZero(ans == 0);
+        this.flags.setZeroNegative(ans);
 
         this.memory.setRegisterA(ans);
     }
@@ -378,15 +389,24 @@ class InstructionSet {
     /**
      * Increment Memory by One<br>
      * Increments a memory location by one.
+     * @param value value at the address.
      * @param address address to increment by one.
      */
-    void inc(AddressingModeReturn address){
-        byte ans = (byte)(address.getValue() + 1);
+    void inc(byte value, int address){
+        byte ans = (byte)(value + 1);
 
-        this.flags.setZero(ans == 0);
-        this.flags.setNegative(ans < 0);
+        this.flags.setZeroNegative(ans);
 
-        this.memory.setByteAtAddress(address.getAddress(),ans);
+        this.memory.write(address & 0xffff,ans);
+    }
+
+    /**
+     * Increment Memory by One<br>
+     * Reads the value at the address and then works on it.
+     * @param address address to increment by one.
+     */
+    void inc(int address){
+        this.inc((byte) this.memory.read(address), address);
     }
 
     /**
@@ -396,8 +416,7 @@ class InstructionSet {
     void inx(){
         byte ans = (byte)(this.memory.getRegisterX() + 1);
 
-        this.flags.setZero(ans == 0);
-        this.flags.setNegative(ans < 0);
+        this.flags.setZeroNegative(ans);
 
         this.memory.setRegisterX(ans);
     }
@@ -409,8 +428,7 @@ class InstructionSet {
     void iny(){
         byte ans = (byte)(this.memory.getRegisterY() + 1);
 
-        this.flags.setZero(ans == 0);
-        this.flags.setNegative(ans < 0);
+        this.flags.setZeroNegative(ans);
 
         this.memory.setRegisterY(ans);
     }
@@ -420,9 +438,8 @@ class InstructionSet {
      * Jumps to an address.
      * @param address address to jump to.
      */
-    void jmp(AddressingModeReturn address){
-        this.memory.setProgramCounter(address.getAddress());
-        this.control.setSkipNextIncrement();
+    void jmp(int address){
+        this.registers.pc = address & 0xffff;
     }
 
     /**
@@ -430,15 +447,12 @@ class InstructionSet {
      * Pushes the current address and status register onto the stack. Then jumps to an address.
      * @param address address to jump to.
      */
-    void jsr(AddressingModeReturn address){
-        byte[] memAddress = Util.addressToBytes(this.memory.getProgramCounter());
-
-        this.stack.push(memAddress[1]);
-        this.stack.push(memAddress[0]);
+    void jsr(int address){
+        // push the address of the last byte of the jsr instruction. rts continues at the byte after it.
+        this.pushAddress(this.registers.pc - 1);
         this.stack.push(this.flags.getWholeRegister());
 
-        this.memory.setProgramCounter(address.getAddress());
-        this.control.setSkipNextIncrement();
+        this.registers.pc = address & 0xffff;
     }
 
     /**
@@ -446,10 +460,9 @@ class InstructionSet {
      * Puts a value into the Accumulator.
      * @param value value to put into accumulator.
      */
-    void lda(AddressingModeReturn value){
-        this.flags.setZero(value.getValue() == 0);
-        this.flags.setNegative(value.getValue() < 0);
-        this.memory.setRegisterA(value.getValue());
+    void lda(byte value){
+        this.flags.setZeroNegative(value);
+        this.memory.setRegisterA(value);
     }
 
     /**
@@ -457,10 +470,9 @@ class InstructionSet {
      * Puts a value into the register X.
      * @param value value to put into accumulator.
      */
-    void ldx(AddressingModeReturn value){
-        this.flags.setZero(value.getValue() == 0);
-        this.flags.setNegative(value.getValue() < 0);
-        this.memory.setRegisterX(value.getValue());
+    void ldx(byte value){
+        this.flags.setZeroNegative(value);
+        this.memory.setRegisterX(value);
     }
 
     /**
@@ -468,10 +480,9 @@ class InstructionSet {
      * Puts a value into the register Y.
      * @param value value to put into accumulator.
      */
-    void ldy(AddressingModeReturn value){
-        this.flags.setZero(value.getValue() == 0);
-        this.flags.setNegative(value.getValue() < 0);
-        this.memory.setRegisterY(value.getValue());
+    void ldy(byte value){
+        this.flags.setZeroNegative(value);
+        this.memory.setRegisterY(value);
     }
 
     /**
@@ -485,26 +496,34 @@ class InstructionSet {
 
         byte shift = (byte)(Util.unsignByte(this.memory.getRegisterA()) >>> 1);
 
-        this.flags.setZero(shift == 0);
-        this.flags.setNegative(false);
+        this.flags.setZeroNegative(shift);
         this.memory.setRegisterA(shift);
     }
 
     /**
      * Logical Shift Right<br>
      * Shift a memory location one bit to the right.
+     * @param value value at the address.
      * @param address address of value to shift right
      */
-    void lsr(AddressingModeReturn address){
+    void lsr(byte value, int address){
         // if the lsb of the accumulator is a 1 then shifting it right will
         // turn the carry to a one.
-        this.flags.setCarry((address.getValue() & 0b1) == 0b1);
+        this.flags.setCarry((value & 0b1) == 0b1);
 
-        byte shift = (byte)(Util.unsignByte(address.getValue()) >>> 1);
+        byte shift = (byte)(Util.unsignByte(value) >>> 1);
 
-        this.flags.setZero(shift == 0);
-        this.flags.setNegative(false);
-        this.memory.setByteAtAddress(address.getAddress(),shift);
+        this.flags.setZeroNegative(shift);
+        this.memory.write(address & 0xffff,shift);
+    }
+
+    /**
+     * Logical Shift Right<br>
+     * Reads the value at the address and then works on it.
+     * @param address address of value to shift right
+     */
+    void lsr(int address){
+        this.lsr((byte) this.memory.read(address), address);
     }
 
     /**
@@ -520,10 +539,9 @@ class InstructionSet {
      * ORs a value with the Accumulator and stores it in the accumulator
      * @param value value to OR the Accumulator with.
      */
-    void ora(AddressingModeReturn value){
-        this.memory.setRegisterA((byte)(this.memory.getRegisterA() | value.getValue()));
-        this.flags.setZero(this.memory.getRegisterA() == 0);
-        this.flags.setNegative(this.memory.getRegisterA() < 0);
+    void ora(byte value){
+        this.memory.setRegisterA((byte)(this.memory.getRegisterA() | value));
+        this.flags.setZeroNegative(this.memory.getRegisterA());
     }
 
     /**
@@ -545,8 +563,7 @@ class InstructionSet {
      */
     void pla(){
         this.memory.setRegisterA(this.stack.pull());
-        this.flags.setZero(this.memory.getRegisterA() == 0);
-        this.flags.setNegative(this.memory.getRegisterA() < 0);
+        this.flags.setZeroNegative(this.memory.getRegisterA());
     }
 
     /**
@@ -570,28 +587,36 @@ class InstructionSet {
 
         byte shift = (byte)((Util.unsignByte(this.memory.getRegisterA()) << 1) + carry);
 
-        this.flags.setNegative(shift < 0);
-        this.flags.setZero(shift == 0);
+        this.flags.setZeroNegative(shift);
         this.memory.setRegisterA(shift);
     }
 
     /**
      * Rotate Left<br>
      * Rotates the value at and address left by one.
+     * @param value value at the address.
      * @param address address of the byte to rotate.
      */
-    void rol(AddressingModeReturn address){
+    void rol(byte value, int address){
         // get the value of the carry and save it for later
         int carry = this.flags.getCarryInt();
         // if the msb of the accumulator is a 1 then rotating it right will
         // turn the carry to a one.
-        this.flags.setCarry((address.getValue() & 0b10000000) == 0b10000000);
+        this.flags.setCarry((value & 0b10000000) == 0b10000000);
+
+        byte shift = (byte)((Util.unsignByte(value) << 1) + carry);
 
-        byte shift = (byte)((Util.unsignByte(address.getValue()) << 1) + carry);
+        this.flags.setZeroNegative(shift);
+        this.memory.write(address & 0xffff, shift);
+    }
 
-        this.flags.setNegative(shift < 0);
-        this.flags.setZero(shift == 0);
-        this.memory.setByteAtAddress(address.getAddress(), shift);
+    /**
+     * Rotate Left<br>
+     * Reads the value at the address and then works on it.
+     * @param address address of the byte to rotate.
+     */
+    void rol(int address){
+        this.rol((byte) this.memory.read(address), address);
     }
 
     /**
@@ -607,28 +632,36 @@ class InstructionSet {
 
         byte shift = (byte)((Util.unsignByte(this.memory.getRegisterA()) >>> 1) | (carry * 128));
 
-        this.flags.setNegative(shift < 0);
-        this.flags.setZero(shift == 0);
+        this.flags.setZeroNegative(shift);
         this.memory.setRegisterA(shift);
     }
 
     /**
      * Rotate Right<br>
      * Rotates the value at and address right by one.
+     * @param value value at the address.
      * @param address address of the byte to rotate.
      */
-    void ror(AddressingModeReturn address){
+    void ror(byte value, int address){
         // get the value of the carry and save it for later
         int carry = this.flags.getCarryInt();
         // if the msb of the accumulator is a 1 then rotating it right will
         // turn the carry to a one.
-        this.flags.setCarry((address.getValue() & 0b1) == 0b1);
+        this.flags.setCarry((value & 0b1) == 0b1);
 
-        byte shift = (byte)((Util.unsignByte(address.getValue()) >>> 1) | (carry * 128));
+        byte shift = (byte)((Util.unsignByte(value) >>> 1) | (carry * 128));
+
+        this.flags.setZeroNegative(shift);
+        this.memory.write(address & 0xffff, shift);
+    }
 
-        this.flags.setNegative(shift < 0);
-        this.flags.setZero(shift == 0);
-        this.memory.setByteAtAddress(address.getAddress(), shift);
+    /**
+     * Rotate Right<br>
+     * Reads the value at the address and then works on it.
+     * @param address address of the byte to rotate.
+     */
+    void ror(int address){
+        this.ror((byte) this.memory.read(address), address);
     }
 
     /**
@@ -641,7 +674,7 @@ class InstructionSet {
 
         this.flags.setWholeRegister(status);
         this.flags.setBreakCommand(false);
-        this.memory.setProgramCounter(Util.bytesToAddress(lowByte, highByte));
+        this.registers.pc = (Util.unsignShort(Util.bytesToAddress(lowByte, highByte)) + 1) & 0xffff;
     }
 
     /**
@@ -651,7 +684,7 @@ class InstructionSet {
         byte lowByte = this.stack.pull();
         byte highByte = this.stack.pull();
 
-        this.memory.setProgramCounter(Util.bytesToAddress(lowByte,highByte));
+        this.registers.pc = (Util.unsignShort(Util.bytesToAddress(lowByte,highByte)) + 1) & 0xffff;
     }
 
     /**
@@ -659,39 +692,31 @@ class InstructionSet {
      * Subtracts from the Accumulator with carry and then saves the result in the Accumulator.
      * @param value value to subtract.
      */
-    void sbc(AddressingModeReturn value){
-        // clear the overflow bit
-        this.flags.setOverFlow(false);
-        byte number = value.getValue();
-
-        boolean unLikeSigned = Util.areNotLikeSigned(number,this.memory.getRegisterA());
+    void sbc(byte value){
+        byte accumulator = this.memory.getRegisterA();
 
         if(this.flags.getDecimalMode()){
+            // clear the overflow bit
+            this.flags.setOverFlow(false);
 
-            int bcd = Util.bcdToDec(number);
-            int ans = this.memory.getRegisterA() - bcd - this.flags.getCarryInt();
+            int bcd = Util.bcdToDec(value);
+            int ans = accumulator - bcd - this.flags.getCarryInt();
 
             // set the carry flag if the ans is over 99 since we are in bcd mode.
             this.flags.setCarry(ans >= 0);
             // cut off the overflow
             this.memory.setRegisterA(Util.decToBcd((byte)(ans % 99)));
+            this.flags.setZeroNegative(this.memory.getRegisterA());
+            return;
         }
-        else{
-            int ans = Util.unsignByte(this.memory.getRegisterA()) -
-                    Util.unsignByte(number) -
-                    this.flags.getCarryInt();
 
-            // 255 is the highest number that can be saved in one byte.
-            this.flags.setCarry(ans >= 0);
-            this.memory.setRegisterA((byte)ans);
+        int ans = Util.unsignByte(accumulator) -
+                Util.unsignByte(value) -
+                this.flags.getCarryInt();
 
-            if(unLikeSigned && (ans > 127 || ans < -128)){
-                this.flags.setOverFlow(true);
-            }
-        }
-
-        this.flags.setZero(this.memory.getRegisterA() == 0);
-        this.flags.setNegative(this.memory.getRegisterA() < 0);
+        this.memory.setRegisterA((byte)ans);
+        // carry, overflow, zero and negative all follow from the operands and the answer.
+        this.flags.setSubtract(accumulator, value, ans);
     }
 
     /**
@@ -720,32 +745,32 @@ class InstructionSet {
      * @param value value to set
      * @param address address to put value in.
      */
-    void store(byte value, short address){
-        this.memory.setByteAtAddress(address,value);
+    void store(byte value, int address){
+        this.memory.write(address & 0xffff,value);
     }
 
     /**
      * Store Accumulator in Memory.
      * @param address address to store the value in the accumulator.
      */
-    void sta(AddressingModeReturn address){
-        this.store(this.memory.getRegisterA(),address.getAddress());
+    void sta(int address){
+        this.store(this.memory.getRegisterA(),address);
     }
 
     /**
      * Store Register X in Memory.
      * @param address address to store the value.
      */
-    void stx(AddressingModeReturn address){
-        this.store(this.memory.getRegisterX(),address.getAddress());
+    void stx(int address){
+        this.store(this.memory.getRegisterX(),address);
     }
 
     /**
      * Store Register Y in Memory.
      * @param address address to store the value.
      */
-    void sty(AddressingModeReturn address){
-        this.store(this.memory.getRegisterY(),address.getAddress());
+    void sty(int address){
+        this.store(this.memory.getRegisterY(),address);
     }
 
     /**
@@ -754,8 +779,7 @@ class InstructionSet {
      */
     void transferToX(byte value){
         this.memory.setRegisterX(value);
-        this.flags.setZero(value == 0);
-        this.flags.setNegative(value < 0);
+        this.flags.setZeroNegative(value);
     }
 
     /**
@@ -764,8 +788,7 @@ class InstructionSet {
      */
     void transferToY(byte value){
         this.memory.setRegisterY(value);
-        this.flags.setZero(value == 0);
-        this.flags.setNegative(value < 0);
+        this.flags.setZeroNegative(value);
     }
 
     /**
@@ -774,8 +797,7 @@ class InstructionSet {
      */
     void transferToAcc(byte value){
         this.memory.setRegisterA(value);
-        this.flags.setZero(value == 0);
-        this.flags.setNegative(value < 0);
+        this.flags.setZeroNegative(value);
     }
 
     /**
@@ -827,6 +849,8 @@ class InstructionSet {
      * Stops the program by setting the run control flag to false.
      */
     void ext(){
+        // leave the program counter on the ext op-code.
+        this.registers.pc = (this.registers.pc - 1) & 0xffff;
         this.control.setRun(false);
         this.control.runDoOnExt(this.memory.getProgramCounter());
     }
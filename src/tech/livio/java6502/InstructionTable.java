@@ -0,0 +1,618 @@
+/*
+Copyright (c) 2023, Livio Conzett
+All rights reserved.
+
+This source code is licensed under the BSD-style license found in the
+LICENSE file in the root directory of this source tree.
+*/
+
+package tech.livio.java6502;
+
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * Holds the opcode dispatch of the NMOS 6502 and the tables about every op-code.<br>
+ * Every table has 256 entries and is indexed by the unsigned op-code. Op-codes that are not part of the
+ * instruction set run as a NOP.
+ */
+final class InstructionTable {
+
+    // used for 0xea and every op-code that is not part of the instruction set in the predecoded table.
+    static final DecodedInstruction DECODED_NOP = (is, am, operand) -> is.nop();
+
+    // dispatch table of the NMOS 6502 for instructions with an already fetched operand. See BlockCache.
+    static final DecodedInstruction[] NMOS_6502_DECODED = buildNmos6502Decoded();
+
+    // addressing mode of every op-code.
+    static final AddressingModes[] MODES = buildModes();
+
+    // mnemonic of every op-code, "???" for the ones that are not part of the instruction set.
+    static final String[] NAMES = buildNames();
+
+    // op-codes after which a block of straight-line code ends.
+    static final boolean[] ENDS_BLOCK = buildEndsBlock();
+
+    // op-codes that write to memory, including the stack.
+    static final boolean[] WRITES_MEMORY = buildWritesMemory();
+
+    // clock cycles of every op-code on the NMOS 6502, without the extra cycle for crossing a page or taking a branch.
+    // Op-codes that are not part of the instruction set run as a nop and take 2 cycles, so does ext.
+    static final int[] CYCLES = {
+            //  0  1  2  3  4  5  6  7  8  9  a  b  c  d  e  f
+                7, 6, 2, 2, 2, 3, 5, 2, 3, 2, 2, 2, 2, 4, 6, 2, // 0
+                2, 5, 2, 2, 2, 4, 6, 2, 2, 4, 2, 2, 2, 4, 7, 2, // 1
+                6, 6, 2, 2, 3, 3, 5, 2, 4, 2, 2, 2, 4, 4, 6, 2, // 2
+                2, 5, 2, 2, 2, 4, 6, 2, 2, 4, 2, 2, 2, 4, 7, 2, // 3
+                6, 6, 2, 2, 2, 3, 5, 2, 3, 2, 2, 2, 3, 4, 6, 2, // 4
+                2, 5, 2, 2, 2, 4, 6, 2, 2, 4, 2, 2, 2, 4, 7, 2, // 5
+                6, 6, 2, 2, 2, 3, 5, 2, 4, 2, 2, 2, 5, 4, 6, 2, // 6
+                2, 5, 2, 2, 2, 4, 6, 2, 2, 4, 2, 2, 2, 4, 7, 2, // 7
+                2, 6, 2, 2, 3, 3, 3, 2, 2, 2, 2, 2, 4, 4, 4, 2, // 8
+                2, 6, 2, 2, 4, 4, 4, 2, 2, 5, 2, 2, 2, 5, 2, 2, // 9
+                2, 6, 2, 2, 3, 3, 3, 2, 2, 2, 2, 2, 4, 4, 4, 2, // a
+                2, 5, 2, 2, 4, 4, 4, 2, 2, 4, 2, 2, 4, 4, 4, 2, // b
+                2, 6, 2, 2, 3, 3, 5, 2, 2, 2, 2, 2, 4, 4, 6, 2, // c
+                2, 5, 2, 2, 2, 4, 6, 2, 2, 4, 2, 2, 2, 4, 7, 2, // d
+                2, 6, 2, 2, 3, 3, 5, 2, 2, 2, 2, 2, 4, 4, 6, 2, // e
+                2, 5, 2, 2, 2, 4, 6, 2, 2, 4, 2, 2, 2, 4, 7, 2  // f
+    };
+
+    /**
+     * Private Constructor<br>
+     * Needed so that Sonar Linter doesn't complain.
+     */
+    private InstructionTable(){
+        // Sonar Linter wants this.
+    }
+
+    /**
+     * Runs an op-code of the NMOS 6502 or the ext (0x80) instruction of the simulator. The program counter points
+     * behind the op-code.<br>
+     * A switch and not a table of lambdas: HotSpot compiles the switch to a jump table and inlines every case, while a
+     * call through a table is megamorphic and can not be inlined. See DispatchBenchmark.
+     * @param opCode unsigned op-code.
+     * @param is InstructionSet to run the operation on.
+     * @param am AddressingMode used to resolve the operand.
+     */
+    static void execute(int opCode, InstructionSet is, AddressingMode am){
+        switch (opCode) {
+            case 0x69 -> is.adc(am.read(am.immediate()));
+            case 0x65 -> is.adc(am.read(am.zeroPage()));
+            case 0x75 -> is.adc(am.read(am.zeroPageIndexX()));
+            case 0x6d -> is.adc(am.read(am.absolute()));
+            case 0x7d -> is.adc(am.readIndexed(am.absoluteIndexX()));
+            case 0x79 -> is.adc(am.readIndexed(am.absoluteIndexY()));
+            case 0x61 -> is.adc(am.read(am.indexedIndirect()));
+            case 0x71 -> is.adc(am.readIndexed(am.indirectIndexed()));
+
+            case 0x29 -> is.and(am.read(am.immediate()));
+            case 0x25 -> is.and(am.read(am.zeroPage()));
+            case 0x35 -> is.and(am.read(am.zeroPageIndexX()));
+            case 0x2d -> is.and(am.read(am.absolute()));
+            case 0x3d -> is.and(am.readIndexed(am.absoluteIndexX()));
+            case 0x39 -> is.and(am.readIndexed(am.absoluteIndexY()));
+            case 0x21 -> is.and(am.read(am.indexedIndirect()));
+            case 0x31 -> is.and(am.readIndexed(am.indirectIndexed()));
+
+            case 0x0a -> is.asl();
+            case 0x06 -> is.asl(am.zeroPage());
+            case 0x16 -> is.asl(am.zeroPageIndexX());
+            case 0x0e -> is.asl(am.absolute());
+            case 0x1e -> is.asl(am.absoluteIndexX());
+
+            case 0x90 -> is.bcc(am.relative());
+
+            case 0xb0 -> is.bcs(am.relative());
+
+            case 0xf0 -> is.beq(am.relative());
+
+            case 0x24 -> is.bit(am.read(am.zeroPage()));
+            case 0x2c -> is.bit(am.read(am.absolute()));
+
+            case 0x30 -> is.bmi(am.relative());
+
+            case 0xd0 -> is.bne(am.relative());
+
+            case 0x10 -> is.bpl(am.relative());
+
+            case 0x00 -> is.brk();
+
+            case 0x50 -> is.bvc(am.relative());
+
+            case 0x70 -> is.bvs(am.relative());
+
+            case 0x18 -> is.clc();
+
+            case 0xd8 -> is.cld();
+
+            case 0x58 -> is.cli();
+
+            case 0xb8 -> is.clv();
+
+            case 0xc9 -> is.cmp(am.read(am.immediate()));
+            case 0xc5 -> is.cmp(am.read(am.zeroPage()));
+            case 0xd5 -> is.cmp(am.read(am.zeroPageIndexX()));
+            case 0xcd -> is.cmp(am.read(am.absolute()));
+            case 0xdd -> is.cmp(am.readIndexed(am.absoluteIndexX()));
+            case 0xd9 -> is.cmp(am.readIndexed(am.absoluteIndexY()));
+            case 0xc1 -> is.cmp(am.read(am.indexedIndirect()));
+            case 0xd1 -> is.cmp(am.readIndexed(am.indirectIndexed()));
+
+            case 0xe0 -> is.cpx(am.read(am.immediate()));
+            case 0xe4 -> is.cpx(am.read(am.zeroPage()));
+            case 0xec -> is.cpx(am.read(am.absolute()));
+
+            case 0xc0 -> is.cpy(am.read(am.immediate()));
+            case 0xc4 -> is.cpy(am.read(am.zeroPage()));
+            case 0xcc -> is.cpy(am.read(am.absolute()));
+
+            case 0xc6 -> is.dec(am.zeroPage());
+            case 0xd6 -> is.dec(am.zeroPageIndexX());
+            case 0xce -> is.dec(am.absolute());
+            case 0xde -> is.dec(am.absoluteIndexX());
+
+            case 0xca -> is.dex();
+
+            case 0x88 -> is.dey();
+
+            case 0x49 -> is.eor(am.read(am.immediate()));
+            case 0x45 -> is.eor(am.read(am.zeroPage()));
+            case 0x55 -> is.eor(am.read(am.zeroPageIndexX()));
+            case 0x4d -> is.eor(am.read(am.absolute()));
+            case 0x5d -> is.eor(am.readIndexed(am.absoluteIndexX()));
+            case 0x59 -> is.eor(am.readIndexed(am.absoluteIndexY()));
+            case 0x41 -> is.eor(am.read(am.indexedIndirect()));
+            case 0x51 -> is.eor(am.readIndexed(am.indirectIndexed()));
+
+            case 0xe6 -> is.inc(am.zeroPage());
+            case 0xf6 -> is.inc(am.zeroPageIndexX());
+            case 0xee -> is.inc(am.absolute());
+            case 0xfe -> is.inc(am.absoluteIndexX());
+
+            case 0xe8 -> is.inx();
+
+            case 0xc8 -> is.iny();
+
+            case 0x4c -> is.jmp(am.absolute());
+            case 0x6c -> is.jmp(am.indirectAbsolute());
+
+            case 0x20 -> is.jsr(am.absolute());
+
+            case 0xa9 -> is.lda(am.read(am.immediate()));
+            case 0xa5 -> is.lda(am.read(am.zeroPage()));
+            case 0xb5 -> is.lda(am.read(am.zeroPageIndexX()));
+            case 0xad -> is.lda(am.read(am.absolute()));
+            case 0xbd -> is.lda(am.readIndexed(am.absoluteIndexX()));
+            case 0xb9 -> is.lda(am.readIndexed(am.absoluteIndexY()));
+            case 0xa1 -> is.lda(am.read(am.indexedIndirect()));
+            case 0xb1 -> is.lda(am.readIndexed(am.indirectIndexed()));
+
+            case 0xa2 -> is.ldx(am.read(am.immediate()));
+            case 0xa6 -> is.ldx(am.read(am.zeroPage()));
+            case 0xb6 -> is.ldx(am.read(am.zeroPageIndexY()));
+            case 0xae -> is.ldx(am.read(am.absolute()));
+            case 0xbe -> is.ldx(am.readIndexed(am.absoluteIndexY()));
+
+            case 0xa0 -> is.ldy(am.read(am.immediate()));
+            case 0xa4 -> is.ldy(am.read(am.zeroPage()));
+            case 0xb4 -> is.ldy(am.read(am.zeroPageIndexX()));
+            case 0xac -> is.ldy(am.read(am.absolute()));
+            case 0xbc -> is.ldy(am.readIndexed(am.absoluteIndexX()));
+
+            case 0x4a -> is.lsr();
+            case 0x46 -> is.lsr(am.zeroPage());
+            case 0x56 -> is.lsr(am.zeroPageIndexX());
+            case 0x4e -> is.lsr(am.absolute());
+            case 0x5e -> is.lsr(am.absoluteIndexX());
+
+            case 0xea -> is.nop();
+
+            case 0x09 -> is.ora(am.read(am.immediate()));
+            case 0x05 -> is.ora(am.read(am.zeroPage()));
+            case 0x15 -> is.ora(am.read(am.zeroPageIndexX()));
+            case 0x0d -> is.ora(am.read(am.absolute()));
+            case 0x1d -> is.ora(am.readIndexed(am.absoluteIndexX()));
+            case 0x19 -> is.ora(am.readIndexed(am.absoluteIndexY()));
+            case 0x01 -> is.ora(am.read(am.indexedIndirect()));
+            case 0x11 -> is.ora(am.readIndexed(am.indirectIndexed()));
+
+            case 0x48 -> is.pha();
+
+            case 0x08 -> is.php();
+
+            case 0x68 -> is.pla();
+
+            case 0x28 -> is.plp();
+
+            case 0x2a -> is.rol();
+            case 0x26 -> is.rol(am.zeroPage());
+            case 0x36 -> is.rol(am.zeroPageIndexX());
+            case 0x2e -> is.rol(am.absolute());
+            case 0x3e -> is.rol(am.absoluteIndexX());
+
+            case 0x6a -> is.ror();
+            case 0x66 -> is.ror(am.zeroPage());
+            case 0x76 -> is.ror(am.zeroPageIndexX());
+            case 0x6e -> is.ror(am.absolute());
+            case 0x7e -> is.ror(am.absoluteIndexX());
+
+            case 0x40 -> is.rti();
+
+            case 0x60 -> is.rts();
+
+            case 0xe9 -> is.sbc(am.read(am.immediate()));
+            case 0xe5 -> is.sbc(am.read(am.zeroPage()));
+            case 0xf5 -> is.sbc(am.read(am.zeroPageIndexX()));
+            case 0xed -> is.sbc(am.read(am.absolute()));
+            case 0xfd -> is.sbc(am.readIndexed(am.absoluteIndexX()));
+            case 0xf9 -> is.sbc(am.readIndexed(am.absoluteIndexY()));
+            case 0xe1 -> is.sbc(am.read(am.indexedIndirect()));
+            case 0xf1 -> is.sbc(am.readIndexed(am.indirectIndexed()));
+
+            case 0x38 -> is.sec();
+
+            case 0xf8 -> is.sed();
+
+            case 0x78 -> is.sei();
+
+            case 0x85 -> is.sta(am.zeroPage());
+            case 0x95 -> is.sta(am.zeroPageIndexX());
+            case 0x8d -> is.sta(am.absolute());
+            case 0x9d -> is.sta(am.absoluteIndexX());
+            case 0x99 -> is.sta(am.absoluteIndexY());
+            case 0x81 -> is.sta(am.indexedIndirect());
+            case 0x91 -> is.sta(am.indirectIndexed());
+
+            case 0x86 -> is.stx(am.zeroPage());
+            case 0x96 -> is.stx(am.zeroPageIndexY());
+            case 0x8e -> is.stx(am.absolute());
+
+            case 0x84 -> is.sty(am.zeroPage());
+            case 0x94 -> is.sty(am.zeroPageIndexX());
+            case 0x8c -> is.sty(am.absolute());
+
+            case 0xaa -> is.tax();
+
+            case 0xa8 -> is.tay();
+
+            case 0xba -> is.tsx();
+
+            case 0x8a -> is.txa();
+
+            case 0x9a -> is.txs();
+
+            case 0x98 -> is.tya();
+
+            // not an official instruction, but needed to end the program in the simulation.
+            case 0x80 -> is.ext();
+
+            // every other op-code is a NOP.
+            default -> is.nop();
+        }
+    }
+
+    /**
+     * Builds the dispatch table for predecoded NMOS 6502 instructions.<br>
+     * Immediate operands are passed as the value, zero page, absolute and relative operands as the effective address.
+     * All other addressing modes get the raw operand and resolve it against the registers when they run.
+     * @return array of 256 decoded instructions, indexed by the unsigned op-code.
+     */
+    private static DecodedInstruction[] buildNmos6502Decoded(){
+        DecodedInstruction[] table = new DecodedInstruction[256];
+
+        // every op-code that is not set below is a NOP.
+        Arrays.fill(table, DECODED_NOP);
+
+        table[0x69] = (is, am, operand) -> is.adc((byte) operand);
+        table[0x65] = (is, am, operand) -> is.adc(am.read(operand));
+        table[0x75] = (is, am, operand) -> is.adc(am.read(am.zeroPageIndexX(operand)));
+        table[0x6d] = (is, am, operand) -> is.adc(am.read(operand));
+        table[0x7d] = (is, am, operand) -> is.adc(am.readIndexed(am.absoluteIndexX(operand)));
+        table[0x79] = (is, am, operand) -> is.adc(am.readIndexed(am.absoluteIndexY(operand)));
+        table[0x61] = (is, am, operand) -> is.adc(am.read(am.indexedIndirect(operand)));
+        table[0x71] = (is, am, operand) -> is.adc(am.readIndexed(am.indirectIndexed(operand)));
+
+        table[0x29] = (is, am, operand) -> is.and((byte) operand);
+        table[0x25] = (is, am, operand) -> is.and(am.read(operand));
+        table[0x35] = (is, am, operand) -> is.and(am.read(am.zeroPageIndexX(operand)));
+        table[0x2d] = (is, am, operand) -> is.and(am.read(operand));
+        table[0x3d] = (is, am, operand) -> is.and(am.readIndexed(am.absoluteIndexX(operand)));
+        table[0x39] = (is, am, operand) -> is.and(am.readIndexed(am.absoluteIndexY(operand)));
+        table[0x21] = (is, am, operand) -> is.and(am.read(am.indexedIndirect(operand)));
+        table[0x31] = (is, am, operand) -> is.and(am.readIndexed(am.indirectIndexed(operand)));
+
+        table[0x0a] = (is, am, operand) -> is.asl();
+        table[0x06] = (is, am, operand) -> is.asl(operand);
+        table[0x16] = (is, am, operand) -> is.asl(am.zeroPageIndexX(operand));
+        table[0x0e] = (is, am, operand) -> is.asl(operand);
+        table[0x1e] = (is, am, operand) -> is.asl(am.absoluteIndexX(operand));
+
+        table[0x90] = (is, am, operand) -> is.bcc(operand);
+
+        table[0xb0] = (is, am, operand) -> is.bcs(operand);
+
+        table[0xf0] = (is, am, operand) -> is.beq(operand);
+
+        table[0x24] = (is, am, operand) -> is.bit(am.read(operand));
+        table[0x2c] = (is, am, operand) -> is.bit(am.read(operand));
+
+        table[0x30] = (is, am, operand) -> is.bmi(operand);
+
+        table[0xd0] = (is, am, operand) -> is.bne(operand);
+
+        table[0x10] = (is, am, operand) -> is.bpl(operand);
+
+        table[0x00] = (is, am, operand) -> is.brk();
+
+        table[0x50] = (is, am, operand) -> is.bvc(operand);
+
+        table[0x70] = (is, am, operand) -> is.bvs(operand);
+
+        table[0x18] = (is, am, operand) -> is.clc();
+
+        table[0xd8] = (is, am, operand) -> is.cld();
+
+        table[0x58] = (is, am, operand) -> is.cli();
+
+        table[0xb8] = (is, am, operand) -> is.clv();
+
+        table[0xc9] = (is, am, operand) -> is.cmp((byte) operand);
+        table[0xc5] = (is, am, operand) -> is.cmp(am.read(operand));
+        table[0xd5] = (is, am, operand) -> is.cmp(am.read(am.zeroPageIndexX(operand)));
+        table[0xcd] = (is, am, operand) -> is.cmp(am.read(operand));
+        table[0xdd] = (is, am, operand) -> is.cmp(am.readIndexed(am.absoluteIndexX(operand)));
+        table[0xd9] = (is, am, operand) -> is.cmp(am.readIndexed(am.absoluteIndexY(operand)));
+        table[0xc1] = (is, am, operand) -> is.cmp(am.read(am.indexedIndirect(operand)));
+        table[0xd1] = (is, am, operand) -> is.cmp(am.readIndexed(am.indirectIndexed(operand)));
+
+        table[0xe0] = (is, am, operand) -> is.cpx((byte) operand);
+        table[0xe4] = (is, am, operand) -> is.cpx(am.read(operand));
+        table[0xec] = (is, am, operand) -> is.cpx(am.read(operand));
+
+        table[0xc0] = (is, am, operand) -> is.cpy((byte) operand);
+        table[0xc4] = (is, am, operand) -> is.cpy(am.read(operand));
+        table[0xcc] = (is, am, operand) -> is.cpy(am.read(operand));
+
+        table[0xc6] = (is, am, operand) -> is.dec(operand);
+        table[0xd6] = (is, am, operand) -> is.dec(am.zeroPageIndexX(operand));
+        table[0xce] = (is, am, operand) -> is.dec(operand);
+        table[0xde] = (is, am, operand) -> is.dec(am.absoluteIndexX(operand));
+
+        table[0xca] = (is, am, operand) -> is.dex();
+
+        table[0x88] = (is, am, operand) -> is.dey();
+
+        table[0x49] = (is, am, operand) -> is.eor((byte) operand);
+        table[0x45] = (is, am, operand) -> is.eor(am.read(operand));
+        table[0x55] = (is, am, operand) -> is.eor(am.read(am.zeroPageIndexX(operand)));
+        table[0x4d] = (is, am, operand) -> is.eor(am.read(operand));
+        table[0x5d] = (is, am, operand) -> is.eor(am.readIndexed(am.absoluteIndexX(operand)));
+        table[0x59] = (is, am, operand) -> is.eor(am.readIndexed(am.absoluteIndexY(operand)));
+        table[0x41] = (is, am, operand) -> is.eor(am.read(am.indexedIndirect(operand)));
+        table[0x51] = (is, am, operand) -> is.eor(am.readIndexed(am.indirectIndexed(operand)));
+
+        table[0xe6] = (is, am, operand) -> is.inc(operand);
+        table[0xf6] = (is, am, operand) -> is.inc(am.zeroPageIndexX(operand));
+        table[0xee] = (is, am, operand) -> is.inc(operand);
+        table[0xfe] = (is, am, operand) -> is.inc(am.absoluteIndexX(operand));
+
+        table[0xe8] = (is, am, operand) -> is.inx();
+
+        table[0xc8] = (is, am, operand) -> is.iny();
+
+        table[0x4c] = (is, am, operand) -> is.jmp(operand);
+        table[0x6c] = (is, am, operand) -> is.jmp(am.indirectAbsolute(operand));
+
+        table[0x20] = (is, am, operand) -> is.jsr(operand);
+
+        table[0xa9] = (is, am, operand) -> is.lda((byte) operand);
+        table[0xa5] = (is, am, operand) -> is.lda(am.read(operand));
+        table[0xb5] = (is, am, operand) -> is.lda(am.read(am.zeroPageIndexX(operand)));
+        table[0xad] = (is, am, operand) -> is.lda(am.read(operand));
+        table[0xbd] = (is, am, operand) -> is.lda(am.readIndexed(am.absoluteIndexX(operand)));
+        table[0xb9] = (is, am, operand) -> is.lda(am.readIndexed(am.absoluteIndexY(operand)));
+        table[0xa1] = (is, am, operand) -> is.lda(am.read(am.indexedIndirect(operand)));
+        table[0xb1] = (is, am, operand) -> is.lda(am.readIndexed(am.indirectIndexed(operand)));
+
+        table[0xa2] = (is, am, operand) -> is.ldx((byte) operand);
+        table[0xa6] = (is, am, operand) -> is.ldx(am.read(operand));
+        table[0xb6] = (is, am, operand) -> is.ldx(am.read(am.zeroPageIndexY(operand)));
+        table[0xae] = (is, am, operand) -> is.ldx(am.read(operand));
+        table[0xbe] = (is, am, operand) -> is.ldx(am.readIndexed(am.absoluteIndexY(operand)));
+
+        table[0xa0] = (is, am, operand) -> is.ldy((byte) operand);
+        table[0xa4] = (is, am, operand) -> is.ldy(am.read(operand));
+        table[0xb4] = (is, am, operand) -> is.ldy(am.read(am.zeroPageIndexX(operand)));
+        table[0xac] = (is, am, operand) -> is.ldy(am.read(operand));
+        table[0xbc] = (is, am, operand) -> is.ldy(am.readIndexed(am.absoluteIndexX(operand)));
+
+        table[0x4a] = (is, am, operand) -> is.lsr();
+        table[0x46] = (is, am, operand) -> is.lsr(operand);
+        table[0x56] = (is, am, operand) -> is.lsr(am.zeroPageIndexX(operand));
+        table[0x4e] = (is, am, operand) -> is.lsr(operand);
+        table[0x5e] = (is, am, operand) -> is.lsr(am.absoluteIndexX(operand));
+
+        table[0xea] = DECODED_NOP;
+
+        table[0x09] = (is, am, operand) -> is.ora((byte) operand);
+        table[0x05] = (is, am, operand) -> is.ora(am.read(operand));
+        table[0x15] = (is, am, operand) -> is.ora(am.read(am.zeroPageIndexX(operand)));
+        table[0x0d] = (is, am, operand) -> is.ora(am.read(operand));
+        table[0x1d] = (is, am, operand) -> is.ora(am.readIndexed(am.absoluteIndexX(operand)));
+        table[0x19] = (is, am, operand) -> is.ora(am.readIndexed(am.absoluteIndexY(operand)));
+        table[0x01] = (is, am, operand) -> is.ora(am.read(am.indexedIndirect(operand)));
+        table[0x11] = (is, am, operand) -> is.ora(am.readIndexed(am.indirectIndexed(operand)));
+
+        table[0x48] = (is, am, operand) -> is.pha();
+
+        table[0x08] = (is, am, operand) -> is.php();
+
+        table[0x68] = (is, am, operand) -> is.pla();
+
+        table[0x28] = (is, am, operand) -> is.plp();
+
+        table[0x2a] = (is, am, operand) -> is.rol();
+        table[0x26] = (is, am, operand) -> is.rol(operand);
+        table[0x36] = (is, am, operand) -> is.rol(am.zeroPageIndexX(operand));
+        table[0x2e] = (is, am, operand) -> is.rol(operand);
+        table[0x3e] = (is, am, operand) -> is.rol(am.absoluteIndexX(operand));
+
+        table[0x6a] = (is, am, operand) -> is.ror();
+        table[0x66] = (is, am, operand) -> is.ror(operand);
+        table[0x76] = (is, am, operand) -> is.ror(am.zeroPageIndexX(operand));
+        table[0x6e] = (is, am, operand) -> is.ror(operand);
+        table[0x7e] = (is, am, operand) -> is.ror(am.absoluteIndexX(operand));
+
+        table[0x40] = (is, am, operand) -> is.rti();
+
+        table[0x60] = (is, am, operand) -> is.rts();
+
+        table[0xe9] = (is, am, operand) -> is.sbc((byte) operand);
+        table[0xe5] = (is, am, operand) -> is.sbc(am.read(operand));
+        table[0xf5] = (is, am, operand) -> is.sbc(am.read(am.zeroPageIndexX(operand)));
+        table[0xed] = (is, am, operand) -> is.sbc(am.read(operand));
+        table[0xfd] = (is, am, operand) -> is.sbc(am.readIndexed(am.absoluteIndexX(operand)));
+        table[0xf9] = (is, am, operand) -> is.sbc(am.readIndexed(am.absoluteIndexY(operand)));
+        table[0xe1] = (is, am, operand) -> is.sbc(am.read(am.indexedIndirect(operand)));
+        table[0xf1] = (is, am, operand) -> is.sbc(am.readIndexed(am.indirectIndexed(operand)));
+
+        table[0x38] = (is, am, operand) -> is.sec();
+
+        table[0xf8] = (is, am, operand) -> is.sed();
+
+        table[0x78] = (is, am, operand) -> is.sei();
+
+        table[0x85] = (is, am, operand) -> is.sta(operand);
+        table[0x95] = (is, am, operand) -> is.sta(am.zeroPageIndexX(operand));
+        table[0x8d] = (is, am, operand) -> is.sta(operand);
+        table[0x9d] = (is, am, operand) -> is.sta(am.absoluteIndexX(operand));
+        table[0x99] = (is, am, operand) -> is.sta(am.absoluteIndexY(operand));
+        table[0x81] = (is, am, operand) -> is.sta(am.indexedIndirect(operand));
+        table[0x91] = (is, am, operand) -> is.sta(am.indirectIndexed(operand));
+
+        table[0x86] = (is, am, operand) -> is.stx(operand);
+        table[0x96] = (is, am, operand) -> is.stx(am.zeroPageIndexY(operand));
+        table[0x8e] = (is, am, operand) -> is.stx(operand);
+
+        table[0x84] = (is, am, operand) -> is.sty(operand);
+        table[0x94] = (is, am, operand) -> is.sty(am.zeroPageIndexX(operand));
+        table[0x8c] = (is, am, operand) -> is.sty(operand);
+
+        table[0xaa] = (is, am, operand) -> is.tax();
+
+        table[0xa8] = (is, am, operand) -> is.tay();
+
+        table[0xba] = (is, am, operand) -> is.tsx();
+
+        table[0x8a] = (is, am, operand) -> is.txa();
+
+        table[0x9a] = (is, am, operand) -> is.txs();
+
+        table[0x98] = (is, am, operand) -> is.tya();
+
+        // not an official instruction, but needed to end the program in the simulation.
+        table[0x80] = (is, am, operand) -> is.ext();
+
+        return table;
+    }
+
+    /**
+     * Builds the addressing mode table from the op-code reference.
+     * @return array of 256 addressing modes, indexed by the unsigned op-code.
+     */
+    private static AddressingModes[] buildModes(){
+        AddressingModes[] modes = new AddressingModes[256];
+
+        // ext and every op-code that is not part of the instruction set have no operand.
+        Arrays.fill(modes, AddressingModes.IMPLIED);
+
+        for(Map<AddressingModes, Byte> opModes : OpToHex.reference.values()){
+            for(Map.Entry<AddressingModes, Byte> entry : opModes.entrySet()){
+                modes[entry.getValue() & 0xff] = entry.getKey();
+            }
+        }
+
+        return modes;
+    }
+
+    /**
+     * Builds the table of op-codes that end a block of straight-line code.<br>
+     * These are all the op-codes that can change the program counter.
+     * @return array of 256 booleans, indexed by the unsigned op-code.
+     */
+    private static boolean[] buildEndsBlock(){
+        boolean[] ends = new boolean[256];
+
+        // branches
+        for(int opCode : new int[]{0x10, 0x30, 0x50, 0x70, 0x90, 0xb0, 0xd0, 0xf0}){
+            ends[opCode] = true;
+        }
+
+        // brk, jsr, rti, jmp, rts, jmp indirect
+        for(int opCode : new int[]{0x00, 0x20, 0x40, 0x4c, 0x60, 0x6c}){
+            ends[opCode] = true;
+        }
+
+        // ext stops the program
+        ends[0x80] = true;
+
+        return ends;
+    }
+
+    /**
+     * Builds the mnemonic of every op-code.
+     * @return array of 256 names, indexed by the unsigned op-code.
+     */
+    private static String[] buildNames(){
+        String[] names = new String[256];
+        Arrays.fill(names, "???");
+
+        for(Map.Entry<OpCodes, Map<AddressingModes, Byte>> entry : OpToHex.reference.entrySet()){
+            for(Byte hex : entry.getValue().values()){
+                names[hex & 0xff] = entry.getKey().name();
+            }
+        }
+        names[0x80] = "EXT";
+
+        return names;
+    }
+
+    /**
+     * Builds the table of op-codes that write to memory.
+     * @return array of 256 booleans, indexed by the unsigned op-code.
+     */
+    private static boolean[] buildWritesMemory(){
+        boolean[] writes = new boolean[256];
+
+        int[] opCodes = {
+                // sta, stx, sty
+                0x85, 0x95, 0x8d, 0x9d, 0x99, 0x81, 0x91, 0x86, 0x96, 0x8e, 0x84, 0x94, 0x8c,
+                // asl, lsr, rol, ror on memory
+                0x06, 0x16, 0x0e, 0x1e, 0x46, 0x56, 0x4e, 0x5e, 0x26, 0x36, 0x2e, 0x3e, 0x66, 0x76, 0x6e, 0x7e,
+                // inc, dec
+                0xe6, 0xf6, 0xee, 0xfe, 0xc6, 0xd6, 0xce, 0xde,
+                // pha, php, brk, jsr
+                0x48, 0x08, 0x00, 0x20
+        };
+        for(int opCode : opCodes){
+            writes[opCode] = true;
+        }
+
+        return writes;
+    }
+
+    /**
+     * Returns the amount of operand bytes an addressing mode reads.
+     * @param mode addressing mode.
+     * @return 0, 1 or 2.
+     */
+    static int operandLength(AddressingModes mode){
+        return switch (mode) {
+            case IMMEDIATE, ZERO_PAGE, ZERO_PAGE_INDEXED_X, ZERO_PAGE_INDEXED_Y,
+                    INDEXED_INDIRECT, INDIRECT_INDEXED, RELATIVE -> 1;
+            case ABSOLUTE, ABSOLUTE_INDEXED_X, ABSOLUTE_INDEXED_Y, INDIRECT_ABSOLUTE -> 2;
+            default -> 0;
+        };
+    }
+}
@@ -0,0 +1,166 @@
+/*
+Copyright (c) 2023, Livio Conzett
+All rights reserved.
+
+This source code is licensed under the BSD-style license found in the
+LICENSE file in the root directory of this source tree.
+*/
+
+package tech.livio.java6502;
+
+/**
+ * The undo journal of reverse execution.<br>
+ * Keeps two ring buffers of primitives, allocated once: one with the address and the old value of every write to
+ * memory, and one with a mark of the registers, the counts and the position in the write ring before every block or
+ * instruction the run loop runs. To go back to any instruction, the writes are undone back to the last mark before
+ * it, the registers are set from the mark and the instructions from there on are run again one at a time.<br>
+ * When a ring is full, the oldest entries are overwritten, so the journal reaches back as far as its memory allows.
+ */
+class Journal {
+
+    // bytes of one mark and of one write. Half of the memory of the journal goes to each ring.
+    static final int MARK_BYTES = 4 * 8;
+    static final int WRITE_BYTES = 4;
+
+    private final Memory memory;
+    private final Registers registers;
+    private final Flags flags;
+
+    // a, x, y, sp, p and pc in one long, see pack()
+    private final long[] markCpu;
+    private final long[] markCycles;
+    private final long[] markInstructions;
+    // amount of writes recorded before the mark
+    private final long[] markWrites;
+    // address in the lower 16 bits, old value above
+    private final int[] writes;
+
+    // marks and writes recorded so far. The rings hold the newest ones.
+    private long markCount;
+    private long writeCount;
+    // false while writes are undone, so they are not recorded again.
+    private boolean recording;
+
+    /**
+     * Initialize the journal.
+     * @param memory memory with the registers.
+     * @param flags flags.
+     * @param bytes memory the rings take at most, at least {@link #MARK_BYTES} + {@link #WRITE_BYTES}.
+     */
+    Journal(Memory memory, Flags flags, int bytes){
+        if(bytes < MARK_BYTES + WRITE_BYTES) throw new IllegalArgumentException("The journal is too small.");
+        this.memory = memory;
+        this.registers = memory.getRegisters();
+        this.flags = flags;
+        int marks = bytes / 2 / MARK_BYTES;
+        this.markCpu = new long[marks];
+        this.markCycles = new long[marks];
+        this.markInstructions = new long[marks];
+        this.markWrites = new long[marks];
+        this.writes = new int[(bytes - marks * MARK_BYTES) / WRITE_BYTES];
+        this.recording = true;
+    }
+
+    /**
+     * Forgets everything recorded, e.g. because memory has been changed from outside the program.
+     */
+    void clear(){
+        this.markCount = 0;
+        this.writeCount = 0;
+    }
+
+    /**
+     * Records the state before the next block or instruction.
+     * @param instructionCount instructions run so far.
+     */
+    void mark(long instructionCount){
+        int i = (int) (this.markCount % this.markCpu.length);
+        Registers r = this.registers;
+        this.markCpu[i] = r.a | r.x << 8 | r.y << 16 | (long) r.sp << 24
+                | (long) (this.flags.getWholeRegister() & 0xff) << 32 | (long) r.pc << 40;
+        this.markCycles[i] = r.cycles;
+        this.markInstructions[i] = instructionCount;
+        this.markWrites[i] = this.writeCount;
+        this.markCount++;
+    }
+
+    /**
+     * Records a write to memory, before it happens.
+     * @param address address, 0x0000 - 0xffff.
+     * @param oldValue value at the address before the write, 0x00 - 0xff.
+     */
+    void recordWrite(int address, int oldValue){
+        if(!this.recording) return;
+        this.writes[(int) (this.writeCount % this.writes.length)] = address | oldValue << 16;
+        this.writeCount++;
+    }
+
+    /**
+     * Get the amount of writes recorded so far.
+     * @return amount of writes.
+     */
+    long getWriteCount(){
+        return this.writeCount;
+    }
+
+    /**
+     * Finds the last mark at or before an instruction, if the journal still reaches back to it.
+     * @param instructionCount instruction count to go back to.
+     * @return number of the mark, or -1 if the journal does not reach back that far.
+     */
+    long find(long instructionCount){
+        long oldest = Math.max(0, this.markCount - this.markCpu.length);
+        for(long mark = this.markCount - 1; mark >= oldest; mark--){
+            int i = (int) (mark % this.markCpu.length);
+            if(this.markInstructions[i] <= instructionCount){
+                // the writes since the mark have to be in the ring to be undone.
+                return this.writeCount - this.markWrites[i] <= this.writes.length ? mark : -1;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Undoes the writes since a mark and sets the registers to the mark. The mark and everything after it is
+     * forgotten.
+     * @param mark number of the mark, from {@link #find(long)}.
+     * @return instruction count of the mark.
+     */
+    long restore(long mark){
+        int i = (int) (mark % this.markCpu.length);
+
+        this.recording = false;
+        while(this.writeCount > this.markWrites[i]){
+            this.writeCount--;
+            int write = this.writes[(int) (this.writeCount % this.writes.length)];
+            this.memory.write(write & 0xffff, write >>> 16);
+        }
+        this.recording = true;
+
+        long cpu = this.markCpu[i];
+        this.registers.a = (int) cpu & 0xff;
+        this.registers.x = (int) (cpu >>> 8) & 0xff;
+        this.registers.y = (int) (cpu >>> 16) & 0xff;
+        this.registers.sp = (int) (cpu >>> 24) & 0xff;
+        this.flags.setWholeRegister((byte) (cpu >>> 32));
+        this.registers.pc = (int) (cpu >>> 40) & 0xffff;
+        this.registers.cycles = this.markCycles[i];
+        this.markCount = mark;
+        return this.markInstructions[i];
+    }
+
+    /**
+     * Checks if one of a range of recorded writes went to an address.<br>
+     * Writes that have been undone stay readable until they are overwritten by new ones.
+     * @param from number of the first write.
+     * @param to number of the write after the last.
+     * @param address address, 0x0000 - 0xffff.
+     * @return true if one of the writes went to the address.
+     */
+    boolean wrote(long from, long to, int address){
+        for(long write = from; write < to; write++){
+            if((this.writes[(int) (write % this.writes.length)] & 0xffff) == address) return true;
+        }
+        return false;
+    }
+}
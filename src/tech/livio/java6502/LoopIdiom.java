@@ -0,0 +1,263 @@
+/*
+Copyright (c) 2023, Livio Conzett
+All rights reserved.
+
+This source code is licensed under the BSD-style license found in the
+LICENSE file in the root directory of this source tree.
+*/
+
+package tech.livio.java6502;
+
+/**
+ * A memory fill or memory copy loop that can be run as one bulk operation on the memory.<br>
+ * The recognised shapes are a loop that branches back to its first instruction:
+ * <pre>
+ *     fill:            copy:
+ *     sta dst,X        lda src,X
+ *     inx / dex        sta dst,X
+ *     bne fill         inx / dex
+ *                      bne copy
+ * </pre>
+ * The same with the Y register, with <code>abs,Y</code> or <code>(zp),Y</code>. The loop runs until the index register
+ * is 0. Registers, flags and cycles end up the same as running the loop one instruction at a time.
+ */
+class LoopIdiom {
+
+    private final boolean copy;
+    private final boolean indexX;
+    // +1 for inx / iny, -1 for dex / dey.
+    private final int step;
+    // addressing mode and operand of the lda. Unused for a fill.
+    private final AddressingModes sourceMode;
+    private final int source;
+    private final AddressingModes destinationMode;
+    private final int destination;
+    // address of the first op-code of the loop and of the instruction after the loop.
+    private final int start;
+    private final int end;
+    // extra cycles of the taken bne. 1, or 2 if the loop starts in another page than it ends.
+    private final int branchPenalty;
+
+    /**
+     * Initialize the loop.
+     * @param copy true for a copy, false for a fill.
+     * @param indexX true if the loop counts with X, false for Y.
+     * @param step +1 or -1.
+     * @param sourceMode addressing mode of the lda.
+     * @param source operand of the lda.
+     * @param destinationMode addressing mode of the sta.
+     * @param destination operand of the sta.
+     * @param start address of the first op-code.
+     * @param end address after the bne.
+     */
+    private LoopIdiom(boolean copy, boolean indexX, int step, AddressingModes sourceMode, int source,
+                      AddressingModes destinationMode, int destination, int start, int end){
+        this.copy = copy;
+        this.indexX = indexX;
+        this.step = step;
+        this.sourceMode = sourceMode;
+        this.source = source;
+        this.destinationMode = destinationMode;
+        this.destination = destination;
+        this.start = start;
+        this.end = end;
+        this.branchPenalty = ((start ^ end) & 0xff00) == 0 ? 1 : 2;
+    }
+
+    /**
+     * Checks if the code at an address is a fill or a copy loop.
+     * @param memory memory to read the code from.
+     * @param start address of the first op-code.
+     * @return the loop, or null if the code is not one of the shapes.
+     */
+    static LoopIdiom recognise(Memory memory, int start){
+        int address = start;
+
+        boolean copy = false;
+        AddressingModes sourceMode = null;
+        int source = 0;
+
+        int opCode = memory.read(address);
+        if(opCode == 0xbd || opCode == 0xb9 || opCode == 0xb1){
+            copy = true;
+            sourceMode = InstructionTable.MODES[opCode];
+            source = operand(memory, address, sourceMode);
+            address += 1 + InstructionTable.operandLength(sourceMode);
+            opCode = memory.read(address);
+        }
+
+        if(opCode != 0x9d && opCode != 0x99 && opCode != 0x91) return null;
+        AddressingModes destinationMode = InstructionTable.MODES[opCode];
+        int destination = operand(memory, address, destinationMode);
+        address += 1 + InstructionTable.operandLength(destinationMode);
+
+        boolean indexX = destinationMode == AddressingModes.ABSOLUTE_INDEXED_X;
+        if(copy && (sourceMode == AddressingModes.ABSOLUTE_INDEXED_X) != indexX) return null;
+
+        int step;
+        opCode = memory.read(address);
+        if(opCode == (indexX ? 0xe8 : 0xc8)){
+            step = 1;
+        } else if(opCode == (indexX ? 0xca : 0x88)){
+            step = -1;
+        } else {
+            return null;
+        }
+        address++;
+
+        // bne back to the start. Same target as AddressingMode.relative()
+        if(memory.read(address) != 0xd0) return null;
+        int target = (address + 1 + (byte) memory.read(address + 1)) & 0xffff;
+        address += 2;
+        if(target != start || address > 0xffff) return null;
+
+        return new LoopIdiom(copy, indexX, step, sourceMode, source, destinationMode, destination, start, address);
+    }
+
+    /**
+     * Reads the operand of an instruction.
+     * @param memory memory to read from.
+     * @param address address of the op-code.
+     * @param mode addressing mode, absolute indexed or indirect indexed.
+     * @return address for absolute indexed, zero page address of the pointer for indirect indexed.
+     */
+    private static int operand(Memory memory, int address, AddressingModes mode){
+        if(mode == AddressingModes.INDIRECT_INDEXED) return memory.read(address + 1);
+        return memory.read(address + 1) | (memory.read(address + 2) << 8);
+    }
+
+    /**
+     * Get the amount of rounds the loop runs from the current index register.
+     * @param registers registers.
+     * @return 1 to 256.
+     */
+    int rounds(Registers registers){
+        int index = this.indexX ? registers.x : registers.y;
+        if(index == 0) return 256;
+        return this.step > 0 ? 256 - index : index;
+    }
+
+    /**
+     * Runs the loop as a bulk operation if that gives the same result as running it one instruction at a time.<br>
+     * Adds the extra cycles for page crossings and taken branches. The base cycles of every round are left to the
+     * caller.
+     * @param registers registers.
+     * @param flags flags.
+     * @param memory memory.
+     * @return false if the loop could write to its own code, its pointers or its source, wraps around the end of
+     * memory or touches a device or a mirror. Nothing has been changed then.
+     */
+    boolean run(Registers registers, Flags flags, Memory memory){
+        int index = this.indexX ? registers.x : registers.y;
+
+        // the indices the loop runs through, in some order: from the index up to 255, or from the index down to 1.
+        int low;
+        int high;
+        if(index == 0){
+            low = 0;
+            high = 255;
+        } else if(this.step > 0){
+            low = index;
+            high = 255;
+        } else {
+            low = 1;
+            high = index;
+        }
+        int length = high - low + 1;
+
+        // a device would see other accesses than the ones of the loop.
+        if(!this.plainPointer(memory, this.destinationMode, this.destination)) return false;
+        int destinationBase = this.base(memory, this.destinationMode, this.destination);
+        if(destinationBase + high > 0xffff) return false;
+        if(!memory.isPlain(destinationBase + low, length)) return false;
+        int first = destinationBase + low;
+
+        // the loop would change its own code or the pointer it writes through.
+        if(overlaps(first, length, this.start, this.end - this.start)) return false;
+        if(this.destinationMode == AddressingModes.INDIRECT_INDEXED && overlaps(first, length, this.destination, 2)){
+            return false;
+        }
+
+        if(this.copy){
+            if(!this.plainPointer(memory, this.sourceMode, this.source)) return false;
+            int sourceBase = this.base(memory, this.sourceMode, this.source);
+            if(sourceBase + high > 0xffff) return false;
+            if(!memory.isPlain(sourceBase + low, length)) return false;
+            // the order the bytes are copied in would matter.
+            if(overlaps(first, length, sourceBase + low, length)) return false;
+            if(this.sourceMode == AddressingModes.INDIRECT_INDEXED && overlaps(first, length, this.source, 2)){
+                return false;
+            }
+
+            memory.copy(sourceBase + low, first, length);
+
+            // the last round loads the byte at index 255 counting up, at index 1 counting down.
+            registers.a = memory.read(sourceBase + (this.step > 0 ? 255 : 1));
+            registers.cycles += pageCrossings(sourceBase, low, high);
+        } else {
+            memory.fill(first, length, registers.a);
+        }
+
+        int rounds = this.rounds(registers);
+        registers.cycles += (long) (rounds - 1) * this.branchPenalty;
+
+        if(this.indexX){
+            registers.x = 0;
+        } else {
+            registers.y = 0;
+        }
+        // the last inx / dex / iny / dey sets the flags for 0.
+        flags.setZeroNegative((byte) 0);
+        registers.pc = this.end;
+
+        return true;
+    }
+
+    /**
+     * Checks if the pointer of an indirect indexed instruction lies in plain RAM.
+     * @param memory memory.
+     * @param mode absolute indexed or indirect indexed.
+     * @param operand operand of the instruction.
+     * @return true if there is no pointer or it can be read without side effects.
+     */
+    private boolean plainPointer(Memory memory, AddressingModes mode, int operand){
+        return mode != AddressingModes.INDIRECT_INDEXED || memory.isPlain(operand, 2);
+    }
+
+    /**
+     * Get the address the index gets added to.
+     * @param memory memory to read the pointer from.
+     * @param mode absolute indexed or indirect indexed.
+     * @param operand operand of the instruction.
+     * @return base address.
+     */
+    private int base(Memory memory, AddressingModes mode, int operand){
+        if(mode != AddressingModes.INDIRECT_INDEXED) return operand;
+        // same as AddressingMode.indirectIndexed(int)
+        return memory.read(operand) | (memory.read(operand + 1) << 8);
+    }
+
+    /**
+     * Counts the indices for which the base plus the index lies in the next page.
+     * @param base base address.
+     * @param low lowest index.
+     * @param high highest index.
+     * @return amount of page crossings.
+     */
+    private static int pageCrossings(int base, int low, int high){
+        int firstCrossing = 256 - (base & 0xff);
+        return Math.max(0, high - Math.max(low, firstCrossing) + 1);
+    }
+
+    /**
+     * Checks if two ranges of addresses overlap.
+     * @param first start of the first range.
+     * @param firstLength length of the first range.
+     * @param second start of the second range.
+     * @param secondLength length of the second range.
+     * @return true if they have an address in common.
+     */
+    private static boolean overlaps(int first, int firstLength, int second, int secondLength){
+        return first < second + secondLength && second < first + firstLength;
+    }
+}
@@ -0,0 +1,171 @@
+/*
+Copyright (c) 2023, Livio Conzett
+All rights reserved.
+
+This source code is licensed under the BSD-style license found in the
+LICENSE file in the root directory of this source tree.
+*/
+
+package tech.livio.java6502;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * Saves the whole state of a simulator in a small binary format and loads it again.<br>
+ * The format, all numbers big endian:
+ * <pre>
+ *     int   magic number "6502"
+ *     short version, {@link #VERSION}
+ *     byte  a, x, y, sp, p
+ *     short pc
+ *     long  clock cycles
+ *     long  instructions
+ *     byte  run flag, interrupt and non-maskable interrupt, bits of {@link Control#getStatus()}
+ *     bytes memory, see {@link Memory#savePages(ByteBuffer)}. Pages of 0 are left out.
+ * </pre>
+ * One buffer is kept for all saves and loads, so a simulator can save its state very often without making garbage.<br>
+ * Also takes the {@link Checkpoint}s of the simulator, which stay in memory and only hold what has changed.
+ */
+class MachineState {
+
+    // "6502" in ASCII
+    static final int MAGIC = 0x36353032;
+    static final short VERSION = 1;
+    // bytes before the memory.
+    static final int HEADER_BYTES = 4 + 2 + 5 + 2 + 8 + 8 + 1;
+    // bitmap of the pages that follow.
+    static final int BITMAP_BYTES = 0x20;
+
+    private final Memory memory;
+    private final Registers registers;
+    private final Flags flags;
+    private final Control control;
+    private final ProgramRunner programRunner;
+    private final ByteBuffer buffer;
+    // checkpoint the memory has been compared to since. null before the first one.
+    private Checkpoint lastCheckpoint;
+
+    /**
+     * Initialize the state of a simulator.
+     * @param memory memory, with the registers.
+     * @param flags flags.
+     * @param control control with the run flag and the interrupt lines.
+     * @param programRunner runner that counts the instructions.
+     */
+    MachineState(Memory memory, Flags flags, Control control, ProgramRunner programRunner){
+        this.memory = memory;
+        this.registers = memory.getRegisters();
+        this.flags = flags;
+        this.control = control;
+        this.programRunner = programRunner;
+        this.buffer = ByteBuffer.allocateDirect(HEADER_BYTES + BITMAP_BYTES + 0x10000);
+    }
+
+    /**
+     * Writes the state to a channel.
+     * @param channel channel to write to.
+     * @throws IOException if the channel fails.
+     */
+    void save(WritableByteChannel channel) throws IOException{
+        ByteBuffer buffer = this.buffer;
+        buffer.clear();
+        buffer.putInt(MAGIC);
+        buffer.putShort(VERSION);
+        buffer.put((byte) this.registers.a);
+        buffer.put((byte) this.registers.x);
+        buffer.put((byte) this.registers.y);
+        buffer.put((byte) this.registers.sp);
+        buffer.put(this.flags.getWholeRegister());
+        buffer.putShort((short) this.registers.pc);
+        buffer.putLong(this.registers.cycles);
+        buffer.putLong(this.programRunner.getInstructionCount());
+        int status = this.control.getStatus() & (Control.RUN | Control.INTERRUPT | Control.NON_MASKABLE_INTERRUPT);
+        buffer.put((byte) status);
+        this.memory.savePages(buffer);
+
+        buffer.flip();
+        while(buffer.hasRemaining()){
+            channel.write(buffer);
+        }
+    }
+
+    /**
+     * Reads a state written by {@link #save(WritableByteChannel)} and puts the simulator in it.<br>
+     * Reads exactly the bytes of the state, so more can follow in the channel. Nothing is changed if it fails.
+     * @param channel channel to read from.
+     * @throws IOException if the channel fails, ends early or does not hold a state of this version.
+     */
+    void load(ReadableByteChannel channel) throws IOException{
+        ByteBuffer buffer = this.buffer;
+        buffer.clear();
+        this.read(channel, HEADER_BYTES + BITMAP_BYTES);
+        if(buffer.getInt(0) != MAGIC) throw new IOException("Not a saved state of a 6502 simulator.");
+        if(buffer.getShort(4) != VERSION){
+            throw new IOException("Saved state has version " + buffer.getShort(4) + ", expected " + VERSION + ".");
+        }
+        buffer.position(HEADER_BYTES);
+        int pages = Memory.countPages(buffer);
+        buffer.position(HEADER_BYTES + BITMAP_BYTES);
+        this.read(channel, pages << 8);
+
+        buffer.flip();
+        buffer.position(6);
+        this.registers.a = buffer.get() & 0xff;
+        this.registers.x = buffer.get() & 0xff;
+        this.registers.y = buffer.get() & 0xff;
+        this.registers.sp = buffer.get() & 0xff;
+        this.flags.setWholeRegister(buffer.get());
+        this.registers.pc = buffer.getShort() & 0xffff;
+        this.registers.cycles = buffer.getLong();
+        this.programRunner.setInstructionCount(buffer.getLong());
+        this.control.setStatus(buffer.get());
+        this.memory.loadPages(buffer);
+    }
+
+    /**
+     * Takes a checkpoint with the pages changed since the last one. The first one takes every page.
+     * @return checkpoint.
+     */
+    Checkpoint checkpoint(){
+        byte[][] pages = this.memory.takeDirtyPages(this.lastCheckpoint == null);
+        int status = this.control.getStatus() & (Control.RUN | Control.INTERRUPT | Control.NON_MASKABLE_INTERRUPT);
+        this.lastCheckpoint = new Checkpoint(this.lastCheckpoint, pages, this.registers, this.flags.getWholeRegister(),
+                this.programRunner.getInstructionCount(), status);
+        return this.lastCheckpoint;
+    }
+
+    /**
+     * Puts the simulator back into a checkpoint. The next checkpoint holds the changes to this one.
+     * @param checkpoint checkpoint, of this or any other simulator.
+     */
+    void restore(Checkpoint checkpoint){
+        this.memory.restorePages(checkpoint.resolvePages());
+        this.registers.a = checkpoint.a;
+        this.registers.x = checkpoint.x;
+        this.registers.y = checkpoint.y;
+        this.registers.sp = checkpoint.sp;
+        this.flags.setWholeRegister(checkpoint.p);
+        this.registers.pc = checkpoint.pc;
+        this.registers.cycles = checkpoint.cycles;
+        this.programRunner.setInstructionCount(checkpoint.instructions);
+        this.control.setStatus(checkpoint.status);
+        this.lastCheckpoint = checkpoint;
+    }
+
+    /**
+     * Reads bytes from a channel into the buffer, at its position.
+     * @param channel channel to read from.
+     * @param length amount of bytes.
+     * @throws IOException if the channel fails or ends first.
+     */
+    private void read(ReadableByteChannel channel, int length) throws IOException{
+        this.buffer.limit(this.buffer.position() + length);
+        while(this.buffer.hasRemaining()){
+            if(channel.read(this.buffer) < 0) throw new EOFException("Saved state ends early.");
+        }
+    }
+}
@@ -0,0 +1,96 @@
+/*
+Copyright (c) 2023, Livio Conzett
+All rights reserved.
+
+This source code is licensed under the BSD-style license found in the
+LICENSE file in the root directory of this source tree.
+*/
+
+package tech.livio.java6502;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A file of a {@link TraceIndex}, mapped into memory in chunks of {@link #CHUNK_BYTES}, so it can be larger than one
+ * buffer can map.<br>
+ * Values are read and written at a byte offset and must not cross a chunk, which holds as long as every value sits at
+ * an offset that is a multiple of its size.
+ */
+class MappedColumn {
+
+    static final int CHUNK_BITS = 30;
+    static final long CHUNK_BYTES = 1L << CHUNK_BITS;
+    private static final long CHUNK_MASK = CHUNK_BYTES - 1;
+
+    private final MappedByteBuffer[] chunks;
+
+    /**
+     * Maps a file.
+     * @param file path of the file.
+     * @param size size to map, for writing. -1 to map the file as it is, read only.
+     * @throws IOException if the file can not be opened or mapped.
+     */
+    MappedColumn(Path file, long size) throws IOException{
+        boolean write = size >= 0;
+        try(FileChannel channel = write
+                ? FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)
+                : FileChannel.open(file, StandardOpenOption.READ)){
+            long length = write ? size : channel.size();
+            this.chunks = new MappedByteBuffer[(int) ((length + CHUNK_MASK) >>> CHUNK_BITS)];
+            FileChannel.MapMode mode = write ? FileChannel.MapMode.READ_WRITE : FileChannel.MapMode.READ_ONLY;
+            for(int i = 0; i < this.chunks.length; i++){
+                long start = (long) i << CHUNK_BITS;
+                this.chunks[i] = channel.map(mode, start, Math.min(CHUNK_BYTES, length - start));
+            }
+        }
+    }
+
+    /**
+     * Read a byte.
+     * @param offset byte offset.
+     * @return unsigned byte.
+     */
+    int get(long offset){
+        return this.chunks[(int) (offset >>> CHUNK_BITS)].get((int) (offset & CHUNK_MASK)) & 0xff;
+    }
+
+    /**
+     * Read a short.
+     * @param offset byte offset, a multiple of 2.
+     * @return unsigned short.
+     */
+    int getShort(long offset){
+        return this.chunks[(int) (offset >>> CHUNK_BITS)].getShort((int) (offset & CHUNK_MASK)) & 0xffff;
+    }
+
+    /**
+     * Read a long.
+     * @param offset byte offset, a multiple of 8.
+     * @return long.
+     */
+    long getLong(long offset){
+        return this.chunks[(int) (offset >>> CHUNK_BITS)].getLong((int) (offset & CHUNK_MASK));
+    }
+
+    /**
+     * Write a long.
+     * @param offset byte offset, a multiple of 8.
+     * @param value long.
+     */
+    void putLong(long offset, long value){
+        this.chunks[(int) (offset >>> CHUNK_BITS)].putLong((int) (offset & CHUNK_MASK), value);
+    }
+
+    /**
+     * Make sure everything written is in the file.
+     */
+    void force(){
+        for(MappedByteBuffer chunk : this.chunks){
+            chunk.force();
+        }
+    }
+}
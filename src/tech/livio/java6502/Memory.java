@@ -8,14 +8,26 @@ LICENSE file in the root directory of this source tree.
 
 package tech.livio.java6502;
 
-import tech.livio.java6502.Util;
-
+import java.nio.ByteBuffer;
 import java.util.Arrays;
 
 /**
  * Class that handles all the memory related things.<br>
  * Memory in entire address range.<br>
- * The three registers.<br>
+ * The memory is held in 256 pages of 256 bytes. A page is either owned by this memory or shared with other memories,
+ * like the pages of a {@link MemoryImage} or the page of zeros every memory starts with. A shared page is copied the
+ * first time it gets written to, so a memory only holds the pages it has written itself.<br>
+ * The pages form the page table of the bus. A page can belong to a {@link Device} instead, which then handles every read
+ * and write of it, or be a mirror of another page. Reads of a page with bytes and writes to an owned page of plain RAM
+ * go straight to the array. Everything else takes a detour through {@link #writeSlow(int, int)} or
+ * {@link #readDevice(int)}.<br>
+ * The memory can be kept in a {@link MemoryFile}. The pages stay on the heap, so reads are as fast as without, and
+ * every write goes the slow way to also write the file. The same goes for the {@link Journal} of reverse execution,
+ * which gets the old value of every write.<br>
+ * For checkpoints, the memory keeps a bitmap of the pages changed since the last one. Taking a checkpoint hands the
+ * pages over to it and makes them shared, so the first write to a page after that copies it and marks it dirty on the
+ * slow path, and the fast path stays as it is.<br>
+ * The registers live in the {@link Registers} object, the accessors here are kept for convenience.<br>
  * <table border="1">
  * <tr>
  *     <td> address range </td> <td> what is there</td>
@@ -35,24 +47,66 @@ import java.util.Arrays;
  */
 class Memory {
 
-    // entire addressable memory space 2^16
-    private final byte[] memoryArray;
+    // entire addressable memory space 2^16, in pages of 256 bytes. null for the pages of a device.
+    private final byte[][] pages;
+    // true for the pages this memory owns. Any other page is shared and gets copied before the first write.
+    private final boolean[] ownPages;
+    // true for the pages of plain RAM, which have no device, are no mirror and have none.
+    private final boolean[] plainPages;
+    // true for the pages that are plain and owned. Only these are written to straight away.
+    private final boolean[] writablePages;
+    // device of every page. null for memory.
+    private final Device[] devices;
+    // page every page is a mirror of. The page itself if it is no mirror.
+    private final int[] mirrors;
+    // for every page that is no mirror: the page and all its mirrors.
+    private final int[][] aliases;
+    // true for the pages that have changed since the last checkpoint. Only set for pages that are no mirror.
+    private final boolean[] dirtyPages;
 
     // registers
-    private byte registerA;
-    private byte registerX;
-    private byte registerY;
+    private final Registers registers;
+
+    // predecoded code that has to be invalidated on writes. null if the block cache is off.
+    private BlockCache blockCache;
+    // file every write goes through to. null if the memory is only on the heap.
+    private MemoryFile file;
+    // journal that gets the old value of every write. null if reverse execution is off.
+    private Journal journal;
+    // compact trace that gets every value read from a device. null if none is recorded.
+    private CompactTrace compactTrace;
 
-    // counters
-    private short programCounter;
+    // amount of writes so far. Used to prove that a loop does not change memory.
+    private long writeCount;
+    // amount of reads and writes of devices so far. A loop that talks to a device is never idle.
+    private long deviceAccessCount;
 
 
     /**
-     * Initialize the Memory.
+     * Initialize the Memory with its own registers.
      */
     Memory(){
+        this(new Registers());
+    }
+
+    /**
+     * Initialize the Memory.
+     * @param registers register file of the cpu.
+     */
+    Memory(Registers registers){
         // initialize the memory to the max range of a 16bit address system.
-        this.memoryArray = new byte[0x10000];
+        this.pages = new byte[0x100][];
+        this.ownPages = new boolean[0x100];
+        this.plainPages = new boolean[0x100];
+        this.writablePages = new boolean[0x100];
+        this.devices = new Device[0x100];
+        this.mirrors = new int[0x100];
+        this.aliases = new int[0x100][];
+        this.dirtyPages = new boolean[0x100];
+        for(int page = 0; page < this.mirrors.length; page++){
+            this.mirrors[page] = page;
+        }
+        this.registers = registers;
 
         // reset the rest.
         this.hardReset();
@@ -62,7 +116,14 @@ class Memory {
      * Reset everything. Including the loaded code.
      */
     void hardReset(){
-        Arrays.fill(this.memoryArray, (byte) 0x00);
+        for(int page = 0; page < this.pages.length; page++){
+            this.pages[page] = this.devices[page] == null ? MemoryImage.ZERO_PAGE : null;
+            this.ownPages[page] = false;
+        }
+        this.updatePageTable();
+        if(this.blockCache != null) this.blockCache.invalidateAll();
+        this.storeToFile(0x00, 0xff);
+        Arrays.fill(this.dirtyPages, true);
         this.reset();
     }
 
@@ -70,13 +131,565 @@ class Memory {
      * Resets the registers and programcounter
      */
     void reset(){
-        // program counter always starts at address 0xfffc
-        // that's where it gets the address to the start of the program.
-        this.programCounter = (short) 0xfffc;
+        this.registers.reset();
+    }
+
+    /**
+     * Get the register file the memory works with.
+     * @return registers of the cpu.
+     */
+    Registers getRegisters(){
+        return this.registers;
+    }
+
+    /**
+     * Set the block cache that has to be told about writes to memory.
+     * @param blockCache block cache, or null to turn the notification off.
+     */
+    void setBlockCache(BlockCache blockCache){
+        this.blockCache = blockCache;
+    }
 
-        this.registerA = 0;
-        this.registerX = 0;
-        this.registerY = 0;
+    /**
+     * Keep the memory in a file from now on. The memory gets the bytes of the file, except for the pages of devices,
+     * which are 0 in the file.<br>
+     * Counts as a write to every address.
+     * @param file file, or null to keep the memory on the heap only. The file used until now is written to the disk.
+     */
+    void setFile(MemoryFile file){
+        if(this.file != null) this.file.force();
+        this.file = file;
+        if(file != null){
+            for(int page = 0; page < this.pages.length; page++){
+                if(this.devices[page] != null || this.mirrors[page] != page) continue;
+                byte[] bytes = new byte[0x100];
+                file.readPage(page, bytes);
+                boolean zero = Arrays.equals(bytes, MemoryImage.ZERO_PAGE);
+                this.pages[page] = zero ? MemoryImage.ZERO_PAGE : bytes;
+                this.ownPages[page] = !zero;
+            }
+        }
+        this.updatePageTable();
+        this.rangeWritten(0, 0x10000);
+    }
+
+    /**
+     * Set the journal that gets the old value of every write of memory, so it can be undone.<br>
+     * While there is a journal, every write goes the slow way, and fill and copy write one byte at a time.
+     * @param journal journal, or null to turn journaling off.
+     */
+    void setJournal(Journal journal){
+        this.journal = journal;
+        this.updatePageTable();
+    }
+
+    /**
+     * Set the compact trace that records every value read from a device.
+     * @param compactTrace compact trace, or null to record none.
+     */
+    void setCompactTrace(CompactTrace compactTrace){
+        this.compactTrace = compactTrace;
+    }
+
+    /**
+     * Write the file the memory is kept in to the disk, if there is one.
+     */
+    void forceFile(){
+        if(this.file != null) this.file.force();
+    }
+
+    /**
+     * Read the byte at an address.<br>
+     * Only the lower 16 bits of the address are used.
+     * @param address Address to read.
+     * @return unsigned value of the byte at that address.
+     */
+    int read(int address){
+        byte[] page = this.pages[(address >>> 8) & 0xff];
+        if(page == null) return this.readDevice(address);
+        return page[address & 0xff] & 0xff;
+    }
+
+    /**
+     * Read the byte at an address without reading a device, e.g. to look at the program from outside.<br>
+     * Only the lower 16 bits of the address are used.
+     * @param address Address to read.
+     * @return unsigned value of the byte at that address, 0 in the pages of a device.
+     */
+    int peek(int address){
+        byte[] page = this.pages[(address >>> 8) & 0xff];
+        return page == null ? 0 : page[address & 0xff] & 0xff;
+    }
+
+    /**
+     * Reads from the device of an address.
+     * @param address address of a device page.
+     * @return unsigned value the device returned.
+     */
+    private int readDevice(int address){
+        int page = (address >>> 8) & 0xff;
+        this.deviceAccessCount++;
+        int value = this.devices[page].read((this.mirrors[page] << 8) | (address & 0xff)) & 0xff;
+        if(this.compactTrace != null) this.compactTrace.recordRead(value);
+        return value;
+    }
+
+    /**
+     * Write a byte to an address.<br>
+     * Only the lower 16 bits of the address and the lower 8 bits of the value are used.<br>
+     * Every write to memory has to go through here, so the block cache sees it.
+     * @param address Address to write to.
+     * @param value Value to write.
+     */
+    void write(int address, int value){
+        int page = (address >>> 8) & 0xff;
+        if(!this.writablePages[page]){
+            this.writeSlow(address, value);
+            return;
+        }
+        this.pages[page][address & 0xff] = (byte) value;
+        this.writeCount++;
+        if(this.blockCache != null) this.blockCache.written(address);
+    }
+
+    /**
+     * Writes to a page that is shared, mirrored, belongs to a device or is kept in a file.
+     * @param address address to write to.
+     * @param value value to write.
+     */
+    private void writeSlow(int address, int value){
+        int page = (address >>> 8) & 0xff;
+        int offset = address & 0xff;
+
+        if(this.devices[page] != null){
+            this.deviceAccessCount++;
+            this.devices[page].write((this.mirrors[page] << 8) | offset, value & 0xff);
+            return;
+        }
+
+        if(!this.ownPages[page]) this.copyPage(page);
+        if(this.journal != null) this.journal.recordWrite(address & 0xffff, this.pages[page][offset] & 0xff);
+        this.pages[page][offset] = (byte) value;
+        this.writeCount++;
+        if(this.plainPages[page]){
+            if(this.file != null) this.file.write(address, value);
+            if(this.blockCache != null) this.blockCache.written(address);
+        } else {
+            // every mirror shows the byte, and code can have been decoded from any of them.
+            for(int alias : this.aliases[this.mirrors[page]]){
+                int aliasAddress = (alias << 8) | offset;
+                if(this.file != null) this.file.write(aliasAddress, value);
+                if(this.blockCache != null) this.blockCache.written(aliasAddress);
+            }
+        }
+    }
+
+    /**
+     * Writes the same value to a range of addresses.<br>
+     * Does the same as writing every address, but in one go.
+     * @param address first address. The range must not wrap around the end of memory.
+     * @param length amount of addresses.
+     * @param value value to write.
+     */
+    void fill(int address, int length, int value){
+        if(this.journal != null || !this.isPlain(address, length)){
+            for(int i = 0; i < length; i++){
+                this.write(address + i, value);
+            }
+            return;
+        }
+
+        int done = 0;
+        while(done < length){
+            int at = address + done;
+            int amount = Math.min(length - done, 0x100 - (at & 0xff));
+            Arrays.fill(this.writablePage(at >>> 8), at & 0xff, (at & 0xff) + amount, (byte) value);
+            done += amount;
+        }
+        this.rangeWritten(address, length);
+    }
+
+    /**
+     * Copies a range of memory to another address.<br>
+     * Does the same as reading and writing every address, as long as the ranges do not overlap.
+     * @param source first address to copy from.
+     * @param destination first address to copy to.
+     * @param length amount of bytes. Neither range must wrap around the end of memory.
+     */
+    void copy(int source, int destination, int length){
+        if(this.journal != null || !this.isPlain(source, length) || !this.isPlain(destination, length)){
+            for(int i = 0; i < length; i++){
+                this.write(destination + i, this.read(source + i));
+            }
+            return;
+        }
+
+        int done = 0;
+        while(done < length){
+            int from = source + done;
+            int to = destination + done;
+            int amount = Math.min(length - done, Math.min(0x100 - (from & 0xff), 0x100 - (to & 0xff)));
+            System.arraycopy(this.pages[from >>> 8], from & 0xff, this.writablePage(to >>> 8), to & 0xff, amount);
+            done += amount;
+        }
+        this.rangeWritten(destination, length);
+    }
+
+    /**
+     * Checks if a range of addresses only lies in pages of plain RAM, which have no device and no mirror.
+     * @param address first address.
+     * @param length amount of addresses, at least 1. The range must not wrap around the end of memory.
+     * @return true if every page of the range is plain RAM.
+     */
+    boolean isPlain(int address, int length){
+        for(int page = address >>> 8; page <= (address + length - 1) >>> 8; page++){
+            if(!this.plainPages[page]) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Checks if a range of addresses touches a page of a device.
+     * @param address first address.
+     * @param length amount of addresses, at least 1. Wraps around the end of memory.
+     * @return true if a device handles one of the addresses.
+     */
+    boolean hasDevice(int address, int length){
+        for(int i = 0; i < length; i += 0x100){
+            if(this.devices[((address + i) >>> 8) & 0xff] != null) return true;
+        }
+        return this.devices[((address + length - 1) >>> 8) & 0xff] != null;
+    }
+
+    /**
+     * Get a page of plain RAM to write to. Copies it first if it is shared.
+     * @param page number of the page.
+     * @return page owned by this memory.
+     */
+    private byte[] writablePage(int page){
+        if(!this.ownPages[page]) this.copyPage(page);
+        return this.pages[page];
+    }
+
+    /**
+     * Replaces a shared page, and all its mirrors, with a copy that this memory owns.
+     * @param page number of the page.
+     */
+    private void copyPage(int page){
+        int target = this.mirrors[page];
+        this.pages[target] = this.pages[target].clone();
+        this.ownPages[target] = true;
+        this.dirtyPages[target] = true;
+        if(this.plainPages[target]){
+            this.writablePages[target] = this.file == null && this.journal == null;
+        } else {
+            this.updatePageTable();
+        }
+    }
+
+    /**
+     * Get the amount of pages this memory owns, because it has written to them. Mirrors are not counted.
+     * @return 0 to 256.
+     */
+    int getOwnPageCount(){
+        int count = 0;
+        for(int page = 0; page < this.ownPages.length; page++){
+            if(this.ownPages[page] && this.mirrors[page] == page) count++;
+        }
+        return count;
+    }
+
+    /**
+     * Uses the pages of an image as the whole memory. The pages are shared, not copied.<br>
+     * The pages of devices and the mirrors stay. Counts as a write to every address.
+     * @param image image to use.
+     */
+    void load(MemoryImage image){
+        for(int page = 0; page < this.pages.length; page++){
+            if(this.devices[page] != null) continue;
+            this.pages[page] = image.getPage(page);
+            this.ownPages[page] = false;
+        }
+        this.updatePageTable();
+        this.rangeWritten(0, 0x10000);
+    }
+
+    /**
+     * Lets a device handle a range of pages. Replaces the memory or any other device there.
+     * @param device device, or null to put RAM with zeros back.
+     * @param firstPage first page of the device.
+     * @param lastPage last page of the device.
+     */
+    void attachDevice(Device device, int firstPage, int lastPage){
+        for(int page = firstPage; page <= lastPage; page++){
+            this.unmirror(page);
+            this.devices[page] = device;
+            this.pages[page] = device == null ? MemoryImage.ZERO_PAGE : null;
+            this.ownPages[page] = false;
+        }
+        this.updatePageTable();
+        if(this.blockCache != null) this.blockCache.invalidateAll();
+        // mirrors of the pages change with them.
+        this.storeToFile(0x00, 0xff);
+        Arrays.fill(this.dirtyPages, true);
+    }
+
+    /**
+     * Makes a range of pages show the pages of another range, memory or device.<br>
+     * Reading or writing a mirror is the same as reading or writing its page in the other range.
+     * @param firstPage first page of the mirror.
+     * @param lastPage last page of the mirror.
+     * @param targetPage first page of the range the mirror shows.
+     */
+    void mirror(int firstPage, int lastPage, int targetPage){
+        for(int page = firstPage; page <= lastPage; page++){
+            int target = this.mirrors[targetPage + page - firstPage];
+            if(target == page) continue;
+            this.unmirror(page);
+            // pages that showed this page show the target now.
+            for(int other = 0; other < this.mirrors.length; other++){
+                if(this.mirrors[other] == page) this.mirrors[other] = target;
+            }
+            this.mirrors[page] = target;
+        }
+        this.updatePageTable();
+        if(this.blockCache != null) this.blockCache.invalidateAll();
+        // mirrors of the pages change with them.
+        this.storeToFile(0x00, 0xff);
+        Arrays.fill(this.dirtyPages, true);
+    }
+
+    /**
+     * Get what every page shows, e.g. to set up the pages of another memory the same way.
+     * @return for every page -1 if a device handles it, otherwise the page it shows, itself if it is no mirror.
+     */
+    int[] getLayout(){
+        int[] layout = new int[this.pages.length];
+        for(int page = 0; page < layout.length; page++){
+            layout[page] = this.devices[page] != null ? -1 : this.mirrors[page];
+        }
+        return layout;
+    }
+
+    /**
+     * Turns a mirror back into a page of its own, with the bytes it showed.
+     * @param page page number.
+     */
+    private void unmirror(int page){
+        if(this.mirrors[page] == page) return;
+        this.mirrors[page] = page;
+        this.devices[page] = null;
+        this.ownPages[page] = false;
+        if(this.pages[page] == null) this.pages[page] = MemoryImage.ZERO_PAGE;
+    }
+
+    /**
+     * Brings the mirrors up to date with their pages and works out which pages are plain and writable.<br>
+     * Has to be called after the pages, devices or mirrors have changed.
+     */
+    private void updatePageTable(){
+        Arrays.fill(this.plainPages, true);
+        for(int page = 0; page < this.pages.length; page++){
+            int target = this.mirrors[page];
+            if(target != page){
+                this.pages[page] = this.pages[target];
+                this.ownPages[page] = this.ownPages[target];
+                this.devices[page] = this.devices[target];
+                this.plainPages[page] = false;
+                this.plainPages[target] = false;
+            }
+            if(this.devices[page] != null) this.plainPages[page] = false;
+        }
+
+        int[] counts = new int[this.pages.length];
+        for(int page = 0; page < this.pages.length; page++){
+            this.writablePages[page] = this.plainPages[page] && this.ownPages[page] && this.file == null
+                    && this.journal == null;
+            counts[this.mirrors[page]]++;
+        }
+
+        Arrays.fill(this.aliases, null);
+        for(int page = 0; page < this.pages.length; page++){
+            int target = this.mirrors[page];
+            if(this.aliases[target] == null) this.aliases[target] = new int[counts[target]];
+            // counted down, so the pages end up in ascending order.
+            this.aliases[target][this.aliases[target].length - counts[target]--] = page;
+        }
+    }
+
+    /**
+     * Counts the writes to a range of addresses and tells the block cache about every page in it.
+     * @param address first address.
+     * @param length amount of addresses.
+     */
+    private void rangeWritten(int address, int length){
+        this.writeCount += length;
+        this.storeToFile(address >>> 8, (address + length - 1) >>> 8);
+        for(int page = address >>> 8; page <= (address + length - 1) >>> 8; page++){
+            this.dirtyPages[this.mirrors[page]] = true;
+        }
+        if(this.blockCache == null) return;
+        for(int page = address >>> 8; page <= (address + length - 1) >>> 8; page++){
+            this.blockCache.written(page << 8);
+        }
+    }
+
+    /**
+     * Writes a range of pages to the file, if the memory is kept in one. The pages of devices are written as 0.
+     * @param firstPage first page.
+     * @param lastPage last page.
+     */
+    private void storeToFile(int firstPage, int lastPage){
+        if(this.file == null) return;
+        for(int page = firstPage; page <= lastPage; page++){
+            this.file.writePage(page, this.pages[page] == null ? MemoryImage.ZERO_PAGE : this.pages[page]);
+        }
+    }
+
+    /**
+     * Get the amount of writes to memory so far.
+     * @return amount of writes.
+     */
+    long getWriteCount(){
+        return this.writeCount;
+    }
+
+    /**
+     * Get the amount of reads and writes of devices so far.
+     * @return amount of accesses.
+     */
+    long getDeviceAccessCount(){
+        return this.deviceAccessCount;
+    }
+
+    /**
+     * Get a copy of the whole memory. The devices are not read, their pages are 0 in the copy.
+     * @return copy of all 64K bytes.
+     */
+    byte[] snapshot(){
+        byte[] snapshot = new byte[0x10000];
+        for(int page = 0; page < this.pages.length; page++){
+            if(this.pages[page] == null) continue;
+            System.arraycopy(this.pages[page], 0, snapshot, page << 8, 0x100);
+        }
+        return snapshot;
+    }
+
+    /**
+     * Put back a copy of the memory taken with {@link #snapshot()}.<br>
+     * Does not tell the block cache. Only use it to undo writes the block cache has already seen.
+     * @param snapshot copy of the memory.
+     */
+    void restoreSnapshot(byte[] snapshot){
+        for(int page = 0; page < this.pages.length; page++){
+            // devices are left alone, mirrors are restored with their page.
+            if(this.pages[page] == null || this.mirrors[page] != page) continue;
+            // pages that have not changed stay shared.
+            if(Arrays.equals(this.pages[page], 0, 0x100, snapshot, page << 8, (page + 1) << 8)) continue;
+            System.arraycopy(snapshot, page << 8, this.writablePage(page), 0, 0x100);
+            for(int alias : this.aliases[page]){
+                this.storeToFile(alias, alias);
+            }
+        }
+    }
+
+    /**
+     * Writes the memory to a buffer: a bitmap of 32 bytes with a bit for every page that is not all 0, lowest page in
+     * the highest bit of the first byte, followed by the 256 bytes of every such page.<br>
+     * The pages of devices and the mirrors are left out, like pages of 0.
+     * @param buffer buffer with room for 32 + 64 KiB bytes.
+     */
+    void savePages(ByteBuffer buffer){
+        int bitmap = buffer.position();
+        buffer.position(bitmap + 0x20);
+        byte[] bits = new byte[0x20];
+        for(int page = 0; page < this.pages.length; page++){
+            byte[] bytes = this.pages[page];
+            if(bytes == null || bytes == MemoryImage.ZERO_PAGE || this.mirrors[page] != page) continue;
+            if(Arrays.equals(bytes, MemoryImage.ZERO_PAGE)) continue;
+            bits[page >>> 3] |= (byte) (0x80 >>> (page & 7));
+            buffer.put(bytes);
+        }
+        buffer.put(bitmap, bits);
+    }
+
+    /**
+     * Counts the pages in a bitmap written by {@link #savePages(ByteBuffer)}.
+     * @param buffer buffer positioned at the bitmap. The position is left there.
+     * @return amount of pages that follow the bitmap.
+     */
+    static int countPages(ByteBuffer buffer){
+        int count = 0;
+        for(int i = 0; i < 0x20; i++){
+            count += Integer.bitCount(buffer.get(buffer.position() + i) & 0xff);
+        }
+        return count;
+    }
+
+    /**
+     * Replaces the memory with pages written by {@link #savePages(ByteBuffer)}.<br>
+     * The pages of devices and the mirrors stay. Counts as a write to every address.
+     * @param buffer buffer positioned at the bitmap.
+     */
+    void loadPages(ByteBuffer buffer){
+        byte[] bits = new byte[0x20];
+        buffer.get(bits);
+        for(int page = 0; page < this.pages.length; page++){
+            boolean saved = (bits[page >>> 3] & (0x80 >>> (page & 7))) != 0;
+            if(this.devices[page] != null || this.mirrors[page] != page){
+                // the page was not saved, its bytes are skipped.
+                if(saved) buffer.position(buffer.position() + 0x100);
+                continue;
+            }
+            if(saved){
+                byte[] bytes = this.ownPages[page] ? this.pages[page] : new byte[0x100];
+                buffer.get(bytes);
+                this.pages[page] = bytes;
+                this.ownPages[page] = true;
+            } else {
+                this.pages[page] = MemoryImage.ZERO_PAGE;
+                this.ownPages[page] = false;
+            }
+        }
+        this.updatePageTable();
+        this.rangeWritten(0, 0x10000);
+    }
+
+    /**
+     * Hands the pages changed since the last call over to a checkpoint.<br>
+     * The pages become shared, so the checkpoint can keep them as they are: the next write to one copies it first.
+     * @param all true to hand over every page, not only the changed ones.
+     * @return for every page its 256 bytes, or null if it has not changed, belongs to a device or is a mirror. The
+     * arrays must not be written to.
+     */
+    byte[][] takeDirtyPages(boolean all){
+        byte[][] dirty = new byte[0x100][];
+        for(int page = 0; page < this.pages.length; page++){
+            if((all || this.dirtyPages[page]) && this.devices[page] == null && this.mirrors[page] == page){
+                dirty[page] = this.pages[page];
+            }
+            this.ownPages[page] = false;
+            this.writablePages[page] = false;
+        }
+        Arrays.fill(this.dirtyPages, false);
+        return dirty;
+    }
+
+    /**
+     * Uses pages of a checkpoint as the whole memory. The pages are shared, not copied.<br>
+     * The pages of devices and the mirrors stay. Counts as a write to every address, but leaves no page dirty, as the
+     * memory is the same as the checkpoint afterwards.
+     * @param pages for every page its 256 bytes, or null for a page of 0.
+     */
+    void restorePages(byte[][] pages){
+        for(int page = 0; page < this.pages.length; page++){
+            if(this.devices[page] != null || this.mirrors[page] != page) continue;
+            this.pages[page] = pages[page] == null ? MemoryImage.ZERO_PAGE : pages[page];
+            this.ownPages[page] = false;
+        }
+        this.updatePageTable();
+        this.rangeWritten(0, 0x10000);
+        Arrays.fill(this.dirtyPages, false);
     }
 
     /**
@@ -85,7 +698,7 @@ class Memory {
      * @return Value of byte at that address.
      */
     byte getByteAtAddress(short address){
-        return this.memoryArray[Util.unsignShort(address)];
+        return (byte) this.read(Util.unsignShort(address));
     }
 
     /**
@@ -93,7 +706,7 @@ class Memory {
      * @return Byte at address of program counter.
      */
     byte getCurrentByte(){
-        return this.memoryArray[Util.unsignShort(this.programCounter)];
+        return (byte) this.read(this.registers.pc);
     }
 
     /**
@@ -115,7 +728,7 @@ class Memory {
 
         for(int i = 0; i < memoryRange.length; i++){
             int n = low + i;
-            memoryRange[i] = this.memoryArray[n];
+            memoryRange[i] = (byte) this.read(n);
         }
 
         return memoryRange;
@@ -127,7 +740,7 @@ class Memory {
      * @param value Value to set.
      */
     void setByteAtAddress(short address, byte value){
-        this.memoryArray[Util.unsignShort(address)] = value;
+        this.write(address, value);
     }
 
     /**
@@ -135,7 +748,7 @@ class Memory {
      * @return Value of the program counter.
      */
     short getProgramCounter(){
-        return this.programCounter;
+        return (short) this.registers.pc;
     }
 
     /**
@@ -143,7 +756,7 @@ class Memory {
      * @param value value to set the program counter to.
      */
     void setProgramCounter(short value){
-        this.programCounter = value;
+        this.registers.pc = value & 0xffff;
     }
 
     /**
@@ -151,7 +764,7 @@ class Memory {
      * @param amount amount to increment the program counter to.
      */
     void incrementProgramCounter(int amount){
-        this.programCounter += amount;
+        this.registers.pc = (this.registers.pc + amount) & 0xffff;
     }
 
     /**
@@ -166,7 +779,7 @@ class Memory {
      * @param registerA Value to set register A to.
      */
     void setRegisterA(byte registerA) {
-        this.registerA = registerA;
+        this.registers.a = registerA & 0xff;
     }
 
     /**
@@ -174,7 +787,7 @@ class Memory {
      * @return Value of register A.
      */
     byte getRegisterA(){
-        return this.registerA;
+        return (byte) this.registers.a;
     }
 
     /**
@@ -182,7 +795,7 @@ class Memory {
      * @param registerX Value to set register X to.
      */
     void setRegisterX(byte registerX) {
-        this.registerX = registerX;
+        this.registers.x = registerX & 0xff;
     }
 
     /**
@@ -190,7 +803,7 @@ class Memory {
      * @return Value of register X.
      */
     byte getRegisterX(){
-        return this.registerX;
+        return (byte) this.registers.x;
     }
 
     /**
@@ -198,7 +811,7 @@ class Memory {
      * @param registerY Value to set register Y to.
      */
     void setRegisterY(byte registerY) {
-        this.registerY = registerY;
+        this.registers.y = registerY & 0xff;
     }
 
     /**
@@ -206,7 +819,7 @@ class Memory {
      * @return Value of register Y.
      */
     byte getRegisterY(){
-        return this.registerY;
+        return (byte) this.registers.y;
     }
 
     /**
@@ -256,13 +869,13 @@ class Memory {
 
         int max = codeArray.length;
 
-        if(max + Util.unsignShort(beginAddress) > this.memoryArray.length){
-            max = this.memoryArray.length;
+        if(max + Util.unsignShort(beginAddress) > 0x10000){
+            max = 0x10000;
         }
 
         for(int i = 0; i < max; i++){
             int n = Util.unsignShort(beginAddress) + i;
-            this.memoryArray[n] = Util.hexStringToByte(codeArray[i]);
+            this.write(n, Util.hexStringToByte(codeArray[i]));
         }
     }
 
@@ -276,21 +889,34 @@ class Memory {
 
 
     /**
-     * Loads the Memory with code stored in a string starting at a certain address.
+     * Loads the Memory with code stored in a string starting at a certain address.<br>
+     * Code that fits in plain RAM is copied in one go.
      * @param beginAddress start address of the code in memory
      * @param code code as a byte array
      */
     void load(short beginAddress, byte[] code){
+        int begin = Util.unsignShort(beginAddress);
+        if(code.length > 0 && begin + code.length <= 0x10000 && this.isPlain(begin, code.length)){
+            int done = 0;
+            while(done < code.length){
+                int at = begin + done;
+                int amount = Math.min(code.length - done, 0x100 - (at & 0xff));
+                System.arraycopy(code, done, this.writablePage(at >>> 8), at & 0xff, amount);
+                done += amount;
+            }
+            this.rangeWritten(begin, code.length);
+            return;
+        }
 
         int max = code.length;
 
-        if(max + Util.unsignShort(beginAddress) > this.memoryArray.length){
-            max = this.memoryArray.length;
+        if(max + Util.unsignShort(beginAddress) > 0x10000){
+            max = 0x10000;
         }
 
         for(int i = 0; i < max; i ++){
             int n = Util.unsignShort(beginAddress) + i;
-            this.memoryArray[n] = code[i];
+            this.write(n, code[i]);
         }
     }
 
@@ -0,0 +1,72 @@
+/*
+Copyright (c) 2023, Livio Conzett
+All rights reserved.
+
+This source code is licensed under the BSD-style license found in the
+LICENSE file in the root directory of this source tree.
+*/
+
+package tech.livio.java6502;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A file of 64 KiB mapped into memory that holds a copy of the whole memory of a simulator.<br>
+ * Byte n of the file is the byte at address n. The memory writes every change through to the file, so the file
+ * outlives the process, and other processes that map the same file see the memory change while the program runs.
+ */
+class MemoryFile {
+
+    private final MappedByteBuffer buffer;
+
+    /**
+     * Maps a file. The file is created if it does not exist, and grown to 64 KiB with zeros if it is shorter.
+     * @param path path of the file.
+     * @throws IOException if the file can not be opened or mapped.
+     */
+    MemoryFile(Path path) throws IOException{
+        try(FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE)){
+            // the mapping stays valid after the channel is closed.
+            this.buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, 0x10000);
+        }
+    }
+
+    /**
+     * Reads a page of the file.
+     * @param page number of the page.
+     * @param bytes array of at least 256 bytes to read into.
+     */
+    void readPage(int page, byte[] bytes){
+        this.buffer.get(page << 8, bytes, 0, 0x100);
+    }
+
+    /**
+     * Writes a page to the file.
+     * @param page number of the page.
+     * @param bytes 256 bytes of the page.
+     */
+    void writePage(int page, byte[] bytes){
+        this.buffer.put(page << 8, bytes, 0, 0x100);
+    }
+
+    /**
+     * Writes a byte to the file.
+     * @param address address of the byte.
+     * @param value value, only the lower 8 bits are used.
+     */
+    void write(int address, int value){
+        this.buffer.put(address, (byte) value);
+    }
+
+    /**
+     * Makes sure everything written so far is on the disk, not only in the page cache of the operating system.
+     */
+    void force(){
+        this.buffer.force();
+    }
+}
@@ -0,0 +1,51 @@
+/*
+Copyright (c) 2023, Livio Conzett
+All rights reserved.
+
+This source code is licensed under the BSD-style license found in the
+LICENSE file in the root directory of this source tree.
+*/
+
+package tech.livio.java6502;
+
+import java.util.Arrays;
+
+/**
+ * A read only image of the whole memory that many simulators can load without copying it.<br>
+ * The image is split into the same pages of 256 bytes as the memory. A simulator that loads it uses these pages
+ * directly and only copies a page when its program writes to it, so ROM and code are held once for all simulators,
+ * and every simulator only holds the pages its program writes.
+ */
+public class MemoryImage {
+
+    // a page of zeros shared by every memory and image. Never written to.
+    static final byte[] ZERO_PAGE = new byte[0x100];
+
+    private final byte[][] pages;
+
+    /**
+     * Initialize the image from the bytes of the memory.<br>
+     * The bytes are copied, so the array can be changed afterwards.
+     * @param image bytes from address 0x0000 on. At most 64 KiB, the rest of the memory is 0.
+     */
+    public MemoryImage(byte[] image){
+        if(image.length > 0x10000) throw new IllegalArgumentException("image is bigger than 64 KiB");
+
+        this.pages = new byte[0x100][];
+        for(int page = 0; page < this.pages.length; page++){
+            int from = Math.min(page << 8, image.length);
+            int to = Math.min((page + 1) << 8, image.length);
+            byte[] bytes = Arrays.copyOf(Arrays.copyOfRange(image, from, to), 0x100);
+            this.pages[page] = Arrays.equals(bytes, ZERO_PAGE) ? ZERO_PAGE : bytes;
+        }
+    }
+
+    /**
+     * Get one page of the image. The page must not be written to.
+     * @param page number of the page.
+     * @return 256 bytes.
+     */
+    byte[] getPage(int page){
+        return this.pages[page];
+    }
+}
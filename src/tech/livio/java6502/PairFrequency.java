@@ -0,0 +1,127 @@
+/*
+Copyright (c) 2023, Livio Conzett
+All rights reserved.
+
+This source code is licensed under the BSD-style license found in the
+LICENSE file in the root directory of this source tree.
+*/
+
+package tech.livio.java6502;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Counts how often each pair of op-codes runs back to back, to find the pairs worth fusing into a
+ * {@link Superinstruction}.<br>
+ * Only pairs where the second instruction directly follows the first one in memory are counted. A taken branch or a
+ * jump breaks the pair, because only code that is next to each other can be fused.
+ */
+class PairFrequency {
+
+    // counts of every pair, indexed by first op-code * 256 + second op-code.
+    private final long[] counts;
+    private long instructions;
+    private int previousOpCode;
+    // address right after the previous instruction. -1 if there is none.
+    private int expectedAddress;
+
+    /**
+     * Initialize the counter.
+     */
+    PairFrequency(){
+        this.counts = new long[256 * 256];
+        this.expectedAddress = -1;
+    }
+
+    /**
+     * Record an instruction before it runs.
+     * @param address address of the op-code.
+     * @param opCode op-code.
+     */
+    void record(int address, int opCode){
+        this.instructions++;
+        if(address == this.expectedAddress){
+            this.counts[(this.previousOpCode << 8) | opCode]++;
+        }
+        this.previousOpCode = opCode;
+        this.expectedAddress = (address + 1 + InstructionTable.operandLength(InstructionTable.MODES[opCode])) & 0xffff;
+    }
+
+    /**
+     * Get how often a pair has been counted.
+     * @param first first op-code.
+     * @param second second op-code.
+     * @return count.
+     */
+    long count(int first, int second){
+        return this.counts[(first << 8) | second];
+    }
+
+    /**
+     * Get the amount of recorded instructions.
+     * @return amount of instructions.
+     */
+    long getInstructions(){
+        return this.instructions;
+    }
+
+    /**
+     * Get the most frequent pairs.
+     * @param top maximum amount of pairs to return.
+     * @return pairs as {first, second}, most frequent first.
+     */
+    List<int[]> top(int top){
+        Integer[] pairs = new Integer[this.counts.length];
+        for(int i = 0; i < pairs.length; i++){
+            pairs[i] = i;
+        }
+        Arrays.sort(pairs, (a, b) -> Long.compare(this.counts[b], this.counts[a]));
+
+        List<int[]> result = new ArrayList<>();
+        for(int i = 0; i < top && i < pairs.length && this.counts[pairs[i]] > 0; i++){
+            result.add(new int[]{pairs[i] >>> 8, pairs[i] & 0xff});
+        }
+        return result;
+    }
+
+    /**
+     * Creates a report of the most frequent pairs.<br>
+     * The last column tells if there is a superinstruction for the pair ("yes"), if the pair could be fused but there
+     * is no superinstruction for it ("no"), or if it can not be fused because the first instruction jumps or writes
+     * to memory ("-").
+     * @param top maximum amount of pairs in the report.
+     * @return report, one pair per line.
+     */
+    String report(int top){
+        StringBuilder report = new StringBuilder();
+        report.append(String.format("%d instructions%n", this.instructions));
+        report.append(String.format("%12s %7s  %-5s  %-7s  %s%n", "count", "share", "pair", "", "fused"));
+
+        for(int[] pair : this.top(top)){
+            long count = this.count(pair[0], pair[1]);
+            report.append(String.format("%12d %6.2f%%  %-5s  %-7s  %s%n",
+                    count,
+                    100.0 * count / this.instructions,
+                    Superinstruction.opCodesToString(pair),
+                    InstructionTable.NAMES[pair[0]] + " " + InstructionTable.NAMES[pair[1]],
+                    fusedState(pair)));
+        }
+
+        return report.toString();
+    }
+
+    /**
+     * Tells if a pair is fused by one of the superinstructions.
+     * @param pair first and second op-code.
+     * @return "yes", "no" or "-".
+     */
+    private static String fusedState(int[] pair){
+        for(Superinstruction superinstruction : Superinstructions.ALL){
+            if(superinstruction.fuses(pair)) return "yes";
+        }
+        if(InstructionTable.ENDS_BLOCK[pair[0]] || InstructionTable.WRITES_MEMORY[pair[0]]) return "-";
+        return "no";
+    }
+}
@@ -0,0 +1,328 @@
+/*
+Copyright (c) 2023, Livio Conzett
+All rights reserved.
+
+This source code is licensed under the BSD-style license found in the
+LICENSE file in the root directory of this source tree.
+*/
+
+package tech.livio.java6502;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+/**
+ * How often the instruction at every address has run and how many clock cycles it took, recorded by
+ * {@link Sim6502#startProfile()}.<br>
+ * The cycles are the ones the simulator counts: the cycles of the op-code on the NMOS 6502 plus the extra ones for
+ * crossing a page or taking a branch.<br>
+ * With a symbol map, every address belongs to the routine of the closest symbol at or below it, so the hot spots can
+ * be looked up by name.
+ */
+public class Profile {
+
+    private static final int ADDRESSES = 0x10000;
+
+    private final long[] executions;
+    private final long[] cycles;
+    private long instructions;
+    private long totalCycles;
+    // memory when the profile was stopped, to disassemble the instructions.
+    private final byte[] code;
+    // address of every symbol and its name.
+    private NavigableMap<Integer, String> symbols;
+
+    /**
+     * Initialize an empty profile.
+     */
+    Profile(){
+        this.executions = new long[ADDRESSES];
+        this.cycles = new long[ADDRESSES];
+        this.code = new byte[ADDRESSES];
+        this.symbols = new TreeMap<>();
+    }
+
+    /**
+     * Record an instruction after it has run.
+     * @param address address of the op-code.
+     * @param cycles clock cycles it took.
+     */
+    void record(int address, long cycles){
+        this.executions[address]++;
+        this.cycles[address] += cycles;
+    }
+
+    /**
+     * Ends the recording: keeps the memory to disassemble and adds up the counts.
+     * @param memory memory of the program.
+     */
+    void finish(Memory memory){
+        this.instructions = 0;
+        this.totalCycles = 0;
+        for(int address = 0; address < ADDRESSES; address++){
+            this.code[address] = (byte) memory.peek(address);
+            this.instructions += this.executions[address];
+            this.totalCycles += this.cycles[address];
+        }
+    }
+
+    /**
+     * Get how often the instruction at an address has run.
+     * @param address address of the op-code. Only the lower 16 bits are used.
+     * @return amount of executions.
+     */
+    public long getExecutions(int address){
+        return this.executions[address & 0xffff];
+    }
+
+    /**
+     * Get the clock cycles the instruction at an address has taken, over all its executions.
+     * @param address address of the op-code. Only the lower 16 bits are used.
+     * @return clock cycles.
+     */
+    public long getCycles(int address){
+        return this.cycles[address & 0xffff];
+    }
+
+    /**
+     * Get the amount of instructions that have run while the profile was recorded.
+     * @return amount of instructions.
+     */
+    public long getInstructions(){
+        return this.instructions;
+    }
+
+    /**
+     * Get the clock cycles the instructions have taken while the profile was recorded.
+     * @return clock cycles.
+     */
+    public long getTotalCycles(){
+        return this.totalCycles;
+    }
+
+    /**
+     * Set the symbols the addresses are reported by.
+     * @param symbols name of every address that starts a routine, or of a label in it.
+     */
+    public void setSymbols(Map<Integer, String> symbols){
+        this.symbols = symbolTable(symbols);
+    }
+
+    /**
+     * Sorts symbols by their address.
+     * @param symbols name of every address that starts a routine, or of a label in it.
+     * @return the same symbols, with only the lower 16 bits of the addresses.
+     */
+    static NavigableMap<Integer, String> symbolTable(Map<Integer, String> symbols){
+        NavigableMap<Integer, String> table = new TreeMap<>();
+        for(Map.Entry<Integer, String> symbol : symbols.entrySet()){
+            table.put(symbol.getKey() & 0xffff, symbol.getValue());
+        }
+        return table;
+    }
+
+    /**
+     * Reads a symbol map, one symbol per line the same way the compiler defines a variable, e.g.
+     * <code>print = $e1a0</code>. Blank lines and everything after a ";" are ignored.
+     * @param file path of the symbol map.
+     * @return address of every symbol and its name.
+     * @throws IOException if the file can not be read or a line is not a symbol.
+     */
+    public static Map<Integer, String> readSymbols(Path file) throws IOException{
+        Map<Integer, String> symbols = new HashMap<>();
+        List<String> lines = Files.readAllLines(file);
+        for(int i = 0; i < lines.size(); i++){
+            String line = lines.get(i).replaceAll(";.*", "").trim();
+            if(line.isEmpty()) continue;
+            if(!line.matches("[\\w.]+ *= *\\$[a-fA-F\\d]{1,4}")){
+                throw new IOException("Line " + (i + 1) + " of the symbol map is not like 'name = $e1a0': " + line);
+            }
+            String[] parts = line.split(" *= *\\$");
+            symbols.put(Integer.parseInt(parts[1], 16), parts[0]);
+        }
+        return symbols;
+    }
+
+    /**
+     * Get the routine an address belongs to.
+     * @param address address. Only the lower 16 bits are used.
+     * @return name of the closest symbol at or below the address, with the distance to it if there is one, e.g.
+     * "print+3". "-" if there is no symbol below it.
+     */
+    public String getRoutine(int address){
+        return routine(this.symbols, address);
+    }
+
+    /**
+     * Get the routine an address belongs to.
+     * @param symbols symbols sorted by their address.
+     * @param address address. Only the lower 16 bits are used.
+     * @return name of the closest symbol at or below the address, with the distance to it if there is one, e.g.
+     * "print+3". "-" if there is no symbol below it.
+     */
+    static String routine(NavigableMap<Integer, String> symbols, int address){
+        Map.Entry<Integer, String> symbol = symbols.floorEntry(address & 0xffff);
+        if(symbol == null) return "-";
+        int offset = (address & 0xffff) - symbol.getKey();
+        return offset == 0 ? symbol.getValue() : symbol.getValue() + "+" + offset;
+    }
+
+    /**
+     * Creates a listing of the hottest instructions, the ones that took the most cycles first, disassembled from the
+     * memory as it was when the profile was stopped.
+     * @param top maximum amount of instructions in the listing.
+     * @return listing, one instruction per line.
+     */
+    public String listing(int top){
+        StringBuilder listing = new StringBuilder();
+        listing.append(String.format(Locale.ROOT, "%d instructions, %d cycles%n", this.instructions,
+                this.totalCycles));
+        listing.append(String.format(Locale.ROOT, "%14s %7s %14s  %-4s  %-8s  %-12s  %s%n",
+                "cycles", "share", "executions", "addr", "bytes", "instruction", "routine"));
+
+        for(int address : hottest(this.cycles, top)){
+            listing.append(String.format(Locale.ROOT, "%14d %6.2f%% %14d  %04x  %-8s  %-12s  %s%n",
+                    this.cycles[address],
+                    100.0 * this.cycles[address] / this.totalCycles,
+                    this.executions[address],
+                    address,
+                    bytes(this.code, address),
+                    disassemble(this.code, address),
+                    this.getRoutine(address)));
+        }
+
+        return listing.toString();
+    }
+
+    /**
+     * Creates a report of the hottest routines, the ones that took the most cycles first. Every address counts to the
+     * closest symbol at or below it.
+     * @param top maximum amount of routines in the report.
+     * @return report, one routine per line.
+     */
+    public String routines(int top){
+        Map<String, long[]> routines = new HashMap<>();
+        for(int address = 0; address < ADDRESSES; address++){
+            if(this.executions[address] == 0) continue;
+            Map.Entry<Integer, String> symbol = this.symbols.floorEntry(address);
+            long[] counts = routines.computeIfAbsent(symbol == null ? "-" : symbol.getValue(), k -> new long[2]);
+            counts[0] += this.executions[address];
+            counts[1] += this.cycles[address];
+        }
+        List<Map.Entry<String, long[]>> sorted = new ArrayList<>(routines.entrySet());
+        sorted.sort((a, b) -> Long.compare(b.getValue()[1], a.getValue()[1]));
+
+        StringBuilder report = new StringBuilder();
+        report.append(String.format(Locale.ROOT, "%d instructions, %d cycles%n", this.instructions,
+                this.totalCycles));
+        report.append(String.format(Locale.ROOT, "%14s %7s %14s  %s%n", "cycles", "share", "instructions",
+                "routine"));
+        for(int i = 0; i < top && i < sorted.size(); i++){
+            long[] counts = sorted.get(i).getValue();
+            report.append(String.format(Locale.ROOT, "%14d %6.2f%% %14d  %s%n",
+                    counts[1],
+                    100.0 * counts[1] / this.totalCycles,
+                    counts[0],
+                    sorted.get(i).getKey()));
+        }
+        return report.toString();
+    }
+
+    /**
+     * Writes every instruction that has run into a CSV file, in the order of their addresses, with the columns
+     * address, routine, instruction, executions and cycles.
+     * @param file path of the file. Is overwritten if it exists.
+     * @throws IOException if the file can not be written.
+     */
+    public void writeCsv(Path file) throws IOException{
+        try(BufferedWriter out = Files.newBufferedWriter(file)){
+            out.write("address,routine,instruction,executions,cycles");
+            out.newLine();
+            for(int address = 0; address < ADDRESSES; address++){
+                if(this.executions[address] == 0) continue;
+                out.write(String.format(Locale.ROOT, "%04x,%s,%s,%d,%d", address, this.getRoutine(address),
+                        disassemble(this.code, address), this.executions[address], this.cycles[address]));
+                out.newLine();
+            }
+        }
+    }
+
+    /**
+     * Finds the addresses with the highest counts.
+     * @param counts count of every address.
+     * @param top maximum amount of addresses.
+     * @return addresses with a count above 0, highest first.
+     */
+    static int[] hottest(long[] counts, int top){
+        Integer[] addresses = new Integer[ADDRESSES];
+        for(int i = 0; i < addresses.length; i++){
+            addresses[i] = i;
+        }
+        Arrays.sort(addresses, (a, b) -> Long.compare(counts[b], counts[a]));
+
+        int length = 0;
+        while(length < top && length < ADDRESSES && counts[addresses[length]] > 0){
+            length++;
+        }
+        int[] hottest = new int[length];
+        for(int i = 0; i < length; i++){
+            hottest[i] = addresses[i];
+        }
+        return hottest;
+    }
+
+    /**
+     * Get the bytes of the instruction at an address.
+     * @param code memory of the program.
+     * @param address address of the op-code.
+     * @return op-code and operand in hex, e.g. "bd 00 03".
+     */
+    static String bytes(byte[] code, int address){
+        int length = 1 + InstructionTable.operandLength(InstructionTable.MODES[code[address] & 0xff]);
+        StringBuilder bytes = new StringBuilder();
+        for(int i = 0; i < length; i++){
+            if(i > 0) bytes.append(' ');
+            bytes.append(String.format("%02x", code[(address + i) & 0xffff] & 0xff));
+        }
+        return bytes.toString();
+    }
+
+    /**
+     * Disassembles the instruction at an address.
+     * @param code memory of the program.
+     * @param address address of the op-code.
+     * @return instruction, e.g. "sta $0300,x". Branches show the address they go to.
+     */
+    static String disassemble(byte[] code, int address){
+        int opCode = code[address] & 0xff;
+        int low = code[(address + 1) & 0xffff] & 0xff;
+        int word = low | (code[(address + 2) & 0xffff] & 0xff) << 8;
+        String name = InstructionTable.NAMES[opCode].toLowerCase(Locale.ROOT);
+        String operand = switch (InstructionTable.MODES[opCode]) {
+            case IMMEDIATE -> String.format("#$%02x", low);
+            case ABSOLUTE -> String.format("$%04x", word);
+            case ZERO_PAGE -> String.format("$%02x", low);
+            case INDIRECT_ABSOLUTE -> String.format("($%04x)", word);
+            case ABSOLUTE_INDEXED_X -> String.format("$%04x,x", word);
+            case ABSOLUTE_INDEXED_Y -> String.format("$%04x,y", word);
+            case ZERO_PAGE_INDEXED_X -> String.format("$%02x,x", low);
+            case ZERO_PAGE_INDEXED_Y -> String.format("$%02x,y", low);
+            case INDEXED_INDIRECT -> String.format("($%02x,x)", low);
+            case INDIRECT_INDEXED -> String.format("($%02x),y", low);
+            case RELATIVE -> String.format("$%04x", (address + 1 + (byte) low) & 0xffff);
+            case ACCUMULATOR -> "a";
+            default -> "";
+        };
+        return operand.isEmpty() ? name : name + " " + operand;
+    }
+}
@@ -8,14 +8,68 @@ LICENSE file in the root directory of this source tree.
 
 package tech.livio.java6502;
 
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Arrays;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.locks.LockSupport;
+
 public class ProgramRunner extends Thread {
 
+    // default amount of instructions run between two looks at the status word.
+    static final int DEFAULT_QUANTUM = 1000;
+    // length of one slice of the throttled clock.
+    static final long SLICE_NANOS = 1_000_000;
+    // the throttled clock stops catching up when it is this far behind, e.g. after the host was suspended.
+    static final long MAX_LAG_NANOS = 100_000_000;
+    // most instructions the idle loop check steps through to find the start of the loop again.
+    static final int IDLE_PROBE_INSTRUCTIONS = 64;
+    // the idle loop check runs at least every this many quanta.
+    static final int MAX_IDLE_PROBE_INTERVAL = 64;
+
     private final Memory memory;
     private final Stack stack;
     private final Flags flags;
     private final InstructionSet is;
     private final AddressingMode am;
     private final Control control;
+    private final Registers registers;
+    private BlockCache blockCache;
+    private BlockTranslator translator;
+    private boolean crossCheck;
+    private int quantum;
+    // instructions run so far. The clock cycles are counted in the registers.
+    private long instructionCount;
+    // clock frequency in Hz the thread runs at. 0 to run as fast as possible.
+    private volatile long clockFrequency;
+    // when the thread started and ended, and the cycle count and CPU time it ended with. For the clock report.
+    private volatile long startNanos;
+    private volatile long startCycles;
+    // start of the latest runUntil, on whichever thread runs it. Measures how fast the program runs.
+    private long runStartNanos;
+    private long runStartCycles;
+    // thread that waits in an idle loop. null if none does.
+    private volatile Thread parked;
+    private volatile long endNanos;
+    private volatile long endCycles;
+    private volatile long endCpuNanos;
+    private boolean idleDetection;
+    // quanta between two idle loop checks. Doubles every time a check fails.
+    private int idleProbeInterval;
+    private int quantaSinceIdleProbe;
+    private long skippedIterations;
+    // undo journal of reverse execution. null if it is off.
+    private Journal journal;
+    // recorder of the trace. null if no trace is recorded.
+    private TraceRecorder trace;
+    // compact trace that records the interrupts and the changes from outside. null if none is recorded.
+    private CompactTrace compactTrace;
+    // counts of the instructions at every address. null if no profile is recorded.
+    private Profile profile;
+    // samples of the program counter and the call stack. null if the program is not sampled.
+    private SampleProfile sampleProfile;
+    // instruction count the sample the sampler has asked for is taken at. Long.MAX_VALUE if it has asked for none.
+    private long sampleAt;
 
     public ProgramRunner(Memory memory, Stack stack, Flags flags, InstructionSet is, AddressingMode am, Control control){
         this.memory = memory;
@@ -24,6 +78,10 @@ public class ProgramRunner extends Thread {
         this.is = is;
         this.am = am;
         this.control = control;
+        this.registers = memory.getRegisters();
+        this.quantum = DEFAULT_QUANTUM;
+        this.idleProbeInterval = 1;
+        this.sampleAt = Long.MAX_VALUE;
     }
 
     /**
@@ -31,288 +89,816 @@ public class ProgramRunner extends Thread {
      * @param instruction byte to run.
      */
     void runInstruction(byte instruction){
+        InstructionTable.execute(instruction & 0xff, this.is, this.am);
+    }
 
-        switch (instruction) {
-            case (byte) 0x69 -> is.adc(am.immediate());
-            case (byte) 0x65 -> is.adc(am.zeroPage());
-            case (byte) 0x75 -> is.adc(am.zeroPageIndexX());
-            case (byte) 0x6D -> is.adc(am.absolute());
-            case (byte) 0x7D -> is.adc(am.absoluteIndexX());
-            case (byte) 0x79 -> is.adc(am.absoluteIndexY());
-            case (byte) 0x61 -> is.adc(am.indexedIndirect());
-            case (byte) 0x71 -> is.adc(am.indirectIndexed());
+    /**
+     * Do one step in the program.<br>
+     * Executes one instruction. Not just one clock cycle.
+     */
+    void step(){
+        if(!this.control.getRun()){
+            System.err.println("Run Flag is set to false. Will not step. Maybe you need to start() the sim first.");
+            return;
+        }
 
-            case (byte) 0x29 -> is.and(am.immediate());
-            case (byte) 0x25 -> is.and(am.zeroPage());
-            case (byte) 0x35 -> is.and(am.zeroPageIndexX());
-            case (byte) 0x2d -> is.and(am.absolute());
-            case (byte) 0x3d -> is.and(am.absoluteIndexX());
-            case (byte) 0x39 -> is.and(am.absoluteIndexY());
-            case (byte) 0x21 -> is.and(am.indexedIndirect());
-            case (byte) 0x31 -> is.and(am.indirectIndexed());
+        if(this.journal != null) this.journal.mark(this.instructionCount);
+        if(this.trace != null) this.trace.record(this.instructionCount);
+        if(this.profile != null){
+            this.executeProfiled();
+            return;
+        }
+        this.execute();
+    }
 
-            case (byte) 0x0a -> is.asl();
-            case (byte) 0x06 -> is.asl(am.zeroPage());
-            case (byte) 0x16 -> is.asl(am.zeroPageIndexX());
-            case (byte) 0x0e -> is.asl(am.absolute());
-            case (byte) 0x1e -> is.asl(am.absoluteIndexX());
+    /**
+     * Fetches and runs the instruction at the program counter and counts it.
+     */
+    private void execute(){
+        // the program counter points at the next op-code. Fetch it and move on to the operands.
+        int opCode = this.memory.read(this.registers.pc);
+        this.registers.pc = (this.registers.pc + 1) & 0xffff;
+
+        this.instructionCount++;
+        this.registers.cycles += InstructionTable.CYCLES[opCode];
+        InstructionTable.execute(opCode, this.is, this.am);
+    }
 
-            case (byte) 0x90 -> is.bcc(am.relative());
+    /**
+     * Runs the instruction at the program counter like {@link #execute()} and adds it to the profile.
+     */
+    private void executeProfiled(){
+        int pc = this.registers.pc;
+        long cycles = this.registers.cycles;
+        this.execute();
+        this.profile.record(pc, this.registers.cycles - cycles);
+    }
 
-            case (byte) 0xB0 -> is.bcs(am.relative());
+    /**
+     * Runs one predecoded block of instructions from the block cache.<br>
+     * Runs one instruction instead if the program counter is in the pages of a device.
+     */
+    void runBlock(){
+        if(this.journal != null) this.journal.mark(this.instructionCount);
+        if(this.trace != null && this.trace.record(this.instructionCount)){
+            this.execute();
+            return;
+        }
+        if(this.profile != null){
+            this.executeProfiled();
+            return;
+        }
+        DecodedBlock block = this.blockCache.get(this.registers.pc);
+        if(block == null){
+            this.execute();
+            return;
+        }
+        this.runBlock(block);
+    }
 
-            case (byte) 0xf0 -> is.beq(am.relative());
+    /**
+     * Runs a predecoded block and counts its instructions.<br>
+     * Blocks that have been translated run their translated code. All other blocks are interpreted and counted, so
+     * the translator can pick up the hot ones.
+     * @param block block to run.
+     */
+    private void runBlock(DecodedBlock block){
+        if(block.compiled != null){
+            if(this.crossCheck){
+                this.runCrossChecked(block);
+            } else {
+                block.compiled.run(block, this.is, this.am, this.registers);
+            }
+        } else {
+            if(this.translator != null && ++block.executions == this.translator.getThreshold()){
+                block.compiled = this.translator.translate(block);
+            }
+            this.interpretBlock(block);
+        }
 
-            case (byte) 0x24 -> is.bit(am.zeroPage());
-            case (byte) 0x2c -> is.bit(am.absolute());
+        if(block.valid){
+            this.instructionCount += block.instructions;
+            this.registers.cycles += block.totalCycles;
+            return;
+        }
 
-            case (byte) 0x30 -> is.bmi(am.relative());
+        // the block has overwritten itself and stopped early.
+        int entries = block.entriesRunUntil(this.registers.pc);
+        for(int i = 0; i < entries; i++){
+            this.instructionCount += block.instructionCounts[i];
+            this.registers.cycles += block.cycles[i];
+        }
+    }
 
-            case (byte) 0xd0 -> is.bne(am.relative());
+    /**
+     * Runs all rounds of a fill or copy loop as one bulk operation, if they fit in the limits.
+     * @param block block of the loop.
+     * @param instructionLimit instruction count that is never passed.
+     * @param cycleLimit cycle count to stop at.
+     * @return false if the loop has not been run.
+     */
+    private boolean runIdiom(DecodedBlock block, long instructionLimit, long cycleLimit){
+        long rounds = block.idiom.rounds(this.registers);
+        long instructions = rounds * block.instructions;
+        // one extra cycle for a page crossing and two for the branch at most.
+        long maxCycles = rounds * (block.totalCycles + 3);
+        if(instructions > instructionLimit - this.instructionCount || maxCycles > cycleLimit - this.registers.cycles){
+            return false;
+        }
 
-            case (byte) 0x10 -> is.bpl(am.relative());
+        if(!block.idiom.run(this.registers, this.flags, this.memory)) return false;
 
-            case (byte) 0x00 -> is.brk();
+        this.instructionCount += instructions;
+        this.registers.cycles += rounds * block.totalCycles;
+        return true;
+    }
 
-            case (byte) 0x50 -> is.bvc(am.relative());
+    /**
+     * Computes as many rounds of a delay loop as fit in the limits.
+     * @param block block of the loop.
+     * @param instructionLimit instruction count that is never passed.
+     * @param cycleLimit cycle count that is never passed.
+     * @return false if not even one round fits.
+     */
+    private boolean runDelayLoop(DecodedBlock block, long instructionLimit, long cycleLimit){
+        long instructions = block.delay.run(this.registers, this.flags,
+                instructionLimit - this.instructionCount, cycleLimit - this.registers.cycles);
+        this.instructionCount += instructions;
+        return instructions > 0;
+    }
 
-            case (byte) 0x70 -> is.bvs(am.relative());
+    /**
+     * Interprets the instructions of a predecoded block.<br>
+     * Stops early if one of the instructions writes to the memory the block was decoded from.
+     * @param block block to run.
+     */
+    private void interpretBlock(DecodedBlock block){
+        for(int i = 0; i < block.length; i++){
+            this.registers.pc = block.nextAddresses[i];
+            block.handlers[i].execute(this.is, this.am, block.operands[i]);
 
-            case (byte) 0x18 -> is.clc();
+            // the block has overwritten itself. Decode again from the program counter.
+            if(!block.valid) return;
+        }
+    }
 
-            case (byte) 0xd8 -> is.cld();
+    /**
+     * Runs the translated code of a block, then runs the same block again in the interpreter from the same state and
+     * compares the registers and the memory.<br>
+     * Callbacks that are called by the block get called twice.
+     * @param block translated block.
+     * @throws IllegalStateException if the translated code does not do the same as the interpreter.
+     */
+    private void runCrossChecked(DecodedBlock block){
+        byte[] memoryBefore = this.memory.snapshot();
+        int[] cpuBefore = this.cpuState();
+        long cyclesBefore = this.registers.cycles;
 
-            case (byte) 0x58 -> is.cli();
+        block.compiled.run(block, this.is, this.am, this.registers);
 
-            case (byte) 0xb8 -> is.clv();
+        // the block has overwritten itself and the rest of it will be decoded again. Nothing to compare.
+        if(!block.valid) return;
 
-            case (byte) 0xc9 -> is.cmp(am.immediate());
-            case (byte) 0xc5 -> is.cmp(am.zeroPage());
-            case (byte) 0xd5 -> is.cmp(am.zeroPageIndexX());
-            case (byte) 0xcd -> is.cmp(am.absolute());
-            case (byte) 0xdd -> is.cmp(am.absoluteIndexX());
-            case (byte) 0xd9 -> is.cmp(am.absoluteIndexY());
-            case (byte) 0xc1 -> is.cmp(am.indexedIndirect());
-            case (byte) 0xd1 -> is.cmp(am.indirectIndexed());
+        byte[] memoryTranslated = this.memory.snapshot();
+        int[] cpuTranslated = this.cpuState();
+        long cyclesTranslated = this.registers.cycles;
 
-            case (byte) 0xe0 -> is.cpx(am.immediate());
-            case (byte) 0xe4 -> is.cpx(am.zeroPage());
-            case (byte) 0xec -> is.cpx(am.absolute());
+        this.memory.restoreSnapshot(memoryBefore);
+        this.restoreCpuState(cpuBefore);
+        this.registers.cycles = cyclesBefore;
 
-            case (byte) 0xc0 -> is.cpy(am.immediate());
-            case (byte) 0xc4 -> is.cpy(am.zeroPage());
-            case (byte) 0xcc -> is.cpy(am.absolute());
+        this.interpretBlock(block);
 
-            case (byte) 0xc6 -> is.dec(am.zeroPage());
-            case (byte) 0xd6 -> is.dec(am.zeroPageIndexX());
-            case (byte) 0xce -> is.dec(am.absolute());
-            case (byte) 0xde -> is.dec(am.absoluteIndexX());
+        int[] cpuInterpreted = this.cpuState();
+        if(!Arrays.equals(cpuTranslated, cpuInterpreted) || cyclesTranslated != this.registers.cycles
+                || !Arrays.equals(memoryTranslated, this.memory.snapshot())){
+            throw new IllegalStateException("Translated block at " + Util.hexToString((short) block.start)
+                    + " differs from the interpreter. a, x, y, sp, pc, p translated: "
+                    + Arrays.toString(cpuTranslated) + " interpreted: " + Arrays.toString(cpuInterpreted));
+        }
+    }
 
-            case (byte) 0xca -> is.dex();
+    /**
+     * Get the registers and the processor status.
+     * @return a, x, y, sp, pc and p.
+     */
+    private int[] cpuState(){
+        return new int[]{
+                this.registers.a,
+                this.registers.x,
+                this.registers.y,
+                this.registers.sp,
+                this.registers.pc,
+                this.flags.getWholeRegister() & 0xff
+        };
+    }
 
-            case (byte) 0x88 -> is.dey();
+    /**
+     * Compares the registers and the processor status to a state, without allocating.
+     * @param state a, x, y, sp, pc and p as returned by {@link #cpuState()}.
+     * @return true if they are the same.
+     */
+    private boolean cpuStateEquals(int[] state){
+        return this.registers.a == state[0]
+                && this.registers.x == state[1]
+                && this.registers.y == state[2]
+                && this.registers.sp == state[3]
+                && this.registers.pc == state[4]
+                && (this.flags.getWholeRegister() & 0xff) == state[5];
+    }
 
-            case (byte) 0x49 -> is.eor(am.immediate());
-            case (byte) 0x45 -> is.eor(am.zeroPage());
-            case (byte) 0x55 -> is.eor(am.zeroPageIndexX());
-            case (byte) 0x4d -> is.eor(am.absolute());
-            case (byte) 0x5d -> is.eor(am.absoluteIndexX());
-            case (byte) 0x59 -> is.eor(am.absoluteIndexY());
-            case (byte) 0x41 -> is.eor(am.indexedIndirect());
-            case (byte) 0x51 -> is.eor(am.indirectIndexed());
+    /**
+     * Set the registers and the processor status.
+     * @param state a, x, y, sp, pc and p as returned by {@link #cpuState()}.
+     */
+    private void restoreCpuState(int[] state){
+        this.registers.a = state[0];
+        this.registers.x = state[1];
+        this.registers.y = state[2];
+        this.registers.sp = state[3];
+        this.registers.pc = state[4];
+        this.flags.setWholeRegister((byte) state[5]);
+    }
 
-            case (byte) 0xe6 -> is.inc(am.zeroPage());
-            case (byte) 0xf6 -> is.inc(am.zeroPageIndexX());
-            case (byte) 0xee -> is.inc(am.absolute());
-            case (byte) 0xfe -> is.inc(am.absoluteIndexX());
+    /**
+     * Set the translator that translates hot blocks.
+     * @param translator block translator, or null to only interpret the blocks.
+     */
+    void setTranslator(BlockTranslator translator){
+        this.translator = translator;
+    }
 
-            case (byte) 0xe8 -> is.inx();
+    /**
+     * Switches cross-checking of translated blocks against the interpreter on or off.
+     * @param crossCheck true to run every translated block in the interpreter too and compare the results.
+     */
+    void setCrossCheck(boolean crossCheck){
+        this.crossCheck = crossCheck;
+    }
 
-            case (byte) 0xc8 -> is.iny();
+    /**
+     * Switches the undo journal of reverse execution on or off.<br>
+     * While it is on, every block and every instruction the run loop runs is marked, every write to memory is
+     * recorded, and idle loops are not skipped.
+     * @param bytes memory the journal takes at most, or 0 to switch it off.
+     */
+    void setJournal(int bytes){
+        this.journal = bytes == 0 ? null : new Journal(this.memory, this.flags, bytes);
+        this.memory.setJournal(this.journal);
+    }
 
-            case (byte) 0x4c -> is.jmp(am.absolute());
-            case (byte) 0x6c -> is.jmp(am.indirectAbsolute());
+    /**
+     * Set the recorder of the trace.<br>
+     * While it records, and while it waits for the instruction to start at, the run loop runs one instruction at a
+     * time, so every instruction is seen, and idle loops are not skipped.
+     * @param trace trace recorder, or null to record no trace.
+     */
+    void setTrace(TraceRecorder trace){
+        this.trace = trace;
+    }
 
-            case (byte) 0x20 -> is.jsr(am.absolute());
+    /**
+     * Set the profile the instructions are counted in.<br>
+     * While it is set, the run loop runs one instruction at a time, so every instruction is counted at its own
+     * address, and idle loops are not skipped.
+     * @param profile profile, or null to record none.
+     */
+    void setProfile(Profile profile){
+        this.profile = profile;
+    }
 
-            case (byte) 0xa9 -> is.lda(am.immediate());
-            case (byte) 0xa5 -> is.lda(am.zeroPage());
-            case (byte) 0xb5 -> is.lda(am.zeroPageIndexX());
-            case (byte) 0xad -> is.lda(am.absolute());
-            case (byte) 0xbd -> is.lda(am.absoluteIndexX());
-            case (byte) 0xb9 -> is.lda(am.absoluteIndexY());
-            case (byte) 0xa1 -> is.lda(am.indexedIndirect());
-            case (byte) 0xb1 -> is.lda(am.indirectIndexed());
+    /**
+     * Set the profile the samples are taken for. When the sampler asks for a sample, it is taken a random amount of
+     * instructions into the next quantum.
+     * @param sampleProfile profile, or null to take no samples.
+     */
+    void setSampleProfile(SampleProfile sampleProfile){
+        this.sampleProfile = sampleProfile;
+        this.sampleAt = Long.MAX_VALUE;
+    }
 
-            case (byte) 0xa2 -> is.ldx(am.immediate());
-            case (byte) 0xa6 -> is.ldx(am.zeroPage());
-            case (byte) 0xb6 -> is.ldx(am.zeroPageIndexY());
-            case (byte) 0xae -> is.ldx(am.absolute());
-            case (byte) 0xbe -> is.ldx(am.absoluteIndexY());
+    /**
+     * Set the compact trace that gets told about the interrupts and about changes of memory from outside.
+     * @param compactTrace compact trace, or null to record none.
+     */
+    void setCompactTrace(CompactTrace compactTrace){
+        this.compactTrace = compactTrace;
+    }
 
-            case (byte) 0xa0 -> is.ldy(am.immediate());
-            case (byte) 0xa4 -> is.ldy(am.zeroPage());
-            case (byte) 0xB4 -> is.ldy(am.zeroPageIndexX());
-            case (byte) 0xac -> is.ldy(am.absolute());
-            case (byte) 0xbc -> is.ldy(am.absoluteIndexX());
+    /**
+     * Goes back one instruction, as if it had never run. Memory and registers are put back the way they were before
+     * it, the instruction and cycle counts too.<br>
+     * Undoes the writes back to the last mark before the instruction and runs the instructions from there on again,
+     * so a device gets read again. An interrupt that came in is not called again. Memory changed from outside the
+     * program can not be undone, so the journal starts anew when that has happened.
+     * @return false if the journal is off or does not reach back that far. Nothing has changed then.
+     */
+    boolean stepBack(){
+        if(this.journal == null) return false;
+        if((this.control.getStatus() & Control.WAKE) != 0){
+            this.control.clearWake();
+            this.journal.clear();
+        }
+
+        long target = this.instructionCount - 1;
+        long mark = this.journal.find(target);
+        if(mark < 0) return false;
+
+        this.instructionCount = this.journal.restore(mark);
+        while(this.instructionCount < target){
+            this.journal.mark(this.instructionCount);
+            this.execute();
+        }
+        return true;
+    }
+
+    /**
+     * Steps back until the program counter is at an address, so the instruction there is the next to run.
+     * @param address address to go back to.
+     * @return false if the journal ran out before. The program is then at the oldest instruction it reaches back to.
+     */
+    boolean runBackTo(int address){
+        while(this.stepBack()){
+            if(this.registers.pc == address) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Steps back until just before the last instruction that wrote to an address, so that instruction is the next to
+     * run.
+     * @param address address written to.
+     * @return false if the journal ran out before. The program is then at the oldest instruction it reaches back to.
+     */
+    boolean runBackUntilWrite(int address){
+        while(true){
+            long writes = this.journal == null ? 0 : this.journal.getWriteCount();
+            if(!this.stepBack()) return false;
+            // the writes of the instruction that has been undone.
+            if(this.journal.wrote(this.journal.getWriteCount(), writes, address)) return true;
+        }
+    }
 
-            case (byte) 0x4a -> is.lsr();
-            case (byte) 0x46 -> is.lsr(am.zeroPage());
-            case (byte) 0x56 -> is.lsr(am.zeroPageIndexX());
-            case (byte) 0x4e -> is.lsr(am.absolute());
-            case (byte) 0x5e -> is.lsr(am.absoluteIndexX());
+    /**
+     * Set the block cache the run loop executes from.
+     * @param blockCache block cache, or null to interpret one instruction at a time.
+     */
+    void setBlockCache(BlockCache blockCache){
+        this.blockCache = blockCache;
+    }
+
+    /**
+     * Stop the thread.
+     */
+    void terminate(){
+        this.control.setRun(false);
+        this.unparkAll();
+    }
 
-            //case (byte) 0xea -> is.nop()
+    /**
+     * Call an interrupt
+     */
+    void irq(){
+        this.control.setInterrupt();
+        this.unparkAll();
+    }
 
-            case (byte) 0x09 -> is.ora(am.immediate());
-            case (byte) 0x05 -> is.ora(am.zeroPage());
-            case (byte) 0x15 -> is.ora(am.zeroPageIndexX());
-            case (byte) 0x0d -> is.ora(am.absolute());
-            case (byte) 0x1d -> is.ora(am.absoluteIndexX());
-            case (byte) 0x19 -> is.ora(am.absoluteIndexY());
-            case (byte) 0x01 -> is.ora(am.indexedIndirect());
-            case (byte) 0x11 -> is.ora(am.indirectIndexed());
+    /**
+     * Call a non-maskable interrupt
+     */
+    void nmi(){
+        this.control.setNonMaskableInterrupt();
+        this.unparkAll();
+    }
 
-            case (byte) 0x48 -> is.pha();
+    /**
+     * Tell a program that waits in an idle loop that memory has been changed from outside, so it looks again.
+     */
+    void wake(){
+        this.control.setWake();
+        this.unparkAll();
+    }
 
-            case (byte) 0x08 -> is.php();
+    /**
+     * Wakes up the throttled clock of this thread and the thread that waits in an idle loop, which is not this one if
+     * the program runs on the calling thread.
+     */
+    private void unparkAll(){
+        LockSupport.unpark(this);
+        Thread parked = this.parked;
+        if(parked != null) LockSupport.unpark(parked);
+    }
 
-            case (byte) 0x68 -> is.pla();
+    /**
+     * Switches the detection of idle loops on or off.<br>
+     * An idle loop is a loop that does not write to memory and comes back to its start with the same registers and
+     * flags, so it can only be left by an interrupt, a stop or memory changed from outside. The thread started with
+     * {@link #start()} sleeps instead of running it. {@link #runFor(long)}, {@link #runForCycles(long)} and a
+     * throttled clock skip the loop up to their limit.
+     * @param idleDetection true to detect idle loops.
+     */
+    void setIdleDetection(boolean idleDetection){
+        this.idleDetection = idleDetection;
+        this.idleProbeInterval = 1;
+    }
 
-            case (byte) 0x28 -> is.plp();
+    /**
+     * Get the amount of rounds of idle loops that have been skipped.<br>
+     * The skipped instructions and cycles are counted in {@link #getInstructionCount()} and
+     * {@link #getCycleCount()}. While the thread sleeps, they are estimated from the speed the program has run at.
+     * @return amount of skipped rounds.
+     */
+    long getSkippedIterations(){
+        return this.skippedIterations;
+    }
 
-            case (byte) 0x2a -> is.rol();
-            case (byte) 0x26 -> is.rol(am.zeroPage());
-            case (byte) 0x36 -> is.rol(am.zeroPageIndexX());
-            case (byte) 0x2e -> is.rol(am.absolute());
-            case (byte) 0x3e -> is.rol(am.absoluteIndexX());
+    /**
+     * Set the clock frequency the thread runs the program at.<br>
+     * Only the thread started with {@link #start()} is throttled, {@link #runFor(long)} and
+     * {@link #runForCycles(long)} always run as fast as they can.
+     * @param hertz clock frequency in Hz, 0 to run as fast as possible.
+     */
+    void setClockFrequency(long hertz){
+        if(hertz < 0) throw new IllegalArgumentException("The clock frequency can not be negative.");
+        this.clockFrequency = hertz;
+    }
 
-            case (byte) 0x6a -> is.ror();
-            case (byte) 0x66 -> is.ror(am.zeroPage());
-            case (byte) 0x76 -> is.ror(am.zeroPageIndexX());
-            case (byte) 0x6e -> is.ror(am.absolute());
-            case (byte) 0x7e -> is.ror(am.absoluteIndexX());
+    /**
+     * Creates a report of how fast the thread has run the program and how much CPU time it took.<br>
+     * While the thread runs, the report is up to now. Afterwards it covers the whole run.
+     * @return clock report.
+     */
+    ClockReport getClockReport(){
+        if(this.startNanos == 0) return new ClockReport(this.clockFrequency, 0, 0, -1);
 
-            case (byte) 0x40 -> is.rti();
+        if(this.endNanos != 0){
+            return new ClockReport(this.clockFrequency, this.endCycles - this.startCycles,
+                    this.endNanos - this.startNanos, this.endCpuNanos);
+        }
 
-            case (byte) 0x60 -> is.rts();
+        ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+        long cpuNanos = threadBean.isThreadCpuTimeSupported() ? threadBean.getThreadCpuTime(this.getId()) : -1;
+        return new ClockReport(this.clockFrequency, this.registers.cycles - this.startCycles,
+                System.nanoTime() - this.startNanos, cpuNanos);
+    }
 
-            case (byte) 0xe9 -> is.sbc(am.immediate());
-            case (byte) 0xe5 -> is.sbc(am.zeroPage());
-            case (byte) 0xf5 -> is.sbc(am.zeroPageIndexX());
-            case (byte) 0xed -> is.sbc(am.absolute());
-            case (byte) 0xfd -> is.sbc(am.absoluteIndexX());
-            case (byte) 0xf9 -> is.sbc(am.absoluteIndexY());
-            case (byte) 0xe1 -> is.sbc(am.indexedIndirect());
-            case (byte) 0xf1 -> is.sbc(am.indirectIndexed());
+    /**
+     * Set the amount of instructions run between two looks at the status word.<br>
+     * A stop or an interrupt from another thread is seen after at most this many instructions, plus one block if
+     * the block cache is on.
+     * @param quantum amount of instructions, at least 1.
+     */
+    void setQuantum(int quantum){
+        if(quantum < 1) throw new IllegalArgumentException("The quantum has to be at least 1.");
+        this.quantum = quantum;
+    }
 
-            case (byte) 0x38 -> is.sec();
+    /**
+     * Get the amount of instructions run so far.
+     * @return amount of instructions.
+     */
+    long getInstructionCount(){
+        return this.instructionCount;
+    }
 
-            case (byte) 0xf8 -> is.sed();
+    /**
+     * Set the amount of instructions run so far, like from a saved state.
+     * @param instructionCount amount of instructions.
+     */
+    void setInstructionCount(long instructionCount){
+        this.instructionCount = instructionCount;
+    }
 
-            case (byte) 0x78 -> is.sei();
+    /**
+     * Get the amount of clock cycles run so far.
+     * @return amount of cycles.
+     */
+    long getCycleCount(){
+        return this.registers.cycles;
+    }
 
-            case (byte) 0x85 -> is.sta(am.zeroPage());
-            case (byte) 0x95 -> is.sta(am.zeroPageIndexX());
-            case (byte) 0x8d -> is.sta(am.absolute());
-            case (byte) 0x9d -> is.sta(am.absoluteIndexX());
-            case (byte) 0x99 -> is.sta(am.absoluteIndexY());
-            case (byte) 0x81 -> is.sta(am.indexedIndirect());
-            case (byte) 0x91 -> is.sta(am.indirectIndexed());
+    /**
+     * Runs the program until it encounters the ext instruction (0x80) or the run control flag is set to false.
+     */
+    @Override
+    public void run(){
+        this.startCycles = this.registers.cycles;
+        this.startNanos = System.nanoTime();
 
-            case (byte) 0x86 -> is.stx(am.zeroPage());
-            case (byte) 0x96 -> is.stx(am.zeroPageIndexY());
-            case (byte) 0x8e -> is.stx(am.absolute());
+        if(this.clockFrequency == 0){
+            this.runUntil(Long.MAX_VALUE, Long.MAX_VALUE);
+        } else {
+            this.runThrottled();
+        }
 
-            case (byte) 0x84 -> is.sty(am.zeroPage());
-            case (byte) 0x94 -> is.sty(am.zeroPageIndexX());
-            case (byte) 0x8c -> is.sty(am.absolute());
+        ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+        this.endCpuNanos = threadBean.isCurrentThreadCpuTimeSupported() ? threadBean.getCurrentThreadCpuTime() : -1;
+        this.endCycles = this.registers.cycles;
+        this.endNanos = System.nanoTime();
+    }
 
-            case (byte) 0xaa -> is.tax();
+    /**
+     * Runs the program at the clock frequency.<br>
+     * Every slice runs the cycles the clock would have run by the end of it, then parks the thread until then. The
+     * cycles and the time are both counted from the start, so a slice that runs too long or wakes up late is made up
+     * for in the next one. If the thread falls more than {@link #MAX_LAG_NANOS} behind, it starts counting anew
+     * instead of running flat out to catch up.
+     */
+    private void runThrottled(){
+        long startNanos = System.nanoTime();
+        long startCycles = this.registers.cycles;
+        long slice = 0;
+        long frequency = this.clockFrequency;
 
-            case (byte) 0xa8 -> is.tay();
+        while(this.control.getRun()){
+            // the frequency can change while running. Start counting anew when it does.
+            if(frequency != this.clockFrequency){
+                frequency = this.clockFrequency;
+                startNanos = System.nanoTime();
+                startCycles = this.registers.cycles;
+                slice = 0;
+            }
+            if(frequency == 0){
+                this.runUntil(Long.MAX_VALUE, Long.MAX_VALUE);
+                return;
+            }
 
-            case (byte) 0xba -> is.tsx();
+            slice++;
+            long sliceEnd = startNanos + slice * SLICE_NANOS;
+            long cycleTarget = startCycles + (long) ((double) frequency * slice * SLICE_NANOS / 1e9);
+            this.runUntil(Long.MAX_VALUE, cycleTarget);
+
+            long wait = sliceEnd - System.nanoTime();
+            if(wait > 0){
+                LockSupport.parkNanos(this, wait);
+            } else if(-wait > MAX_LAG_NANOS){
+                startNanos = System.nanoTime();
+                startCycles = this.registers.cycles;
+                slice = 0;
+            }
+        }
+    }
 
-            case (byte) 0x8a -> is.txa();
+    /**
+     * Runs a number of instructions on the calling thread.<br>
+     * Stops early if the program encounters the ext instruction (0x80) or the run control flag is set to false.
+     * @param instructions amount of instructions to run.
+     * @return amount of instructions that have run.
+     */
+    long runFor(long instructions){
+        return this.runUntil(limit(this.instructionCount, instructions), Long.MAX_VALUE);
+    }
 
-            case (byte) 0x9a -> is.txs();
+    /**
+     * Runs on the calling thread until either a number of instructions or a number of clock cycles has run.<br>
+     * Stops early if the program encounters the ext instruction (0x80) or the run control flag is set to false.
+     * @param instructions amount of instructions to run at most.
+     * @param cycles amount of cycles to run. The last instruction can run past it.
+     * @return amount of instructions that have run.
+     */
+    long runFor(long instructions, long cycles){
+        return this.runUntil(limit(this.instructionCount, instructions), limit(this.registers.cycles, cycles));
+    }
 
-            case (byte) 0x98 -> is.tya();
+    /**
+     * Adds an amount to a count without running past {@link Long#MAX_VALUE}.
+     * @param count count so far.
+     * @param amount amount to add, not negative.
+     * @return count to stop at.
+     */
+    private static long limit(long count, long amount){
+        return amount > Long.MAX_VALUE - count ? Long.MAX_VALUE : count + amount;
+    }
 
-            // not an official instruction, but needed to end the program in the simulation.
-            case (byte) 0x80 -> is.ext();
+    /**
+     * Runs a number of clock cycles on the calling thread.<br>
+     * An instruction is never cut in half, so the last instruction can run past the amount.
+     * Stops early if the program encounters the ext instruction (0x80) or the run control flag is set to false.
+     * @param cycles amount of cycles to run.
+     * @return amount of cycles that have run.
+     */
+    long runForCycles(long cycles){
+        long before = this.registers.cycles;
+        this.runUntil(Long.MAX_VALUE, limit(this.registers.cycles, cycles));
+        return this.registers.cycles - before;
+    }
 
-            default -> is.nop();
+    /**
+     * Runs quantum after quantum until a limit is reached or the run control flag is set to false.<br>
+     * The status word is only read between two quanta. That is where interrupts get called.
+     * @param instructionLimit instruction count to stop at.
+     * @param cycleLimit cycle count to stop at.
+     * @return amount of instructions that have run.
+     */
+    private long runUntil(long instructionLimit, long cycleLimit){
+        long before = this.instructionCount;
+        this.runStartNanos = System.nanoTime();
+        this.runStartCycles = this.registers.cycles;
+
+        while(this.instructionCount < instructionLimit && this.registers.cycles < cycleLimit && this.pollStatus()){
+            // a sample that has been asked for stops the quantum right where it is taken.
+            this.runQuantum(this.instructionCount + this.quantum, Math.min(instructionLimit, this.sampleAt),
+                    cycleLimit);
+            if(this.instructionCount >= this.sampleAt) this.takeSample();
+
+            // a skipped idle loop can not be stepped back through, traced or profiled.
+            if(this.idleDetection && this.journal == null && this.trace == null && this.profile == null
+                    && ++this.quantaSinceIdleProbe >= this.idleProbeInterval){
+                this.probeIdleLoop(Math.min(instructionLimit, this.sampleAt), cycleLimit);
+            }
         }
+
+        return this.instructionCount - before;
     }
 
     /**
-     * Do one step in the program.<br>
-     * Executes one instruction. Not just one clock cycle.
+     * Checks if the program is in an idle loop and skips the loop if it is.<br>
+     * Steps up to {@link #IDLE_PROBE_INSTRUCTIONS} instructions. If the program counter comes back to where it started
+     * with the same registers and flags, nothing has been written to memory and no device has been accessed, every
+     * further round of the loop does exactly the same. Every time the check fails, it runs half as often, down to every
+     * {@link #MAX_IDLE_PROBE_INTERVAL} quanta.
+     * @param instructionLimit instruction count that is never passed.
+     * @param cycleLimit cycle count to stop at.
      */
-    void step(){
-        if(!this.control.getRun()){
-            System.err.println("Run Flag is set to false. Will not step. Maybe you need to start() the sim first.");
-            return;
+    private void probeIdleLoop(long instructionLimit, long cycleLimit){
+        this.quantaSinceIdleProbe = 0;
+
+        int[] state = this.cpuState();
+        long writes = this.memory.getWriteCount();
+        long deviceAccesses = this.memory.getDeviceAccessCount();
+        long instructionsBefore = this.instructionCount;
+        long cyclesBefore = this.registers.cycles;
+
+        for(int i = 0; i < IDLE_PROBE_INSTRUCTIONS; i++){
+            if(this.control.getHalted() || this.instructionCount >= instructionLimit
+                    || this.registers.cycles >= cycleLimit) return;
+
+            this.execute();
+
+            // a loop that polls a device waits for the device, not for an interrupt.
+            if(this.memory.getWriteCount() != writes || this.memory.getDeviceAccessCount() != deviceAccesses) break;
+            if(this.cpuStateEquals(state)){
+                this.idleProbeInterval = 1;
+                this.skipIdleLoop(this.instructionCount - instructionsBefore, this.registers.cycles - cyclesBefore,
+                        instructionLimit, cycleLimit);
+                return;
+            }
         }
 
-        // if the previous instruction has jumped to a memory address then don't increment the counter
-        // because the instruction at the program counter needs to be executed.
-        if(this.control.getSkipNextIncrement()) {
-            this.control.allowNextIncrement();
+        this.idleProbeInterval = Math.min(this.idleProbeInterval * 2, MAX_IDLE_PROBE_INTERVAL);
+    }
+
+    /**
+     * Skips rounds of an idle loop.<br>
+     * Without limits, the thread sleeps until something can get the program out of the loop. Otherwise the loop is
+     * skipped as far as the limits allow, and the rest runs normally.
+     * @param loopInstructions instructions of one round of the loop.
+     * @param loopCycles clock cycles of one round of the loop.
+     * @param instructionLimit instruction count that is never passed.
+     * @param cycleLimit cycle count to stop at.
+     */
+    private void skipIdleLoop(long loopInstructions, long loopCycles, long instructionLimit, long cycleLimit){
+        long iterations;
+        if(instructionLimit == Long.MAX_VALUE && cycleLimit == Long.MAX_VALUE){
+            iterations = this.waitForWakeUp(loopCycles);
         } else {
-            this.memory.incrementProgramCounter();
+            iterations = Math.min((instructionLimit - this.instructionCount) / loopInstructions,
+                    (cycleLimit - this.registers.cycles) / loopCycles);
         }
+        // the counts saturate instead of overflowing, however long the thread has slept.
+        iterations = Math.min(iterations, Math.min((Long.MAX_VALUE - this.instructionCount) / loopInstructions,
+                (Long.MAX_VALUE - this.registers.cycles) / loopCycles));
 
-        this.runInstruction(this.memory.getCurrentByte());
+        this.skippedIterations += iterations;
+        this.instructionCount += iterations * loopInstructions;
+        this.registers.cycles += iterations * loopCycles;
     }
 
     /**
-     * Stop the thread.
+     * Parks the thread until a stop, an interrupt that is not disabled, a non-maskable interrupt or a change to the
+     * memory from outside.
+     * @param loopCycles clock cycles of one round of the idle loop.
+     * @return rounds of the loop the program would have run in that time, at the speed it has run so far.
      */
-    void terminate(){
-        this.control.setRun(false);
+    private long waitForWakeUp(long loopCycles){
+        long parkStart = System.nanoTime();
+        double cyclesPerNano = (double) (this.registers.cycles - this.runStartCycles)
+                / Math.max(1, parkStart - this.runStartNanos);
+
+        // published before the status is read, so a wake up after the read unparks this thread.
+        this.parked = Thread.currentThread();
+        try{
+            while(!this.canLeaveIdleLoop(this.control.getStatus())){
+                LockSupport.park(this);
+            }
+        } finally{
+            this.parked = null;
+        }
+
+        return (long) (cyclesPerNano * (System.nanoTime() - parkStart) / loopCycles);
     }
 
     /**
-     * Call an interrupt
+     * Checks if the status word holds something that can get the program out of an idle loop.
+     * @param status status word.
+     * @return true if the program has been stopped, memory changed or an interrupt can be called.
      */
-    void irq(){
-        this.control.setInterrupt();
+    private boolean canLeaveIdleLoop(int status){
+        if((status & Control.RUN) == 0) return true;
+        if((status & (Control.NON_MASKABLE_INTERRUPT | Control.WAKE)) != 0) return true;
+        // the loop does not change the interrupt disable flag, so a disabled interrupt stays disabled.
+        return (status & Control.INTERRUPT) != 0 && !this.flags.getInterruptDisable();
     }
 
     /**
-     * Call a non-maskable interrupt
+     * Reads the status word and calls the interrupts that are waiting.
+     * @return false if the run control flag is set to false.
      */
-    void nmi(){
-        this.control.setNonMaskableInterrupt();
+    private boolean pollStatus(){
+        int status = this.control.getStatus();
+        if((status & Control.RUN) == 0) return false;
+
+        // memory has been changed from outside. Nothing to do but to run on, the journal can not undo it though.
+        if((status & Control.WAKE) != 0){
+            this.control.clearWake();
+            if(this.journal != null) this.journal.clear();
+            if(this.compactTrace != null) this.compactTrace.snapshot(this.instructionCount);
+        }
+
+        // the sampler asks for a sample. Taking it right here would put every sample of a loop that divides the
+        // quantum on the same instruction, so it is taken a random amount of instructions into the quantum.
+        if((status & Control.SAMPLE) != 0){
+            this.control.clearSample();
+            if(this.sampleProfile != null && this.sampleAt == Long.MAX_VALUE){
+                this.sampleAt = this.instructionCount + ThreadLocalRandom.current().nextInt(this.quantum);
+            }
+        }
+
+        // if the interrupt has been called, go to the address specified in the break vector
+        if((status & Control.INTERRUPT) != 0 && !this.flags.getInterruptDisable()){
+            this.control.clearInterrupt();
+            this.memory.setProgramCounter(this.memory.getBreakAddress());
+            if(this.compactTrace != null) this.compactTrace.recordJump(this.instructionCount, this.registers.pc);
+        }
+
+        // if the non-maskable interrupt has been called, go to the address in the nmi vector
+        if((status & Control.NON_MASKABLE_INTERRUPT) != 0){
+            this.control.clearNonMaskableInterrupt();
+            this.memory.setProgramCounter(this.memory.getNMIAddress());
+            if(this.compactTrace != null) this.compactTrace.recordJump(this.instructionCount, this.registers.pc);
+        }
+
+        return true;
     }
 
     /**
-     * Runs the program until it encounters the ext instruction (0x80) or the run control flag is set to false.
+     * Takes the sample the sampler has asked for, from the registers and the stack as they are now.
      */
-    @Override
-    public void run(){
-        while(this.control.getRun()){
+    private void takeSample(){
+        this.sampleAt = Long.MAX_VALUE;
+        if(this.sampleProfile != null) this.sampleProfile.sample(this.registers.pc, this.registers.sp);
+    }
 
-            // if the interrupt has been called, go to the address specified in the break vector
-            if(this.control.getInterrupt()){
-                if(!this.flags.getInterruptDisable()){
-                    this.control.clearInterrupt();
-                    this.control.setSkipNextIncrement();
-                    this.memory.setProgramCounter(this.memory.getBreakAddress());
-                }
+    /**
+     * Runs instructions until the end of the quantum, until a limit is reached or until the program stops itself.<br>
+     * Does not read the status word, so a stop or an interrupt from another thread is only seen afterwards.
+     * A block that does not fit in the limits is run one instruction at a time.
+     * @param quantumEnd instruction count to return at. Can be passed by one block.
+     * @param instructionLimit instruction count that is never passed.
+     * @param cycleLimit cycle count to stop at. Can be passed by one instruction, or by the extra cycles of one block.
+     */
+    private void runQuantum(long quantumEnd, long instructionLimit, long cycleLimit){
+        while(!this.control.getHalted() && this.instructionCount < quantumEnd
+                && this.instructionCount < instructionLimit && this.registers.cycles < cycleLimit){
+            if(this.journal != null) this.journal.mark(this.instructionCount);
+            if(this.trace != null && this.trace.record(this.instructionCount)){
+                this.execute();
+                continue;
+            }
+            if(this.profile != null){
+                this.executeProfiled();
+                continue;
             }
 
-            // if the non-maskable interrupt has been called, go to the address in teh nmi vector
-            if(this.control.getNonMaskableInterrupt()){
-                this.control.clearNonMaskableInterrupt();
-                this.control.setSkipNextIncrement();
-                this.memory.setProgramCounter(this.memory.getNMIAddress());
+            if(this.blockCache != null){
+                DecodedBlock block = this.blockCache.get(this.registers.pc);
+                if(block == null){
+                    // code in the pages of a device
+                    this.execute();
+                    continue;
+                }
+                if(block.idiom != null && this.runIdiom(block, instructionLimit, cycleLimit)) continue;
+                // a delay loop stops at the end of the quantum, so interrupts are called as often as without it.
+                if(block.delay != null
+                        && this.runDelayLoop(block, Math.min(quantumEnd, instructionLimit), cycleLimit)) continue;
+                if(block.instructions <= instructionLimit - this.instructionCount
+                        && block.totalCycles <= cycleLimit - this.registers.cycles){
+                    this.runBlock(block);
+                    continue;
+                }
             }
 
-            this.step();
+            this.execute();
         }
     }
 
@@ -0,0 +1,64 @@
+/*
+Copyright (c) 2023, Livio Conzett
+All rights reserved.
+
+This source code is licensed under the BSD-style license found in the
+LICENSE file in the root directory of this source tree.
+*/
+
+package tech.livio.java6502;
+
+/**
+ * The register file of the 6502.<br>
+ * All registers are held as unsigned ints, so the operations can work on them without casts.
+ * <pre>
+ *     a  = Accumulator                0x00 - 0xff
+ *     x  = Index Register X           0x00 - 0xff
+ *     y  = Index Register Y           0x00 - 0xff
+ *     sp = Stack Pointer              0x00 - 0xff (within page 0x01)
+ *     p  = Processor Status Register  NV_BDIZC, see {@link Flags}
+ *     pc = Program Counter            0x0000 - 0xffff
+ * </pre>
+ * The program counter always points at the next byte to fetch. When an instruction runs, it points at the byte after
+ * the op-code.<br>
+ * The clock cycle counter is not a register of the 6502. It is kept here, because the run loop, the addressing modes
+ * and the branches all add to it.
+ * @author Livio Conzett
+ */
+class Registers {
+
+    // the stack pointer after power on.
+    static final int POWER_ON_STACK_POINTER = 0x69;
+
+    int a;
+    int x;
+    int y;
+    int sp;
+    int p;
+    int pc;
+    // clock cycles run so far.
+    long cycles;
+
+    /**
+     * Initialize the registers.
+     */
+    Registers(){
+        // initiate the stackpointer to a "random" number. That's what the real one did too. This is to force
+        // the programmer to actually set the stackpointer.
+        this.sp = POWER_ON_STACK_POINTER;
+        this.reset();
+    }
+
+    /**
+     * Resets the registers and the program counter. Leaves the stack pointer and the status register.
+     */
+    void reset(){
+        // program counter always starts at address 0xfffc
+        // that's where it gets the address to the start of the program.
+        this.pc = 0xfffc;
+
+        this.a = 0;
+        this.x = 0;
+        this.y = 0;
+    }
+}
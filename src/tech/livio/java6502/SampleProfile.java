@@ -0,0 +1,227 @@
+/*
+Copyright (c) 2023, Livio Conzett
+All rights reserved.
+
+This source code is licensed under the BSD-style license found in the
+LICENSE file in the root directory of this source tree.
+*/
+
+package tech.livio.java6502;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+/**
+ * Samples of the program counter and the call stack, taken by {@link Sim6502#startSampling(int)} at a fixed rate
+ * while the program runs at full speed.<br>
+ * The call stack is found by looking for return addresses on the stack: two bytes that point right behind a jsr.
+ * The stack has no frames, so a value the program has pushed that looks like a return address counts as a call too.
+ * <br>
+ * A sample is taken a random amount of instructions into a quantum, also in the middle of a block of the block cache.
+ * Taken right between two quanta, every sample of a loop that fits evenly into a quantum would be at the same address.
+ */
+public class SampleProfile {
+
+    private static final int ADDRESSES = 0x10000;
+    // deepest call stack that is looked for. The stack has room for 85 calls.
+    private static final int MAX_DEPTH = 128;
+
+    private final Memory memory;
+    private final long[] samples;
+    private long sampleCount;
+    private long depthSum;
+    private int maxDepth;
+    // every call stack sampled, as the addresses of the jsr instructions from the outermost on and then the program
+    // counter, one char per address. With how often it has been sampled.
+    private final Map<String, long[]> stacks;
+    private final char[] sites;
+    // memory when the sampling was stopped, to disassemble the instructions.
+    private final byte[] code;
+    // address of every symbol and its name.
+    private NavigableMap<Integer, String> symbols;
+
+    /**
+     * Initialize an empty profile.
+     * @param memory memory of the program, to look at the stack.
+     */
+    SampleProfile(Memory memory){
+        this.memory = memory;
+        this.samples = new long[ADDRESSES];
+        this.stacks = new HashMap<>();
+        this.sites = new char[MAX_DEPTH + 1];
+        this.code = new byte[ADDRESSES];
+        this.symbols = new TreeMap<>();
+    }
+
+    /**
+     * Take a sample. Only called by the thread running the program.
+     * @param pc program counter.
+     * @param sp stack pointer.
+     */
+    void sample(int pc, int sp){
+        int depth = 0;
+        for(int s = sp + 1; s < 0xff && depth < MAX_DEPTH; s++){
+            // jsr pushes the address of its last byte, then the status.
+            int returnAddress = this.memory.peek(Stack.BOTTOM_STACK + s)
+                    | this.memory.peek(Stack.BOTTOM_STACK + s + 1) << 8;
+            int site = (returnAddress - 2) & 0xffff;
+            if(this.memory.peek(site) != 0x20) continue;
+            this.sites[depth++] = (char) site;
+            s++;
+        }
+
+        // outermost first
+        for(int i = 0; i < depth / 2; i++){
+            char site = this.sites[i];
+            this.sites[i] = this.sites[depth - 1 - i];
+            this.sites[depth - 1 - i] = site;
+        }
+        this.sites[depth] = (char) pc;
+        this.stacks.computeIfAbsent(new String(this.sites, 0, depth + 1), k -> new long[1])[0]++;
+
+        this.samples[pc]++;
+        this.sampleCount++;
+        this.depthSum += depth;
+        this.maxDepth = Math.max(this.maxDepth, depth);
+    }
+
+    /**
+     * Ends the sampling: keeps the memory to disassemble.
+     */
+    void finish(){
+        for(int address = 0; address < ADDRESSES; address++){
+            this.code[address] = (byte) this.memory.peek(address);
+        }
+    }
+
+    /**
+     * Get the amount of samples.
+     * @return amount of samples.
+     */
+    public long getSampleCount(){
+        return this.sampleCount;
+    }
+
+    /**
+     * Get how often the program counter has been at an address when a sample was taken.
+     * @param address address. Only the lower 16 bits are used.
+     * @return amount of samples.
+     */
+    public long getSamples(int address){
+        return this.samples[address & 0xffff];
+    }
+
+    /**
+     * Get the average amount of calls on the stack when a sample was taken.
+     * @return average call depth. 0 if there are no samples.
+     */
+    public double getAverageDepth(){
+        return this.sampleCount == 0 ? 0 : (double) this.depthSum / this.sampleCount;
+    }
+
+    /**
+     * Get the highest amount of calls on the stack when a sample was taken.
+     * @return call depth.
+     */
+    public int getMaxDepth(){
+        return this.maxDepth;
+    }
+
+    /**
+     * Set the symbols the addresses are reported by.
+     * @param symbols name of every address that starts a routine, or of a label in it. See
+     *                {@link Profile#readSymbols(Path)}.
+     */
+    public void setSymbols(Map<Integer, String> symbols){
+        this.symbols = Profile.symbolTable(symbols);
+    }
+
+    /**
+     * Creates a histogram of the addresses the program counter has been at most often, disassembled from the memory as
+     * it was when the sampling was stopped.
+     * @param top maximum amount of addresses in the histogram.
+     * @return histogram, one address per line.
+     */
+    public String histogram(int top){
+        StringBuilder histogram = new StringBuilder();
+        histogram.append(String.format(Locale.ROOT, "%d samples, average call depth %.2f%n", this.sampleCount,
+                this.getAverageDepth()));
+        histogram.append(String.format(Locale.ROOT, "%10s %7s  %-4s  %-8s  %-12s  %s%n",
+                "samples", "share", "addr", "bytes", "instruction", "routine"));
+
+        for(int address : Profile.hottest(this.samples, top)){
+            histogram.append(String.format(Locale.ROOT, "%10d %6.2f%%  %04x  %-8s  %-12s  %s%n",
+                    this.samples[address],
+                    100.0 * this.samples[address] / this.sampleCount,
+                    address,
+                    Profile.bytes(this.code, address),
+                    Profile.disassemble(this.code, address),
+                    Profile.routine(this.symbols, address)));
+        }
+
+        return histogram.toString();
+    }
+
+    /**
+     * Creates the call stacks in the collapsed format that flame graph tools read: one line per call stack with the
+     * routines from the outermost on, joined by ";", and how often it has been sampled, e.g. "main;print;putc 42".<br>
+     * A routine is named by the closest symbol at or below the address it was at. Without a symbol, a called routine
+     * is named by the address it starts at, e.g. "$e1a0", and the outermost one by "-".
+     * @return call stacks, sorted by name.
+     */
+    public String collapsedStacks(){
+        Map<String, Long> collapsed = new TreeMap<>();
+        for(Map.Entry<String, long[]> stack : this.stacks.entrySet()){
+            collapsed.merge(this.collapse(stack.getKey()), stack.getValue()[0], Long::sum);
+        }
+
+        StringBuilder lines = new StringBuilder();
+        for(Map.Entry<String, Long> stack : collapsed.entrySet()){
+            lines.append(stack.getKey()).append(' ').append(stack.getValue()).append('\n');
+        }
+        return lines.toString();
+    }
+
+    /**
+     * Writes the call stacks in the collapsed format into a file, see {@link #collapsedStacks()}.
+     * @param file path of the file. Is overwritten if it exists.
+     * @throws IOException if the file can not be written.
+     */
+    public void writeCollapsedStacks(Path file) throws IOException{
+        try(BufferedWriter out = Files.newBufferedWriter(file)){
+            out.write(this.collapsedStacks());
+        }
+    }
+
+    /**
+     * Names the routines of a sampled call stack.
+     * @param stack addresses of the jsr instructions and the program counter, one char per address.
+     * @return names of the routines, joined by ";".
+     */
+    private String collapse(String stack){
+        StringBuilder names = new StringBuilder();
+        for(int i = 0; i < stack.length(); i++){
+            int address = stack.charAt(i);
+            Map.Entry<Integer, String> symbol = this.symbols.floorEntry(address);
+            if(i > 0) names.append(';');
+            if(symbol != null){
+                names.append(symbol.getValue());
+            } else if(i == 0){
+                names.append('-');
+            } else {
+                // the routine starts where the jsr before has called.
+                int site = stack.charAt(i - 1);
+                int start = (this.code[(site + 1) & 0xffff] & 0xff) | (this.code[(site + 2) & 0xffff] & 0xff) << 8;
+                names.append(String.format("$%04x", start));
+            }
+        }
+        return names.toString();
+    }
+}
@@ -0,0 +1,76 @@
+/*
+Copyright (c) 2023, Livio Conzett
+All rights reserved.
+
+This source code is licensed under the BSD-style license found in the
+LICENSE file in the root directory of this source tree.
+*/
+
+package tech.livio.java6502;
+
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Thread of its own that asks the thread running the program for a sample at a fixed rate.<br>
+ * It only sets a bit of the status word. The run loop reads the status word between two quanta anyway, so a program
+ * that is not sampled does no extra work. It takes the sample a random amount of instructions into the next quantum,
+ * from the registers and the stack as they are at that moment. A sample is taken at most two quanta after it has been
+ * asked for.
+ */
+class Sampler {
+
+    private final Control control;
+    private final long periodNanos;
+    private final Thread thread;
+    private volatile boolean running;
+
+    /**
+     * Start asking for samples.
+     * @param control control of the program to sample.
+     * @param frequency samples per second.
+     * @throws IllegalArgumentException if the frequency is not above 0 or above 1 GHz.
+     */
+    Sampler(Control control, int frequency){
+        if(frequency <= 0 || frequency > 1_000_000_000){
+            throw new IllegalArgumentException("The sampling frequency must be 1 Hz to 1 GHz, not " + frequency + ".");
+        }
+        this.control = control;
+        this.periodNanos = 1_000_000_000L / frequency;
+        this.running = true;
+        this.thread = new Thread(this::run, "6502-sampler");
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    /**
+     * Asks for a sample after every period until it is closed. If it falls behind, the missed samples are skipped
+     * instead of asked for all at once.
+     */
+    private void run(){
+        long next = System.nanoTime() + this.periodNanos;
+        while(this.running){
+            long now = System.nanoTime();
+            if(now < next){
+                LockSupport.parkNanos(next - now);
+                continue;
+            }
+            this.control.setSample();
+            next = Math.max(next + this.periodNanos, now);
+        }
+    }
+
+    /**
+     * Stops asking for samples and waits until the thread has ended. A sample that has been asked for and not taken
+     * is forgotten.
+     */
+    void close(){
+        this.running = false;
+        LockSupport.unpark(this.thread);
+        try{
+            this.thread.join();
+        } catch(InterruptedException e){
+            Thread.currentThread().interrupt();
+        }
+        this.control.clearSample();
+    }
+}
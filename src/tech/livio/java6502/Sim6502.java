@@ -8,6 +8,15 @@ LICENSE file in the root directory of this source tree.
 
 package tech.livio.java6502;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+import java.util.List;
+
 /**
  * Class that can simulate a 6502 processor system.
  * @author Livio Conzett
@@ -15,6 +24,10 @@ package tech.livio.java6502;
  */
 public class Sim6502 {
 
+    // size of the ring buffer of a trace.
+    static final int TRACE_BUFFER_BYTES = 16 << 20;
+
+    private final Registers registers;
     private final Memory memory;
     private final Stack stack;
     private final Flags flags;
@@ -23,15 +36,23 @@ public class Sim6502 {
     private final Control control;
     private final Printer printer;
     private final ProgramRunner programRunner;
+    private final MachineState machineState;
+    private BlockCache blockCache;
+    private TraceRecorder trace;
+    private CompactTrace compactTrace;
+    private Profile profile;
+    private Sampler sampler;
+    private SampleProfile sampleProfile;
 
     /**
      * Initialize the 6502 simulator
      */
     public Sim6502(){
         this.control = new Control();
-        this.memory = new Memory();
+        this.registers = new Registers();
+        this.memory = new Memory(this.registers);
         this.stack = new Stack(this.memory, this.control);
-        this.flags = new Flags();
+        this.flags = new Flags(this.registers, false);
         this.is = new InstructionSet(this.memory, this.stack, this.flags, this.control);
         this.am = new AddressingMode(this.memory);
         this.printer = new Printer(this.memory);
@@ -44,6 +65,7 @@ public class Sim6502 {
                 this.am,
                 this.control
         );
+        this.machineState = new MachineState(this.memory, this.flags, this.control, this.programRunner);
     }
 
     /**
@@ -53,6 +75,7 @@ public class Sim6502 {
         this.memory.hardReset();
         this.control.reset();
         this.flags.reset();
+        this.programRunner.wake();
     }
 
     /**
@@ -62,6 +85,20 @@ public class Sim6502 {
         this.memory.reset();
         this.control.reset();
         this.flags.reset();
+        this.programRunner.wake();
+    }
+
+    /**
+     * Puts the simulator back into the state of a new one, so it can run the next program of a {@link SimFarm}.<br>
+     * Does a hard reset, puts the stack pointer back and replaces the callbacks with ones that do nothing. Settings
+     * like the block cache are kept.
+     */
+    void clear(){
+        this.hardReset();
+        this.registers.sp = Registers.POWER_ON_STACK_POINTER;
+        this.control.setDoOnExt(e -> {});
+        this.control.setDoOnStackOverflow(e -> {});
+        this.control.setDoOnManualHalt(e -> {});
     }
 
 
@@ -83,6 +120,14 @@ public class Sim6502 {
         return this.memory.getProgramCounter();
     }
 
+    /**
+     * Sets the program counter.
+     * @param address address of the next instruction to run.
+     */
+    void setProgramCounter(short address){
+        this.memory.setProgramCounter(address);
+    }
+
     /**
      * Load code from String into memory.<br>
      * String needs to be Hex codes formatted 2 chars at a time with spaces in between.<br>
@@ -92,6 +137,7 @@ public class Sim6502 {
      */
     public void load(String code){
         this.memory.load(code);
+        this.programRunner.wake();
     }
 
     /**
@@ -103,6 +149,7 @@ public class Sim6502 {
      */
     public void load(short beginAddress, String code){
         this.memory.load(beginAddress, code);
+        this.programRunner.wake();
     }
 
     /**
@@ -111,6 +158,7 @@ public class Sim6502 {
      */
     public void load(short beginAddress, byte[] code){
         this.memory.load(beginAddress, code);
+        this.programRunner.wake();
     }
 
     /**
@@ -122,6 +170,81 @@ public class Sim6502 {
         this.load((short)0x0000, code);
     }
 
+    /**
+     * Load a memory image as the whole memory.<br>
+     * The pages of the image are shared with every other simulator that loads it. A page only gets copied when the
+     * program writes to it.
+     * @param image image to load.
+     */
+    public void load(MemoryImage image){
+        this.memory.load(image);
+        this.programRunner.wake();
+    }
+
+    /**
+     * Attach a device to a range of whole pages. Every read and write of the program in the range goes to the device
+     * instead of the memory.<br>
+     * The memory in the range is lost. Attaching null puts memory filled with 0 back.
+     * @param device device, or null to remove the device.
+     * @param lowAddress first address of the range, the start of a page (0xXX00).
+     * @param highAddress last address of the range, the end of a page (0xXXff).
+     * @throws IllegalArgumentException if the range does not consist of whole pages.
+     */
+    public void attachDevice(Device device, short lowAddress, short highAddress){
+        int low = lowAddress & 0xffff;
+        int high = highAddress & 0xffff;
+        if((low & 0xff) != 0 || (high & 0xff) != 0xff || high < low){
+            throw new IllegalArgumentException("A device has to cover whole pages.");
+        }
+        this.memory.attachDevice(device, low >>> 8, high >>> 8);
+        this.programRunner.wake();
+    }
+
+    /**
+     * Make a range of whole pages a mirror of another range of the same size. Reading or writing an address in the
+     * mirror reads or writes the address in the other range, memory or device.<br>
+     * The memory in the mirror is lost.
+     * @param lowAddress first address of the mirror, the start of a page (0xXX00).
+     * @param highAddress last address of the mirror, the end of a page (0xXXff).
+     * @param targetAddress first address of the range to show, the start of a page (0xXX00).
+     * @throws IllegalArgumentException if the ranges do not consist of whole pages or the target range wraps around
+     * the end of memory.
+     */
+    public void mirror(short lowAddress, short highAddress, short targetAddress){
+        int low = lowAddress & 0xffff;
+        int high = highAddress & 0xffff;
+        int target = targetAddress & 0xffff;
+        if((low & 0xff) != 0 || (high & 0xff) != 0xff || (target & 0xff) != 0 || high < low){
+            throw new IllegalArgumentException("A mirror has to cover whole pages.");
+        }
+        if(target + high - low > 0xffff){
+            throw new IllegalArgumentException("The mirrored range can not wrap around the end of memory.");
+        }
+        this.memory.mirror(low >>> 8, high >>> 8, target >>> 8);
+        this.programRunner.wake();
+    }
+
+    /**
+     * Keep the memory in a file of 64 KiB, where byte n is the byte at address n. The memory gets the bytes already
+     * in the file, so a program can go on where it left off in an earlier run, and every write of the program goes
+     * through to the file, so other processes can map the file and watch the memory while the program runs.<br>
+     * The file is created if it does not exist. Changes made to the file by other processes are not seen. The pages
+     * of devices are 0 in the file.
+     * @param file path of the file, or null to keep the memory on the heap only again.
+     * @throws IOException if the file can not be opened or mapped.
+     */
+    public void setMemoryFile(Path file) throws IOException{
+        this.memory.setFile(file == null ? null : new MemoryFile(file));
+        this.programRunner.wake();
+    }
+
+    /**
+     * Make sure everything written to the memory file so far is on the disk. Does nothing without a memory file.
+     */
+    public void syncMemoryFile(){
+        this.memory.forceFile();
+    }
+
     /**
      * Get a range of memory.<br>
      * If the highAddress is <= lowAddress the method will return an empty byte array.
@@ -168,6 +291,120 @@ public class Sim6502 {
         this.programRunner.step();
     }
 
+    /**
+     * Runs a number of instructions on the calling thread. Sets the run control flag to true first.<br>
+     * Stops early if the program encounters the ext instruction (0x80) or is stopped.
+     * @param instructions amount of instructions to run.
+     * @return amount of instructions that have run.
+     */
+    public long runFor(long instructions){
+        this.start();
+        return this.programRunner.runFor(instructions);
+    }
+
+    /**
+     * Runs on the calling thread until either a number of instructions or a number of clock cycles has run. Sets the
+     * run control flag to true first.<br>
+     * Stops early if the program encounters the ext instruction (0x80) or is stopped.
+     * @param instructions amount of instructions to run at most.
+     * @param cycles amount of clock cycles to run at most. The last instruction can run past it.
+     * @return amount of instructions that have run.
+     */
+    long runFor(long instructions, long cycles){
+        this.start();
+        return this.programRunner.runFor(instructions, cycles);
+    }
+
+    /**
+     * Checks if the program has stopped itself, with the ext instruction (0x80), or has been stopped.
+     * @return true if the run control flag is false.
+     */
+    boolean hasStopped(){
+        return !this.control.getRun();
+    }
+
+    /**
+     * Runs a number of clock cycles on the calling thread. Sets the run control flag to true first.<br>
+     * The last instruction is always run to its end, so it can run a few cycles past the amount.
+     * Stops early if the program encounters the ext instruction (0x80) or is stopped.
+     * @param cycles amount of clock cycles to run.
+     * @return amount of clock cycles that have run.
+     */
+    public long runForCycles(long cycles){
+        this.start();
+        return this.programRunner.runForCycles(cycles);
+    }
+
+    /**
+     * Get the amount of instructions the program has run since the simulator was created.<br>
+     * While the program runs in its own thread, the value can be a bit behind.
+     * @return amount of instructions.
+     */
+    public long getInstructionCount(){
+        return this.programRunner.getInstructionCount();
+    }
+
+    /**
+     * Get the amount of clock cycles the program has run since the simulator was created.<br>
+     * Counts the cycles of every op-code, plus the extra cycle when an indexed read crosses a page and the extra
+     * cycles of taken branches. While the program runs in its own thread, the value can be a bit behind.
+     * @return amount of clock cycles.
+     */
+    public long getCycleCount(){
+        return this.programRunner.getCycleCount();
+    }
+
+    /**
+     * Switches the detection of idle loops on or off.<br>
+     * An idle loop does not write to memory and comes back to where it started with the same registers and flags,
+     * like <code>jmp *</code> or <code>lda $10 beq</code> waiting for an interrupt. Only an interrupt, a stop or
+     * {@link #load(short, String)} can get the program out of it. Instead of running the loop, the thread sleeps
+     * until one of those happens, and {@link #runFor(long)} skips the loop up to its limit. Default is off.
+     * @param idleDetection true to detect idle loops.
+     */
+    public void setIdleDetection(boolean idleDetection){
+        this.programRunner.setIdleDetection(idleDetection);
+    }
+
+    /**
+     * Get the amount of rounds of idle loops that have been skipped.<br>
+     * The skipped instructions and cycles are added to {@link #getInstructionCount()} and {@link #getCycleCount()}.
+     * While the thread sleeps without a clock frequency, they are estimated from the speed the program ran at before.
+     * @return amount of skipped rounds.
+     */
+    public long getSkippedIterations(){
+        return this.programRunner.getSkippedIterations();
+    }
+
+    /**
+     * Set the clock frequency the program runs at when it runs in its own thread (see {@link #run()}).<br>
+     * The thread runs the clock cycles of one millisecond and then sleeps until the millisecond is over, so it only
+     * uses as much of a host core as it needs. Time it loses is made up for later. Default is 0, which runs the
+     * program as fast as the host can.
+     * @param hertz clock frequency in Hz, e.g. 1_000_000 for 1 MHz. 0 to run as fast as possible.
+     */
+    public void setClockFrequency(long hertz){
+        this.programRunner.setClockFrequency(hertz);
+    }
+
+    /**
+     * Get a report of the clock frequency the program has run at in its own thread, compared to the one it was set
+     * to, and the share of a host core it used.
+     * @return clock report.
+     */
+    public ClockReport getClockReport(){
+        return this.programRunner.getClockReport();
+    }
+
+    /**
+     * Set the amount of instructions the program runs between two checks for a stop or an interrupt.<br>
+     * A smaller quantum calls interrupts sooner, a bigger one runs a bit faster. Default is 1000.
+     * @param instructions amount of instructions, at least 1.
+     */
+    public void setQuantum(int instructions){
+        this.programRunner.setQuantum(instructions);
+    }
+
     /**
      * Sets the run control flag to true.
      */
@@ -222,6 +459,76 @@ public class Sim6502 {
         this.control.setDoOnManualHalt(doOnManualHalt);
     }
 
+    /**
+     * Switch lazy evaluation of the processor flags on or off.<br>
+     * With lazy flags the operations only record their result, and the flags are computed when a branch, the
+     * stack or the user reads them. The results are the same either way. Default is off.
+     * @param lazyFlags true to evaluate the flags lazily.
+     */
+    public void setLazyFlags(boolean lazyFlags){
+        this.flags.setLazy(lazyFlags);
+    }
+
+    /**
+     * Switches the block cache on or off.<br>
+     * With the block cache, straight-line runs of code are decoded once and then run from the cache. Writes to memory
+     * throw away the decoded code of the written page, so self-modifying code still works. Default is off.
+     * @param blockCache true to run from the block cache.
+     */
+    public void setBlockCache(boolean blockCache){
+        this.blockCache = blockCache ? new BlockCache(this.memory) : null;
+        this.memory.setBlockCache(this.blockCache);
+        this.programRunner.setBlockCache(this.blockCache);
+    }
+
+    /**
+     * Switches the fusion of common instruction sequences on or off.<br>
+     * The block cache decodes sequences like <code>dex bne</code> or <code>lda sta</code> into one handler. The results
+     * are the same as without fusion. Turns the block cache on if it is off. Default is off.
+     * @param superinstructions true to fuse common instruction sequences.
+     */
+    public void setSuperinstructions(boolean superinstructions){
+        if(superinstructions && this.blockCache == null) this.setBlockCache(true);
+        if(this.blockCache == null) return;
+        this.blockCache.setSuperinstructions(superinstructions ? Superinstructions.ALL : List.of());
+    }
+
+    /**
+     * Switches the recognition of memory fill, memory copy and delay loops on or off.<br>
+     * Loops like <code>sta (ptr),y iny bne</code> or <code>lda src,x sta dst,x dex bne</code> are run as one bulk
+     * operation on the memory. Delay loops like <code>dex bne</code>, also nested ones, are not run at all, their
+     * result is computed. Registers, flags and cycles end up the same as running the loop. Turns the block cache on if
+     * it is off. Default is off.
+     * @param loopIdioms true to run fill and copy loops in bulk and to compute delay loops.
+     */
+    public void setLoopIdioms(boolean loopIdioms){
+        if(loopIdioms && this.blockCache == null) this.setBlockCache(true);
+        if(this.blockCache == null) return;
+        this.blockCache.setLoopIdioms(loopIdioms);
+    }
+
+    /**
+     * Switches the translation of hot blocks on or off.<br>
+     * Blocks from the block cache that run often get translated into their own class, which the JIT compiles like
+     * any other Java code. Turns the block cache on if it is off. Default is off.
+     * @param translation true to translate hot blocks.
+     */
+    public void setTranslation(boolean translation){
+        if(translation && this.blockCache == null) this.setBlockCache(true);
+        this.programRunner.setTranslator(translation ? new BlockTranslator() : null);
+    }
+
+    /**
+     * Switches cross-checking of translated blocks on or off.<br>
+     * Every translated block is run a second time in the interpreter and the results are compared. The program
+     * stops with an exception if they differ. This is slow and only meant to look for bugs in the translation.
+     * Default is off.
+     * @param crossCheck true to check translated blocks against the interpreter.
+     */
+    public void setTranslationCrossCheck(boolean crossCheck){
+        this.programRunner.setCrossCheck(crossCheck);
+    }
+
     /**
      * Returns a String of the hexdump of the entire memory.
      * @return String of memory.
@@ -230,7 +537,265 @@ public class Sim6502 {
         return this.printer.hexDumpMem();
     }
 
+    /**
+     * Switch reverse execution on or off. While it is on, a journal records the old value of every write to memory
+     * and the registers before every block of instructions, so the program can be stepped back with
+     * {@link #stepBack()}, {@link #runBackTo(short)} and {@link #runBackUntilWrite(short)}.<br>
+     * The journal is allocated once. When it is full, the oldest entries are overwritten, so it reaches back as far as
+     * its memory allows. Idle loops are not skipped while it is on.
+     * @param bytes memory the journal takes at most, at least 36 bytes. 0 to switch it off.
+     */
+    public void setJournal(int bytes){
+        this.programRunner.setJournal(bytes);
+    }
+
+    /**
+     * Step back one instruction. The registers, the memory and the counts are put back the way they were before it
+     * ran.<br>
+     * Memory changed from outside the program, like with {@link #load(String)}, can not be undone, so the journal
+     * starts anew when that has happened. A device is read again, and an interrupt is not called again.
+     * @return false if reverse execution is off or the journal does not reach back that far.
+     */
+    public boolean stepBack(){
+        return this.programRunner.stepBack();
+    }
+
+    /**
+     * Step back until the instruction at an address is the next to run.
+     * @param address address of the instruction.
+     * @return false if the journal ran out first. The program is then as far back as the journal reaches.
+     */
+    public boolean runBackTo(short address){
+        return this.programRunner.runBackTo(address & 0xffff);
+    }
 
-    //TODO: Make a dump of the entire memory with registers and program counter and all. maybe as xml
+    /**
+     * Step back until the last instruction that wrote to an address is the next to run.
+     * @param address address that has been written to.
+     * @return false if the journal ran out first. The program is then as far back as the journal reaches.
+     */
+    public boolean runBackUntilWrite(short address){
+        return this.programRunner.runBackUntilWrite(address & 0xffff);
+    }
+
+    /**
+     * Start recording every instruction the program runs into a file: the program counter, the op-code, the operand,
+     * a, x, y, sp and p before it runs and the effective address. Read the file with {@link TraceReader}.<br>
+     * The records go into a ring buffer of 16 MiB that a thread of its own writes to the file.
+     * The program never waits for it. If the ring is full, instructions are dropped and counted. While a trace is
+     * recorded, blocks, loop idioms and translated code are not used and idle loops are not skipped.
+     * @param file path of the trace. Is overwritten if it exists.
+     * @throws IOException if the file can not be created.
+     */
+    public void startTrace(Path file) throws IOException{
+        this.startTrace(file, -1, Long.MAX_VALUE, false);
+    }
+
+    /**
+     * Start recording a trace like {@link #startTrace(Path)}, but only from the first time the program counter is at
+     * an address on, and only for a number of instructions. Until then the program runs one instruction at a time,
+     * afterwards at full speed again.
+     * @param file path of the trace. Is overwritten if it exists.
+     * @param startAddress address of the first instruction to record.
+     * @param instructions amount of instructions to record.
+     * @throws IOException if the file can not be created.
+     */
+    public void startTrace(Path file, short startAddress, long instructions) throws IOException{
+        this.startTrace(file, startAddress & 0xffff, instructions, false);
+    }
+
+    /**
+     * Stops the trace that is recorded, if there is one, and starts a new one.
+     * @param file path of the trace.
+     * @param startAddress address of the first instruction to record, or -1 to start right away.
+     * @param instructions amount of instructions to record.
+     * @param lossless true to let the program wait for the writer instead of dropping instructions.
+     * @throws IOException if the file can not be created or the old trace can not be written.
+     */
+    void startTrace(Path file, int startAddress, long instructions, boolean lossless) throws IOException{
+        this.stopTrace();
+        this.trace = new TraceRecorder(this.memory, this.flags, file, TRACE_BUFFER_BYTES, startAddress, instructions,
+                lossless);
+        this.programRunner.setTrace(this.trace);
+    }
+
+    /**
+     * Stop recording the trace and wait until everything recorded is in the file.<br>
+     * Only call it while the program does not run in its own thread.
+     * @return amount of instructions that have been dropped because the ring buffer was full. 0 if the trace has
+     * every instruction, or if there is no trace.
+     * @throws IOException if writing the file has failed.
+     */
+    public long stopTrace() throws IOException{
+        if(this.trace == null) return 0;
+        TraceRecorder trace = this.trace;
+        this.trace = null;
+        this.programRunner.setTrace(null);
+        return trace.close();
+    }
+
+    /**
+     * Start recording a compact trace: only the state the program starts in, the values it reads from devices, the
+     * interrupts and the state after every change from outside, like {@link #load(String)}. Everything else follows
+     * from these, so {@link TraceReconstructor} can run the program again and write the full trace of
+     * {@link #startTrace(Path)} from it.<br>
+     * The program runs at full speed while it is recorded. Devices and mirrors have to be set up before. Reading a
+     * device from outside the program while it is recorded, or stepping back, makes the replay go wrong.
+     * @param file path of the compact trace. Is overwritten if it exists.
+     * @throws IOException if the file can not be written.
+     */
+    public void startCompactTrace(Path file) throws IOException{
+        this.stopCompactTrace();
+        this.compactTrace = new CompactTrace(this.memory, this.machineState, file,
+                this.programRunner.getInstructionCount());
+        this.memory.setCompactTrace(this.compactTrace);
+        this.programRunner.setCompactTrace(this.compactTrace);
+    }
+
+    /**
+     * Stop recording the compact trace and close its file.<br>
+     * Only call it while the program does not run in its own thread.
+     * @throws IOException if writing the file has failed.
+     */
+    public void stopCompactTrace() throws IOException{
+        if(this.compactTrace == null) return;
+        CompactTrace compactTrace = this.compactTrace;
+        this.compactTrace = null;
+        this.memory.setCompactTrace(null);
+        this.programRunner.setCompactTrace(null);
+        compactTrace.close(this.programRunner.getInstructionCount());
+    }
+
+    /**
+     * Start counting how often the instruction at every address runs and how many clock cycles it takes. Get the
+     * counts with {@link #stopProfile()}.<br>
+     * While the profile is recorded, blocks, loop idioms and translated code are not used and idle loops are not
+     * skipped. A profile that is already recorded is thrown away.
+     */
+    public void startProfile(){
+        this.profile = new Profile();
+        this.programRunner.setProfile(this.profile);
+    }
+
+    /**
+     * Stop counting the instructions.<br>
+     * Only call it while the program does not run in its own thread.
+     * @return the counts, with the memory as it is now to disassemble the instructions. null if no profile has been
+     * started.
+     */
+    public Profile stopProfile(){
+        if(this.profile == null) return null;
+        Profile profile = this.profile;
+        this.profile = null;
+        this.programRunner.setProfile(null);
+        profile.finish(this.memory);
+        return profile;
+    }
+
+    /**
+     * Start taking samples of the program counter and the call stack at a fixed rate, from a thread of its own. Get
+     * them with {@link #stopSampling()}.<br>
+     * The program runs at full speed while it is sampled. A sample is taken between two quanta, at most one quantum
+     * after the sampler has asked for it. Samples that are already taken are thrown away.
+     * @param frequency samples per second, e.g. 1000.
+     * @throws IllegalArgumentException if the frequency is not 1 Hz to 1 GHz.
+     */
+    public void startSampling(int frequency){
+        this.stopSampling();
+        this.sampleProfile = new SampleProfile(this.memory);
+        this.programRunner.setSampleProfile(this.sampleProfile);
+        this.sampler = new Sampler(this.control, frequency);
+    }
+
+    /**
+     * Stop taking samples.<br>
+     * Only call it while the program does not run in its own thread.
+     * @return the samples, with the memory as it is now to disassemble the instructions. null if the sampling has not
+     * been started.
+     */
+    public SampleProfile stopSampling(){
+        if(this.sampler == null) return null;
+        this.sampler.close();
+        this.sampler = null;
+        SampleProfile sampleProfile = this.sampleProfile;
+        this.sampleProfile = null;
+        this.programRunner.setSampleProfile(null);
+        sampleProfile.finish();
+        return sampleProfile;
+    }
+
+    /**
+     * Forgets the interrupts that have been called and not run yet.
+     */
+    void clearInterrupts(){
+        this.control.clearInterrupt();
+        this.control.clearNonMaskableInterrupt();
+    }
+
+    /**
+     * Take a checkpoint of the simulator: the registers, the counts, the run flag, the pending interrupts and the
+     * memory. The checkpoint only holds the pages written since the last checkpoint, so it takes time and memory for
+     * what has changed, not for all 64 KiB. The first checkpoint holds every page.<br>
+     * Only call it while the program does not run in its own thread.
+     * @return checkpoint.
+     */
+    public Checkpoint checkpoint(){
+        return this.machineState.checkpoint();
+    }
+
+    /**
+     * Put the simulator back into a checkpoint. Any checkpoint of the chain can be restored, in any order. The next
+     * checkpoint then holds the changes since the restored one. Devices, mirrors and settings like the block cache
+     * are kept.<br>
+     * Only call it while the program does not run in its own thread.
+     * @param checkpoint checkpoint to go back to.
+     */
+    public void restore(Checkpoint checkpoint){
+        this.machineState.restore(checkpoint);
+        this.programRunner.wake();
+    }
+
+    /**
+     * Save the whole state of the simulator in a small binary format: the registers, the clock cycle and instruction
+     * counts, the run flag, the pending interrupts and the memory. Pages that are all 0 are left out.<br>
+     * Only call it while the program does not run in its own thread.
+     * @param channel channel to write to. It is not closed.
+     * @throws IOException if writing fails.
+     */
+    public void saveState(WritableByteChannel channel) throws IOException{
+        this.machineState.save(channel);
+    }
+
+    /**
+     * Save the whole state of the simulator, see {@link #saveState(WritableByteChannel)}.
+     * @param out stream to write to. It is not closed.
+     * @throws IOException if writing fails.
+     */
+    public void saveState(OutputStream out) throws IOException{
+        this.saveState(Channels.newChannel(out));
+    }
+
+    /**
+     * Put the simulator back into a state saved with {@link #saveState(WritableByteChannel)}.<br>
+     * Reads exactly the bytes of the state, so several states can follow each other in one channel. The simulator is
+     * not changed if the state can not be read. Devices, mirrors and settings like the block cache are kept, the
+     * pages of devices are not loaded.<br>
+     * Only call it while the program does not run in its own thread.
+     * @param channel channel to read from. It is not closed.
+     * @throws IOException if reading fails, the state ends early or is not a state of this version.
+     */
+    public void loadState(ReadableByteChannel channel) throws IOException{
+        this.machineState.load(channel);
+        this.programRunner.wake();
+    }
+
+    /**
+     * Put the simulator back into a saved state, see {@link #loadState(ReadableByteChannel)}.
+     * @param in stream to read from. It is not closed.
+     * @throws IOException if reading fails, the state ends early or is not a state of this version.
+     */
+    public void loadState(InputStream in) throws IOException{
+        this.loadState(Channels.newChannel(in));
+    }
 
 }
@@ -0,0 +1,115 @@
+/*
+Copyright (c) 2023, Livio Conzett
+All rights reserved.
+
+This source code is licensed under the BSD-style license found in the
+LICENSE file in the root directory of this source tree.
+*/
+
+package tech.livio.java6502;
+
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * Runs many programs at once, spread over the cores of the host.<br>
+ * Every job runs on a thread of a work stealing {@link ForkJoinPool}, not in a thread of its own. The simulators are
+ * kept in a pool and reused, so there are never more of them than jobs running at the same time. Before a simulator
+ * runs a job it is put back into the state of a new one.
+ */
+public class SimFarm implements AutoCloseable {
+
+    private final ForkJoinPool executor;
+    private final Consumer<Sim6502> setup;
+    private final Queue<Sim6502> simulators;
+    private final AtomicInteger created;
+
+    /**
+     * Initialize a farm that uses all cores of the host, with simulators in their default settings.
+     */
+    public SimFarm(){
+        this(Runtime.getRuntime().availableProcessors(), sim -> {});
+    }
+
+    /**
+     * Initialize the farm.
+     * @param threads amount of jobs that run at the same time, at least 1.
+     * @param setup called once for every new simulator, to change its settings, like
+     * {@link Sim6502#setBlockCache(boolean)}. Callbacks set here get replaced.
+     */
+    public SimFarm(int threads, Consumer<Sim6502> setup){
+        this.executor = new ForkJoinPool(threads);
+        this.setup = setup;
+        this.simulators = new ConcurrentLinkedQueue<>();
+        this.created = new AtomicInteger();
+    }
+
+    /**
+     * Adds a job. It runs as soon as a thread of the farm is free.
+     * @param job job to run.
+     * @return future that completes with the result of the job, or exceptionally if the simulator threw.
+     */
+    public CompletableFuture<SimResult> submit(SimJob job){
+        return CompletableFuture.supplyAsync(() -> this.run(job), this.executor);
+    }
+
+    /**
+     * Runs a job on a simulator from the pool.
+     * @param job job to run.
+     * @return result of the job.
+     */
+    private SimResult run(SimJob job){
+        Sim6502 sim = this.simulators.poll();
+        if(sim == null){
+            sim = new Sim6502();
+            this.created.incrementAndGet();
+            this.setup.accept(sim);
+        }
+
+        try{
+            sim.clear();
+            sim.load(job.getImage());
+            sim.setProgramCounter(job.getStartAddress());
+
+            long instructionsBefore = sim.getInstructionCount();
+            long cyclesBefore = sim.getCycleCount();
+            sim.runFor(job.getInstructions(), job.getCycles());
+
+            return new SimResult(
+                    sim.getMemoryInRange(job.getOutputLow(), job.getOutputHigh()),
+                    sim.getProgramCounter(),
+                    sim.getInstructionCount() - instructionsBefore,
+                    sim.getCycleCount() - cyclesBefore,
+                    sim.hasStopped()
+            );
+        } finally {
+            this.simulators.offer(sim);
+        }
+    }
+
+    /**
+     * Get the amount of simulators the farm has created so far.
+     * @return amount of simulators. Never more than the amount of jobs that ran at the same time.
+     */
+    int getSimulatorCount(){
+        return this.created.get();
+    }
+
+    /**
+     * Stops taking new jobs and waits for the running ones to end.
+     */
+    @Override
+    public void close(){
+        this.executor.shutdown();
+        try{
+            this.executor.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e){
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,105 @@
+/*
+Copyright (c) 2023, Livio Conzett
+All rights reserved.
+
+This source code is licensed under the BSD-style license found in the
+LICENSE file in the root directory of this source tree.
+*/
+
+package tech.livio.java6502;
+
+/**
+ * A program for a {@link SimFarm} to run: a memory image, where to start, how long to run at most and which part of
+ * the memory to return afterwards.
+ */
+public class SimJob {
+
+    private final MemoryImage image;
+    private final short startAddress;
+    private final long instructions;
+    private final long cycles;
+    private final short outputLow;
+    private final short outputHigh;
+
+    /**
+     * Initialize the job with an image of its own.
+     * @param image memory image, loaded from address 0x0000. At most 64 KiB. It is copied.
+     * @param startAddress address the program counter starts at.
+     * @param instructions amount of instructions to run at most. {@link Long#MAX_VALUE} for no limit.
+     * @param cycles amount of clock cycles to run at most. {@link Long#MAX_VALUE} for no limit.
+     * @param outputLow first address of the memory to return.
+     * @param outputHigh last address of the memory to return.
+     */
+    public SimJob(byte[] image, short startAddress, long instructions, long cycles, short outputLow, short outputHigh){
+        this(new MemoryImage(image), startAddress, instructions, cycles, outputLow, outputHigh);
+    }
+
+    /**
+     * Initialize the job.<br>
+     * Jobs that run the same image share its pages, see {@link MemoryImage}.
+     * @param image memory image.
+     * @param startAddress address the program counter starts at.
+     * @param instructions amount of instructions to run at most. {@link Long#MAX_VALUE} for no limit.
+     * @param cycles amount of clock cycles to run at most. {@link Long#MAX_VALUE} for no limit.
+     * @param outputLow first address of the memory to return.
+     * @param outputHigh last address of the memory to return.
+     */
+    public SimJob(MemoryImage image, short startAddress, long instructions, long cycles, short outputLow,
+                  short outputHigh){
+        if(instructions < 0 || cycles < 0) throw new IllegalArgumentException("negative budget");
+        this.image = image;
+        this.startAddress = startAddress;
+        this.instructions = instructions;
+        this.cycles = cycles;
+        this.outputLow = outputLow;
+        this.outputHigh = outputHigh;
+    }
+
+    /**
+     * Get the memory image.
+     * @return image.
+     */
+    MemoryImage getImage(){
+        return this.image;
+    }
+
+    /**
+     * Get the address the program starts at.
+     * @return start address.
+     */
+    short getStartAddress(){
+        return this.startAddress;
+    }
+
+    /**
+     * Get the amount of instructions to run at most.
+     * @return instructions.
+     */
+    long getInstructions(){
+        return this.instructions;
+    }
+
+    /**
+     * Get the amount of clock cycles to run at most.
+     * @return cycles.
+     */
+    long getCycles(){
+        return this.cycles;
+    }
+
+    /**
+     * Get the first address of the memory to return.
+     * @return address.
+     */
+    short getOutputLow(){
+        return this.outputLow;
+    }
+
+    /**
+     * Get the last address of the memory to return.
+     * @return address.
+     */
+    short getOutputHigh(){
+        return this.outputHigh;
+    }
+}
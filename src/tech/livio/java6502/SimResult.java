@@ -0,0 +1,78 @@
+/*
+Copyright (c) 2023, Livio Conzett
+All rights reserved.
+
+This source code is licensed under the BSD-style license found in the
+LICENSE file in the root directory of this source tree.
+*/
+
+package tech.livio.java6502;
+
+/**
+ * What a {@link SimJob} left behind: the requested part of the memory, where the program stopped and how long it ran.
+ */
+public class SimResult {
+
+    private final byte[] output;
+    private final short programCounter;
+    private final long instructions;
+    private final long cycles;
+    private final boolean stopped;
+
+    /**
+     * Initialize the result.
+     * @param output memory of the output range.
+     * @param programCounter program counter after the run.
+     * @param instructions amount of instructions run.
+     * @param cycles amount of clock cycles run.
+     * @param stopped true if the program stopped itself before its budget ran out.
+     */
+    SimResult(byte[] output, short programCounter, long instructions, long cycles, boolean stopped){
+        this.output = output;
+        this.programCounter = programCounter;
+        this.instructions = instructions;
+        this.cycles = cycles;
+        this.stopped = stopped;
+    }
+
+    /**
+     * Get the memory of the output range, from the low to the high address of the job.
+     * @return memory. Empty if the high address is not above the low one, same as
+     * {@link Sim6502#getMemoryInRange(short, short)}.
+     */
+    public byte[] getOutput(){
+        return this.output;
+    }
+
+    /**
+     * Get the program counter after the run.
+     * @return program counter.
+     */
+    public short getProgramCounter(){
+        return this.programCounter;
+    }
+
+    /**
+     * Get the amount of instructions the job ran.
+     * @return instructions.
+     */
+    public long getInstructions(){
+        return this.instructions;
+    }
+
+    /**
+     * Get the amount of clock cycles the job ran.
+     * @return cycles.
+     */
+    public long getCycles(){
+        return this.cycles;
+    }
+
+    /**
+     * Checks if the program stopped itself with the ext instruction (0x80) before its budget ran out.
+     * @return true if it stopped, false if it ran out of instructions or cycles.
+     */
+    public boolean hasStopped(){
+        return this.stopped;
+    }
+}
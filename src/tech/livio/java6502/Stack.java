@@ -18,19 +18,18 @@ class Stack {
 
     private final Memory memory;
     private final Control control;
-    private byte stackPointer;
+    private final Registers registers;
 
     // address of stack
-    private static final int BOTTOM_STACK = 0x0100;
+    static final int BOTTOM_STACK = 0x0100;
     private static final int MAX_POINTER_VALUE = 0xff;
     private static final int TOP_STACK = BOTTOM_STACK + MAX_POINTER_VALUE;
 
     public Stack(Memory memory, Control control){
         this.memory = memory;
         this.control = control;
-        // initiate the stackpointer to a "random" number. That's what the real one did too. This is to force
-        // the programmer to actually set the stackpointer.
-        this.stackPointer = 0x69;
+        // the stack pointer lives in the register file.
+        this.registers = memory.getRegisters();
     }
 
 
@@ -57,7 +56,7 @@ class Stack {
      * @return Value of the stack pointer.
      */
     public byte getStackPointer() {
-        return this.stackPointer;
+        return (byte) this.registers.sp;
     }
 
     /**
@@ -65,14 +64,14 @@ class Stack {
      * @param value Value to set the stack pointer to.
      */
     public void setStackPointer(byte value){
-        this.stackPointer = value;
+        this.registers.sp = value & 0xff;
     }
 
     /**
      * Increment the stack pointer by one.
      */
     public void incrementStackPointer(){
-        int incrementedPointer = Util.unsignByte(this.stackPointer) + 1;
+        int incrementedPointer = this.registers.sp + 1;
 
         // check if there is a stack overflow
         if(incrementedPointer > MAX_POINTER_VALUE){
@@ -81,7 +80,7 @@ class Stack {
             return;
         }
 
-        this.stackPointer = (byte)(incrementedPointer);
+        this.registers.sp = incrementedPointer;
     }
 
     /**
@@ -89,7 +88,7 @@ class Stack {
      */
     public void decrementStackPointer(){
 
-        int decrementedPointer = Util.unsignByte(this.stackPointer) - 1;
+        int decrementedPointer = this.registers.sp - 1;
 
         // check if there is a stack overflow
         if(decrementedPointer < 0){
@@ -98,7 +97,7 @@ class Stack {
             return;
         }
 
-        this.stackPointer = (byte)(decrementedPointer);
+        this.registers.sp = decrementedPointer;
     }
 
     /**
@@ -106,7 +105,7 @@ class Stack {
      * @param value Value to push to stack.
      */
     public void push(byte value){
-        this.set(this.stackPointer,value);
+        this.memory.write(BOTTOM_STACK + this.registers.sp, value);
         this.decrementStackPointer();
     }
 
@@ -115,6 +114,6 @@ class Stack {
      */
     public byte pull(){
         this.incrementStackPointer();
-        return this.get(this.stackPointer);
+        return (byte) this.memory.read(BOTTOM_STACK + this.registers.sp);
     }
 }
@@ -0,0 +1,91 @@
+/*
+Copyright (c) 2023, Livio Conzett
+All rights reserved.
+
+This source code is licensed under the BSD-style license found in the
+LICENSE file in the root directory of this source tree.
+*/
+
+package tech.livio.java6502;
+
+import java.util.Arrays;
+
+/**
+ * A sequence of op-codes that the {@link BlockCache} decodes into one fused handler.<br>
+ * The operands of the instructions are packed into the one operand of the handler, 16 bits each, in the order of the
+ * instructions. Instructions without an operand take no space. At most two instructions may have an operand.<br>
+ * Only the last instruction may change the program counter, and only the last one may write to memory. That way a
+ * fused sequence never runs code that its own write has changed. The ext instruction can not be fused.
+ */
+class Superinstruction {
+
+    final int[] opCodes;
+    final DecodedInstruction handler;
+
+    /**
+     * Initialize the superinstruction.
+     * @param handler runs all the instructions of the sequence.
+     * @param opCodes op-codes of the sequence, two or three.
+     * @throws IllegalArgumentException if the sequence can not be fused.
+     */
+    Superinstruction(DecodedInstruction handler, int... opCodes){
+        if(opCodes.length < 2 || opCodes.length > 3){
+            throw new IllegalArgumentException("A superinstruction needs two or three op-codes.");
+        }
+
+        int withOperand = 0;
+        for(int i = 0; i < opCodes.length; i++){
+            int opCode = opCodes[i];
+            boolean last = i == opCodes.length - 1;
+
+            if(!last && (InstructionTable.ENDS_BLOCK[opCode] || InstructionTable.WRITES_MEMORY[opCode])){
+                throw new IllegalArgumentException("Only the last op-code of a superinstruction may jump or write: "
+                        + Util.hexToString((byte) opCode));
+            }
+            // the program has to end in the interpreter, see BlockTranslator.
+            if(opCode == 0x80){
+                throw new IllegalArgumentException("ext can not be part of a superinstruction.");
+            }
+            if(InstructionTable.operandLength(InstructionTable.MODES[opCode]) > 0) withOperand++;
+        }
+
+        if(withOperand > 2){
+            throw new IllegalArgumentException("A superinstruction may have at most two operands.");
+        }
+
+        this.handler = handler;
+        this.opCodes = opCodes.clone();
+    }
+
+    /**
+     * Returns the op-codes as hex, e.g. "ca d0".
+     * @return op-codes as a string.
+     */
+    @Override
+    public String toString(){
+        return opCodesToString(this.opCodes);
+    }
+
+    /**
+     * Returns op-codes as hex, e.g. "ca d0".
+     * @param opCodes op-codes.
+     * @return op-codes as a string.
+     */
+    static String opCodesToString(int... opCodes){
+        StringBuilder builder = new StringBuilder();
+        for(int opCode : opCodes){
+            if(builder.length() > 0) builder.append(' ');
+            builder.append(Util.hexToString((byte) opCode));
+        }
+        return builder.toString();
+    }
+
+    /**
+     * Checks if the superinstruction fuses a sequence of op-codes.
+     * @param opCodes op-codes.
+     * @return true if the op-codes are the same.
+     */
+    boolean fuses(int... opCodes){
+        return Arrays.equals(this.opCodes, opCodes);
+    }
+}
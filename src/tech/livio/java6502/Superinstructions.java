@@ -0,0 +1,164 @@
+/*
+Copyright (c) 2023, Livio Conzett
+All rights reserved.
+
+This source code is licensed under the BSD-style license found in the
+LICENSE file in the root directory of this source tree.
+*/
+
+package tech.livio.java6502;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The catalog of superinstructions the {@link BlockCache} can fuse.<br>
+ * Every handler calls the same {@link InstructionSet} methods as the single instructions, so the registers, the
+ * memory and the flags end up the same as without fusion. Use {@link PairFrequency} to find out which pairs a
+ * program runs the most.
+ */
+final class Superinstructions {
+
+    // every superinstruction there is a handler for.
+    static final List<Superinstruction> ALL = List.of(
+            // lda / sta
+            new Superinstruction((is, am, operand) -> {
+                is.lda((byte) operand);
+                is.sta(operand >>> 16);
+            }, 0xa9, 0x85),
+            new Superinstruction((is, am, operand) -> {
+                is.lda((byte) operand);
+                is.sta(operand >>> 16);
+            }, 0xa9, 0x8d),
+            new Superinstruction((is, am, operand) -> {
+                is.lda((byte) operand);
+                is.sta(am.absoluteIndexX(operand >>> 16));
+            }, 0xa9, 0x9d),
+            new Superinstruction((is, am, operand) -> {
+                is.lda(am.read(operand & 0xffff));
+                is.sta(operand >>> 16);
+            }, 0xa5, 0x85),
+            new Superinstruction((is, am, operand) -> {
+                is.lda(am.read(operand & 0xffff));
+                is.sta(operand >>> 16);
+            }, 0xad, 0x8d),
+            new Superinstruction((is, am, operand) -> {
+                is.lda(am.readIndexed(am.absoluteIndexX(operand & 0xffff)));
+                is.sta(am.absoluteIndexX(operand >>> 16));
+            }, 0xbd, 0x9d),
+            new Superinstruction((is, am, operand) -> {
+                is.lda(am.readIndexed(am.absoluteIndexY(operand & 0xffff)));
+                is.sta(am.absoluteIndexY(operand >>> 16));
+            }, 0xb9, 0x99),
+            new Superinstruction((is, am, operand) -> {
+                is.lda(am.readIndexed(am.indirectIndexed(operand & 0xffff)));
+                is.sta(am.indirectIndexed(operand >>> 16));
+            }, 0xb1, 0x91),
+
+            // compare / branch
+            new Superinstruction((is, am, operand) -> {
+                is.cmp((byte) operand);
+                is.bne(operand >>> 16);
+            }, 0xc9, 0xd0),
+            new Superinstruction((is, am, operand) -> {
+                is.cmp((byte) operand);
+                is.beq(operand >>> 16);
+            }, 0xc9, 0xf0),
+            new Superinstruction((is, am, operand) -> {
+                is.cmp(am.read(operand & 0xffff));
+                is.bne(operand >>> 16);
+            }, 0xc5, 0xd0),
+            new Superinstruction((is, am, operand) -> {
+                is.cmp(am.read(operand & 0xffff));
+                is.bne(operand >>> 16);
+            }, 0xcd, 0xd0),
+            new Superinstruction((is, am, operand) -> {
+                is.cpx((byte) operand);
+                is.bne(operand >>> 16);
+            }, 0xe0, 0xd0),
+            new Superinstruction((is, am, operand) -> {
+                is.cpy((byte) operand);
+                is.bne(operand >>> 16);
+            }, 0xc0, 0xd0),
+
+            // count / branch
+            new Superinstruction((is, am, operand) -> {
+                is.dex();
+                is.bne(operand);
+            }, 0xca, 0xd0),
+            new Superinstruction((is, am, operand) -> {
+                is.dey();
+                is.bne(operand);
+            }, 0x88, 0xd0),
+            new Superinstruction((is, am, operand) -> {
+                is.inx();
+                is.bne(operand);
+            }, 0xe8, 0xd0),
+            new Superinstruction((is, am, operand) -> {
+                is.iny();
+                is.bne(operand);
+            }, 0xc8, 0xd0),
+
+            // count / compare / branch
+            new Superinstruction((is, am, operand) -> {
+                is.inx();
+                is.cpx((byte) operand);
+                is.bne(operand >>> 16);
+            }, 0xe8, 0xe0, 0xd0),
+            new Superinstruction((is, am, operand) -> {
+                is.iny();
+                is.cpy((byte) operand);
+                is.bne(operand >>> 16);
+            }, 0xc8, 0xc0, 0xd0),
+
+            // carry / arithmetic
+            new Superinstruction((is, am, operand) -> {
+                is.clc();
+                is.adc((byte) operand);
+            }, 0x18, 0x69),
+            new Superinstruction((is, am, operand) -> {
+                is.clc();
+                is.adc(am.read(operand));
+            }, 0x18, 0x65),
+            new Superinstruction((is, am, operand) -> {
+                is.clc();
+                is.adc(am.read(operand));
+            }, 0x18, 0x6d),
+            new Superinstruction((is, am, operand) -> {
+                is.sec();
+                is.sbc((byte) operand);
+            }, 0x38, 0xe9)
+    );
+
+    /**
+     * Private Constructor<br>
+     * Needed so that Sonar Linter doesn't complain.
+     */
+    private Superinstructions(){
+        // Sonar Linter wants this.
+    }
+
+    /**
+     * Picks superinstructions from the catalog.
+     * @param sequences op-code sequences to pick, e.g. <code>{0xca, 0xd0}</code>.
+     * @return the superinstructions for the sequences.
+     * @throws IllegalArgumentException if there is no superinstruction for one of the sequences.
+     */
+    static List<Superinstruction> select(int[]... sequences){
+        List<Superinstruction> selected = new ArrayList<>();
+
+        for(int[] sequence : sequences){
+            Superinstruction found = null;
+            for(Superinstruction superinstruction : ALL){
+                if(superinstruction.fuses(sequence)) found = superinstruction;
+            }
+            if(found == null){
+                throw new IllegalArgumentException("There is no superinstruction for the op-codes "
+                        + Superinstruction.opCodesToString(sequence));
+            }
+            selected.add(found);
+        }
+
+        return selected;
+    }
+}
@@ -0,0 +1,465 @@
+/*
+Copyright (c) 2023, Livio Conzett
+All rights reserved.
+
+This source code is licensed under the BSD-style license found in the
+LICENSE file in the root directory of this source tree.
+*/
+
+package tech.livio.java6502;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.function.LongToIntFunction;
+
+/**
+ * A trace written by {@link Sim6502#startTrace(Path)}, turned into columns and indexes in a directory, so questions
+ * like "every write to $0200" or "first time a is $ff" are answered without reading the whole trace.<br>
+ * Every value of the trace has a file of its own, a column, with one entry per instruction: the program counter, the
+ * op-code, the operand, a, x, y, sp, p and the effective address. The instructions are numbered by their position in
+ * the trace. {@link #getInstructionCount(long)} gets the instruction count of a position, which only differs from it
+ * if the trace does not start at the first instruction or has gaps.<br>
+ * The program counter, the op-code and the effective address have an index: for every value the positions it has,
+ * in order. The registers have a bitmap of the values they take in every {@link #BLOCK} instructions, so only the
+ * blocks with the value are read.<br>
+ * All files are mapped into memory, so the operating system only reads the parts a query looks at.
+ */
+public class TraceIndex {
+
+    /**
+     * The registers the values of which can be searched for.
+     */
+    public enum Register {
+        A,
+        X,
+        Y,
+        SP,
+        P
+    }
+
+    // "TIDX" in ASCII
+    static final int MAGIC = 0x54494458;
+    static final short VERSION = 1;
+    // instructions per bitmap of register values.
+    static final int BLOCK = 4096;
+    // bytes of the bitmap of one register in one block.
+    private static final int BITMAP_BYTES = 32;
+
+    // amount of instructions, and the positions the instruction count jumps at with the count there.
+    private final long size;
+    private final long[] syncPositions;
+    private final long[] syncCounts;
+
+    private final MappedColumn pcColumn;
+    private final MappedColumn opCodeColumn;
+    private final MappedColumn operandColumn;
+    private final MappedColumn[] registerColumns;
+    private final MappedColumn addressColumn;
+    private final MappedColumn pcIndex;
+    private final MappedColumn opCodeIndex;
+    private final MappedColumn addressIndex;
+    private final MappedColumn blocks;
+
+    /**
+     * Opens the columns and indexes in a directory.
+     * @param directory directory written by {@link #build(Path, Path)}.
+     * @throws IOException if the files can not be read or are not of this version.
+     */
+    private TraceIndex(Path directory) throws IOException{
+        try(DataInputStream in = new DataInputStream(new BufferedInputStream(
+                Files.newInputStream(directory.resolve("trace.meta"))))){
+            if(in.readInt() != MAGIC) throw new IOException("Not a trace index of a 6502 simulator.");
+            short version = in.readShort();
+            if(version != VERSION){
+                throw new IOException("Trace index has version " + version + ", expected " + VERSION + ".");
+            }
+            this.size = in.readLong();
+            int syncs = in.readInt();
+            this.syncPositions = new long[syncs];
+            this.syncCounts = new long[syncs];
+            for(int i = 0; i < syncs; i++){
+                this.syncPositions[i] = in.readLong();
+                this.syncCounts[i] = in.readLong();
+            }
+        }
+
+        this.pcColumn = new MappedColumn(directory.resolve("pc.col"), -1);
+        this.opCodeColumn = new MappedColumn(directory.resolve("opcode.col"), -1);
+        this.operandColumn = new MappedColumn(directory.resolve("operand.col"), -1);
+        this.registerColumns = new MappedColumn[Register.values().length];
+        for(Register register : Register.values()){
+            this.registerColumns[register.ordinal()] = new MappedColumn(directory.resolve(columnName(register)), -1);
+        }
+        this.addressColumn = new MappedColumn(directory.resolve("address.col"), -1);
+        this.pcIndex = new MappedColumn(directory.resolve("pc.idx"), -1);
+        this.opCodeIndex = new MappedColumn(directory.resolve("opcode.idx"), -1);
+        this.addressIndex = new MappedColumn(directory.resolve("address.idx"), -1);
+        this.blocks = new MappedColumn(directory.resolve("registers.blk"), -1);
+    }
+
+    /**
+     * Opens a trace index built before.
+     * @param directory directory written by {@link #build(Path, Path)}.
+     * @return trace index.
+     * @throws IOException if the files can not be read or are not of this version.
+     */
+    public static TraceIndex open(Path directory) throws IOException{
+        return new TraceIndex(directory);
+    }
+
+    /**
+     * Reads a trace once, writes its columns and indexes into a directory and opens them.<br>
+     * Files of an index built before in the same directory are overwritten.
+     * @param trace path of a trace written by {@link Sim6502#startTrace(Path)}.
+     * @param directory directory to write to. Is created if it does not exist.
+     * @return trace index.
+     * @throws IOException if the trace can not be read or the files can not be written.
+     */
+    public static TraceIndex build(Path trace, Path directory) throws IOException{
+        Files.createDirectories(directory);
+        long[] pcCounts = new long[0x10000];
+        long[] opCodeCounts = new long[0x100];
+        long[] addressCounts = new long[0x10000];
+        long[] syncs = new long[16];
+        int syncCount = 0;
+        long size = 0;
+
+        Register[] registers = Register.values();
+        DataOutputStream pc = output(directory.resolve("pc.col"));
+        DataOutputStream opCode = output(directory.resolve("opcode.col"));
+        DataOutputStream operand = output(directory.resolve("operand.col"));
+        DataOutputStream[] registerColumns = new DataOutputStream[registers.length];
+        for(Register register : registers){
+            registerColumns[register.ordinal()] = output(directory.resolve(columnName(register)));
+        }
+        DataOutputStream address = output(directory.resolve("address.col"));
+        DataOutputStream blocks = output(directory.resolve("registers.blk"));
+        long[] bitmaps = new long[registers.length * BITMAP_BYTES / 8];
+        int[] values = new int[registers.length];
+
+        try(TraceReader reader = new TraceReader(trace)){
+            long expected = -1;
+            while(reader.next()){
+                if(reader.getInstructionCount() != expected){
+                    if(syncCount * 2 == syncs.length) syncs = Arrays.copyOf(syncs, syncs.length * 2);
+                    syncs[syncCount * 2] = size;
+                    syncs[syncCount * 2 + 1] = reader.getInstructionCount();
+                    syncCount++;
+                }
+                expected = reader.getInstructionCount() + 1;
+
+                pc.writeShort(reader.getProgramCounter());
+                opCode.writeByte(reader.getOpCode());
+                operand.writeShort(reader.getOperand());
+                values[Register.A.ordinal()] = reader.getA();
+                values[Register.X.ordinal()] = reader.getX();
+                values[Register.Y.ordinal()] = reader.getY();
+                values[Register.SP.ordinal()] = reader.getStackPointer();
+                values[Register.P.ordinal()] = reader.getProcessorStatus();
+                for(int r = 0; r < values.length; r++){
+                    registerColumns[r].writeByte(values[r]);
+                    bitmaps[r * 4 + (values[r] >>> 6)] |= 1L << (values[r] & 63);
+                }
+                int effectiveAddress = reader.getEffectiveAddress();
+                address.writeShort(Math.max(effectiveAddress, 0));
+
+                pcCounts[reader.getProgramCounter()]++;
+                opCodeCounts[reader.getOpCode()]++;
+                if(effectiveAddress >= 0) addressCounts[effectiveAddress]++;
+
+                size++;
+                if(size % BLOCK == 0) writeBitmaps(blocks, bitmaps);
+            }
+            if(size % BLOCK != 0) writeBitmaps(blocks, bitmaps);
+        } finally{
+            pc.close();
+            opCode.close();
+            operand.close();
+            for(DataOutputStream column : registerColumns){
+                column.close();
+            }
+            address.close();
+            blocks.close();
+        }
+
+        try(DataOutputStream meta = output(directory.resolve("trace.meta"))){
+            meta.writeInt(MAGIC);
+            meta.writeShort(VERSION);
+            meta.writeLong(size);
+            meta.writeInt(syncCount);
+            for(int i = 0; i < syncCount * 2; i++){
+                meta.writeLong(syncs[i]);
+            }
+        }
+
+        MappedColumn pcColumn = new MappedColumn(directory.resolve("pc.col"), -1);
+        MappedColumn opCodeColumn = new MappedColumn(directory.resolve("opcode.col"), -1);
+        MappedColumn addressColumn = new MappedColumn(directory.resolve("address.col"), -1);
+        writeIndex(directory.resolve("pc.idx"), pcCounts, size, position -> pcColumn.getShort(position * 2));
+        writeIndex(directory.resolve("opcode.idx"), opCodeCounts, size, opCodeColumn::get);
+        writeIndex(directory.resolve("address.idx"), addressCounts, size, position ->
+                hasEffectiveAddress(opCodeColumn.get(position)) ? addressColumn.getShort(position * 2) : -1);
+
+        return new TraceIndex(directory);
+    }
+
+    /**
+     * Opens a column for writing.
+     * @param file path of the column.
+     * @return buffered stream.
+     * @throws IOException if the file can not be created.
+     */
+    private static DataOutputStream output(Path file) throws IOException{
+        return new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file), 1 << 16));
+    }
+
+    /**
+     * Get the file name of the column of a register.
+     * @param register register.
+     * @return file name.
+     */
+    private static String columnName(Register register){
+        return register.name().toLowerCase() + ".col";
+    }
+
+    /**
+     * Writes the bitmaps of the register values of one block and clears them.
+     * @param blocks stream of the bitmaps.
+     * @param bitmaps 256 bits per register.
+     * @throws IOException if the file can not be written.
+     */
+    private static void writeBitmaps(DataOutputStream blocks, long[] bitmaps) throws IOException{
+        for(long bits : bitmaps){
+            blocks.writeLong(bits);
+        }
+        Arrays.fill(bitmaps, 0);
+    }
+
+    /**
+     * Writes an index: for every key where its positions start, the end of the last one, then the positions of every
+     * key in order.
+     * @param file path of the index.
+     * @param counts amount of positions of every key.
+     * @param size amount of instructions.
+     * @param keyOf key of a position, or -1 if the position has none.
+     * @throws IOException if the file can not be written.
+     */
+    private static void writeIndex(Path file, long[] counts, long size, LongToIntFunction keyOf) throws IOException{
+        Files.deleteIfExists(file);
+        long header = (counts.length + 1) * 8L;
+        long total = 0;
+        long[] cursors = new long[counts.length];
+        for(int key = 0; key < counts.length; key++){
+            cursors[key] = total;
+            total += counts[key];
+        }
+
+        MappedColumn index = new MappedColumn(file, header + total * 8);
+        for(int key = 0; key < counts.length; key++){
+            index.putLong(key * 8L, cursors[key]);
+        }
+        index.putLong(counts.length * 8L, total);
+        for(long position = 0; position < size; position++){
+            int key = keyOf.applyAsInt(position);
+            if(key >= 0) index.putLong(header + cursors[key]++ * 8, position);
+        }
+        index.force();
+    }
+
+    /**
+     * Checks if the instructions of an op-code have an effective address.
+     * @param opCode op-code.
+     * @return false for immediate, implied and accumulator instructions.
+     */
+    private static boolean hasEffectiveAddress(int opCode){
+        return switch (InstructionTable.MODES[opCode]) {
+            case IMMEDIATE, IMPLIED, ACCUMULATOR, NONE -> false;
+            default -> true;
+        };
+    }
+
+    /**
+     * Get the amount of instructions in the trace.
+     * @return amount of instructions. Their positions are 0 to one less than this.
+     */
+    public long size(){
+        return this.size;
+    }
+
+    /**
+     * Finds every instruction that has run at an address.
+     * @param address program counter, 0x0000 - 0xffff.
+     * @return positions, in order.
+     */
+    public long[] executionsOf(int address){
+        return postings(this.pcIndex, 0x10000, address & 0xffff);
+    }
+
+    /**
+     * Finds every instruction with an op-code.
+     * @param opCode op-code, 0x00 - 0xff.
+     * @return positions, in order.
+     */
+    public long[] executionsOfOpCode(int opCode){
+        return postings(this.opCodeIndex, 0x100, opCode & 0xff);
+    }
+
+    /**
+     * Finds every instruction that has read, written or jumped to an address through its addressing mode. Pushes and
+     * pulls of the stack are not counted.
+     * @param address effective address, 0x0000 - 0xffff. 0x0100 - 0x01fe for zero page indexed addresses past the
+     *                zero page.
+     * @return positions, in order.
+     */
+    public long[] accessesTo(int address){
+        return postings(this.addressIndex, 0x10000, address & 0xffff);
+    }
+
+    /**
+     * Finds every instruction that has written to an address through its addressing mode, like sta, inc or asl.
+     * @param address effective address, 0x0000 - 0xffff.
+     * @return positions, in order.
+     */
+    public long[] writesTo(int address){
+        long[] accesses = this.accessesTo(address);
+        int count = 0;
+        for(long position : accesses){
+            int opCode = this.getOpCode(position);
+            // jsr writes the stack, not the address it jumps to.
+            if(InstructionTable.WRITES_MEMORY[opCode] && opCode != 0x20) accesses[count++] = position;
+        }
+        return Arrays.copyOf(accesses, count);
+    }
+
+    /**
+     * Finds the first instruction before which a register had a value.
+     * @param register register.
+     * @param value value, 0x00 - 0xff.
+     * @return position, or -1 if the register never had the value.
+     */
+    public long findFirst(Register register, int value){
+        long[] found = this.find(register, value, 1);
+        return found.length == 0 ? -1 : found[0];
+    }
+
+    /**
+     * Finds every instruction before which a register had a value.
+     * @param register register.
+     * @param value value, 0x00 - 0xff.
+     * @return positions, in order.
+     */
+    public long[] findAll(Register register, int value){
+        return this.find(register, value, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Finds the instructions before which a register had a value, reading only the blocks that have it.
+     * @param register register.
+     * @param value value, 0x00 - 0xff.
+     * @param limit amount of positions to find at most.
+     * @return positions, in order.
+     */
+    private long[] find(Register register, int value, int limit){
+        value &= 0xff;
+        MappedColumn column = this.registerColumns[register.ordinal()];
+        long blockCount = (this.size + BLOCK - 1) / BLOCK;
+        long bitmapOffset = (long) register.ordinal() * BITMAP_BYTES + (value >>> 6) * 8L;
+        long bit = 1L << (value & 63);
+        long[] found = new long[16];
+        int count = 0;
+
+        for(long block = 0; block < blockCount && count < limit; block++){
+            long offset = block * Register.values().length * BITMAP_BYTES + bitmapOffset;
+            if((this.blocks.getLong(offset) & bit) == 0) continue;
+            long end = Math.min(this.size, (block + 1) * BLOCK);
+            for(long position = block * BLOCK; position < end && count < limit; position++){
+                if(column.get(position) != value) continue;
+                if(count == found.length) found = Arrays.copyOf(found, found.length * 2);
+                found[count++] = position;
+            }
+        }
+        return Arrays.copyOf(found, count);
+    }
+
+    /**
+     * Reads the positions of a key from an index.
+     * @param index index.
+     * @param keys amount of keys of the index.
+     * @param key key.
+     * @return positions, in order.
+     */
+    private static long[] postings(MappedColumn index, int keys, int key){
+        long header = (keys + 1) * 8L;
+        long start = index.getLong(key * 8L);
+        long end = index.getLong((key + 1) * 8L);
+        long[] positions = new long[(int) (end - start)];
+        for(int i = 0; i < positions.length; i++){
+            positions[i] = index.getLong(header + (start + i) * 8);
+        }
+        return positions;
+    }
+
+    /**
+     * Get the instruction count of a position: the amount of instructions the program had run before it.
+     * @param position position in the trace.
+     * @return instruction count.
+     */
+    public long getInstructionCount(long position){
+        int sync = Arrays.binarySearch(this.syncPositions, position);
+        if(sync < 0) sync = -sync - 2;
+        return this.syncCounts[sync] + position - this.syncPositions[sync];
+    }
+
+    /**
+     * Get the address of an instruction.
+     * @param position position in the trace.
+     * @return program counter, 0x0000 - 0xffff.
+     */
+    public int getProgramCounter(long position){
+        return this.pcColumn.getShort(position * 2);
+    }
+
+    /**
+     * Get the op-code of an instruction.
+     * @param position position in the trace.
+     * @return op-code, 0x00 - 0xff.
+     */
+    public int getOpCode(long position){
+        return this.opCodeColumn.get(position);
+    }
+
+    /**
+     * Get the operand of an instruction.
+     * @param position position in the trace.
+     * @return operand, low byte first. 0 if the instruction has none.
+     */
+    public int getOperand(long position){
+        return this.operandColumn.getShort(position * 2);
+    }
+
+    /**
+     * Get the value of a register before an instruction.
+     * @param register register.
+     * @param position position in the trace.
+     * @return value, 0x00 - 0xff.
+     */
+    public int getRegister(Register register, long position){
+        return this.registerColumns[register.ordinal()].get(position);
+    }
+
+    /**
+     * Get the address an instruction has read, written or jumped to.
+     * @param position position in the trace.
+     * @return effective address, or -1 if the addressing mode has none.
+     */
+    public int getEffectiveAddress(long position){
+        if(!hasEffectiveAddress(this.getOpCode(position))) return -1;
+        return this.addressColumn.getShort(position * 2);
+    }
+}
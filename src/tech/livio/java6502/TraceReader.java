@@ -0,0 +1,234 @@
+/*
+Copyright (c) 2023, Livio Conzett
+All rights reserved.
+
+This source code is licensed under the BSD-style license found in the
+LICENSE file in the root directory of this source tree.
+*/
+
+package tech.livio.java6502;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Reads a trace written by {@link Sim6502#startTrace(Path)} one instruction after the other.<br>
+ * Every call to {@link #next()} moves on to the next instruction. The registers are the ones before the instruction
+ * ran. Instructions that have been dropped while recording are left out, {@link #getInstructionCount()} jumps over
+ * them.
+ */
+public class TraceReader implements Closeable {
+
+    private final FileChannel channel;
+    private final ByteBuffer buffer;
+    private boolean endOfFile;
+
+    private long instructionCount;
+    private int pc;
+    private int opCode;
+    private int operand;
+    private int operandLength;
+    private int a;
+    private int x;
+    private int y;
+    private int sp;
+    private int p;
+    private int effectiveAddress;
+
+    /**
+     * Opens a trace file.
+     * @param file path of the trace.
+     * @throws IOException if the file can not be read or is not a trace of this version.
+     */
+    public TraceReader(Path file) throws IOException{
+        this.channel = FileChannel.open(file, StandardOpenOption.READ);
+        this.buffer = ByteBuffer.allocateDirect(1 << 16);
+        this.buffer.flip();
+        this.instructionCount = -1;
+        try{
+            this.fill(6);
+            if(this.require(6).getInt() != TraceRecorder.MAGIC){
+                throw new IOException("Not a trace of a 6502 simulator.");
+            }
+            short version = this.buffer.getShort();
+            if(version != TraceRecorder.VERSION){
+                throw new IOException("Trace has version " + version + ", expected " + TraceRecorder.VERSION + ".");
+            }
+        } catch(IOException e){
+            this.channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Moves on to the next instruction.
+     * @return false if there are no more instructions.
+     * @throws IOException if the file can not be read or ends in the middle of an instruction.
+     */
+    public boolean next() throws IOException{
+        // enough for a sync.
+        if(!this.fill(9)) return false;
+        int bits = this.buffer.get() & 0xff;
+        if(bits == TraceRecorder.SYNC){
+            this.instructionCount = this.require(8).getLong();
+            if(!this.fill(1)) return false;
+            bits = this.buffer.get() & 0xff;
+        } else {
+            this.instructionCount++;
+            this.pc = (this.pc + 1 + this.operandLength) & 0xffff;
+        }
+
+        // the longest rest of an instruction.
+        this.fill(12);
+        if((bits & TraceRecorder.PC) != 0) this.pc = this.require(2).getShort() & 0xffff;
+        this.opCode = this.require(1).get() & 0xff;
+        AddressingModes mode = InstructionTable.MODES[this.opCode];
+        this.operandLength = InstructionTable.operandLength(mode);
+        this.operand = this.operandLength == 0 ? 0 : this.require(1).get() & 0xff;
+        if(this.operandLength == 2) this.operand |= (this.require(1).get() & 0xff) << 8;
+        if((bits & TraceRecorder.A) != 0) this.a = this.require(1).get() & 0xff;
+        if((bits & TraceRecorder.X) != 0) this.x = this.require(1).get() & 0xff;
+        if((bits & TraceRecorder.Y) != 0) this.y = this.require(1).get() & 0xff;
+        if((bits & TraceRecorder.SP) != 0) this.sp = this.require(1).get() & 0xff;
+        if((bits & TraceRecorder.P) != 0) this.p = this.require(1).get() & 0xff;
+        if(TraceRecorder.isIndirect(mode)){
+            this.effectiveAddress = this.require(2).getShort() & 0xffff;
+        } else {
+            this.effectiveAddress = TraceRecorder.directAddress(mode, this.pc, this.operand, this.x, this.y);
+        }
+        return true;
+    }
+
+    /**
+     * Get the amount of instructions the program had run before this one.
+     * @return instruction count.
+     */
+    public long getInstructionCount(){
+        return this.instructionCount;
+    }
+
+    /**
+     * Get the address of the instruction.
+     * @return program counter, 0x0000 - 0xffff.
+     */
+    public int getProgramCounter(){
+        return this.pc;
+    }
+
+    /**
+     * Get the op-code of the instruction.
+     * @return op-code, 0x00 - 0xff.
+     */
+    public int getOpCode(){
+        return this.opCode;
+    }
+
+    /**
+     * Get the operand of the instruction.
+     * @return operand, low byte first. 0 if the instruction has none.
+     */
+    public int getOperand(){
+        return this.operand;
+    }
+
+    /**
+     * Get the amount of operand bytes of the instruction.
+     * @return 0, 1 or 2.
+     */
+    public int getOperandLength(){
+        return this.operandLength;
+    }
+
+    /**
+     * Get the accumulator before the instruction.
+     * @return a, 0x00 - 0xff.
+     */
+    public int getA(){
+        return this.a;
+    }
+
+    /**
+     * Get the x register before the instruction.
+     * @return x, 0x00 - 0xff.
+     */
+    public int getX(){
+        return this.x;
+    }
+
+    /**
+     * Get the y register before the instruction.
+     * @return y, 0x00 - 0xff.
+     */
+    public int getY(){
+        return this.y;
+    }
+
+    /**
+     * Get the stack pointer before the instruction.
+     * @return stack pointer, 0x00 - 0xff.
+     */
+    public int getStackPointer(){
+        return this.sp;
+    }
+
+    /**
+     * Get the processor status register before the instruction.
+     * @return processor status, 0x00 - 0xff.
+     */
+    public int getProcessorStatus(){
+        return this.p;
+    }
+
+    /**
+     * Get the address the instruction reads, writes or jumps to.
+     * @return effective address, or -1 if the addressing mode has none, like immediate or implied.
+     */
+    public int getEffectiveAddress(){
+        return this.effectiveAddress;
+    }
+
+    /**
+     * Closes the file.
+     * @throws IOException if closing fails.
+     */
+    @Override
+    public void close() throws IOException{
+        this.channel.close();
+    }
+
+    /**
+     * Reads from the file until the buffer holds some bytes or the file ends.
+     * @param length amount of bytes wanted.
+     * @return false if the file has ended and the buffer is empty.
+     * @throws IOException if the file can not be read.
+     */
+    private boolean fill(int length) throws IOException{
+        if(this.buffer.remaining() < length && !this.endOfFile){
+            this.buffer.compact();
+            while(this.buffer.position() < length){
+                if(this.channel.read(this.buffer) < 0){
+                    this.endOfFile = true;
+                    break;
+                }
+            }
+            this.buffer.flip();
+        }
+        return this.buffer.hasRemaining();
+    }
+
+    /**
+     * Checks that the buffer holds some bytes, after {@link #fill(int)}.
+     * @param length amount of bytes needed.
+     * @return the buffer.
+     * @throws EOFException if the file has ended before.
+     */
+    private ByteBuffer require(int length) throws EOFException{
+        if(this.buffer.remaining() < length) throw new EOFException("Trace ends in the middle of an instruction.");
+        return this.buffer;
+    }
+}
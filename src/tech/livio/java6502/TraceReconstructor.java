@@ -0,0 +1,207 @@
+/*
+Copyright (c) 2023, Livio Conzett
+All rights reserved.
+
+This source code is licensed under the BSD-style license found in the
+LICENSE file in the root directory of this source tree.
+*/
+
+package tech.livio.java6502;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Runs a compact trace recorded with {@link Sim6502#startCompactTrace(Path)} again in a simulator of its own and
+ * writes the full trace of the run, the same as {@link Sim6502#startTrace(Path)} would have written.<br>
+ * The devices are replaced by one that gives the program the values recorded, in the same order, and the interrupts
+ * set the program counter after the same instruction as in the recorded run.
+ */
+public class TraceReconstructor {
+
+    /**
+     * Private Constructor<br>
+     * Only has static methods.
+     */
+    private TraceReconstructor(){
+        // Only has static methods.
+    }
+
+    /**
+     * Writes the full trace of a compact trace.
+     * @param compactTrace path of the compact trace.
+     * @param trace path of the full trace to write. Is overwritten if it exists.
+     * @throws IOException if a file can not be read or written, or the compact trace is broken.
+     */
+    public static void reconstruct(Path compactTrace, Path trace) throws IOException{
+        try(DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(compactTrace),
+                1 << 16))){
+            if(in.readInt() != CompactTrace.MAGIC) throw new IOException("Not a compact trace of a 6502 simulator.");
+            short version = in.readShort();
+            if(version != CompactTrace.VERSION){
+                throw new IOException("Compact trace has version " + version + ", expected " + CompactTrace.VERSION
+                        + ".");
+            }
+
+            Sim6502 sim = new Sim6502();
+            sim.setDoOnExt(e -> {});
+            sim.setDoOnStackOverflow(e -> {});
+            sim.setDoOnManualHalt(e -> {});
+            RecordedReads reads = new RecordedReads();
+            setUpPages(sim, in, reads);
+
+            ReadableByteChannel channel = Channels.newChannel(in);
+            if(in.readUnsignedByte() != CompactTrace.SNAPSHOT){
+                throw new IOException("Compact trace does not start with a snapshot.");
+            }
+            in.readLong();
+            loadSnapshot(sim, channel);
+
+            sim.startTrace(trace, -1, Long.MAX_VALUE, true);
+            try{
+                replay(sim, in, channel, reads);
+            } finally{
+                sim.stopTrace();
+            }
+        }
+    }
+
+    /**
+     * Sets up the mirrors of the recorded run and puts the recorded reads where the devices were.
+     * @param sim simulator to replay in.
+     * @param in compact trace, at the pages.
+     * @param reads device that gives the recorded values.
+     * @throws IOException if the compact trace can not be read.
+     */
+    private static void setUpPages(Sim6502 sim, DataInputStream in, RecordedReads reads) throws IOException{
+        int[] layout = new int[0x100];
+        for(int page = 0; page < layout.length; page++){
+            layout[page] = in.readShort();
+        }
+        for(int page = 0; page < layout.length; page++){
+            if(layout[page] >= 0 && layout[page] != page){
+                sim.mirror((short) (page << 8), (short) (page << 8 | 0xff), (short) (layout[page] << 8));
+            }
+        }
+        for(int page = 0; page < layout.length; page++){
+            if(layout[page] < 0) sim.attachDevice(reads, (short) (page << 8), (short) (page << 8 | 0xff));
+        }
+    }
+
+    /**
+     * Runs the events of the compact trace one after the other until its end.
+     * @param sim simulator to replay in.
+     * @param in compact trace, after the first snapshot.
+     * @param channel the same compact trace, for the snapshots.
+     * @param reads device that gives the recorded values.
+     * @throws IOException if the compact trace can not be read or the replay does not go like the recorded run.
+     */
+    private static void replay(Sim6502 sim, DataInputStream in, ReadableByteChannel channel, RecordedReads reads)
+            throws IOException{
+        while(true){
+            int event = in.readUnsignedByte();
+            switch (event) {
+                case CompactTrace.SNAPSHOT -> {
+                    runTo(sim, in.readLong());
+                    loadSnapshot(sim, channel);
+                }
+                case CompactTrace.READS -> {
+                    byte[] values = new byte[in.readUnsignedByte()];
+                    in.readFully(values);
+                    reads.add(values);
+                }
+                case CompactTrace.JUMP -> {
+                    runTo(sim, in.readLong());
+                    sim.setProgramCounter(in.readShort());
+                }
+                case CompactTrace.END -> {
+                    runTo(sim, in.readLong());
+                    return;
+                }
+                default -> throw new IOException("Unknown event " + event + " in the compact trace.");
+            }
+        }
+    }
+
+    /**
+     * Puts the simulator into the state of a snapshot. Interrupts that were waiting are recorded when they run.
+     * @param sim simulator to replay in.
+     * @param channel compact trace, at the state of the snapshot.
+     * @throws IOException if the snapshot can not be read.
+     */
+    private static void loadSnapshot(Sim6502 sim, ReadableByteChannel channel) throws IOException{
+        sim.loadState(channel);
+        sim.clearInterrupts();
+    }
+
+    /**
+     * Runs the program until it has run an amount of instructions.
+     * @param sim simulator to replay in.
+     * @param instructionCount instruction count to run to.
+     * @throws IOException if the program stops before.
+     */
+    private static void runTo(Sim6502 sim, long instructionCount) throws IOException{
+        long missing = instructionCount - sim.getInstructionCount();
+        if(missing > 0 && sim.runFor(missing) != missing){
+            throw new IOException("The replay has stopped after " + sim.getInstructionCount() + " instructions, the "
+                    + "recorded run went on to " + instructionCount + ".");
+        }
+    }
+
+    /**
+     * Device that gives the values read from the devices in the recorded run, one after the other. Writes go nowhere.
+     */
+    private static class RecordedReads implements Device {
+
+        private byte[] values = new byte[0x100];
+        private int first;
+        private int end;
+
+        /**
+         * Adds values to give.
+         * @param add values, in the order they were read.
+         */
+        void add(byte[] add){
+            if(this.end + add.length > this.values.length){
+                int length = this.end - this.first;
+                byte[] values = this.values.length >= 2 * (length + add.length) ? this.values
+                        : new byte[2 * (length + add.length)];
+                System.arraycopy(this.values, this.first, values, 0, length);
+                this.values = values;
+                this.first = 0;
+                this.end = length;
+            }
+            System.arraycopy(add, 0, this.values, this.end, add.length);
+            this.end += add.length;
+        }
+
+        /**
+         * Gives the next recorded value.
+         * @param address address read, not used.
+         * @return value.
+         * @throws IllegalStateException if the program reads more than it read in the recorded run.
+         */
+        @Override
+        public int read(int address){
+            if(this.first == this.end){
+                throw new IllegalStateException("The replay reads more from the devices than the recorded run.");
+            }
+            return this.values[this.first++] & 0xff;
+        }
+
+        /**
+         * Ignores a write.
+         * @param address address written to.
+         * @param value value written.
+         */
+        @Override
+        public void write(int address, int value){
+            // the recorded run has written it to its own devices.
+        }
+    }
+}
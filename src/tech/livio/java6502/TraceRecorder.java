@@ -0,0 +1,382 @@
+/*
+Copyright (c) 2023, Livio Conzett
+All rights reserved.
+
+This source code is licensed under the BSD-style license found in the
+LICENSE file in the root directory of this source tree.
+*/
+
+package tech.livio.java6502;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Records every instruction the program runs into a file.<br>
+ * The thread that runs the program puts one record of 16 bytes per instruction into a ring buffer off the heap,
+ * allocated once. A writer thread takes them out, encodes them and writes them to the file. The program never waits
+ * for the writer: if the ring is full, the instruction is dropped and counted, and the trace says where it has a gap.
+ * Only a lossless recorder, like the one of {@link TraceReconstructor}, waits for room instead.<br>
+ * The file, all numbers big endian:
+ * <pre>
+ *     int   magic number "TRAC"
+ *     short version, {@link #VERSION}
+ *     then one entry after the other:
+ *     byte  {@link #SYNC}
+ *     long  instruction count of the next record, the records after it count on by one
+ *     or
+ *     byte  bits of the values that follow, see {@link #PC} to {@link #P}. Bits that are not set mean the value is
+ *           the same as in the record before, the program counter is the one after the instruction before.
+ *     short program counter
+ *     byte  op-code
+ *     bytes operand, low byte first, 0 to 2 bytes depending on the op-code
+ *     byte  a, x, y, sp, p, before the instruction
+ *     short effective address, only for the indirect addressing modes. The others are worked out from the operand.
+ * </pre>
+ * A sync comes first and after every gap, and the record after a sync has every value.
+ */
+class TraceRecorder {
+
+    // "TRAC" in ASCII
+    static final int MAGIC = 0x54524143;
+    static final short VERSION = 1;
+    // bits of the first byte of an entry.
+    static final int PC = 1;
+    static final int A = 1 << 1;
+    static final int X = 1 << 2;
+    static final int Y = 1 << 3;
+    static final int SP = 1 << 4;
+    static final int P = 1 << 5;
+    static final int SYNC = 1 << 7;
+
+    // bytes of one record in the ring.
+    static final int RECORD_BYTES = 16;
+    // kinds of records in the ring, in the top byte of the first long.
+    private static final long KIND_SYNC = 1L << 56;
+    // the writer looks into the ring this often when it is empty.
+    private static final long IDLE_NANOS = 200_000;
+
+    private final Memory memory;
+    private final Registers registers;
+    private final Flags flags;
+    private final FileChannel channel;
+
+    // ring of records, a power of two of them.
+    private final ByteBuffer ring;
+    private final long mask;
+    // records put in by the program and taken out by the writer so far.
+    private final AtomicLong head;
+    private final AtomicLong tail;
+    // head as the program knows it without reading it back, and tail as last read by the program, so it only has to
+    // look again when the ring seems full.
+    private long nextHead;
+    private long cachedTail;
+
+    // instruction to start at, or -1 to start right away, and how many instructions to record at most.
+    private final int startAddress;
+    private final long limit;
+    // true to wait for room in the ring instead of dropping instructions.
+    private final boolean lossless;
+    private boolean started;
+    private long recorded;
+    // instructions have been dropped and the next record needs a sync in front of it.
+    private boolean gap;
+    private long dropped;
+
+    private final Thread writer;
+    private volatile boolean closed;
+    private IOException failure;
+
+    /**
+     * Initialize the recorder, create the file and start the writer.
+     * @param memory memory, with the registers.
+     * @param flags flags.
+     * @param file path of the file. Is overwritten if it exists.
+     * @param bufferBytes size of the ring, rounded down to a power of two, at least two records.
+     * @param startAddress address of the first instruction to record, or -1 to record from the next one on.
+     * @param limit amount of instructions to record at most.
+     * @param lossless true to let the program wait for room in the ring instead of dropping instructions.
+     * @throws IOException if the file can not be created.
+     */
+    TraceRecorder(Memory memory, Flags flags, Path file, int bufferBytes, int startAddress, long limit,
+            boolean lossless) throws IOException{
+        if(bufferBytes < 2 * RECORD_BYTES) throw new IllegalArgumentException("The trace buffer is too small.");
+        if(limit < 0) throw new IllegalArgumentException("The amount of instructions can not be negative.");
+        this.memory = memory;
+        this.registers = memory.getRegisters();
+        this.flags = flags;
+        this.startAddress = startAddress;
+        this.limit = limit;
+        this.lossless = lossless;
+        this.started = startAddress < 0;
+        this.gap = true;
+
+        int records = Integer.highestOneBit(bufferBytes / RECORD_BYTES);
+        this.ring = ByteBuffer.allocateDirect(records * RECORD_BYTES);
+        this.mask = records - 1;
+        this.head = new AtomicLong();
+        this.tail = new AtomicLong();
+
+        this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+        this.writer = new Thread(this::drain, "6502-trace-writer");
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    /**
+     * Records the instruction at the program counter, before it runs.
+     * @param instructionCount instructions run so far.
+     * @return false if the recorder is done and never records again.
+     */
+    boolean record(long instructionCount){
+        Registers r = this.registers;
+        if(!this.started){
+            if(r.pc != this.startAddress) return true;
+            this.started = true;
+        }
+        if(this.recorded >= this.limit) return false;
+        this.recorded++;
+
+        if(this.gap){
+            if(!this.reserve(2)){
+                this.dropped++;
+                return true;
+            }
+            this.put(KIND_SYNC, instructionCount);
+            this.gap = false;
+        } else if(!this.reserve(1)){
+            this.dropped++;
+            this.gap = true;
+            return true;
+        }
+
+        int pc = r.pc;
+        int opCode = this.memory.peek(pc);
+        AddressingModes mode = InstructionTable.MODES[opCode];
+        int length = InstructionTable.operandLength(mode);
+        int operand = length == 0 ? 0 : this.memory.peek(pc + 1);
+        if(length == 2) operand |= this.memory.peek(pc + 2) << 8;
+        int address = isIndirect(mode) ? this.indirectAddress(mode, operand) : 0;
+
+        this.put(pc | (long) opCode << 16 | (long) operand << 24 | (long) address << 40,
+                r.a | r.x << 8 | r.y << 16 | (long) r.sp << 24 | (long) (this.flags.getWholeRegister() & 0xff) << 32);
+        return true;
+    }
+
+    /**
+     * Checks if there is room in the ring, and looks where the writer is if there does not seem to be. A lossless
+     * recorder waits for the writer until there is room.
+     * @param records amount of records to put in.
+     * @return true if there is room.
+     */
+    private boolean reserve(int records){
+        long capacity = this.mask + 1;
+        if(this.nextHead + records - this.cachedTail <= capacity) return true;
+        this.cachedTail = this.tail.get();
+        while(this.lossless && this.nextHead + records - this.cachedTail > capacity && this.writer.isAlive()){
+            Thread.yield();
+            this.cachedTail = this.tail.get();
+        }
+        return this.nextHead + records - this.cachedTail <= capacity;
+    }
+
+    /**
+     * Puts a record into the ring and hands it to the writer.
+     * @param first first long of the record.
+     * @param second second long of the record.
+     */
+    private void put(long first, long second){
+        int offset = (int) (this.nextHead & this.mask) * RECORD_BYTES;
+        this.ring.putLong(offset, first);
+        this.ring.putLong(offset + 8, second);
+        // ordered, so the writer never sees the head before the record.
+        this.head.lazySet(++this.nextHead);
+    }
+
+    /**
+     * Works out the effective address of an indirect addressing mode the same way the addressing modes do, without
+     * reading a device.
+     * @param mode INDEXED_INDIRECT, INDIRECT_INDEXED or INDIRECT_ABSOLUTE.
+     * @param operand operand of the instruction.
+     * @return effective address.
+     */
+    private int indirectAddress(AddressingModes mode, int operand){
+        return switch (mode) {
+            case INDEXED_INDIRECT -> {
+                int pointer = (operand + this.registers.x) & 0xff;
+                yield this.memory.peek(pointer) | this.memory.peek(pointer + 1) << 8;
+            }
+            case INDIRECT_INDEXED -> {
+                int pointer = this.memory.peek(operand) | this.memory.peek(operand + 1) << 8;
+                yield (pointer + this.registers.y) & 0xffff;
+            }
+            default -> this.memory.peek(operand) | this.memory.peek(operand + 1) << 8;
+        };
+    }
+
+    /**
+     * Checks if the effective address of an addressing mode is read from memory, so it can not be worked out from the
+     * operand and the registers.
+     * @param mode addressing mode.
+     * @return true for the indirect addressing modes.
+     */
+    static boolean isIndirect(AddressingModes mode){
+        return mode == AddressingModes.INDEXED_INDIRECT || mode == AddressingModes.INDIRECT_INDEXED
+                || mode == AddressingModes.INDIRECT_ABSOLUTE;
+    }
+
+    /**
+     * Works out the effective address of an addressing mode that does not read it from memory, the same way the
+     * addressing modes do.
+     * @param mode addressing mode.
+     * @param pc address of the instruction.
+     * @param operand operand of the instruction.
+     * @param x x register before the instruction.
+     * @param y y register before the instruction.
+     * @return effective address, or -1 if the addressing mode has none.
+     */
+    static int directAddress(AddressingModes mode, int pc, int operand, int x, int y){
+        return switch (mode) {
+            case ABSOLUTE, ZERO_PAGE -> operand;
+            case ABSOLUTE_INDEXED_X -> (operand + x) & 0xffff;
+            case ABSOLUTE_INDEXED_Y -> (operand + y) & 0xffff;
+            // the zero page index does not wrap around, like in the addressing modes.
+            case ZERO_PAGE_INDEXED_X -> operand + x;
+            case ZERO_PAGE_INDEXED_Y -> operand + y;
+            case RELATIVE -> (pc + 1 + (byte) operand) & 0xffff;
+            default -> -1;
+        };
+    }
+
+    /**
+     * Get the amount of instructions that have been dropped because the ring was full.
+     * @return amount of instructions.
+     */
+    long getDroppedCount(){
+        return this.dropped;
+    }
+
+    /**
+     * Lets the writer write out everything that has been recorded, then closes the file.<br>
+     * Must not be called while an instruction is recorded.
+     * @return amount of instructions that have been dropped because the ring was full.
+     * @throws IOException if writing the file has failed.
+     */
+    long close() throws IOException{
+        this.closed = true;
+        LockSupport.unpark(this.writer);
+        try{
+            this.writer.join();
+        } catch(InterruptedException e){
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while the trace was written.", e);
+        }
+        if(this.failure != null) throw this.failure;
+        return this.dropped;
+    }
+
+    /**
+     * Body of the writer thread. Takes the records out of the ring, encodes them and writes them to the file until the
+     * recorder is closed and the ring is empty.
+     */
+    private void drain(){
+        ByteBuffer out = ByteBuffer.allocateDirect(1 << 16);
+        // values of the record before, to only write what has changed. -1 so the first record has all of them.
+        int[] last = {-1, -1, -1, -1, -1, -1};
+        try{
+            out.putInt(MAGIC);
+            out.putShort(VERSION);
+            while(true){
+                boolean closed = this.closed;
+                long head = this.head.get();
+                long tail = this.tail.get();
+                if(tail == head){
+                    if(closed) break;
+                    LockSupport.parkNanos(this, IDLE_NANOS);
+                    continue;
+                }
+                for(; tail < head; tail++){
+                    // the longest entry, so there is always room for it.
+                    if(out.remaining() < 16) this.flush(out);
+                    int offset = (int) (tail & this.mask) * RECORD_BYTES;
+                    encode(this.ring.getLong(offset), this.ring.getLong(offset + 8), last, out);
+                }
+                this.tail.lazySet(tail);
+            }
+            this.flush(out);
+            this.channel.close();
+        } catch(IOException e){
+            this.failure = e;
+            // nothing more gets written, but the program must not wait for it.
+            this.tail.set(Long.MAX_VALUE / 2);
+            try{
+                this.channel.close();
+            } catch(IOException ignored){
+                // the first failure is the one that counts.
+            }
+        }
+    }
+
+    /**
+     * Encodes a record of the ring into an entry of the file.
+     * @param first first long of the record.
+     * @param second second long of the record.
+     * @param last program counter after the record before and a, x, y, sp and p of it. Updated.
+     * @param out buffer to put the entry into.
+     */
+    private static void encode(long first, long second, int[] last, ByteBuffer out){
+        if((first & KIND_SYNC) != 0){
+            out.put((byte) SYNC);
+            out.putLong(second);
+            Arrays.fill(last, -1);
+            return;
+        }
+
+        int pc = (int) first & 0xffff;
+        int opCode = (int) (first >>> 16) & 0xff;
+        int operand = (int) (first >>> 24) & 0xffff;
+        int address = (int) (first >>> 40) & 0xffff;
+        AddressingModes mode = InstructionTable.MODES[opCode];
+        int length = InstructionTable.operandLength(mode);
+
+        int bits = pc == last[0] ? 0 : PC;
+        for(int i = 1; i < 6; i++){
+            int value = (int) (second >>> ((i - 1) * 8)) & 0xff;
+            if(value != last[i]){
+                bits |= 1 << i;
+                last[i] = value;
+            }
+        }
+        last[0] = (pc + 1 + length) & 0xffff;
+
+        out.put((byte) bits);
+        if((bits & PC) != 0) out.putShort((short) pc);
+        out.put((byte) opCode);
+        if(length > 0) out.put((byte) operand);
+        if(length > 1) out.put((byte) (operand >>> 8));
+        for(int i = 1; i < 6; i++){
+            if((bits & 1 << i) != 0) out.put((byte) last[i]);
+        }
+        if(isIndirect(mode)) out.putShort((short) address);
+    }
+
+    /**
+     * Writes the buffer to the file and empties it.
+     * @param out buffer.
+     * @throws IOException if the file can not be written.
+     */
+    private void flush(ByteBuffer out) throws IOException{
+        out.flip();
+        while(out.hasRemaining()){
+            this.channel.write(out);
+        }
+        out.clear();
+    }
+}
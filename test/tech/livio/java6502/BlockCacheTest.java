@@ -0,0 +1,247 @@
+package tech.livio.java6502;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class BlockCacheTest {
+
+    private Memory memory;
+    private Control control;
+    private BlockCache cache;
+    private ProgramRunner runner;
+
+    @BeforeEach
+    void init(){
+        this.control = new Control();
+        this.memory = new Memory();
+        Stack stack = new Stack(this.memory, this.control);
+        Flags flags = new Flags();
+        InstructionSet is = new InstructionSet(this.memory, stack, flags, this.control);
+        AddressingMode am = new AddressingMode(this.memory);
+        this.runner = new ProgramRunner(this.memory, stack, flags, is, am, this.control);
+
+        this.cache = new BlockCache(this.memory);
+        this.memory.setBlockCache(this.cache);
+        this.runner.setBlockCache(this.cache);
+    }
+
+    /**
+     * Runs blocks from the program counter until the program hits ext.
+     * @param address address to start at.
+     */
+    private void runBlocks(int address){
+        this.memory.setProgramCounter((short) address);
+        this.control.setRun(true);
+        while(this.control.getRun()){
+            this.runner.runBlock();
+        }
+    }
+
+    /**
+     * Puts the stack pointer at the top of the stack.
+     */
+    private void stackPointer(){
+        this.memory.getRegisters().sp = 0xff;
+    }
+
+    @Test
+    void decodeTest(){
+        // 0200 lda #$42
+        // 0202 sta $0300
+        // 0205 ldx $10
+        // 0207 bne $0202
+        // 0209 nop
+        this.memory.load((short) 0x0200, "a9 42 8d 00 03 a6 10 d0 f9 ea");
+
+        DecodedBlock block = this.cache.get(0x0200);
+
+        // the block ends with the branch.
+        Assertions.assertEquals(4, block.length);
+        Assertions.assertArrayEquals(new int[]{0x42, 0x0300, 0x10, 0x0201}, block.operands);
+        Assertions.assertArrayEquals(new int[]{0x0202, 0x0205, 0x0207, 0x0209}, block.nextAddresses);
+        Assertions.assertArrayEquals(new int[]{0x02}, block.pages);
+        Assertions.assertSame(block, this.cache.get(0x0200));
+    }
+
+    @Test
+    void blockEndsAtMaxLengthTest(){
+        // nothing but nop
+        this.memory.load((short) 0x1000, "ea ".repeat(BlockCache.MAX_INSTRUCTIONS * 2));
+
+        DecodedBlock block = this.cache.get(0x1000);
+
+        Assertions.assertEquals(BlockCache.MAX_INSTRUCTIONS, block.length);
+    }
+
+    @Test
+    void blockAcrossPagesTest(){
+        // 02fe lda $1234 crosses into page 03
+        this.memory.load((short) 0x02fe, "ad 34 12 80");
+
+        DecodedBlock block = this.cache.get(0x02fe);
+
+        Assertions.assertArrayEquals(new int[]{0x02, 0x03}, block.pages);
+
+        // writing to the second page invalidates the block too.
+        this.memory.write(0x0380, 0x00);
+
+        Assertions.assertFalse(block.valid);
+        Assertions.assertNotSame(block, this.cache.get(0x02fe));
+    }
+
+    @Test
+    void writeInvalidatesPageTest(){
+        this.memory.load((short) 0x0200, "a9 01 80");
+        this.memory.load((short) 0x0400, "a9 01 80");
+
+        DecodedBlock block = this.cache.get(0x0200);
+        DecodedBlock other = this.cache.get(0x0400);
+
+        // a write to another page leaves the block alone
+        this.memory.write(0x0300, 0x12);
+        Assertions.assertTrue(block.valid);
+
+        this.memory.setByteAtAddress((short) 0x02ff, (byte) 0x12);
+        Assertions.assertFalse(block.valid);
+        Assertions.assertTrue(other.valid);
+
+        this.memory.load((short) 0x0401, "02");
+        Assertions.assertFalse(other.valid);
+
+        this.runBlocks(0x0400);
+        Assertions.assertEquals((byte) 0x02, this.memory.getRegisterA());
+    }
+
+    @Test
+    void hardResetInvalidatesTest(){
+        this.memory.load((short) 0x0200, "a9 01 80");
+        DecodedBlock block = this.cache.get(0x0200);
+
+        this.memory.hardReset();
+
+        Assertions.assertFalse(block.valid);
+        Assertions.assertEquals((byte) 0x00, (byte) this.cache.get(0x0200).operands[0]);
+    }
+
+    @Test
+    void selfModifyingCodeTest(){
+        // 0200 lda #$42
+        // 0202 sta $0206   overwrites the operand of the ldx below
+        // 0205 ldx #$00
+        // 0207 ext
+        this.memory.load((short) 0x0200, "a9 42 8d 06 02 a2 00 80");
+
+        this.runBlocks(0x0200);
+
+        Assertions.assertEquals((byte) 0x42, this.memory.getRegisterX());
+        Assertions.assertEquals((short) 0x0207, this.memory.getProgramCounter());
+    }
+
+    @Test
+    void mirrorInvalidatesTest(){
+        // 0200 lda #$01
+        // 0202 ext
+        this.memory.load((short) 0x0200, "a9 01 80");
+        this.memory.mirror(0x40, 0x40, 0x02);
+        DecodedBlock block = this.cache.get(0x0200);
+
+        // a write through the mirror changes the code
+        this.memory.write(0x4001, 0x02);
+        Assertions.assertFalse(block.valid);
+
+        this.runBlocks(0x4000);
+        Assertions.assertEquals((byte) 0x02, this.memory.getRegisterA());
+        this.runBlocks(0x0200);
+        Assertions.assertEquals((byte) 0x02, this.memory.getRegisterA());
+    }
+
+    @Test
+    void runFromDeviceTest(){
+        // e000 lda #$42
+        // e002 ext
+        int[] rom = {0xa9, 0x42, 0x80};
+        int[] reads = new int[1];
+        this.memory.attachDevice(new Device(){
+            @Override
+            public int read(int address){
+                reads[0]++;
+                return address - 0xe000 < rom.length ? rom[address - 0xe000] : 0;
+            }
+
+            @Override
+            public void write(int address, int value){
+            }
+        }, 0xe0, 0xe0);
+
+        Assertions.assertNull(this.cache.get(0xe000));
+
+        this.runBlocks(0xe000);
+        Assertions.assertEquals((byte) 0x42, this.memory.getRegisterA());
+        Assertions.assertEquals((short) 0xe002, this.memory.getProgramCounter());
+        Assertions.assertTrue(reads[0] >= 3);
+    }
+
+    @Test
+    void sameAsInterpreterTest(){
+        // 0200 ldy #0
+        // 0202 ldx #0
+        // 0204 txa
+        // 0205 adc ($10),y
+        // 0207 sta $0300,x
+        // 020a jsr $0220
+        // 020d inx
+        // 020e bne $0204
+        // 0210 iny
+        // 0211 cpy #$10
+        // 0213 bne $0202
+        // 0215 ext
+        // 0220 rol $0400,x
+        // 0223 rts
+        String program = "a0 00 a2 00 8a 71 10 9d 00 03 20 20 02 e8 d0 f5 c8 c0 10 d0 ee 80";
+        String subroutine = "3e 00 04 60";
+
+        this.memory.load((short) 0x0200, program);
+        this.memory.load((short) 0x0220, subroutine);
+        this.memory.load((short) 0x0010, "00 05");
+        this.memory.load((short) 0x0500, "01 02 03 04 05 06 07 08 09 0a 0b 0c 0d 0e 0f 10");
+        this.control.setRun(true);
+        this.memory.setProgramCounter((short) 0x0200);
+        this.stackPointer();
+
+        while(this.control.getRun()){
+            this.runner.step();
+        }
+
+        byte[] interpreted = this.memory.getMemoryRange((short) 0x0000, (short) 0x0fff);
+        short pc = this.memory.getProgramCounter();
+
+        this.memory.hardReset();
+        this.memory.load((short) 0x0200, program);
+        this.memory.load((short) 0x0220, subroutine);
+        this.memory.load((short) 0x0010, "00 05");
+        this.memory.load((short) 0x0500, "01 02 03 04 05 06 07 08 09 0a 0b 0c 0d 0e 0f 10");
+        this.stackPointer();
+
+        this.runBlocks(0x0200);
+
+        Assertions.assertArrayEquals(interpreted, this.memory.getMemoryRange((short) 0x0000, (short) 0x0fff));
+        Assertions.assertEquals(pc, this.memory.getProgramCounter());
+    }
+
+    @Test
+    void simBlockCacheTest(){
+        Sim6502 sim = new Sim6502();
+        sim.setBlockCache(true);
+
+        // lda #$42, sta $0300, ext
+        sim.load((short) 0xfffc, "4c 00 02");
+        sim.load((short) 0x0200, "a9 42 8d 00 03 80");
+
+        sim.run();
+        sim.waitForProgramEnd();
+
+        Assertions.assertEquals((byte) 0x42, sim.getByteAtAddress((short) 0x0300));
+        Assertions.assertEquals((short) 0x0205, sim.getProgramCounter());
+    }
+}
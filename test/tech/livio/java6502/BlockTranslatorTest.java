@@ -0,0 +1,172 @@
+package tech.livio.java6502;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class BlockTranslatorTest {
+
+    // 0200 ldy #0
+    // 0202 ldx #0
+    // 0204 txa
+    // 0205 adc ($10),y
+    // 0207 sta $0300,x
+    // 020a jsr $0220
+    // 020d inx
+    // 020e bne $0204
+    // 0210 iny
+    // 0211 cpy #$10
+    // 0213 bne $0202
+    // 0215 ext
+    private static final String PROGRAM = "a0 00 a2 00 8a 71 10 9d 00 03 20 20 02 e8 d0 f5 c8 c0 10 d0 ee 80";
+    // 0220 rol $0400,x
+    // 0223 eor $8000
+    // 0226 rts
+    private static final String SUBROUTINE = "3e 00 04 4d 00 80 60";
+
+    private Memory memory;
+    private Control control;
+    private BlockCache cache;
+    private BlockTranslator translator;
+    private ProgramRunner runner;
+
+    @BeforeEach
+    void init(){
+        this.control = new Control();
+        this.memory = new Memory();
+        Stack stack = new Stack(this.memory, this.control);
+        Flags flags = new Flags(this.memory.getRegisters(), false);
+        InstructionSet is = new InstructionSet(this.memory, stack, flags, this.control);
+        AddressingMode am = new AddressingMode(this.memory);
+        this.runner = new ProgramRunner(this.memory, stack, flags, is, am, this.control);
+
+        this.cache = new BlockCache(this.memory);
+        this.translator = new BlockTranslator();
+        this.translator.setThreshold(2);
+        this.memory.setBlockCache(this.cache);
+        this.runner.setBlockCache(this.cache);
+    }
+
+    /**
+     * Loads the test program and runs it until ext.
+     */
+    private void runProgram(){
+        this.memory.hardReset();
+        this.memory.load((short) 0x0200, PROGRAM);
+        this.memory.load((short) 0x0220, SUBROUTINE);
+        this.memory.load((short) 0x0010, "00 05");
+        this.memory.load((short) 0x0500, "01 02 03 04 05 06 07 08 09 0a 0b 0c 0d 0e 0f 10");
+        this.memory.load((short) 0x8000, "5a");
+        this.memory.getRegisters().sp = 0xff;
+        this.memory.setProgramCounter((short) 0x0200);
+        this.control.setRun(true);
+
+        while(this.control.getRun()){
+            this.runner.runBlock();
+        }
+    }
+
+    @Test
+    void translateTest(){
+        this.memory.load((short) 0x0200, "a9 42 8d 00 03 e8 4c 00 02");
+        Registers registers = this.memory.getRegisters();
+
+        DecodedBlock block = this.cache.get(0x0200);
+        CompiledBlock compiled = this.translator.translate(block);
+
+        Assertions.assertNotNull(compiled);
+        Assertions.assertEquals(1, this.translator.getTranslated());
+
+        registers.pc = 0x0200;
+        compiled.run(block, new InstructionSet(this.memory, new Stack(this.memory, this.control),
+                new Flags(registers, false), this.control), new AddressingMode(this.memory), registers);
+
+        Assertions.assertEquals(0x42, registers.a);
+        Assertions.assertEquals(0x01, registers.x);
+        Assertions.assertEquals(0x0200, registers.pc);
+        Assertions.assertEquals((byte) 0x42, this.memory.getByteAtAddress((short) 0x0300));
+    }
+
+    @Test
+    void extIsNotTranslatedTest(){
+        this.memory.load((short) 0x0200, "a9 42 80");
+
+        DecodedBlock block = this.cache.get(0x0200);
+
+        Assertions.assertFalse(BlockTranslator.canTranslate(block));
+        Assertions.assertNull(this.translator.translate(block));
+    }
+
+    @Test
+    void sameAsInterpreterTest(){
+        this.runProgram();
+        byte[] interpreted = this.memory.snapshot();
+        short pc = this.memory.getProgramCounter();
+
+        this.runner.setTranslator(this.translator);
+        this.runProgram();
+
+        Assertions.assertTrue(this.translator.getTranslated() > 0);
+        Assertions.assertArrayEquals(interpreted, this.memory.snapshot());
+        Assertions.assertEquals(pc, this.memory.getProgramCounter());
+    }
+
+    @Test
+    void crossCheckTest(){
+        this.runner.setTranslator(this.translator);
+        this.runner.setCrossCheck(true);
+
+        Assertions.assertDoesNotThrow(this::runProgram);
+        Assertions.assertTrue(this.translator.getTranslated() > 0);
+    }
+
+    @Test
+    void crossCheckFindsDifferenceTest(){
+        this.memory.load((short) 0x0200, "a9 42 4c 00 02");
+        this.runner.setCrossCheck(true);
+
+        // translated code that forgets to load the accumulator.
+        DecodedBlock block = this.cache.get(0x0200);
+        block.compiled = (b, is, am, registers) -> registers.pc = 0x0200;
+
+        this.memory.setProgramCounter((short) 0x0200);
+        Assertions.assertThrows(IllegalStateException.class, this.runner::runBlock);
+    }
+
+    @Test
+    void selfModifyingCodeTest(){
+        // 0200 inc $0207   changes the operand of the ldx below
+        // 0203 jmp $0206
+        // 0206 ldx #$00
+        // 0208 cpx #$05
+        // 020a bne $0200
+        // 020c ext
+        this.memory.load((short) 0x0200, "ee 07 02 4c 06 02 a2 00 e0 05 d0 f5 80");
+        this.runner.setTranslator(this.translator);
+        this.runner.setCrossCheck(true);
+
+        this.memory.setProgramCounter((short) 0x0200);
+        this.control.setRun(true);
+        while(this.control.getRun()){
+            this.runner.runBlock();
+        }
+
+        Assertions.assertEquals((byte) 0x05, this.memory.getRegisterX());
+        Assertions.assertEquals((short) 0x020c, this.memory.getProgramCounter());
+    }
+
+    @Test
+    void simTranslationTest(){
+        Sim6502 sim = new Sim6502();
+        sim.setTranslation(true);
+
+        // ldx #0, inx, bne -2, ext
+        sim.load((short) 0xfffc, "4c 00 02");
+        sim.load((short) 0x0200, "a2 00 e8 d0 fe 80");
+
+        sim.run();
+        sim.waitForProgramEnd();
+
+        Assertions.assertEquals((short) 0x0205, sim.getProgramCounter());
+    }
+}
@@ -14,22 +14,6 @@ class ControlTest {
         this.control = new Control();
     }
 
-    @Test
-    void initTest(){
-        Assertions.assertTrue(this.control.getSkipNextIncrement());
-    }
-
-    @Test
-    void skipIncrementTest(){
-        this.control.setSkipNextIncrement();
-
-        Assertions.assertTrue(this.control.getSkipNextIncrement());
-
-        this.control.allowNextIncrement();
-
-        Assertions.assertFalse(this.control.getSkipNextIncrement());
-    }
-
     @Test
     void doOnExtTest(){
         this.control.setRun(true);
@@ -0,0 +1,120 @@
+package tech.livio.java6502;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+class DelayLoopTest {
+
+    private static final int TRIALS = 60;
+
+    // delay loops, and two that only look like one.
+    private static final String[] LOOPS = {
+            "ca d0 fe",
+            "e8 d0 fe",
+            "88 d0 fe",
+            "c8 d0 fe",
+            "ea ea ca d0 fc",
+            "ca d0 fe 88 d0 fb",
+            "c8 d0 fe e8 d0 fb",
+            "a2 05 ca d0 fe 88 d0 f9",
+            "a0 00 c8 d0 fe ca d0 f9",
+            "ca d0 fe ca d0 fb",
+            "a2 05 ca d0 fe 88 d0 fa",
+    };
+
+    private Memory memory;
+    private Control control;
+    private BlockCache cache;
+    private ProgramRunner runner;
+
+    /**
+     * Creates a new simulator with the block cache on.
+     * @param idioms true to compute delay loops.
+     */
+    private void init(boolean idioms){
+        LoopSimulator sim = new LoopSimulator(idioms);
+        this.memory = sim.memory;
+        this.control = sim.control;
+        this.cache = sim.cache;
+        this.runner = sim.runner;
+    }
+
+    /**
+     * Creates a run of a loop followed by ext, at a random place and with a random quantum and limit.
+     * @param loop loop. The operand of a leading ldx or ldy is made random.
+     * @param trial number of the run.
+     * @param random random numbers.
+     * @return the run.
+     */
+    private static LoopSimulator.Trial trial(String loop, int trial, Random random){
+        // the second origin lets the branches cross a page.
+        int origin = trial % 2 == 0 ? 0x0200 : 0x02fb + random.nextInt(4);
+
+        String code = loop;
+        if(code.startsWith("a2") || code.startsWith("a0")){
+            code = code.substring(0, 3) + String.format("%02x", random.nextInt(256)) + code.substring(5);
+        }
+        String program = code + " 80";
+
+        int[] registers = LoopSimulator.randomRegisters(random, trial);
+
+        // quantum, then instructions or cycles to run for: to the end, for some instructions or for some cycles.
+        int[] limits = {1 + random.nextInt(2000), 0, 0};
+        switch(random.nextInt(3)){
+            case 0 -> limits[1] = 1_000_000;
+            case 1 -> limits[1] = 1 + random.nextInt(300_000);
+            default -> limits[2] = 1 + random.nextInt(1_000_000);
+        }
+
+        return sim -> {
+            sim.memory.load((short) origin, program);
+            sim.start(registers, origin);
+            sim.runner.setQuantum(limits[0]);
+            if(limits[1] > 0){
+                sim.runner.runFor(limits[1]);
+            } else {
+                sim.runner.runForCycles(limits[2]);
+            }
+            return sim.state();
+        };
+    }
+
+    @Test
+    void sameAsSteppingTest(){
+        LoopSimulator.assertSameAsStepping(LOOPS, TRIALS, DelayLoopTest::trial);
+    }
+
+    @Test
+    void recogniseTest(){
+        this.init(true);
+
+        // 0200 ldy #3
+        // 0202 ldx #10
+        // 0204 dex
+        // 0205 bne $0204
+        // 0207 dey
+        // 0208 bne $0202
+        // 020a ext
+        this.memory.load((short) 0x0200, "a0 03 a2 0a ca d0 fe 88 d0 f9 80");
+
+        Assertions.assertNull(this.cache.get(0x0200).delay);
+        Assertions.assertNotNull(this.cache.get(0x0202).delay);
+        Assertions.assertNotNull(this.cache.get(0x0204).delay);
+
+        this.memory.setProgramCounter((short) 0x0200);
+        this.control.setRun(true);
+        // ldy, 3 rounds of ldx, 10 rounds of dex and bne, dey and bne, ext
+        Assertions.assertEquals(1 + 3 * (1 + 10 * 2 + 2) + 1, this.runner.runFor(1000));
+        // every taken branch costs one cycle more
+        Assertions.assertEquals(2 + 3 * (2 + 10 * 4 + 9 + 4) + 2 + 2, this.runner.getCycleCount());
+        Assertions.assertEquals(0x020a, this.memory.getRegisters().pc);
+        Assertions.assertEquals(0, this.memory.getRegisters().x);
+        Assertions.assertEquals(0, this.memory.getRegisters().y);
+
+        // not a delay loop: the loop does something else than counting
+        this.memory.load((short) 0x0400, "e6 10 ca d0 fb");
+        Assertions.assertNull(this.cache.get(0x0400).delay);
+    }
+}
@@ -11,7 +11,15 @@ class FlagTests {
 
     @BeforeEach
     void init(){
-        this.flags = new Flags();
+        this.flags = this.createFlags();
+    }
+
+    /**
+     * Creates the flags under test.
+     * @return new Flags object.
+     */
+    Flags createFlags(){
+        return new Flags();
     }
 
     @Test
@@ -20,11 +20,19 @@ class InstructionSetTests{
         this.control = new Control();
         this.memory = new Memory();
         this.stack = new Stack(this.memory, this.control);
-        this.flags = new Flags();
+        this.flags = this.createFlags();
         this.is = new InstructionSet(memory,stack,flags,control);
         this.input = new AddressingModeReturn();
     }
 
+    /**
+     * Creates the flags the instructions work with.
+     * @return new Flags object.
+     */
+    Flags createFlags(){
+        return new Flags();
+    }
+
     @Test
     void adcTest(){
 
@@ -34,7 +42,7 @@ class InstructionSetTests{
         this.flags.setCarry(false);
         this.input.set((byte)7,(short)0x0);
 
-        this.is.adc(input);
+        this.is.adc(input.getValue());
 
         Assertions.assertEquals((byte)17,this.memory.getRegisterA());
         Assertions.assertFalse(this.flags.getNegative());
@@ -47,7 +55,7 @@ class InstructionSetTests{
         this.flags.setDecimalMode(false);
         this.flags.setCarry(true);
 
-        this.is.adc(input);
+        this.is.adc(input.getValue());
 
         Assertions.assertEquals((byte)-128,this.memory.getRegisterA());
         Assertions.assertTrue(this.flags.getNegative());
@@ -60,7 +68,7 @@ class InstructionSetTests{
         this.flags.setDecimalMode(false);
         this.flags.setCarry(false);
 
-        this.is.adc(input);
+        this.is.adc(input.getValue());
 
         Assertions.assertEquals((byte)6,this.memory.getRegisterA());
         Assertions.assertFalse(this.flags.getNegative());
@@ -74,7 +82,7 @@ class InstructionSetTests{
         this.flags.setCarry(true);
         this.input.setValue((byte)0);
 
-        this.is.adc(input);
+        this.is.adc(input.getValue());
 
         Assertions.assertEquals((byte)0,this.memory.getRegisterA());
         Assertions.assertFalse(this.flags.getNegative());
@@ -92,27 +100,27 @@ class InstructionSetTests{
         this.flags.setNegative(false);
         this.input.setValue((byte)0b00101010);
 
-        this.is.and(input);
+        this.is.and(input.getValue());
         Assertions.assertEquals((byte)0b00101010,this.memory.getRegisterA());
         Assertions.assertFalse(this.flags.getNegative());
         Assertions.assertFalse(this.flags.getZero());
         this.input.setValue((byte)0b00010101);
 
-        this.is.and(input);
+        this.is.and(input.getValue());
         Assertions.assertEquals((byte)0b00000000,this.memory.getRegisterA());
         Assertions.assertFalse(this.flags.getNegative());
         Assertions.assertTrue(this.flags.getZero());
         this.input.setValue((byte)0b10001000);
         this.memory.setRegisterA((byte)0b11001000);
 
-        this.is.and(input);
+        this.is.and(input.getValue());
         Assertions.assertEquals((byte)0b10001000,this.memory.getRegisterA());
         Assertions.assertTrue(this.flags.getNegative());
         Assertions.assertFalse(this.flags.getZero());
         this.input.setValue((byte)0b10101010);
         this.memory.setRegisterA((byte)0b11111111);
 
-        this.is.and(input);
+        this.is.and(input.getValue());
         Assertions.assertEquals((byte)0b10101010,this.memory.getRegisterA());
         Assertions.assertTrue(this.flags.getNegative());
         Assertions.assertFalse(this.flags.getZero());
@@ -171,7 +179,7 @@ class InstructionSetTests{
 
         this.memory.setByteAtAddress((short)0x0345,(byte)0b00000001);
         this.input.set((byte)0b00000001,(short)0x0345);
-        this.is.asl(input);
+        this.is.asl(input.getValue(), input.getAddress());
         Assertions.assertEquals((byte)0b00000010,this.memory.getByteAtAddress((short)0x0345));
 
         Assertions.assertFalse(this.flags.getNegative());
@@ -180,7 +188,7 @@ class InstructionSetTests{
 
         this.memory.setByteAtAddress((short)0xf001,(byte)0b10000001);
         this.input.set((byte)0b10000001,(short)0xf001);
-        this.is.asl(input);
+        this.is.asl(input.getValue(), input.getAddress());
         Assertions.assertEquals((byte)0b00000010,this.memory.getByteAtAddress((short)0xf001));
 
         Assertions.assertFalse(this.flags.getNegative());
@@ -191,7 +199,7 @@ class InstructionSetTests{
 
         this.memory.setByteAtAddress((short)0x002,(byte)0b10000000);
         this.input.set((byte)0b10000000,(short)0x002);
-        this.is.asl(input);
+        this.is.asl(input.getValue(), input.getAddress());
         Assertions.assertEquals((byte)0b00000000,this.memory.getByteAtAddress((short)0x002));
 
         Assertions.assertFalse(this.flags.getNegative());
@@ -200,7 +208,7 @@ class InstructionSetTests{
 
         this.memory.setByteAtAddress((short)0x3456,(byte)0b01000000);
         this.input.set((byte)0b01000000,(short)0x3456);
-        this.is.asl(input);
+        this.is.asl(input.getValue(), input.getAddress());
         Assertions.assertEquals((byte)0b10000000,this.memory.getByteAtAddress((short)0x3456));
 
         Assertions.assertTrue(this.flags.getNegative());
@@ -209,7 +217,7 @@ class InstructionSetTests{
 
         this.memory.setByteAtAddress((short)0x1010,(byte)0b00000000);
         this.input.set((byte)0b00000000,(short)0x1010);
-        this.is.asl(input);
+        this.is.asl(input.getValue(), input.getAddress());
         Assertions.assertEquals((byte)0b00000000,this.memory.getByteAtAddress((short)0x1010));
 
         Assertions.assertFalse(this.flags.getNegative());
@@ -221,12 +229,11 @@ class InstructionSetTests{
     @Test
     void bccTest(){
 
-        this.control.allowNextIncrement();
         this.memory.setProgramCounter((short)0x0010);
         this.flags.setCarry(true);
         this.input.setAddress((short)0x0300);
 
-        this.is.bcc(input);
+        this.is.bcc(input.getAddress());
 
         Assertions.assertEquals((short)0x0010,this.memory.getProgramCounter());
 
@@ -234,22 +241,19 @@ class InstructionSetTests{
         this.flags.setCarry(false);
         this.input.setAddress((short)0x0300);
 
-        this.is.bcc(input);
+        this.is.bcc(input.getAddress());
 
         Assertions.assertEquals((short)0x0300,this.memory.getProgramCounter());
-        Assertions.assertTrue(this.control.getSkipNextIncrement());
-        this.control.allowNextIncrement();
     }
 
     @Test
     void bcsTest(){
 
-        this.control.allowNextIncrement();
         this.memory.setProgramCounter((short)0xf010);
         this.flags.setCarry(false);
         this.input.setAddress((short)0xf300);
 
-        this.is.bcs(input);
+        this.is.bcs(input.getAddress());
 
         Assertions.assertEquals((short)0xf010,this.memory.getProgramCounter());
 
@@ -257,22 +261,20 @@ class InstructionSetTests{
         this.flags.setCarry(true);
         this.input.setAddress((short)0xf300);
 
-        this.is.bcs(input);
+        this.is.bcs(input.getAddress());
 
         Assertions.assertEquals((short)0xf300,this.memory.getProgramCounter());
-        Assertions.assertTrue(this.control.getSkipNextIncrement());
 
     }
 
     @Test
     void beqTest(){
 
-        this.control.allowNextIncrement();
         this.memory.setProgramCounter((short)0x1234);
         this.flags.setZero(false);
         this.input.setAddress((short)0x6969);
 
-        this.is.beq(input);
+        this.is.beq(input.getAddress());
 
         Assertions.assertEquals((short)0x1234,this.memory.getProgramCounter());
 
@@ -281,10 +283,9 @@ class InstructionSetTests{
         this.flags.setZero(true);
         this.input.setAddress((short)0x6969);
 
-        this.is.beq(input);
+        this.is.beq(input.getAddress());
 
         Assertions.assertEquals((short)0x6969,this.memory.getProgramCounter());
-        Assertions.assertTrue(this.control.getSkipNextIncrement());
 
     }
 
@@ -294,7 +295,7 @@ class InstructionSetTests{
         this.memory.setRegisterA((byte)0b01010101);
         this.input.setValue((byte)0b01010001);
 
-        this.is.bit(input);
+        this.is.bit(input.getValue());
 
         Assertions.assertFalse(this.flags.getZero());
         Assertions.assertFalse(this.flags.getNegative());
@@ -303,7 +304,7 @@ class InstructionSetTests{
         this.memory.setRegisterA((byte)0b00010101);
         this.input.setValue((byte)0b00000010);
 
-        this.is.bit(input);
+        this.is.bit(input.getValue());
 
         Assertions.assertTrue(this.flags.getZero());
         Assertions.assertFalse(this.flags.getNegative());
@@ -312,7 +313,7 @@ class InstructionSetTests{
         this.memory.setRegisterA((byte)0b10100000);
         this.input.setValue((byte)0b00100000);
 
-        this.is.bit(input);
+        this.is.bit(input.getValue());
 
         Assertions.assertFalse(this.flags.getZero());
         Assertions.assertFalse(this.flags.getNegative());
@@ -321,7 +322,7 @@ class InstructionSetTests{
         this.memory.setRegisterA((byte)0b10100000);
         this.input.setValue((byte)0b10000000);
 
-        this.is.bit(input);
+        this.is.bit(input.getValue());
 
         Assertions.assertFalse(this.flags.getZero());
         Assertions.assertTrue(this.flags.getNegative());
@@ -332,12 +333,11 @@ class InstructionSetTests{
     @Test
     void bmiTest(){
 
-        this.control.allowNextIncrement();
         this.memory.setProgramCounter((short)0x3333);
         this.flags.setNegative(false);
         this.input.setAddress((short)0x458e);
 
-        this.is.bmi(input);
+        this.is.bmi(input.getAddress());
 
         Assertions.assertEquals((short)0x3333,this.memory.getProgramCounter());
 
@@ -346,22 +346,20 @@ class InstructionSetTests{
         this.flags.setNegative(true);
         this.input.setAddress((short)0x458e);
 
-        this.is.bmi(input);
+        this.is.bmi(input.getAddress());
 
         Assertions.assertEquals((short)0x458e,this.memory.getProgramCounter());
-        Assertions.assertTrue(this.control.getSkipNextIncrement());
 
     }
 
     @Test
     void bneTest(){
 
-        this.control.allowNextIncrement();
         this.memory.setProgramCounter((short)0xfabcd);
         this.flags.setZero(true);
         this.input.setAddress((short)0x12ef);
 
-        this.is.bne(input);
+        this.is.bne(input.getAddress());
 
         Assertions.assertEquals((short)0xfabcd,this.memory.getProgramCounter());
 
@@ -369,31 +367,28 @@ class InstructionSetTests{
         this.flags.setZero(false);
         this.input.setAddress((short)0x12ef);
 
-        this.is.bne(input);
+        this.is.bne(input.getAddress());
 
         Assertions.assertEquals((short)0x12ef,this.memory.getProgramCounter());
-        Assertions.assertTrue(this.control.getSkipNextIncrement());
 
     }
 
     @Test
     void bplTest(){
 
-        this.control.allowNextIncrement();
         this.memory.setProgramCounter((short)0x3333);
         this.flags.setNegative(false);
         this.input.setAddress((short)0x458e);
 
-        this.is.bpl(input);
+        this.is.bpl(input.getAddress());
 
         Assertions.assertEquals((short)0x458e,this.memory.getProgramCounter());
-        Assertions.assertTrue(this.control.getSkipNextIncrement());
 
         this.memory.setProgramCounter((short)0x1234);
         this.flags.setNegative(true);
         this.input.setAddress((short)0x458e);
 
-        this.is.bpl(input);
+        this.is.bpl(input.getAddress());
 
         Assertions.assertEquals((short)0x1234,this.memory.getProgramCounter());
     }
@@ -402,7 +397,6 @@ class InstructionSetTests{
     void brkTest(){
 
         this.flags.reset();
-        this.control.allowNextIncrement();
 
         this.memory.setByteAtAddress((short)0xfffe,(byte)0x34);
         this.memory.setByteAtAddress((short)0xffff,(byte)0x12);
@@ -411,7 +405,8 @@ class InstructionSetTests{
         this.flags.setOverFlow(true);
         this.flags.setCarry(true);
 
-        this.memory.setProgramCounter((short)0xaabb);
+        // the program counter points at the byte after the brk op-code
+        this.memory.setProgramCounter((short)0xaabc);
 
         this.is.brk();
 
@@ -420,7 +415,6 @@ class InstructionSetTests{
         Assertions.assertEquals((byte)0xaa,this.memory.getByteAtAddress((short)0x01ff));
         Assertions.assertEquals((byte)0xbc,this.memory.getByteAtAddress((short)0x01fe));
         Assertions.assertEquals((byte)0b01110101,this.memory.getByteAtAddress((short)0x01fd));
-        Assertions.assertTrue(this.control.getSkipNextIncrement());
 
 
     }
@@ -428,21 +422,19 @@ class InstructionSetTests{
     @Test
     void bvcTest(){
 
-        this.control.allowNextIncrement();
         this.memory.setProgramCounter((short)0xfabc);
         this.flags.setOverFlow(false);
         this.input.setAddress((short)0xabcd);
 
-        this.is.bvc(input);
+        this.is.bvc(input.getAddress());
 
         Assertions.assertEquals((short)0xabcd,this.memory.getProgramCounter());
-        Assertions.assertTrue(this.control.getSkipNextIncrement());
 
         this.memory.setProgramCounter((short)0xfabc);
         this.flags.setOverFlow(true);
         this.input.setAddress((short)0xabcd);
 
-        this.is.bvc(input);
+        this.is.bvc(input.getAddress());
 
         Assertions.assertEquals((short)0xfabc,this.memory.getProgramCounter());
     }
@@ -450,12 +442,11 @@ class InstructionSetTests{
     @Test
     void bvsTest(){
 
-        this.control.allowNextIncrement();
         this.memory.setProgramCounter((short)0xc3f5);
         this.flags.setOverFlow(false);
         this.input.setAddress((short)0x1928);
 
-        this.is.bvs(input);
+        this.is.bvs(input.getAddress());
 
         Assertions.assertEquals((short)0xc3f5,this.memory.getProgramCounter());
 
@@ -463,10 +454,9 @@ class InstructionSetTests{
         this.flags.setOverFlow(true);
         this.input.setAddress((short)0x1928);
 
-        this.is.bvs(input);
+        this.is.bvs(input.getAddress());
 
         Assertions.assertEquals((short)0x1928,this.memory.getProgramCounter());
-        Assertions.assertTrue(this.control.getSkipNextIncrement());
 
     }
 
@@ -558,7 +548,7 @@ class InstructionSetTests{
 
         input.setValue((byte)0x12);
 
-        this.is.cmp(input);
+        this.is.cmp(input.getValue());
 
         Assertions.assertTrue(this.flags.getZero());
         Assertions.assertFalse(this.flags.getNegative());
@@ -566,7 +556,7 @@ class InstructionSetTests{
 
         input.setValue((byte)0x10);
 
-        this.is.cmp(input);
+        this.is.cmp(input.getValue());
 
         Assertions.assertFalse(this.flags.getZero());
         Assertions.assertFalse(this.flags.getNegative());
@@ -574,7 +564,7 @@ class InstructionSetTests{
 
         input.setValue((byte)0x20);
 
-        this.is.cmp(input);
+        this.is.cmp(input.getValue());
 
         Assertions.assertFalse(this.flags.getZero());
         Assertions.assertTrue(this.flags.getNegative());
@@ -585,7 +575,7 @@ class InstructionSetTests{
 
         input.setValue((byte)0xf0);
 
-        this.is.cmp(input);
+        this.is.cmp(input.getValue());
 
         Assertions.assertFalse(this.flags.getZero());
         Assertions.assertTrue(this.flags.getNegative());
@@ -593,7 +583,7 @@ class InstructionSetTests{
 
         input.setValue((byte)0x90);
 
-        this.is.cmp(input);
+        this.is.cmp(input.getValue());
 
         Assertions.assertFalse(this.flags.getZero());
         Assertions.assertFalse(this.flags.getNegative());
@@ -610,7 +600,7 @@ class InstructionSetTests{
 
         input.setValue((byte)0x12);
 
-        this.is.cpx(input);
+        this.is.cpx(input.getValue());
 
         Assertions.assertTrue(this.flags.getZero());
         Assertions.assertFalse(this.flags.getNegative());
@@ -618,7 +608,7 @@ class InstructionSetTests{
 
         input.setValue((byte)0x10);
 
-        this.is.cpx(input);
+        this.is.cpx(input.getValue());
 
         Assertions.assertFalse(this.flags.getZero());
         Assertions.assertFalse(this.flags.getNegative());
@@ -626,7 +616,7 @@ class InstructionSetTests{
 
         input.setValue((byte)0x20);
 
-        this.is.cpx(input);
+        this.is.cpx(input.getValue());
 
         Assertions.assertFalse(this.flags.getZero());
         Assertions.assertTrue(this.flags.getNegative());
@@ -637,7 +627,7 @@ class InstructionSetTests{
 
         input.setValue((byte)0xf0);
 
-        this.is.cpx(input);
+        this.is.cpx(input.getValue());
 
         Assertions.assertFalse(this.flags.getZero());
         Assertions.assertTrue(this.flags.getNegative());
@@ -645,7 +635,7 @@ class InstructionSetTests{
 
         input.setValue((byte)0x90);
 
-        this.is.cpx(input);
+        this.is.cpx(input.getValue());
 
         Assertions.assertFalse(this.flags.getZero());
         Assertions.assertFalse(this.flags.getNegative());
@@ -662,7 +652,7 @@ class InstructionSetTests{
 
         input.setValue((byte)0x12);
 
-        this.is.cpy(input);
+        this.is.cpy(input.getValue());
 
         Assertions.assertTrue(this.flags.getZero());
         Assertions.assertFalse(this.flags.getNegative());
@@ -670,7 +660,7 @@ class InstructionSetTests{
 
         input.setValue((byte)0x10);
 
-        this.is.cpy(input);
+        this.is.cpy(input.getValue());
 
         Assertions.assertFalse(this.flags.getZero());
         Assertions.assertFalse(this.flags.getNegative());
@@ -678,7 +668,7 @@ class InstructionSetTests{
 
         input.setValue((byte)0x20);
 
-        this.is.cpy(input);
+        this.is.cpy(input.getValue());
 
         Assertions.assertFalse(this.flags.getZero());
         Assertions.assertTrue(this.flags.getNegative());
@@ -689,7 +679,7 @@ class InstructionSetTests{
 
         input.setValue((byte)0xf0);
 
-        this.is.cpy(input);
+        this.is.cpy(input.getValue());
 
         Assertions.assertFalse(this.flags.getZero());
         Assertions.assertTrue(this.flags.getNegative());
@@ -697,7 +687,7 @@ class InstructionSetTests{
 
         input.setValue((byte)0x90);
 
-        this.is.cpy(input);
+        this.is.cpy(input.getValue());
 
         Assertions.assertFalse(this.flags.getZero());
         Assertions.assertFalse(this.flags.getNegative());
@@ -713,7 +703,7 @@ class InstructionSetTests{
         AddressingModeReturn input = new AddressingModeReturn((byte)0x13,address);
         this.memory.setByteAtAddress(address,(byte)0x13);
 
-        this.is.dec(input);
+        this.is.dec(input.getValue(), input.getAddress());
 
         Assertions.assertEquals((byte)0x12,this.memory.getByteAtAddress(address));
         Assertions.assertFalse(this.flags.getNegative());
@@ -721,7 +711,7 @@ class InstructionSetTests{
 
         this.memory.setByteAtAddress(address,(byte)0x01);
         input.setValue((byte)0x01);
-        this.is.dec(input);
+        this.is.dec(input.getValue(), input.getAddress());
 
         Assertions.assertEquals((byte)0x00,this.memory.getByteAtAddress(address));
         Assertions.assertFalse(this.flags.getNegative());
@@ -729,7 +719,7 @@ class InstructionSetTests{
 
 
         input.setValue((byte)0x00);
-        this.is.dec(input);
+        this.is.dec(input.getValue(), input.getAddress());
 
         Assertions.assertEquals((byte)0xff,this.memory.getByteAtAddress(address));
         Assertions.assertTrue(this.flags.getNegative());
@@ -791,7 +781,7 @@ class InstructionSetTests{
         input.setValue((byte)0b00000000);
         this.memory.setRegisterA((byte)0b01010101);
 
-        this.is.eor(input);
+        this.is.eor(input.getValue());
 
         Assertions.assertEquals((byte)0b01010101,this.memory.getRegisterA());
         Assertions.assertFalse(this.flags.getNegative());
@@ -800,7 +790,7 @@ class InstructionSetTests{
         input.setValue((byte)0b10101010);
         this.memory.setRegisterA((byte)0b01010101);
 
-        this.is.eor(input);
+        this.is.eor(input.getValue());
 
         Assertions.assertEquals((byte)0b11111111,this.memory.getRegisterA());
         Assertions.assertTrue(this.flags.getNegative());
@@ -809,7 +799,7 @@ class InstructionSetTests{
         input.setValue((byte)0b11111111);
         this.memory.setRegisterA((byte)0b11111111);
 
-        this.is.eor(input);
+        this.is.eor(input.getValue());
 
         Assertions.assertEquals((byte)0b00000000,this.memory.getRegisterA());
         Assertions.assertFalse(this.flags.getNegative());
@@ -818,7 +808,7 @@ class InstructionSetTests{
         input.setValue((byte)0b01000001);
         this.memory.setRegisterA((byte)0b01000011);
 
-        this.is.eor(input);
+        this.is.eor(input.getValue());
 
         Assertions.assertEquals((byte)0b00000010,this.memory.getRegisterA());
         Assertions.assertFalse(this.flags.getNegative());
@@ -836,7 +826,7 @@ class InstructionSetTests{
         AddressingModeReturn input = new AddressingModeReturn((byte)0x13,address);
         this.memory.setByteAtAddress(address,(byte)0x13);
 
-        this.is.inc(input);
+        this.is.inc(input.getValue(), input.getAddress());
 
         Assertions.assertEquals((byte)0x14,this.memory.getByteAtAddress(address));
         Assertions.assertFalse(this.flags.getNegative());
@@ -844,7 +834,7 @@ class InstructionSetTests{
 
         this.memory.setByteAtAddress(address,(byte)0xff);
         input.setValue((byte)0xff);
-        this.is.inc(input);
+        this.is.inc(input.getValue(), input.getAddress());
 
         Assertions.assertEquals((byte)0x00,this.memory.getByteAtAddress(address));
         Assertions.assertFalse(this.flags.getNegative());
@@ -852,7 +842,7 @@ class InstructionSetTests{
 
 
         input.setValue((byte)0x7f);
-        this.is.inc(input);
+        this.is.inc(input.getValue(), input.getAddress());
 
         Assertions.assertEquals((byte)0x80,this.memory.getByteAtAddress(address));
         Assertions.assertTrue(this.flags.getNegative());
@@ -915,40 +905,37 @@ class InstructionSetTests{
     @Test
     void jmpTest(){
 
-        this.control.allowNextIncrement();
         AddressingModeReturn input = new AddressingModeReturn();
         input.setAddress((short)0x1234);
 
         this.memory.setProgramCounter((short)0x9fa3);
 
-        this.is.jmp(input);
+        this.is.jmp(input.getAddress());
 
         Assertions.assertEquals((short)0x1234,this.memory.getProgramCounter());
-        Assertions.assertTrue(this.control.getSkipNextIncrement());
 
     }
 
     @Test
     void jsrTest(){
-        this.control.allowNextIncrement();
         this.flags.reset();
         AddressingModeReturn input = new AddressingModeReturn();
         input.setAddress((short)0x1234);
-        this.memory.setProgramCounter((short)0xabcd);
+        // the program counter points at the byte after the jsr instruction
+        this.memory.setProgramCounter((short)0xabce);
 
         this.stack.setStackPointer((byte)0xff);
 
         this.flags.setZero(true);
         this.flags.setNegative(true);
 
-        this.is.jsr(input);
+        this.is.jsr(input.getAddress());
 
         Assertions.assertEquals((byte)0xfc,this.stack.getStackPointer());
         Assertions.assertEquals((byte)0xab, this.memory.getByteAtAddress((short)0x01ff));
         Assertions.assertEquals((byte)0xcd, this.memory.getByteAtAddress((short)0x01fe));
         Assertions.assertEquals((byte)0b10100110, this.memory.getByteAtAddress((short)0x01fd));
         Assertions.assertEquals((short)0x1234,this.memory.getProgramCounter());
-        Assertions.assertTrue(this.control.getSkipNextIncrement());
 
     }
 
@@ -957,21 +944,21 @@ class InstructionSetTests{
         AddressingModeReturn input = new AddressingModeReturn((byte)0x69,(short)0x1234);
         this.memory.setRegisterA((byte)0xf);
 
-        this.is.lda(input);
+        this.is.lda(input.getValue());
 
         Assertions.assertEquals((byte)0x69,this.memory.getRegisterA());
         Assertions.assertFalse(this.flags.getZero());
         Assertions.assertFalse(this.flags.getNegative());
 
         input.setValue((byte)0x81);
-        this.is.lda(input);
+        this.is.lda(input.getValue());
 
         Assertions.assertEquals((byte)0x81,this.memory.getRegisterA());
         Assertions.assertFalse(this.flags.getZero());
         Assertions.assertTrue(this.flags.getNegative());
 
         input.setValue((byte)0x0);
-        this.is.lda(input);
+        this.is.lda(input.getValue());
 
         Assertions.assertEquals((byte)0x0,this.memory.getRegisterA());
         Assertions.assertTrue(this.flags.getZero());
@@ -983,21 +970,21 @@ class InstructionSetTests{
         AddressingModeReturn input = new AddressingModeReturn((byte)0x69,(short)0x1234);
         this.memory.setRegisterX((byte)0xf);
 
-        this.is.ldx(input);
+        this.is.ldx(input.getValue());
 
         Assertions.assertEquals((byte)0x69,this.memory.getRegisterX());
         Assertions.assertFalse(this.flags.getZero());
         Assertions.assertFalse(this.flags.getNegative());
 
         input.setValue((byte)0x81);
-        this.is.ldx(input);
+        this.is.ldx(input.getValue());
 
         Assertions.assertEquals((byte)0x81,this.memory.getRegisterX());
         Assertions.assertFalse(this.flags.getZero());
         Assertions.assertTrue(this.flags.getNegative());
 
         input.setValue((byte)0x0);
-        this.is.ldx(input);
+        this.is.ldx(input.getValue());
 
         Assertions.assertEquals((byte)0x0,this.memory.getRegisterX());
         Assertions.assertTrue(this.flags.getZero());
@@ -1009,21 +996,21 @@ class InstructionSetTests{
         AddressingModeReturn input = new AddressingModeReturn((byte)0x69,(short)0x1234);
         this.memory.setRegisterY((byte)0xf);
 
-        this.is.ldy(input);
+        this.is.ldy(input.getValue());
 
         Assertions.assertEquals((byte)0x69,this.memory.getRegisterY());
         Assertions.assertFalse(this.flags.getZero());
         Assertions.assertFalse(this.flags.getNegative());
 
         input.setValue((byte)0x81);
-        this.is.ldy(input);
+        this.is.ldy(input.getValue());
 
         Assertions.assertEquals((byte)0x81,this.memory.getRegisterY());
         Assertions.assertFalse(this.flags.getZero());
         Assertions.assertTrue(this.flags.getNegative());
 
         input.setValue((byte)0x0);
-        this.is.ldy(input);
+        this.is.ldy(input.getValue());
 
         Assertions.assertEquals((byte)0x0,this.memory.getRegisterY());
         Assertions.assertTrue(this.flags.getZero());
@@ -1074,7 +1061,7 @@ class InstructionSetTests{
 
         this.memory.setByteAtAddress(address,(byte)0b00000000);
 
-        this.is.lsr(input);
+        this.is.lsr(input.getValue(), input.getAddress());
 
         Assertions.assertEquals((byte)0b00000000,this.memory.getByteAtAddress(address));
         Assertions.assertTrue(this.flags.getZero());
@@ -1083,7 +1070,7 @@ class InstructionSetTests{
 
         this.memory.setByteAtAddress(address,(byte)0b00000001);
         input.setValue((byte)0b00000001);
-        this.is.lsr(input);
+        this.is.lsr(input.getValue(), input.getAddress());
 
         Assertions.assertEquals((byte)0b00000000,this.memory.getByteAtAddress(address));
         Assertions.assertTrue(this.flags.getZero());
@@ -1092,7 +1079,7 @@ class InstructionSetTests{
 
         this.memory.setByteAtAddress(address,(byte)0b10010100);
         input.setValue((byte)0b10010100);
-        this.is.lsr(input);
+        this.is.lsr(input.getValue(), input.getAddress());
 
         Assertions.assertEquals((byte)0b01001010,this.memory.getByteAtAddress(address));
         Assertions.assertFalse(this.flags.getZero());
@@ -1107,7 +1094,7 @@ class InstructionSetTests{
         AddressingModeReturn input = new AddressingModeReturn((byte)0b00000000,(short)0x0);
         this.memory.setRegisterA((byte)0b00000000);
 
-        this.is.ora(input);
+        this.is.ora(input.getValue());
 
         Assertions.assertEquals((byte)0b00000000,this.memory.getRegisterA());
         Assertions.assertTrue(this.flags.getZero());
@@ -1115,7 +1102,7 @@ class InstructionSetTests{
 
         this.memory.setRegisterA((byte)0b01010101);
         input.setValue((byte)0b10101010);
-        this.is.ora(input);
+        this.is.ora(input.getValue());
 
         Assertions.assertEquals((byte)0b11111111,this.memory.getRegisterA());
         Assertions.assertFalse(this.flags.getZero());
@@ -1123,7 +1110,7 @@ class InstructionSetTests{
 
         this.memory.setRegisterA((byte)0b00100001);
         input.setValue((byte)0b00100010);
-        this.is.ora(input);
+        this.is.ora(input.getValue());
 
         Assertions.assertEquals((byte)0b00100011,this.memory.getRegisterA());
         Assertions.assertFalse(this.flags.getZero());
@@ -1266,7 +1253,7 @@ class InstructionSetTests{
 
         this.memory.setByteAtAddress(address,(byte)0b00000001);
 
-        this.is.rol(input);
+        this.is.rol(input.getValue(), input.getAddress());
 
         Assertions.assertEquals((byte)0b00000010, this.memory.getByteAtAddress(address));
         Assertions.assertFalse(this.flags.getCarry());
@@ -1276,7 +1263,7 @@ class InstructionSetTests{
         this.memory.setByteAtAddress(address,(byte)0b10000000);
         input.setValue((byte)0b10000000);
 
-        this.is.rol(input);
+        this.is.rol(input.getValue(), input.getAddress());
 
         Assertions.assertEquals((byte)0b00000000, this.memory.getByteAtAddress(address));
         Assertions.assertTrue(this.flags.getCarry());
@@ -1284,7 +1271,7 @@ class InstructionSetTests{
         Assertions.assertFalse(this.flags.getNegative());
 
         input.setValue((byte)0b00000000);
-        this.is.rol(input);
+        this.is.rol(input.getValue(), input.getAddress());
 
         Assertions.assertEquals((byte)0b00000001, this.memory.getByteAtAddress(address));
         Assertions.assertFalse(this.flags.getCarry());
@@ -1294,7 +1281,7 @@ class InstructionSetTests{
         this.memory.setByteAtAddress(address,(byte)0b11000000);
         input.setValue((byte)0b11000000);
 
-        this.is.rol(input);
+        this.is.rol(input.getValue(), input.getAddress());
 
         Assertions.assertEquals((byte)0b10000000, this.memory.getByteAtAddress(address));
         Assertions.assertTrue(this.flags.getCarry());
@@ -1350,7 +1337,7 @@ class InstructionSetTests{
 
         this.memory.setByteAtAddress(address,(byte)0b00000010);
 
-        this.is.ror(input);
+        this.is.ror(input.getValue(), input.getAddress());
 
         Assertions.assertEquals((byte)0b00000001, this.memory.getByteAtAddress(address));
         Assertions.assertFalse(this.flags.getCarry());
@@ -1360,7 +1347,7 @@ class InstructionSetTests{
         this.memory.setByteAtAddress(address,(byte)0b00000001);
         input.setValue((byte)0b00000001);
 
-        this.is.ror(input);
+        this.is.ror(input.getValue(), input.getAddress());
 
         Assertions.assertEquals((byte)0b00000000, this.memory.getByteAtAddress(address));
         Assertions.assertTrue(this.flags.getCarry());
@@ -1368,7 +1355,7 @@ class InstructionSetTests{
         Assertions.assertFalse(this.flags.getNegative());
 
         input.setValue((byte)0b00000000);
-        this.is.ror(input);
+        this.is.ror(input.getValue(), input.getAddress());
 
         Assertions.assertEquals((byte)0b10000000, this.memory.getByteAtAddress(address));
         Assertions.assertFalse(this.flags.getCarry());
@@ -1378,7 +1365,7 @@ class InstructionSetTests{
         this.memory.setByteAtAddress(address,(byte)0b11000001);
         input.setValue((byte)0b11000001);
 
-        this.is.ror(input);
+        this.is.ror(input.getValue(), input.getAddress());
 
         Assertions.assertEquals((byte)0b01100000, this.memory.getByteAtAddress(address));
         Assertions.assertTrue(this.flags.getCarry());
@@ -1399,7 +1386,7 @@ class InstructionSetTests{
 
         this.is.rti();
 
-        Assertions.assertEquals((short)0x1234, this.memory.getProgramCounter());
+        Assertions.assertEquals((short)0x1235, this.memory.getProgramCounter());
         Assertions.assertEquals((byte)0b01101110, this.flags.getWholeRegister());
         Assertions.assertEquals((byte)0xff, this.stack.getStackPointer());
 
@@ -1416,7 +1403,7 @@ class InstructionSetTests{
 
         this.is.rts();
 
-        Assertions.assertEquals((short)0x46ff, this.memory.getProgramCounter());
+        Assertions.assertEquals((short)0x4700, this.memory.getProgramCounter());
         Assertions.assertEquals((byte)0xfe, this.stack.getStackPointer());
 
     }
@@ -1430,7 +1417,7 @@ class InstructionSetTests{
         this.flags.setCarry(true);
         this.input.set((byte)7,(short)0x0);
 
-        this.is.sbc(input);
+        this.is.sbc(input.getValue());
 
         Assertions.assertEquals((byte)2,this.memory.getRegisterA());
         Assertions.assertFalse(this.flags.getNegative());
@@ -1443,7 +1430,7 @@ class InstructionSetTests{
         this.flags.setDecimalMode(false);
         this.flags.setCarry(true);
 
-        this.is.sbc(input);
+        this.is.sbc(input.getValue());
 
         Assertions.assertEquals((byte)-2,this.memory.getRegisterA());
         Assertions.assertTrue(this.flags.getNegative());
@@ -1456,7 +1443,7 @@ class InstructionSetTests{
         this.flags.setDecimalMode(false);
         this.flags.setCarry(true);
 
-        this.is.sbc(input);
+        this.is.sbc(input.getValue());
 
         Assertions.assertEquals((byte)0,this.memory.getRegisterA());
         Assertions.assertFalse(this.flags.getNegative());
@@ -1470,7 +1457,7 @@ class InstructionSetTests{
         this.flags.setCarry(true);
         this.input.setValue((byte)1);
 
-        this.is.sbc(input);
+        this.is.sbc(input.getValue());
 
         Assertions.assertEquals((byte)252,this.memory.getRegisterA());
         Assertions.assertTrue(this.flags.getNegative());
@@ -1524,7 +1511,7 @@ class InstructionSetTests{
         this.memory.setRegisterA((byte)0x69);
         this.memory.setByteAtAddress((short)0x3333,(byte)0x0);
 
-        this.is.sta(input);
+        this.is.sta(input.getAddress());
 
         Assertions.assertEquals((byte)0x69,this.memory.getByteAtAddress((short)0x3333));
     }
@@ -1536,7 +1523,7 @@ class InstructionSetTests{
         this.memory.setRegisterX((byte)0x69);
         this.memory.setByteAtAddress((short)0x3334,(byte)0x0);
 
-        this.is.stx(input);
+        this.is.stx(input.getAddress());
 
         Assertions.assertEquals((byte)0x69,this.memory.getByteAtAddress((short)0x3334));
     }
@@ -1548,7 +1535,7 @@ class InstructionSetTests{
         this.memory.setRegisterY((byte)0x69);
         this.memory.setByteAtAddress((short)0x3335,(byte)0x0);
 
-        this.is.sty(input);
+        this.is.sty(input.getAddress());
 
         Assertions.assertEquals((byte)0x69,this.memory.getByteAtAddress((short)0x3335));
     }
@@ -1736,4 +1723,24 @@ class InstructionSetTests{
         Assertions.assertFalse(this.flags.getNegative());
 
     }
+
+    @Test
+    void branchCycleTest(){
+        Registers registers = this.memory.getRegisters();
+
+        // not taken
+        this.memory.setProgramCounter((short) 0x1234);
+        this.flags.setZero(true);
+        this.is.bne(0x1240);
+        Assertions.assertEquals(0, registers.cycles);
+
+        // taken, same page
+        this.flags.setZero(false);
+        this.is.bne(0x1240);
+        Assertions.assertEquals(1, registers.cycles);
+
+        // taken, other page
+        this.is.bne(0x1310);
+        Assertions.assertEquals(3, registers.cycles);
+    }
 }
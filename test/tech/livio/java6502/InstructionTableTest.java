@@ -0,0 +1,158 @@
+package tech.livio.java6502;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+import java.util.Random;
+
+class InstructionTableTest {
+
+    @Test
+    void tableSizeTest(){
+        Assertions.assertEquals(256, InstructionTable.NMOS_6502_DECODED.length);
+
+        for(DecodedInstruction instruction : InstructionTable.NMOS_6502_DECODED){
+            Assertions.assertNotNull(instruction);
+        }
+    }
+
+    @Test
+    void everyOpCodeHasAnEntryTest(){
+
+        boolean[] known = new boolean[256];
+
+        for(Map<AddressingModes, Byte> modes : OpToHex.reference.values()){
+            for(Byte hex : modes.values()){
+                known[hex & 0xff] = true;
+            }
+        }
+
+        for(int i = 0; i < 256; i++){
+            // 0xea is the nop itself
+            if(!known[i] || i == 0xea) continue;
+            Assertions.assertNotSame(InstructionTable.DECODED_NOP, InstructionTable.NMOS_6502_DECODED[i],
+                    "op-code " + i);
+        }
+    }
+
+    @Test
+    void unknownOpCodesAreNopTest(){
+        Assertions.assertSame(InstructionTable.DECODED_NOP, InstructionTable.NMOS_6502_DECODED[0xea]);
+        Assertions.assertSame(InstructionTable.DECODED_NOP, InstructionTable.NMOS_6502_DECODED[0x02]);
+        Assertions.assertSame(InstructionTable.DECODED_NOP, InstructionTable.NMOS_6502_DECODED[0xff]);
+
+        // ext is not part of the reference, but is not a nop either.
+        Assertions.assertNotSame(InstructionTable.DECODED_NOP, InstructionTable.NMOS_6502_DECODED[0x80]);
+
+        // the switch runs them the same as the nop
+        for(long seed = 0; seed < 4; seed++){
+            Assertions.assertArrayEquals(runOpCode(0xea, seed, false), runOpCode(0x02, seed, false));
+            Assertions.assertArrayEquals(runOpCode(0xea, seed, false), runOpCode(0xff, seed, false));
+        }
+    }
+
+    @Test
+    void runInstructionTest(){
+        Sim6502 sim = new Sim6502();
+
+        // lda #$42, sta $0300, ext
+        sim.load((short) 0xfffc, "4c 00 02");
+        sim.load((short) 0x0200, "a9 42 8d 00 03 80");
+
+        sim.run();
+        sim.waitForProgramEnd();
+
+        Assertions.assertEquals((byte) 0x42, sim.getByteAtAddress((short) 0x0300));
+        Assertions.assertEquals((short) 0x0205, sim.getProgramCounter());
+    }
+
+    @Test
+    void cyclesTest(){
+        Assertions.assertEquals(256, InstructionTable.CYCLES.length);
+
+        for(int cycles : InstructionTable.CYCLES){
+            Assertions.assertTrue(cycles >= 2 && cycles <= 7);
+        }
+
+        // brk, jsr, lda #, lda (zp),y, sta abs,x, inc abs,x
+        Assertions.assertEquals(7, InstructionTable.CYCLES[0x00]);
+        Assertions.assertEquals(6, InstructionTable.CYCLES[0x20]);
+        Assertions.assertEquals(2, InstructionTable.CYCLES[0xa9]);
+        Assertions.assertEquals(5, InstructionTable.CYCLES[0xb1]);
+        Assertions.assertEquals(5, InstructionTable.CYCLES[0x9d]);
+        Assertions.assertEquals(7, InstructionTable.CYCLES[0xfe]);
+    }
+
+    /**
+     * Runs one op-code on random memory and registers.
+     * @param opCode op-code to run.
+     * @param seed seed of the random memory and registers.
+     * @param decoded true to read the operand first and run the entry of the predecoded table, like a block of the
+     *                block cache does. False to run the switch.
+     * @return memory, followed by a, x, y, sp, p and pc.
+     */
+    private static int[] runOpCode(int opCode, long seed, boolean decoded){
+        Random random = new Random(seed);
+        Control control = new Control();
+        Memory memory = new Memory();
+        Stack stack = new Stack(memory, control);
+        Flags flags = new Flags();
+        InstructionSet is = new InstructionSet(memory, stack, flags, control);
+        AddressingMode am = new AddressingMode(memory);
+        control.setDoOnExt(e -> {});
+        control.setRun(true);
+
+        byte[] image = new byte[0x10000];
+        random.nextBytes(image);
+        memory.restoreSnapshot(image);
+        Registers r = memory.getRegisters();
+        r.a = random.nextInt(256);
+        r.x = random.nextInt(256);
+        r.y = random.nextInt(256);
+        r.sp = random.nextInt(256);
+        flags.setWholeRegister((byte) random.nextInt(256));
+        // the op-code has just been fetched
+        r.pc = 0x1000 + random.nextInt(0xd000);
+
+        if(decoded){
+            AddressingModes mode = InstructionTable.MODES[opCode];
+            int operandAddress = r.pc;
+            int operand = switch (InstructionTable.operandLength(mode)) {
+                case 0 -> 0;
+                // same as the block cache: the branch target for relative
+                case 1 -> mode == AddressingModes.RELATIVE
+                        ? (operandAddress + (byte) memory.read(operandAddress)) & 0xffff
+                        : memory.read(operandAddress);
+                default -> memory.read(operandAddress) | memory.read(operandAddress + 1) << 8;
+            };
+            r.pc = (operandAddress + InstructionTable.operandLength(mode)) & 0xffff;
+            InstructionTable.NMOS_6502_DECODED[opCode].execute(is, am, operand);
+        } else {
+            InstructionTable.execute(opCode, is, am);
+        }
+
+        byte[] after = memory.snapshot();
+        int[] result = new int[after.length + 6];
+        for(int i = 0; i < after.length; i++){
+            result[i] = after[i];
+        }
+        result[after.length] = r.a;
+        result[after.length + 1] = r.x;
+        result[after.length + 2] = r.y;
+        result[after.length + 3] = r.sp;
+        result[after.length + 4] = flags.getWholeRegister();
+        result[after.length + 5] = r.pc;
+        return result;
+    }
+
+    @Test
+    void switchSameAsDecodedTest(){
+        for(int opCode = 0; opCode < 256; opCode++){
+            for(long seed = 0; seed < 4; seed++){
+                Assertions.assertArrayEquals(runOpCode(opCode, seed, true), runOpCode(opCode, seed, false),
+                        "op-code " + opCode + " seed " + seed);
+            }
+        }
+    }
+}
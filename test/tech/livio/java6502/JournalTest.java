@@ -0,0 +1,145 @@
+package tech.livio.java6502;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+class JournalTest {
+
+    private static final int INSTRUCTIONS = 3000;
+
+    // 0200 ldx #$ff
+    // 0202 txs
+    // 0203 lda #$55       its operand gets changed below
+    // 0205 ldy #0
+    // 0207 sta $0400,y    fill loop
+    // 020a iny
+    // 020b bne $0207
+    // 020d jsr $0230
+    // 0210 inc $0204
+    // 0213 ldx #$10
+    // 0215 dex            delay loop
+    // 0216 bne $0215
+    // 0218 jmp $0203
+    // 0230             TestPrograms.SUBROUTINE
+    private static final String PROGRAM = "a2 ff 9a a9 55 a0 00 99 00 04 c8 d0 fb 20 30 02 ee 04 02 a2 10 ca d0 fe "
+            + "4c 03 02";
+
+    /**
+     * Saves the state of a simulator.
+     * @param sim simulator.
+     * @return saved state.
+     * @throws IOException never, the stream writes to memory.
+     */
+    private static byte[] save(Sim6502 sim) throws IOException{
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        sim.saveState(out);
+        return out.toByteArray();
+    }
+
+    /**
+     * Steps a simulator one instruction at a time and saves the state before every instruction and at the end.
+     * @return states, the one after i instructions at index i.
+     * @throws IOException never.
+     */
+    private static List<byte[]> reference() throws IOException{
+        Sim6502 sim = TestPrograms.simulator(PROGRAM, false);
+        sim.start();
+        List<byte[]> states = new ArrayList<>();
+        for(int i = 0; i < INSTRUCTIONS; i++){
+            states.add(save(sim));
+            sim.step();
+        }
+        states.add(save(sim));
+        return states;
+    }
+
+    @Test
+    void stepBackTest() throws IOException{
+        List<byte[]> states = reference();
+        Sim6502 sim = TestPrograms.simulator(PROGRAM, true);
+        sim.setJournal(1 << 20);
+
+        Assertions.assertEquals(INSTRUCTIONS, sim.runFor(INSTRUCTIONS));
+        Assertions.assertArrayEquals(states.get(INSTRUCTIONS), save(sim));
+
+        // every instruction back is the same as stepping forward to it
+        for(int i = INSTRUCTIONS - 1; i >= 0; i--){
+            Assertions.assertTrue(sim.stepBack());
+            Assertions.assertArrayEquals(states.get(i), save(sim), "after " + i + " instructions");
+        }
+        Assertions.assertFalse(sim.stepBack());
+
+        // and it runs forward the same again
+        sim.runFor(INSTRUCTIONS);
+        Assertions.assertArrayEquals(states.get(INSTRUCTIONS), save(sim));
+    }
+
+    @Test
+    void runBackTest() throws IOException{
+        List<byte[]> states = reference();
+        Sim6502 sim = TestPrograms.simulator(PROGRAM, true);
+        sim.setJournal(1 << 20);
+        sim.runFor(INSTRUCTIONS);
+
+        // back to just before the operand of the lda was changed the last time
+        int value = sim.getByteAtAddress((short) 0x0204);
+        Assertions.assertTrue(sim.runBackUntilWrite((short) 0x0204));
+        Assertions.assertEquals((short) 0x0210, sim.getProgramCounter());
+        Assertions.assertEquals((byte) (value - 1), sim.getByteAtAddress((short) 0x0204));
+        Assertions.assertArrayEquals(states.get((int) sim.getInstructionCount()), save(sim));
+
+        Assertions.assertTrue(sim.runBackTo((short) 0x0230));
+        Assertions.assertEquals((short) 0x0230, sim.getProgramCounter());
+        Assertions.assertArrayEquals(states.get((int) sim.getInstructionCount()), save(sim));
+
+        // the start of the program is not written to, so the journal runs out
+        Assertions.assertFalse(sim.runBackUntilWrite((short) 0x0200));
+        Assertions.assertEquals(0, sim.getInstructionCount());
+        Assertions.assertArrayEquals(states.get(0), save(sim));
+    }
+
+    @Test
+    void boundedJournalTest() throws IOException{
+        List<byte[]> states = reference();
+        Sim6502 sim = TestPrograms.simulator(PROGRAM, true);
+        sim.setJournal(4000);
+        sim.runFor(INSTRUCTIONS);
+
+        int steps = 0;
+        while(sim.stepBack()){
+            steps++;
+            Assertions.assertArrayEquals(states.get(INSTRUCTIONS - steps), save(sim));
+        }
+        // the journal only reaches back part of the way
+        Assertions.assertTrue(steps > 10);
+        Assertions.assertTrue(steps < INSTRUCTIONS);
+        Assertions.assertArrayEquals(states.get(INSTRUCTIONS - steps), save(sim));
+    }
+
+    @Test
+    void outsideChangeClearsJournalTest(){
+        Sim6502 sim = TestPrograms.simulator(PROGRAM, true);
+        sim.setJournal(1 << 16);
+        sim.runFor(100);
+        Assertions.assertTrue(sim.stepBack());
+
+        sim.load((short) 0x0300, "01");
+        Assertions.assertFalse(sim.stepBack());
+
+        sim.runFor(100);
+        Assertions.assertTrue(sim.stepBack());
+        // a reset changes the registers from outside
+        sim.reset();
+        Assertions.assertFalse(sim.stepBack());
+
+        sim.runFor(100);
+        Assertions.assertTrue(sim.stepBack());
+        sim.setJournal(0);
+        Assertions.assertFalse(sim.stepBack());
+    }
+}
@@ -0,0 +1,76 @@
+package tech.livio.java6502;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Runs all the FlagTests again with lazily evaluated flags.
+ */
+class LazyFlagTests extends FlagTests {
+
+    @Override
+    Flags createFlags(){
+        return new Flags(true);
+    }
+
+    @Test
+    void lazyResultTest(){
+        Flags flags = this.createFlags();
+
+        flags.setZeroNegative((byte) 0x00);
+        Assertions.assertTrue(flags.getZero());
+        Assertions.assertFalse(flags.getNegative());
+
+        flags.setZeroNegative((byte) 0x80);
+        Assertions.assertFalse(flags.getZero());
+        Assertions.assertTrue(flags.getNegative());
+    }
+
+    @Test
+    void lazyKeepsOlderFlagsTest(){
+        Flags flags = this.createFlags();
+
+        // 0xff + 0x01 sets the carry and the zero flag
+        flags.setAdd((byte) 0xff, (byte) 0x01, 0x100);
+        // a load afterwards only overwrites zero and negative
+        flags.setZeroNegative((byte) 0x05);
+
+        Assertions.assertTrue(flags.getCarry());
+        Assertions.assertFalse(flags.getZero());
+        Assertions.assertFalse(flags.getNegative());
+
+        // compare 0x10 with 0x20
+        flags.setCompare((byte) 0x10, (byte) 0x20);
+        flags.setZeroNegative((byte) 0x00);
+
+        Assertions.assertFalse(flags.getCarry());
+        Assertions.assertTrue(flags.getZero());
+    }
+
+    @Test
+    void lazyWholeRegisterTest(){
+        Flags flags = this.createFlags();
+
+        flags.setWholeRegister((byte) 0x00);
+        flags.setSubtract((byte) 0x00, (byte) 0x01, -1);
+
+        // N, C cleared, unused set
+        Assertions.assertEquals((byte) 0b10100000, flags.getWholeRegister());
+
+        flags.setCarry(true);
+        flags.setZeroNegative((byte) 0x00);
+        Assertions.assertEquals((byte) 0b00100011, flags.getWholeRegister());
+    }
+
+    @Test
+    void switchModeTest(){
+        Flags flags = this.createFlags();
+
+        flags.setCompare((byte) 0x20, (byte) 0x20);
+        flags.setLazy(false);
+
+        Assertions.assertFalse(flags.isLazy());
+        Assertions.assertTrue(flags.getZero());
+        Assertions.assertTrue(flags.getCarry());
+    }
+}
@@ -0,0 +1,12 @@
+package tech.livio.java6502;
+
+/**
+ * Runs all the InstructionSetTests again with lazily evaluated flags.
+ */
+class LazyInstructionSetTests extends InstructionSetTests {
+
+    @Override
+    Flags createFlags(){
+        return new Flags(true);
+    }
+}
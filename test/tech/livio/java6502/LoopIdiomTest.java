@@ -0,0 +1,186 @@
+package tech.livio.java6502;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+class LoopIdiomTest {
+
+    private static final int TRIALS = 300;
+
+    // fill and copy loops, with the operand bytes left as 00 to be filled in.
+    private static final String[] LOOPS = {
+            "9d 00 00 e8 d0 fb",
+            "9d 00 00 ca d0 fb",
+            "99 00 00 c8 d0 fb",
+            "99 00 00 88 d0 fb",
+            "91 00 c8 d0 fc",
+            "91 00 88 d0 fc",
+            "bd 00 00 9d 00 00 e8 d0 f8",
+            "bd 00 00 9d 00 00 ca d0 f8",
+            "b9 00 00 99 00 00 c8 d0 f8",
+            "b9 00 00 99 00 00 88 d0 f8",
+            "b1 00 91 00 c8 d0 fa",
+            "b1 00 91 00 88 d0 fa",
+    };
+
+    private Memory memory;
+    private Control control;
+    private BlockCache cache;
+    private ProgramRunner runner;
+
+    /**
+     * Creates a new simulator with the block cache on.
+     * @param idioms true to run fill and copy loops in bulk.
+     */
+    private void init(boolean idioms){
+        LoopSimulator sim = new LoopSimulator(idioms);
+        this.memory = sim.memory;
+        this.control = sim.control;
+        this.cache = sim.cache;
+        this.runner = sim.runner;
+    }
+
+    /**
+     * Creates a run of a loop: random memory, with the operands pointing to random places.
+     * @param loop loop.
+     * @param trial number of the run.
+     * @param random random numbers.
+     * @return the run, from 0x0200 until ext for a million instructions at most. Ends with the memory, followed by
+     *         the registers and counts.
+     */
+    private static LoopSimulator.Trial trial(String loop, int trial, Random random){
+        byte[] image = new byte[0x10000];
+        random.nextBytes(image);
+
+        String[] hex = loop.split(" ");
+        byte[] code = new byte[hex.length];
+        for(int i = 0; i < hex.length; i++){
+            code[i] = (byte) Integer.parseInt(hex[i], 16);
+        }
+        System.arraycopy(code, 0, image, 0x0200, code.length);
+        image[0x0200 + code.length] = (byte) 0x80;
+
+        // operands: two zero page pointers or two absolute addresses. Mostly far apart, sometimes close enough to
+        // overlap, sometimes in the code.
+        int destination = 0x1000 + random.nextInt(0xd000);
+        int source = random.nextInt(4) == 0
+                ? destination + random.nextInt(512) - 256
+                : 0x1000 + random.nextInt(0xd000);
+        if(random.nextInt(20) == 0) destination = 0x0180 + random.nextInt(0x80);
+
+        if(code[0] == (byte) 0x91 || code[0] == (byte) 0xb1){
+            int sourcePointer = 0x10 + 2 * random.nextInt(0x70);
+            int destinationPointer = sourcePointer == 0x20 ? 0x22 : 0x20;
+            image[sourcePointer] = (byte) source;
+            image[sourcePointer + 1] = (byte) (source >>> 8);
+            image[destinationPointer] = (byte) destination;
+            image[destinationPointer + 1] = (byte) (destination >>> 8);
+            if(code[0] == (byte) 0xb1){
+                image[0x0201] = (byte) sourcePointer;
+                image[0x0203] = (byte) destinationPointer;
+            } else {
+                image[0x0201] = (byte) destinationPointer;
+            }
+        } else if(code[0] == (byte) 0x9d || code[0] == (byte) 0x99){
+            image[0x0201] = (byte) destination;
+            image[0x0202] = (byte) (destination >>> 8);
+        } else {
+            image[0x0201] = (byte) source;
+            image[0x0202] = (byte) (source >>> 8);
+            image[0x0204] = (byte) destination;
+            image[0x0205] = (byte) (destination >>> 8);
+        }
+
+        int[] registers = LoopSimulator.randomRegisters(random, trial);
+
+        return sim -> {
+            sim.memory.restoreSnapshot(image);
+            sim.start(registers, 0x0200);
+            // a loop that overwrites its own code might not end.
+            sim.runner.runFor(1_000_000);
+
+            byte[] after = sim.memory.snapshot();
+            long[] state = sim.state();
+            long[] result = new long[after.length + state.length];
+            for(int i = 0; i < after.length; i++){
+                result[i] = after[i];
+            }
+            System.arraycopy(state, 0, result, after.length, state.length);
+            return result;
+        };
+    }
+
+    @Test
+    void sameAsSteppingTest(){
+        LoopSimulator.assertSameAsStepping(LOOPS, TRIALS, LoopIdiomTest::trial);
+    }
+
+    @Test
+    void recogniseTest(){
+        this.init(true);
+
+        // 0200 lda #0
+        // 0202 sta ($10),y
+        // 0204 iny
+        // 0205 bne $0202
+        // 0207 ext
+        this.memory.load((short) 0x0200, "a9 00 91 10 c8 d0 fc 80");
+        this.memory.load((short) 0x0010, "00 30");
+
+        Assertions.assertNull(this.cache.get(0x0200).idiom);
+        Assertions.assertNotNull(this.cache.get(0x0202).idiom);
+
+        this.memory.load((short) 0x3000, "ff ".repeat(256));
+        this.memory.setProgramCounter((short) 0x0200);
+        this.control.setRun(true);
+        Assertions.assertEquals(1 + 256 * 3 + 1, this.runner.runFor(1000));
+
+        for(int i = 0; i < 256; i++){
+            Assertions.assertEquals(0, this.memory.read(0x3000 + i));
+        }
+        // lda #, 256 rounds of sta (zp),y, iny and bne of which 255 take the branch, and ext
+        Assertions.assertEquals(2 + 256 * (6 + 2 + 2) + 255 + 2, this.runner.getCycleCount());
+        Assertions.assertEquals(0x0207, this.memory.getRegisters().pc);
+
+        // not the loop shape: the branch goes somewhere else
+        this.memory.load((short) 0x0400, "91 10 c8 d0 fa");
+        Assertions.assertNull(this.cache.get(0x0400).idiom);
+    }
+
+    @Test
+    void deviceTest(){
+        this.init(true);
+        StringBuilder log = new StringBuilder();
+        this.memory.attachDevice(new Device(){
+            @Override
+            public int read(int address){
+                return 0;
+            }
+
+            @Override
+            public void write(int address, int value){
+                log.append(String.format("%04x ", address));
+            }
+        }, 0x30, 0x30);
+        this.memory.mirror(0x31, 0x31, 0x30);
+
+        // 0200 sta $3100,x  into the mirror of the device
+        // 0203 inx
+        // 0204 bne $0200
+        // 0206 ext
+        this.memory.load((short) 0x0200, "9d 00 31 e8 d0 fb 80");
+        this.memory.getRegisters().pc = 0x0200;
+        this.control.setRun(true);
+        this.runner.runFor(1_000_000);
+
+        // every byte is written to the device in the order of the loop
+        StringBuilder expected = new StringBuilder();
+        for(int i = 0; i < 0x100; i++){
+            expected.append(String.format("%04x ", 0x3000 + i));
+        }
+        Assertions.assertEquals(expected.toString(), log.toString());
+        Assertions.assertEquals(0x0206, this.memory.getRegisters().pc);
+    }
+}
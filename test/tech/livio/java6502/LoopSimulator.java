@@ -0,0 +1,123 @@
+package tech.livio.java6502;
+
+import org.junit.jupiter.api.Assertions;
+
+import java.util.Random;
+
+/**
+ * A simulator running from the block cache, with or without loop idioms, to check that a loop run in bulk ends the
+ * same as stepped through.
+ */
+class LoopSimulator {
+
+    final Memory memory;
+    final Control control;
+    final Flags flags;
+    final BlockCache cache;
+    final ProgramRunner runner;
+
+    /**
+     * One random run of a loop.
+     */
+    interface Trial {
+
+        /**
+         * Sets up the simulator and runs the loop.
+         * @param sim simulator, new for every run.
+         * @return state at the end, the same with and without loop idioms.
+         */
+        long[] run(LoopSimulator sim);
+    }
+
+    /**
+     * Creates the random runs of the loops.
+     */
+    interface TrialFactory {
+
+        /**
+         * Draws everything random for a run. Only the factory uses the random numbers, so both runs are the same.
+         * @param loop loop.
+         * @param trial number of the run of this loop, from 0 on.
+         * @param random random numbers.
+         * @return the run.
+         */
+        Trial create(String loop, int trial, Random random);
+    }
+
+    /**
+     * Creates a new simulator with the block cache on.
+     * @param idioms true to run fill, copy and delay loops in bulk.
+     */
+    LoopSimulator(boolean idioms){
+        this.control = new Control();
+        this.memory = new Memory();
+        Stack stack = new Stack(this.memory, this.control);
+        this.flags = new Flags();
+        InstructionSet is = new InstructionSet(this.memory, stack, this.flags, this.control);
+        AddressingMode am = new AddressingMode(this.memory);
+        this.runner = new ProgramRunner(this.memory, stack, this.flags, is, am, this.control);
+        this.control.setDoOnExt(e -> {});
+
+        this.cache = new BlockCache(this.memory);
+        this.cache.setLoopIdioms(idioms);
+        this.memory.setBlockCache(this.cache);
+        this.runner.setBlockCache(this.cache);
+    }
+
+    /**
+     * Runs every loop a number of times without loop idioms and with them, and checks that both end the same.
+     * @param loops loops.
+     * @param trials runs per loop.
+     * @param factory creates the runs.
+     */
+    static void assertSameAsStepping(String[] loops, int trials, TrialFactory factory){
+        Random random = new Random(6502);
+
+        for(String loop : loops){
+            for(int trial = 0; trial < trials; trial++){
+                Trial run = factory.create(loop, trial, random);
+                long[] stepped = run.run(new LoopSimulator(false));
+                long[] idioms = run.run(new LoopSimulator(true));
+
+                Assertions.assertArrayEquals(stepped, idioms, loop + " trial " + trial);
+            }
+        }
+    }
+
+    /**
+     * Draws random registers. Every tenth trial starts with x and y at 0, so the loops run all 256 rounds.
+     * @param random random numbers.
+     * @param trial number of the run.
+     * @return a, x, y, p.
+     */
+    static int[] randomRegisters(Random random, int trial){
+        int[] registers = {random.nextInt(256), random.nextInt(256), random.nextInt(256), random.nextInt(256)};
+        if(trial % 10 == 0) registers[1] = registers[2] = 0;
+        return registers;
+    }
+
+    /**
+     * Sets the registers and the program counter, and sets the run control flag.
+     * @param registers a, x, y, p.
+     * @param pc program counter.
+     */
+    void start(int[] registers, int pc){
+        Registers r = this.memory.getRegisters();
+        r.a = registers[0];
+        r.x = registers[1];
+        r.y = registers[2];
+        this.flags.setWholeRegister((byte) registers[3]);
+        r.pc = pc;
+        this.control.setRun(true);
+    }
+
+    /**
+     * Get the registers and the counts.
+     * @return a, x, y, p, pc, instructions and cycles.
+     */
+    long[] state(){
+        Registers r = this.memory.getRegisters();
+        return new long[]{r.a, r.x, r.y, this.flags.getWholeRegister(), r.pc,
+                this.runner.getInstructionCount(), this.runner.getCycleCount()};
+    }
+}
@@ -5,6 +5,10 @@ import org.junit.jupiter.api.Test;
 import tech.livio.java6502.Util;
 import tech.livio.java6502.Memory;
 
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
 class MemoryTest{
 
     @Test
@@ -160,5 +164,219 @@ class MemoryTest{
 
     }
 
-}
 
+    @Test
+    void sharedPagesTest(){
+        byte[] bytes = new byte[0x10000];
+        for(int i = 0; i < bytes.length; i++){
+            bytes[i] = (byte) (i * 7);
+        }
+        MemoryImage image = new MemoryImage(bytes);
+
+        Memory first = new Memory();
+        Memory second = new Memory();
+        Assertions.assertEquals(0, first.getOwnPageCount());
+        first.load(image);
+        second.load(image);
+
+        // the image can be changed without changing the memories
+        bytes[0x1234] = 0;
+        Assertions.assertEquals((byte) (0x1234 * 7), first.getByteAtAddress((short) 0x1234));
+
+        // a write copies only the page it goes to
+        first.write(0x1234, 0x55);
+        Assertions.assertEquals(0x55, first.read(0x1234));
+        Assertions.assertEquals((0x1235 * 7) & 0xff, first.read(0x1235));
+        Assertions.assertEquals((0x1234 * 7) & 0xff, second.read(0x1234));
+        Assertions.assertEquals(1, first.getOwnPageCount());
+        Assertions.assertEquals(0, second.getOwnPageCount());
+
+        // a new image of the same bytes sees nothing of the write
+        Memory third = new Memory();
+        third.load(new MemoryImage(image.getPage(0x12)));
+        Assertions.assertEquals((0x1234 * 7) & 0xff, third.read(0x34));
+
+        first.hardReset();
+        Assertions.assertEquals(0, first.read(0x1234));
+        Assertions.assertEquals(0, first.getOwnPageCount());
+    }
+
+    @Test
+    void fillAndCopyAcrossPagesTest(){
+        Memory bulk = new Memory();
+        Memory single = new Memory();
+        for(int i = 0; i < 0x400; i++){
+            bulk.write(0x2000 + i, i * 3);
+            single.write(0x2000 + i, i * 3);
+        }
+
+        bulk.fill(0x30f0, 0x220, 0xaa);
+        for(int i = 0; i < 0x220; i++){
+            single.write(0x30f0 + i, 0xaa);
+        }
+        bulk.copy(0x2010, 0x40f8, 0x301);
+        for(int i = 0; i < 0x301; i++){
+            single.write(0x40f8 + i, single.read(0x2010 + i));
+        }
+        bulk.load((short) 0x50ff, new byte[]{1, 2, 3});
+        single.load((short) 0x50ff, "01 02 03");
+
+        Assertions.assertArrayEquals(single.snapshot(), bulk.snapshot());
+        Assertions.assertEquals(single.getOwnPageCount(), bulk.getOwnPageCount());
+    }
+
+    @Test
+    void deviceAndMirrorTest(){
+        Memory mem = new Memory();
+        int[] registers = new int[0x200];
+        StringBuilder log = new StringBuilder();
+        Device device = new Device(){
+            @Override
+            public int read(int address){
+                log.append(String.format("r%04x ", address));
+                return registers[address - 0xd000];
+            }
+
+            @Override
+            public void write(int address, int value){
+                log.append(String.format("w%04x=%02x ", address, value));
+                registers[address - 0xd000] = value;
+            }
+        };
+        mem.write(0xd005, 0x11);
+        mem.attachDevice(device, 0xd0, 0xd1);
+
+        // the memory under the device is gone
+        Assertions.assertEquals(0, mem.read(0xd005));
+        mem.write(0xd105, 0x22);
+        Assertions.assertEquals(0x22, mem.read(0xd105));
+        Assertions.assertEquals("rd005 wd105=22 rd105 ", log.toString());
+
+        // a mirror of the device passes the address in the device
+        log.setLength(0);
+        mem.mirror(0xd2, 0xd3, 0xd0);
+        mem.write(0xd307, 0x33);
+        Assertions.assertEquals(0x33, mem.read(0xd107));
+        Assertions.assertEquals("wd107=33 rd107 ", log.toString());
+        Assertions.assertEquals(5, mem.getDeviceAccessCount());
+
+        // a mirror of memory
+        mem.mirror(0x40, 0x41, 0x20);
+        mem.write(0x4010, 0x44);
+        mem.write(0x2110, 0x55);
+        Assertions.assertEquals(0x44, mem.read(0x2010));
+        Assertions.assertEquals(0x55, mem.read(0x4110));
+
+        // fill and copy go through the device byte by byte
+        log.setLength(0);
+        mem.fill(0xcffe, 4, 0x66);
+        mem.copy(0xd000, 0x3000, 2);
+        Assertions.assertEquals("wd000=66 wd001=66 rd000 rd001 ", log.toString());
+        Assertions.assertEquals(0x66, mem.read(0xcfff));
+        Assertions.assertEquals(0x66, mem.read(0x3001));
+
+        // the snapshot has zeros for the device, the mirror shows the memory
+        byte[] snapshot = mem.snapshot();
+        Assertions.assertEquals(0, snapshot[0xd107]);
+        Assertions.assertEquals(0x44, snapshot[0x4010]);
+
+        // taking the device away puts zeros back, the mirror of it shows them
+        mem.attachDevice(null, 0xd0, 0xd1);
+        Assertions.assertEquals(0, mem.read(0xd107));
+        mem.write(0xd307, 0x77);
+        Assertions.assertEquals(0x77, mem.read(0xd107));
+
+        // hardReset keeps the mirrors
+        mem.hardReset();
+        mem.write(0x4010, 0x88);
+        Assertions.assertEquals(0x88, mem.read(0x2010));
+    }
+
+    @Test
+    void memoryFileTest() throws IOException{
+        Path path = Files.createTempFile("memory", ".bin");
+        try{
+            Memory mem = new Memory();
+            mem.write(0x1234, 0x56);
+            mem.setFile(new MemoryFile(path));
+
+            // the memory takes the bytes of the new, empty file
+            Assertions.assertEquals(0, mem.read(0x1234));
+            Assertions.assertEquals(0x10000, Files.size(path));
+
+            // every way to write goes through to the file
+            mem.write(0x0010, 0x11);
+            mem.fill(0x20f0, 0x20, 0x22);
+            mem.copy(0x20f0, 0x3000, 0x10);
+            mem.load((short) 0x4000, new byte[]{0x33, 0x44});
+            mem.mirror(0x50, 0x50, 0x40);
+            mem.write(0x5002, 0x55);
+            mem.load(new MemoryImage(mem.snapshot()));
+            mem.write(0x6000, 0x66);
+            mem.restoreSnapshot(mem.snapshot());
+            Assertions.assertEquals(0x55, mem.read(0x4002));
+            Assertions.assertArrayEquals(mem.snapshot(), Files.readAllBytes(path));
+
+            // a new memory on the same file goes on where the old one left off
+            mem.forceFile();
+            Memory next = new Memory();
+            next.setFile(new MemoryFile(path));
+            Assertions.assertArrayEquals(mem.snapshot(), next.snapshot());
+            Assertions.assertEquals(0x66, next.read(0x6000));
+
+            // without the file, writes stay on the heap
+            next.setFile(null);
+            next.write(0x6000, 0x77);
+            Assertions.assertEquals(0x66, Files.readAllBytes(path)[0x6000]);
+            Assertions.assertEquals(0x77, next.read(0x6000));
+
+            mem.hardReset();
+            Assertions.assertArrayEquals(new byte[0x10000], Files.readAllBytes(path));
+        } finally {
+            Files.deleteIfExists(path);
+        }
+    }
+
+    @Test
+    void dirtyPagesTest(){
+        Memory mem = new Memory();
+        mem.write(0x1234, 0x01);
+        byte[][] all = mem.takeDirtyPages(true);
+        Assertions.assertEquals(0x01, all[0x12][0x34]);
+
+        mem.write(0x1234, 0x02);
+        mem.write(0x01ff, 0x03);
+        mem.fill(0x20f0, 0x20, 0x04);
+        mem.load((short) 0x3000, new byte[]{0x05});
+        mem.mirror(0x50, 0x50, 0x40);
+        byte[][] dirty = mem.takeDirtyPages(false);
+
+        // the pages handed over before are not written to
+        Assertions.assertEquals(0x01, all[0x12][0x34]);
+        Assertions.assertEquals(0x02, dirty[0x12][0x34]);
+        // a mirror changes every page, the mirror itself is left out
+        Assertions.assertNull(dirty[0x50]);
+        Assertions.assertNotNull(dirty[0x30]);
+
+        mem.write(0x5001, 0x06);
+        mem.write(0x01fe, 0x07);
+        mem.fill(0x20f0, 0x20, 0x08);
+        dirty = mem.takeDirtyPages(false);
+        int count = 0;
+        for(byte[] page : dirty){
+            if(page != null) count++;
+        }
+        Assertions.assertEquals(4, count);
+        Assertions.assertEquals(0x06, dirty[0x40][0x01]);
+        Assertions.assertEquals(0x07, dirty[0x01][0xfe]);
+        Assertions.assertEquals(0x08, dirty[0x20][0xff]);
+        Assertions.assertEquals(0x08, dirty[0x21][0x0f]);
+
+        // nothing has changed since
+        mem.read(0x1234);
+        dirty = mem.takeDirtyPages(false);
+        for(byte[] page : dirty){
+            Assertions.assertNull(page);
+        }
+    }
+}
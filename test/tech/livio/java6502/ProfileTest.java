@@ -0,0 +1,177 @@
+package tech.livio.java6502;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+
+class ProfileTest {
+
+    private static final int INSTRUCTIONS = 20000;
+
+    @Test
+    void countTest(){
+        Sim6502 sim = TestPrograms.simulator(TestPrograms.FILL, true);
+        sim.startProfile();
+        Assertions.assertEquals(INSTRUCTIONS, sim.runFor(INSTRUCTIONS));
+        Profile profile = sim.stopProfile();
+        Assertions.assertNull(sim.stopProfile());
+
+        // count the same run one instruction at a time
+        Sim6502 reference = TestPrograms.simulator(TestPrograms.FILL, true);
+        reference.start();
+        long[] executions = new long[0x10000];
+        long[] cycles = new long[0x10000];
+        for(int i = 0; i < INSTRUCTIONS; i++){
+            int pc = reference.getProgramCounter() & 0xffff;
+            long before = reference.getCycleCount();
+            reference.step();
+            executions[pc]++;
+            cycles[pc] += reference.getCycleCount() - before;
+        }
+
+        for(int address = 0; address < 0x10000; address++){
+            Assertions.assertEquals(executions[address], profile.getExecutions(address));
+            Assertions.assertEquals(cycles[address], profile.getCycles(address));
+        }
+        Assertions.assertEquals(INSTRUCTIONS, profile.getInstructions());
+        Assertions.assertEquals(reference.getCycleCount(), profile.getTotalCycles());
+        Assertions.assertEquals(1, profile.getExecutions(0x0200));
+        // sta ($10),y takes 6 cycles every time
+        Assertions.assertEquals(6 * profile.getExecutions(0x020e), profile.getCycles(0x020e));
+
+        // without a profile the program runs at full speed again
+        sim.runFor(INSTRUCTIONS);
+        Assertions.assertEquals(INSTRUCTIONS, profile.getInstructions());
+    }
+
+    @Test
+    void listingTest() throws IOException{
+        Sim6502 sim = TestPrograms.simulator(TestPrograms.FILL, true);
+        sim.startProfile();
+        sim.runFor(INSTRUCTIONS);
+        Profile profile = sim.stopProfile();
+        // the routines of TestPrograms.FILL
+        profile.setSymbols(Map.of(0x0200, "main", 0x020d, "fill", 0x0230, "swap"));
+
+        Assertions.assertEquals("main", profile.getRoutine(0x0200));
+        Assertions.assertEquals("fill+1", profile.getRoutine(0x020e));
+        Assertions.assertEquals("-", profile.getRoutine(0x0100));
+
+        // sta ($10),y is the hottest, then the bne back to the start of the loop
+        String[] listing = profile.listing(3).split("\\R");
+        Assertions.assertEquals(5, listing.length);
+        Assertions.assertTrue(listing[2].contains("020e  91 10     sta ($10),y   fill+1"), listing[2]);
+        Assertions.assertTrue(listing[3].contains("0211  d0 fb     bne $020d     fill+4"), listing[3]);
+
+        String[] routines = profile.routines(10).split("\\R");
+        Assertions.assertEquals(5, routines.length);
+        Assertions.assertTrue(routines[2].endsWith("fill"));
+        Assertions.assertTrue(routines[3].endsWith("swap"));
+        Assertions.assertTrue(routines[4].endsWith("main"));
+
+        Path csv = Files.createTempFile("profile", ".csv");
+        try{
+            profile.writeCsv(csv);
+            List<String> lines = Files.readAllLines(csv);
+            Assertions.assertEquals("address,routine,instruction,executions,cycles", lines.get(0));
+            Assertions.assertEquals("0200,main,ldx #$ff,1,2", lines.get(1));
+            Assertions.assertEquals("0237,swap+7,rts,"  + profile.getExecutions(0x0237) + ","
+                    + profile.getCycles(0x0237), lines.get(lines.size() - 1));
+        } finally{
+            Files.deleteIfExists(csv);
+        }
+    }
+
+    // 0200 ldx #$ff
+    // 0202 txs
+    // 0203 jsr $0210
+    // 0210 jsr $0220
+    // 0220 inx            never returns
+    // 0221 jmp $0220
+    private static final String NESTED_PROGRAM = "a2 ff 9a 20 10 02";
+    private static final String OUTER = "20 20 02";
+    private static final String INNER = "e8 4c 20 02";
+
+    @Test
+    void samplingTest(){
+        Sim6502 sim = new Sim6502();
+        sim.setDoOnExt(e -> {});
+        sim.load((short) 0x0200, NESTED_PROGRAM);
+        sim.load((short) 0x0210, OUTER);
+        sim.load((short) 0x0220, INNER);
+        sim.setProgramCounter((short) 0x0200);
+        sim.setBlockCache(true);
+        // into the loop before the first sample
+        sim.runFor(100);
+
+        Assertions.assertNull(sim.stopSampling());
+        Assertions.assertThrows(IllegalArgumentException.class, () -> sim.startSampling(0));
+        sim.startSampling(2000);
+        long end = System.nanoTime() + 200_000_000L;
+        while(System.nanoTime() < end){
+            sim.runFor(100_000);
+        }
+        SampleProfile samples = sim.stopSampling();
+        Assertions.assertNull(sim.stopSampling());
+
+        Assertions.assertTrue(samples.getSampleCount() > 0);
+        Assertions.assertEquals(samples.getSampleCount(), samples.getSamples(0x0220) + samples.getSamples(0x0221));
+        Assertions.assertEquals(2, samples.getAverageDepth());
+        Assertions.assertEquals(2, samples.getMaxDepth());
+        Assertions.assertEquals("-;$0210;$0220 " + samples.getSampleCount() + "\n", samples.collapsedStacks());
+
+        samples.setSymbols(Map.of(0x0200, "main", 0x0210, "outer", 0x0220, "inner"));
+        Assertions.assertEquals("main;outer;inner " + samples.getSampleCount() + "\n", samples.collapsedStacks());
+        Assertions.assertTrue(samples.histogram(1).contains("inner"));
+
+        // sampled no more
+        long count = samples.getSampleCount();
+        sim.runFor(1_000_000);
+        Assertions.assertEquals(count, samples.getSampleCount());
+    }
+
+    @Test
+    void samplesSpreadTest(){
+        // 0200 inx
+        // 0201 iny
+        // 0202 nop
+        // 0203 jmp $0200      4 instructions fit evenly into a quantum
+        Sim6502 sim = new Sim6502();
+        sim.load((short) 0x0200, "e8 c8 ea 4c 00 02");
+        sim.setProgramCounter((short) 0x0200);
+        sim.setBlockCache(true);
+
+        sim.startSampling(2000);
+        long end = System.nanoTime() + 300_000_000L;
+        while(System.nanoTime() < end){
+            sim.runFor(100_000);
+        }
+        SampleProfile samples = sim.stopSampling();
+
+        // every instruction gets about a quarter of the samples
+        long count = samples.getSampleCount();
+        Assertions.assertTrue(count >= 100, "samples: " + count);
+        for(int address = 0x0200; address <= 0x0203; address++){
+            Assertions.assertTrue(samples.getSamples(address) > count / 8,
+                    String.format("%04x: %d of %d samples", address, samples.getSamples(address), count));
+        }
+    }
+
+    @Test
+    void readSymbolsTest() throws IOException{
+        Path file = Files.createTempFile("symbols", ".txt");
+        try{
+            Files.writeString(file, "; routines\nmain = $0200\n\nfill=$20d ; the loop\n");
+            Assertions.assertEquals(Map.of(0x0200, "main", 0x020d, "fill"), Profile.readSymbols(file));
+            Files.writeString(file, "main $0200\n");
+            Assertions.assertThrows(IOException.class, () -> Profile.readSymbols(file));
+        } finally{
+            Files.deleteIfExists(file);
+        }
+    }
+}
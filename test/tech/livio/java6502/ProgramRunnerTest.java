@@ -0,0 +1,356 @@
+package tech.livio.java6502;
+
+import com.sun.management.ThreadMXBean;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Assumptions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.lang.management.ManagementFactory;
+
+class ProgramRunnerTest {
+
+    private static final int STEPS = 1_000_000;
+
+    private Memory memory;
+    private Control control;
+    private ProgramRunner runner;
+
+    @BeforeEach
+    void init(){
+        this.control = new Control();
+        this.memory = new Memory();
+        Stack stack = new Stack(this.memory, this.control);
+        Flags flags = new Flags();
+        InstructionSet is = new InstructionSet(this.memory, stack, flags, this.control);
+        AddressingMode am = new AddressingMode(this.memory);
+        this.runner = new ProgramRunner(this.memory, stack, flags, is, am, this.control);
+
+        // 0200 ldx #0
+        // 0202 inx
+        // 0203 adc #1
+        // 0205 sta $0300,x
+        // 0208 lda ($10),y
+        // 020a sta ($10),y
+        // 020c inc $20
+        // 020e brk         -> rti at 0400
+        // 020f nop         (skipped by brk / rti)
+        // 0210 bne $0202
+        // 0212 jmp $0202
+        this.memory.load((short) 0x0200, "a2 00 e8 69 01 9d 00 03 b1 10 91 10 e6 20 00 ea d0 f1 4c 02 02");
+        this.memory.load((short) 0x0400, "40");
+        this.memory.load((short) 0x0010, "00 05");
+        this.memory.load((short) 0xfffe, "00 04");
+
+        this.memory.setProgramCounter((short) 0x0200);
+        this.control.setRun(true);
+    }
+
+    /**
+     * Step a number of instructions.
+     * @param amount amount of instructions to step.
+     */
+    private void steps(int amount){
+        for(int i = 0; i < amount; i++){
+            this.runner.step();
+        }
+    }
+
+    @Test
+    void stepDoesNotAllocateTest(){
+        ThreadMXBean threadBean = (ThreadMXBean) ManagementFactory.getThreadMXBean();
+        Assumptions.assumeTrue(threadBean.isThreadAllocatedMemorySupported());
+        threadBean.setThreadAllocatedMemoryEnabled(true);
+
+        // warm up, so the measured run is done by compiled code
+        this.steps(STEPS);
+
+        // the bean itself might allocate when asked
+        long overhead = threadBean.getCurrentThreadAllocatedBytes();
+        overhead = threadBean.getCurrentThreadAllocatedBytes() - overhead;
+
+        long before = threadBean.getCurrentThreadAllocatedBytes();
+        this.steps(STEPS);
+        long allocated = threadBean.getCurrentThreadAllocatedBytes() - before - overhead;
+
+        Assertions.assertTrue(this.control.getRun());
+        Assertions.assertEquals(0, allocated, "bytes allocated in " + STEPS + " steps");
+    }
+
+    @Test
+    void programTest(){
+        this.steps(STEPS);
+
+        // the stack has to be balanced by the brk / rti pair
+        Assertions.assertTrue(this.control.getRun());
+        Assertions.assertNotEquals((byte) 0x00, this.memory.getByteAtAddress((short) 0x0300));
+    }
+
+    @Test
+    void runForTest(){
+        Assertions.assertEquals(12345, this.runner.runFor(12345));
+        Assertions.assertEquals(12345, this.runner.getInstructionCount());
+
+        // the same program from the block cache has to stop at the same place, even in the middle of a block.
+        Memory blockMemory = this.memory;
+        Registers stepped = blockMemory.getRegisters();
+        int pc = stepped.pc;
+        int a = stepped.a;
+        int x = stepped.x;
+
+        this.init();
+        BlockCache cache = new BlockCache(this.memory);
+        cache.setSuperinstructions(Superinstructions.ALL);
+        this.memory.setBlockCache(cache);
+        this.runner.setBlockCache(cache);
+
+        Assertions.assertEquals(12345, this.runner.runFor(12345));
+        Registers blocks = this.memory.getRegisters();
+        Assertions.assertEquals(pc, blocks.pc);
+        Assertions.assertEquals(a, blocks.a);
+        Assertions.assertEquals(x, blocks.x);
+    }
+
+    @Test
+    void runForCyclesTest(){
+        // ldx #0 and inx take 2 cycles each, adc #1 takes 2, sta abs,x takes 5
+        Assertions.assertEquals(4, this.runner.runForCycles(4));
+        Assertions.assertEquals(2, this.runner.getInstructionCount());
+
+        // the sta can not be cut in half
+        Assertions.assertEquals(7, this.runner.runForCycles(3));
+        Assertions.assertEquals(4, this.runner.getInstructionCount());
+        Assertions.assertEquals(11, this.runner.getCycleCount());
+    }
+
+    @Test
+    void runForStopsAtExtTest(){
+        this.memory.load((short) 0x0202, "80");
+        this.control.setDoOnExt(e -> {});
+
+        Assertions.assertEquals(2, this.runner.runFor(1000));
+        Assertions.assertFalse(this.control.getRun());
+        Assertions.assertEquals(0, this.runner.runFor(1000));
+    }
+
+    @Test
+    void stopFromOtherThreadTest() throws InterruptedException{
+        this.control.setDoOnManualHalt(e -> {});
+        this.runner.start();
+
+        Thread.sleep(50);
+        this.runner.terminate();
+        this.runner.join(5000);
+
+        Assertions.assertFalse(this.runner.isAlive());
+        Assertions.assertTrue(this.runner.getInstructionCount() > 0);
+    }
+
+    @Test
+    void interruptLatencyTest(){
+        // sei, cli, then nothing but nop up to the end of the program
+        this.memory.load((short) 0x0200, "78 58" + " ea".repeat(3000) + " 80");
+        // the interrupt ends the program
+        this.memory.load((short) 0x0600, "80");
+        this.memory.load((short) 0xfffe, "00 06");
+        this.control.setDoOnExt(e -> {});
+        this.runner.setQuantum(100);
+
+        this.runner.runFor(1);
+        this.control.setInterrupt();
+        this.runner.runFor(1000);
+
+        // the interrupt is disabled when the quantum starts. It is called after the cli, at the end of the quantum.
+        Assertions.assertEquals(0x0600, this.memory.getRegisters().pc);
+        Assertions.assertEquals(1 + 100 + 1, this.runner.getInstructionCount());
+        Assertions.assertFalse(this.control.getInterrupt());
+    }
+
+    @Test
+    void throttledClockTest() throws InterruptedException{
+        // jmp to itself
+        this.memory.load((short) 0x0200, "4c 00 02");
+        this.control.setDoOnManualHalt(e -> {});
+        this.runner.setClockFrequency(200_000);
+
+        this.runner.start();
+        Thread.sleep(500);
+        this.runner.terminate();
+        this.runner.join(5000);
+        Assertions.assertFalse(this.runner.isAlive());
+
+        ClockReport report = this.runner.getClockReport();
+        Assertions.assertEquals(200_000, report.getTargetFrequency());
+        // loose bounds, the test machine might be busy
+        Assertions.assertTrue(report.getAchievedFrequency() > 100_000, report.toString());
+        Assertions.assertTrue(report.getAchievedFrequency() < 220_000, report.toString());
+        if(!Double.isNaN(report.getHostCpuPercent())){
+            Assertions.assertTrue(report.getHostCpuPercent() < 50, report.toString());
+        }
+    }
+
+    @Test
+    void clockReportTest(){
+        // 1'000'000 cycles in 2 seconds, 0.1 seconds CPU time
+        ClockReport report = new ClockReport(1_000_000, 1_000_000, 2_000_000_000L, 100_000_000L);
+
+        Assertions.assertEquals(500_000, report.getAchievedFrequency(), 0.001);
+        Assertions.assertEquals(5, report.getHostCpuPercent(), 0.001);
+        Assertions.assertEquals("target 1.000 MHz, achieved 0.500 MHz (50.0 %), host CPU 5.0 %",
+                report.toString());
+
+        Assertions.assertEquals(0, this.runner.getClockReport().getAchievedFrequency());
+    }
+
+    @Test
+    void idleLoopRunForTest(){
+        // 0200 lda $10
+        // 0202 beq $0200
+        // 0204 ext
+        this.memory.load((short) 0x0200, "a5 10 f0 fd 80");
+        this.memory.load((short) 0x0010, "00");
+        this.runner.setIdleDetection(true);
+
+        Assertions.assertEquals(1_000_001, this.runner.runFor(1_000_001));
+        Assertions.assertTrue(this.runner.getSkippedIterations() > 400_000);
+
+        // the same as running every round of the loop
+        Memory idleMemory = this.memory;
+        ProgramRunner idleRunner = this.runner;
+        this.init();
+        this.memory.load((short) 0x0200, "a5 10 f0 fd 80");
+        this.memory.load((short) 0x0010, "00");
+        this.runner.runFor(1_000_001);
+
+        Assertions.assertEquals(0, this.runner.getSkippedIterations());
+        Assertions.assertEquals(this.memory.getRegisters().pc, idleMemory.getRegisters().pc);
+        Assertions.assertEquals(this.runner.getCycleCount(), idleRunner.getCycleCount());
+    }
+
+    @Test
+    void notIdleLoopTest(){
+        // 0200 inc $10
+        // 0202 jmp $0200
+        this.memory.load((short) 0x0200, "e6 10 4c 00 02");
+        this.runner.setIdleDetection(true);
+
+        this.runner.runFor(100_000);
+
+        Assertions.assertEquals(0, this.runner.getSkippedIterations());
+        Assertions.assertEquals((byte) (50_000 & 0xff), this.memory.getByteAtAddress((short) 0x10));
+    }
+
+    @Test
+    void idleLoopParksTest() throws InterruptedException{
+        // 0200 cli
+        // 0201 jmp $0201
+        this.memory.load((short) 0x0200, "58 4c 01 02");
+        // the interrupt ends the program
+        this.memory.load((short) 0x0600, "80");
+        this.memory.load((short) 0xfffe, "00 06");
+        this.control.setDoOnExt(e -> {});
+        this.runner.setIdleDetection(true);
+
+        this.runner.start();
+        Thread.sleep(300);
+
+        Assertions.assertTrue(this.runner.isAlive());
+        Assertions.assertEquals(Thread.State.WAITING, this.runner.getState());
+        if(!Double.isNaN(this.runner.getClockReport().getHostCpuPercent())){
+            Assertions.assertTrue(this.runner.getClockReport().getHostCpuPercent() < 50);
+        }
+
+        this.runner.irq();
+        this.runner.join(5000);
+
+        Assertions.assertFalse(this.runner.isAlive());
+        Assertions.assertEquals(0x0600, this.memory.getRegisters().pc);
+        Assertions.assertTrue(this.runner.getSkippedIterations() > 0);
+    }
+
+    @Test
+    void idleLoopParksCallingThreadTest() throws InterruptedException{
+        // 0200 cli
+        // 0201 jmp $0201
+        this.memory.load((short) 0x0200, "58 4c 01 02");
+        // the interrupt ends the program
+        this.memory.load((short) 0x0600, "80");
+        this.memory.load((short) 0xfffe, "00 06");
+        this.control.setDoOnExt(e -> {});
+        this.runner.setIdleDetection(true);
+
+        // the program runs on the thread that calls runFor, not on the runner
+        Thread caller = new Thread(() -> this.runner.runFor(Long.MAX_VALUE));
+        caller.start();
+        Thread.sleep(300);
+
+        Assertions.assertEquals(Thread.State.WAITING, caller.getState());
+        this.runner.irq();
+        caller.join(5000);
+
+        Assertions.assertFalse(caller.isAlive());
+        Assertions.assertEquals(0x0600, this.memory.getRegisters().pc);
+        // the rounds skipped while parked are counted at the speed of this call
+        Assertions.assertTrue(this.runner.getSkippedIterations() > 0);
+
+        // a stop wakes it up as well. The ext has stopped the program.
+        this.memory.setProgramCounter((short) 0x0201);
+        this.control.setRun(true);
+        caller = new Thread(() -> this.runner.runForCycles(Long.MAX_VALUE));
+        caller.start();
+        Thread.sleep(300);
+
+        Assertions.assertEquals(Thread.State.WAITING, caller.getState());
+        this.runner.terminate();
+        caller.join(5000);
+
+        Assertions.assertFalse(caller.isAlive());
+    }
+
+    @Test
+    void idleLoopCountsSaturateTest() throws InterruptedException{
+        // 0200 jmp $0200
+        this.memory.load((short) 0x0200, "4c 00 02");
+        this.runner.setIdleDetection(true);
+        // a few rounds before the cycle count runs out. The rounds skipped while parked are many more.
+        this.memory.getRegisters().cycles = Long.MAX_VALUE - 100_000;
+
+        Thread caller = new Thread(() -> this.runner.runFor(Long.MAX_VALUE));
+        caller.start();
+        Thread.sleep(300);
+        this.runner.terminate();
+        caller.join(5000);
+
+        Assertions.assertFalse(caller.isAlive());
+        Assertions.assertTrue(this.runner.getCycleCount() > Long.MAX_VALUE - 100_000);
+        Assertions.assertTrue(this.runner.getInstructionCount() > 0);
+    }
+
+    @Test
+    void devicePollingIsNotIdleTest(){
+        // 0200 lda $d000
+        // 0203 beq $0200
+        // 0205 ext
+        this.memory.load((short) 0x0200, "ad 00 d0 f0 fc 80");
+        int[] reads = new int[1];
+        this.memory.attachDevice(new Device(){
+            @Override
+            public int read(int address){
+                reads[0]++;
+                return reads[0] > 100_000 ? 1 : 0;
+            }
+
+            @Override
+            public void write(int address, int value){
+            }
+        }, 0xd0, 0xd0);
+        this.control.setDoOnExt(e -> {});
+        this.runner.setIdleDetection(true);
+
+        this.runner.runFor(1_000_000);
+
+        Assertions.assertEquals(0, this.runner.getSkippedIterations());
+        Assertions.assertEquals(100_001, reads[0]);
+        Assertions.assertEquals(0x0205, this.memory.getRegisters().pc);
+    }
+}
@@ -5,6 +5,12 @@ import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Disabled;
 import org.junit.jupiter.api.Test;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.util.Arrays;
+
 class Sim6502Test {
 
     private Sim6502 sim;
@@ -163,9 +169,9 @@ class Sim6502Test {
         sim.load(code);
 
         //   NMI vector: 0x0000
-        // start vector: 0x0000
+        // start vector: jmp 0x0000 (a plain 00 00 would run as brk and end the program right away)
         //   brk vector: 0xff00
-        sim.load((short) 0xfffa,"00 00 00 00 00 ff");
+        sim.load((short) 0xfffa,"00 00 4c 00 00 ff");
 
         // add jump before the vectors
         sim.load((short) 0xf000, "4c 00 00");
@@ -275,4 +281,233 @@ class Sim6502Test {
         Assertions.assertEquals((short)0xff00, sim.getProgramCounter());
     }
 
+
+    @Test
+    void cycleCountTest(){
+        sim.hardReset();
+
+        // 0200 ldx #$fe       2
+        // 0202 lda $12f0,x    4 + 1, crosses a page
+        // 0205 sta $12f0,x    5
+        // 0208 inx            2
+        // 0209 bne $0202      2 + 1 taken once, 2 not taken
+        // 020b ext            2
+        sim.load((short) 0xfffc, "4c 00 02");
+        sim.load((short) 0x0200, "a2 fe bd f0 12 9d f0 12 e8 d0 f8 80");
+        sim.setDoOnExt(e -> {});
+
+        // the jmp from the reset vector
+        sim.runFor(1);
+        long start = sim.getCycleCount();
+        Assertions.assertEquals(3, start);
+
+        sim.runFor(100);
+
+        Assertions.assertEquals((short) 0x020b, sim.getProgramCounter());
+        Assertions.assertEquals(2 + (5 + 5 + 2 + 3) + (5 + 5 + 2 + 2) + 2, sim.getCycleCount() - start);
+    }
+
+    @Test
+    void idleLoopWakesOnLoadTest() throws InterruptedException{
+        sim.hardReset();
+
+        // 0200 lda $10
+        // 0202 beq $0200
+        // 0204 ext
+        sim.load((short) 0xfffc, "4c 00 02");
+        sim.load((short) 0x0200, "a5 10 f0 fd 80");
+        sim.setDoOnExt(e -> {});
+        sim.setIdleDetection(true);
+
+        sim.run();
+        Thread.sleep(200);
+        Assertions.assertTrue(sim.getRunningThread().isAlive());
+
+        sim.load((short) 0x0010, "01");
+        sim.waitForProgramEnd();
+
+        Assertions.assertEquals((short) 0x0204, sim.getProgramCounter());
+        Assertions.assertTrue(sim.getSkippedIterations() > 0);
+    }
+
+    @Test
+    void idleLoopRunForWakesTest() throws InterruptedException{
+        // 0200 lda $10
+        // 0202 beq $0200
+        // 0204 ext
+        sim.load((short) 0x0200, "a5 10 f0 fd 80");
+        sim.setProgramCounter((short) 0x0200);
+        sim.setDoOnExt(e -> {});
+        sim.setDoOnManualHalt(e -> {});
+        sim.setIdleDetection(true);
+
+        // no limit is finite, so the calling thread parks in the loop
+        long[] ran = new long[1];
+        Thread caller = new Thread(() -> ran[0] = sim.runFor(Long.MAX_VALUE));
+        caller.start();
+        Thread.sleep(200);
+        Assertions.assertEquals(Thread.State.WAITING, caller.getState());
+
+        sim.load((short) 0x0010, "01");
+        caller.join(5000);
+        Assertions.assertFalse(caller.isAlive());
+        Assertions.assertEquals((short) 0x0204, sim.getProgramCounter());
+        Assertions.assertEquals(sim.getInstructionCount(), ran[0]);
+
+        // the same for a cycle limit, stopped from outside
+        sim.load((short) 0x0010, "00");
+        sim.setProgramCounter((short) 0x0200);
+        caller = new Thread(() -> sim.runForCycles(Long.MAX_VALUE));
+        caller.start();
+        Thread.sleep(200);
+        Assertions.assertEquals(Thread.State.WAITING, caller.getState());
+
+        sim.stop();
+        caller.join(5000);
+        Assertions.assertFalse(caller.isAlive());
+    }
+
+    /**
+     * Saves the state of a simulator.
+     * @param sim simulator.
+     * @return saved state.
+     * @throws IOException never, the stream writes to memory.
+     */
+    private static byte[] save(Sim6502 sim) throws IOException{
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        sim.saveState(out);
+        return out.toByteArray();
+    }
+
+    @Test
+    void saveAndLoadStateTest() throws IOException{
+        // 0200 ldy #0
+        // 0202 ldx #0
+        // 0204 txa
+        // 0205 adc $10
+        // 0207 sta $0300,x
+        // 020a inx
+        // 020b bne $0204
+        // 020d dey
+        // 020e bne $0202
+        // 0210 ext
+        sim.load((short) 0xfffc, "4c 00 02");
+        sim.load((short) 0x0200, "a0 00 a2 00 8a 65 10 9d 00 03 e8 d0 f8 88 d0 f3 80");
+        sim.load((short) 0x0010, "07");
+        sim.setDoOnExt(e -> {});
+        sim.runFor(12345);
+        sim.interrupt();
+
+        byte[] state = save(sim);
+        // the header, the bitmap and the pages 00, 02, 03 and ff
+        Assertions.assertEquals(MachineState.HEADER_BYTES + MachineState.BITMAP_BYTES + 4 * 0x100, state.length);
+
+        Sim6502 other = new Sim6502();
+        other.setDoOnExt(e -> {});
+        other.setBlockCache(true);
+        other.load((short) 0x4000, "12 34");
+        other.loadState(new ByteArrayInputStream(state));
+        Assertions.assertArrayEquals(state, save(other));
+        Assertions.assertEquals(0, other.getByteAtAddress((short) 0x4000));
+
+        // both go on the same way
+        sim.runFor(Long.MAX_VALUE);
+        other.runFor(Long.MAX_VALUE);
+        Assertions.assertArrayEquals(save(sim), save(other));
+        Assertions.assertEquals(sim.getInstructionCount(), other.getInstructionCount());
+
+        // states can follow each other in one stream
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(state);
+        sim.saveState(out);
+        ByteArrayInputStream in = new ByteArrayInputStream(out.toByteArray());
+        other.loadState(in);
+        Assertions.assertArrayEquals(state, save(other));
+        other.loadState(in);
+        Assertions.assertArrayEquals(save(sim), save(other));
+    }
+
+    @Test
+    void loadBrokenStateTest() throws IOException{
+        sim.load((short) 0x0200, "a9 01 80");
+        byte[] state = save(sim);
+        Sim6502 other = new Sim6502();
+        other.load((short) 0x0200, "a9 02 80");
+        byte[] before = save(other);
+
+        // nothing changes if the state is cut short or is no state
+        byte[] cut = Arrays.copyOf(state, state.length - 1);
+        Assertions.assertThrows(EOFException.class, () -> other.loadState(new ByteArrayInputStream(cut)));
+        Assertions.assertArrayEquals(before, save(other));
+
+        state[0] = 'X';
+        Assertions.assertThrows(IOException.class, () -> other.loadState(new ByteArrayInputStream(state)));
+        Assertions.assertArrayEquals(before, save(other));
+    }
+
+    @Test
+    void checkpointTest() throws IOException{
+        // 0200 ldy #0
+        // 0202 ldx #0
+        // 0204 txa
+        // 0205 adc $10
+        // 0207 sta $0300,x
+        // 020a inx
+        // 020b bne $0204
+        // 020d dey
+        // 020e bne $0202
+        // 0210 ext
+        sim.load((short) 0xfffc, "4c 00 02");
+        sim.load((short) 0x0200, "a0 00 a2 00 8a 65 10 9d 00 03 e8 d0 f8 88 d0 f3 80");
+        sim.load((short) 0x0010, "07");
+        sim.setDoOnExt(e -> {});
+        sim.setBlockCache(true);
+
+        Checkpoint base = sim.checkpoint();
+        byte[] baseState = save(sim);
+        Assertions.assertNull(base.getParent());
+        Assertions.assertEquals(0x100, base.getPageCount());
+
+        sim.runFor(1000);
+        Checkpoint first = sim.checkpoint();
+        byte[] firstState = save(sim);
+        // only the page the program writes to
+        Assertions.assertSame(base, first.getParent());
+        Assertions.assertEquals(1, first.getPageCount());
+        Assertions.assertEquals(1000, first.getInstructionCount());
+
+        sim.runFor(5000);
+        sim.load((short) 0x8000, "12");
+        Checkpoint second = sim.checkpoint();
+        byte[] secondState = save(sim);
+        Assertions.assertEquals(2, second.getPageCount());
+
+        // any checkpoint can be restored, in any order
+        sim.restore(first);
+        Assertions.assertArrayEquals(firstState, save(sim));
+        sim.restore(base);
+        Assertions.assertArrayEquals(baseState, save(sim));
+        sim.restore(second);
+        Assertions.assertArrayEquals(secondState, save(sim));
+
+        // running again from a checkpoint gives the same as the first time
+        sim.restore(first);
+        sim.runFor(5000);
+        sim.load((short) 0x8000, "12");
+        Assertions.assertArrayEquals(secondState, save(sim));
+        Checkpoint branch = sim.checkpoint();
+        Assertions.assertSame(first, branch.getParent());
+        Assertions.assertEquals(2, branch.getPageCount());
+
+        // another simulator can be put into the checkpoint too, and runs the same to the end
+        Sim6502 other = new Sim6502();
+        other.setDoOnExt(e -> {});
+        other.restore(second);
+        Assertions.assertArrayEquals(secondState, save(other));
+        sim.restore(second);
+        sim.runFor(Long.MAX_VALUE);
+        other.runFor(Long.MAX_VALUE);
+        Assertions.assertArrayEquals(save(sim), save(other));
+        Assertions.assertEquals(0x80, sim.getByteAtAddress((short) 0x0210) & 0xff);
+    }
 }
@@ -0,0 +1,87 @@
+package tech.livio.java6502;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+class SimFarmTest {
+
+    private static final int JOBS = 200;
+    private static final int THREADS = 4;
+
+    /**
+     * Creates an image with a program that fills 0x0300 - 0x03ff with a sequence that starts at a seed.
+     * @param seed first value of the sequence.
+     * @return memory image.
+     */
+    private static byte[] image(int seed){
+        // 0200 lda $10
+        // 0202 ldx #0
+        // 0204 clc
+        // 0205 adc #3
+        // 0207 sta $0300,x
+        // 020a inx
+        // 020b bne $0205
+        // 020d ext
+        Memory memory = new Memory();
+        memory.load((short) 0x0200, "a5 10 a2 00 18 69 03 9d 00 03 e8 d0 f9 80");
+        memory.write(0x10, seed);
+        return memory.getMemoryRange((short) 0x0000, (short) 0x03ff);
+    }
+
+    @Test
+    void sameAsOneSimulatorTest(){
+        List<CompletableFuture<SimResult>> futures = new ArrayList<>();
+        try(SimFarm farm = new SimFarm(THREADS, sim -> sim.setBlockCache(true))){
+            for(int i = 0; i < JOBS; i++){
+                SimJob job = new SimJob(image(i), (short) 0x0200, Long.MAX_VALUE, Long.MAX_VALUE,
+                        (short) 0x0300, (short) 0x03ff);
+                futures.add(farm.submit(job));
+            }
+            CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0])).join();
+
+            Assertions.assertTrue(farm.getSimulatorCount() <= THREADS);
+        }
+
+        for(int i = 0; i < JOBS; i++){
+            Sim6502 sim = new Sim6502();
+            sim.setDoOnExt(e -> {});
+            sim.load(image(i));
+            sim.setProgramCounter((short) 0x0200);
+            sim.runFor(Long.MAX_VALUE);
+
+            SimResult result = futures.get(i).join();
+            Assertions.assertArrayEquals(sim.getMemoryInRange((short) 0x0300, (short) 0x03ff), result.getOutput());
+            Assertions.assertEquals(sim.getProgramCounter(), result.getProgramCounter());
+            Assertions.assertEquals(sim.getInstructionCount(), result.getInstructions());
+            Assertions.assertEquals(sim.getCycleCount(), result.getCycles());
+            Assertions.assertTrue(result.hasStopped());
+        }
+    }
+
+    @Test
+    void budgetTest(){
+        try(SimFarm farm = new SimFarm(1, sim -> {})){
+            SimResult instructions = farm.submit(new SimJob(image(0), (short) 0x0200, 10, Long.MAX_VALUE,
+                    (short) 0x0300, (short) 0x0301)).join();
+            SimResult cycles = farm.submit(new SimJob(image(0), (short) 0x0200, Long.MAX_VALUE, 10,
+                    (short) 0x0300, (short) 0x0301)).join();
+            SimResult whole = farm.submit(new SimJob(image(0), (short) 0x0200, Long.MAX_VALUE, Long.MAX_VALUE,
+                    (short) 0x0300, (short) 0x0301)).join();
+
+            Assertions.assertEquals(10, instructions.getInstructions());
+            Assertions.assertFalse(instructions.hasStopped());
+            // lda zp takes 3 cycles, ldx # and clc 2, adc # 2, sta abs,x 5
+            Assertions.assertEquals(14, cycles.getCycles());
+            Assertions.assertFalse(cycles.hasStopped());
+
+            // the simulator has been reused, but the last job did not see anything of the ones before.
+            Assertions.assertEquals(1, farm.getSimulatorCount());
+            Assertions.assertTrue(whole.hasStopped());
+            Assertions.assertArrayEquals(new byte[]{3, 6}, whole.getOutput());
+        }
+    }
+}
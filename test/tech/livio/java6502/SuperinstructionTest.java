@@ -0,0 +1,189 @@
+package tech.livio.java6502;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+class SuperinstructionTest {
+
+    private static final int TRIALS = 200;
+    private static final int PROGRAM = 0x0200;
+
+    private Memory memory;
+    private Control control;
+    private Flags flags;
+    private BlockCache cache;
+    private ProgramRunner runner;
+
+    @BeforeEach
+    void init(){
+        this.control = new Control();
+        this.memory = new Memory();
+        Stack stack = new Stack(this.memory, this.control);
+        this.flags = new Flags();
+        InstructionSet is = new InstructionSet(this.memory, stack, this.flags, this.control);
+        AddressingMode am = new AddressingMode(this.memory);
+        this.runner = new ProgramRunner(this.memory, stack, this.flags, is, am, this.control);
+        this.control.setDoOnExt(e -> {});
+
+        this.cache = new BlockCache(this.memory);
+        this.memory.setBlockCache(this.cache);
+        this.runner.setBlockCache(this.cache);
+    }
+
+    /**
+     * Puts random memory, registers and flags in place.
+     * @param state memory, followed by a, x, y, sp, p.
+     */
+    private void restore(byte[] state){
+        this.memory.restoreSnapshot(Arrays.copyOf(state, 0x10000));
+        Registers registers = this.memory.getRegisters();
+        registers.a = state[0x10000] & 0xff;
+        registers.x = state[0x10001] & 0xff;
+        registers.y = state[0x10002] & 0xff;
+        registers.sp = state[0x10003] & 0xff;
+        this.flags.setWholeRegister(state[0x10004]);
+        registers.pc = PROGRAM;
+        registers.cycles = 0;
+    }
+
+    /**
+     * Runs one block from the program and returns everything it could have changed.
+     * @return memory, followed by a, x, y, sp, pc low, pc high, p, extra cycles.
+     */
+    private byte[] runOneBlock(){
+        this.control.setRun(true);
+        this.runner.runBlock();
+
+        Registers registers = this.memory.getRegisters();
+        byte[] result = Arrays.copyOf(this.memory.snapshot(), 0x10008);
+        result[0x10000] = (byte) registers.a;
+        result[0x10001] = (byte) registers.x;
+        result[0x10002] = (byte) registers.y;
+        result[0x10003] = (byte) registers.sp;
+        result[0x10004] = (byte) registers.pc;
+        result[0x10005] = (byte) (registers.pc >>> 8);
+        result[0x10006] = this.flags.getWholeRegister();
+        result[0x10007] = (byte) registers.cycles;
+        return result;
+    }
+
+    @Test
+    void fusedSameAsUnfusedTest(){
+        Random random = new Random(6502);
+
+        for(Superinstruction superinstruction : Superinstructions.ALL){
+            for(int trial = 0; trial < TRIALS; trial++){
+                byte[] state = new byte[0x10005];
+                random.nextBytes(state);
+
+                // the sequence with random operands, followed by ext.
+                int address = PROGRAM;
+                for(int opCode : superinstruction.opCodes){
+                    state[address++] = (byte) opCode;
+                    address += InstructionTable.operandLength(InstructionTable.MODES[opCode]);
+                }
+                state[address] = (byte) 0x80;
+
+                this.restore(state);
+                this.cache.setSuperinstructions(List.of());
+                byte[] unfused = this.runOneBlock();
+
+                this.restore(state);
+                this.cache.setSuperinstructions(List.of(superinstruction));
+                Assertions.assertSame(superinstruction.handler, this.cache.get(PROGRAM).handlers[0]);
+                byte[] fused = this.runOneBlock();
+
+                Assertions.assertArrayEquals(unfused, fused, superinstruction + " trial " + trial);
+            }
+        }
+    }
+
+    @Test
+    void fusedBlockTest(){
+        // 0200 ldx #5
+        // 0202 lda #$42
+        // 0204 sta $0300,x
+        // 0207 dex
+        // 0208 bne $0202
+        // 020a ext
+        this.memory.load((short) 0x0200, "a2 05 a9 42 9d 00 03 ca d0 f9 80");
+        this.cache.setSuperinstructions(Superinstructions.ALL);
+
+        DecodedBlock block = this.cache.get(0x0202);
+
+        // lda / sta and dex / bne are one entry each.
+        Assertions.assertEquals(2, block.length);
+        Assertions.assertArrayEquals(new int[]{0xa9, 0xca}, block.opCodes);
+        Assertions.assertArrayEquals(new int[]{0x0207, 0x020a}, block.nextAddresses);
+
+        this.memory.setProgramCounter((short) 0x0200);
+        this.control.setRun(true);
+        while(this.control.getRun()){
+            this.runner.runBlock();
+        }
+
+        for(int i = 1; i <= 5; i++){
+            Assertions.assertEquals((byte) 0x42, this.memory.getByteAtAddress((short) (0x0300 + i)));
+        }
+        Assertions.assertEquals(0, this.memory.getRegisters().x);
+        Assertions.assertEquals(0x020a, this.memory.getRegisters().pc);
+    }
+
+    @Test
+    void invalidSequenceTest(){
+        DecodedInstruction nothing = (is, am, operand) -> {};
+
+        // too short, too long
+        Assertions.assertThrows(IllegalArgumentException.class, () -> new Superinstruction(nothing, 0xea));
+        Assertions.assertThrows(IllegalArgumentException.class,
+                () -> new Superinstruction(nothing, 0xea, 0xea, 0xea, 0xea));
+        // a jump or a write before the end
+        Assertions.assertThrows(IllegalArgumentException.class, () -> new Superinstruction(nothing, 0xd0, 0xea));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> new Superinstruction(nothing, 0x8d, 0xea));
+        // ext
+        Assertions.assertThrows(IllegalArgumentException.class, () -> new Superinstruction(nothing, 0xea, 0x80));
+        // three operands
+        Assertions.assertThrows(IllegalArgumentException.class, () -> new Superinstruction(nothing, 0xa9, 0xa2, 0xa0));
+
+        Assertions.assertDoesNotThrow(() -> new Superinstruction(nothing, 0xe8, 0xe0, 0xd0));
+    }
+
+    @Test
+    void selectTest(){
+        List<Superinstruction> selected = Superinstructions.select(new int[]{0xca, 0xd0}, new int[]{0xa9, 0x85});
+
+        Assertions.assertEquals(2, selected.size());
+        Assertions.assertEquals("ca d0", selected.get(0).toString());
+        Assertions.assertEquals("a9 85", selected.get(1).toString());
+
+        Assertions.assertThrows(IllegalArgumentException.class, () -> Superinstructions.select(new int[]{0xea, 0xea}));
+    }
+
+    @Test
+    void pairFrequencyTest(){
+        PairFrequency frequency = new PairFrequency();
+
+        // 0200 dex, 0201 bne $0200 taken three times, then falls through to 0203 nop
+        for(int i = 0; i < 3; i++){
+            frequency.record(0x0200, 0xca);
+            frequency.record(0x0201, 0xd0);
+        }
+        frequency.record(0x0203, 0xea);
+
+        // bne -> dex is a jump, not a pair.
+        Assertions.assertEquals(3, frequency.count(0xca, 0xd0));
+        Assertions.assertEquals(0, frequency.count(0xd0, 0xca));
+        Assertions.assertEquals(1, frequency.count(0xd0, 0xea));
+        Assertions.assertEquals(7, frequency.getInstructions());
+
+        Assertions.assertArrayEquals(new int[]{0xca, 0xd0}, frequency.top(1).get(0));
+        String report = frequency.report(10);
+        Assertions.assertTrue(report.contains("ca d0  DEX BNE  yes"), report);
+        Assertions.assertTrue(report.contains("d0 ea  BNE NOP  -"), report);
+    }
+}
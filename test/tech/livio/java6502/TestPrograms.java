@@ -0,0 +1,61 @@
+package tech.livio.java6502;
+
+/**
+ * Programs that several tests run, and a simulator to run them in.
+ */
+final class TestPrograms {
+
+    // 0200 ldx #$ff
+    // 0202 txs
+    // 0203 lda #$00
+    // 0205 sta $10
+    // 0207 lda #$04
+    // 0209 sta $11        pointer to $0400
+    // 020b ldy #0
+    // 020d tya
+    // 020e sta ($10),y
+    // 0210 iny
+    // 0211 bne $020d
+    // 0213 jsr $0230
+    // 0216 inc $11        next page
+    // 0218 jmp $020b
+    // 0230             SUBROUTINE
+    static final String FILL = "a2 ff 9a a9 00 85 10 a9 04 85 11 a0 00 98 91 10 c8 d0 fb 20 30 02 e6 11 "
+            + "4c 0b 02";
+    // 0230 plp          jsr pushes the status too
+    // 0231 pha
+    // 0232 txa
+    // 0233 pha
+    // 0234 pla
+    // 0235 tax
+    // 0236 pla
+    // 0237 rts
+    static final String SUBROUTINE = "28 48 8a 48 68 aa 68 60";
+
+    /**
+     * Only constants and static methods.
+     */
+    private TestPrograms(){
+    }
+
+    /**
+     * Creates a simulator with a program loaded at $0200 and {@link #SUBROUTINE} at $0230.
+     * @param program program, starts at $0200.
+     * @param fast true to run from the block cache with loop idioms, superinstructions and translation.
+     * @return simulator.
+     */
+    static Sim6502 simulator(String program, boolean fast){
+        Sim6502 sim = new Sim6502();
+        sim.setDoOnExt(e -> {});
+        sim.load((short) 0x0200, program);
+        sim.load((short) 0x0230, SUBROUTINE);
+        sim.setProgramCounter((short) 0x0200);
+        if(fast){
+            sim.setBlockCache(true);
+            sim.setLoopIdioms(true);
+            sim.setSuperinstructions(true);
+            sim.setTranslation(true);
+        }
+        return sim;
+    }
+}
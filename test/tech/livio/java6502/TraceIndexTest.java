@@ -0,0 +1,148 @@
+package tech.livio.java6502;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.IntPredicate;
+import java.util.stream.Stream;
+
+class TraceIndexTest {
+
+    private static final int INSTRUCTIONS = 20000;
+
+    /**
+     * Records a trace of {@link TestPrograms#FILL}.
+     * @param path path of the trace.
+     * @param startAddress address to start recording at, -1 to start right away.
+     */
+    private static void record(Path path, int startAddress) throws IOException{
+        Sim6502 sim = TestPrograms.simulator(TestPrograms.FILL, false);
+        sim.startTrace(path, startAddress, Long.MAX_VALUE, true);
+        Assertions.assertEquals(INSTRUCTIONS, sim.runFor(INSTRUCTIONS));
+        Assertions.assertEquals(0, sim.stopTrace());
+    }
+
+    /**
+     * Reads every instruction of a trace.
+     * @param path path of the trace.
+     * @return per instruction the instruction count, program counter, op-code, operand, a, x, y, sp, p and effective
+     *         address.
+     */
+    private static List<long[]> readAll(Path path) throws IOException{
+        List<long[]> records = new ArrayList<>();
+        try(TraceReader reader = new TraceReader(path)){
+            while(reader.next()){
+                records.add(new long[]{reader.getInstructionCount(), reader.getProgramCounter(), reader.getOpCode(),
+                        reader.getOperand(), reader.getA(), reader.getX(), reader.getY(), reader.getStackPointer(),
+                        reader.getProcessorStatus(), reader.getEffectiveAddress()});
+            }
+        }
+        return records;
+    }
+
+    /**
+     * Finds the positions of the instructions that match, the slow way.
+     * @param records every instruction.
+     * @param column value to look at.
+     * @param match which values match.
+     * @return positions, in order.
+     */
+    private static long[] scan(List<long[]> records, int column, IntPredicate match){
+        List<Long> positions = new ArrayList<>();
+        for(int i = 0; i < records.size(); i++){
+            if(match.test((int) records.get(i)[column])) positions.add((long) i);
+        }
+        return positions.stream().mapToLong(Long::longValue).toArray();
+    }
+
+    /**
+     * Deletes a directory of an index and the files in it.
+     * @param directory directory.
+     */
+    private static void delete(Path directory) throws IOException{
+        if(!Files.exists(directory)) return;
+        try(Stream<Path> files = Files.list(directory)){
+            for(Path file : files.toList()){
+                Files.delete(file);
+            }
+        }
+        Files.delete(directory);
+    }
+
+    @Test
+    void queryTest() throws IOException{
+        Path trace = Files.createTempFile("trace", ".bin");
+        Path directory = Files.createTempDirectory("index");
+        try{
+            record(trace, -1);
+            List<long[]> records = readAll(trace);
+            TraceIndex index = TraceIndex.build(trace, directory);
+            Assertions.assertEquals(INSTRUCTIONS, index.size());
+
+            Assertions.assertArrayEquals(scan(records, 1, pc -> pc == 0x020d), index.executionsOf(0x020d));
+            Assertions.assertArrayEquals(scan(records, 1, pc -> pc == 0x0230), index.executionsOf(0x0230));
+            Assertions.assertEquals(0, index.executionsOf(0xe1a0).length);
+            Assertions.assertArrayEquals(scan(records, 2, op -> op == 0x91), index.executionsOfOpCode(0x91));
+            Assertions.assertArrayEquals(scan(records, 9, ea -> ea == 0x11), index.accessesTo(0x11));
+            Assertions.assertArrayEquals(scan(records, 9, ea -> ea == 0x0523), index.accessesTo(0x0523));
+
+            // sta $11 once, then inc $11 once per page
+            long[] writes = index.writesTo(0x11);
+            Assertions.assertEquals(0x85, index.getOpCode(writes[0]));
+            for(int i = 1; i < writes.length; i++){
+                Assertions.assertEquals(0xe6, index.getOpCode(writes[i]));
+            }
+            Assertions.assertEquals(scan(records, 2, op -> op == 0xe6).length + 1, writes.length);
+            // jsr $0230 does not write to $0230
+            Assertions.assertEquals(0, index.writesTo(0x0230).length);
+            Assertions.assertTrue(index.accessesTo(0x0230).length > 0);
+
+            Assertions.assertArrayEquals(scan(records, 6, y -> y == 0x80), index.findAll(TraceIndex.Register.Y, 0x80));
+            Assertions.assertEquals(scan(records, 4, a -> a == 0xff)[0], index.findFirst(TraceIndex.Register.A, 0xff));
+            Assertions.assertEquals(-1, index.findFirst(TraceIndex.Register.SP, 0x00));
+            Assertions.assertEquals(0, index.findAll(TraceIndex.Register.X, 0x12).length);
+
+            TraceIndex opened = TraceIndex.open(directory);
+            for(int i = 0; i < records.size(); i++){
+                long[] record = records.get(i);
+                Assertions.assertEquals(record[0], opened.getInstructionCount(i));
+                Assertions.assertEquals(record[1], opened.getProgramCounter(i));
+                Assertions.assertEquals(record[2], opened.getOpCode(i));
+                Assertions.assertEquals(record[3], opened.getOperand(i));
+                Assertions.assertEquals(record[4], opened.getRegister(TraceIndex.Register.A, i));
+                Assertions.assertEquals(record[5], opened.getRegister(TraceIndex.Register.X, i));
+                Assertions.assertEquals(record[6], opened.getRegister(TraceIndex.Register.Y, i));
+                Assertions.assertEquals(record[7], opened.getRegister(TraceIndex.Register.SP, i));
+                Assertions.assertEquals(record[8], opened.getRegister(TraceIndex.Register.P, i));
+                Assertions.assertEquals(record[9], opened.getEffectiveAddress(i));
+            }
+        } finally{
+            Files.deleteIfExists(trace);
+            delete(directory);
+        }
+    }
+
+    @Test
+    void instructionCountTest() throws IOException{
+        Path trace = Files.createTempFile("trace", ".bin");
+        Path directory = Files.createTempDirectory("index");
+        try{
+            record(trace, 0x0230);
+            TraceIndex index = TraceIndex.build(trace, directory);
+            // the fill loop of the first page and the jsr before it
+            Assertions.assertEquals(7 + 4 * 256 + 1, index.getInstructionCount(0));
+            Assertions.assertEquals(7 + 4 * 256 + 1 + 100, index.getInstructionCount(100));
+            Assertions.assertEquals(INSTRUCTIONS - 7 - 4 * 256 - 1, index.size());
+            Assertions.assertEquals(0, index.executionsOf(0x0200).length);
+            Assertions.assertEquals(0, index.executionsOf(0x0230)[0]);
+        } finally{
+            Files.deleteIfExists(trace);
+            delete(directory);
+        }
+    }
+}
@@ -0,0 +1,186 @@
+package tech.livio.java6502;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+class TraceTest {
+
+    private static final int INSTRUCTIONS = 5000;
+
+    // 01fc cli
+    // 01fd jmp $0200
+    // 0200 lda $d000      reads the device
+    // 0203 and #3
+    // 0205 beq $020c
+    // 0207 inc $0400
+    // 020a bne $0200
+    // 020c inc $0401
+    // 020f jmp $0200
+    private static final String DEVICE_PROGRAM = "58 4c 00 02 ad 00 d0 29 03 f0 06 ee 00 04 d0 f5 ee 01 04 4c 00 02";
+    // 0300 inc $20        interrupt handler
+    // 0302 jmp $0200
+    private static final String HANDLER = "e6 20 4c 00 02";
+
+    /**
+     * Creates a device that gives a different value on every read.
+     * @return device.
+     */
+    private static Device randomDevice(){
+        return new Device() {
+            private int seed = 1;
+
+            @Override
+            public int read(int address){
+                this.seed = this.seed * 1103515245 + 12345;
+                return this.seed >>> 16;
+            }
+
+            @Override
+            public void write(int address, int value){
+                // nothing to do
+            }
+        };
+    }
+
+    /**
+     * Get the registers of a simulator from its saved state.
+     * @param sim simulator.
+     * @return saved state, a, x, y, sp and p at 6 to 10 and the program counter at 11.
+     * @throws IOException never, the stream writes to memory.
+     */
+    private static ByteBuffer state(Sim6502 sim) throws IOException{
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        sim.saveState(out);
+        return ByteBuffer.wrap(out.toByteArray());
+    }
+
+    @Test
+    void traceTest() throws IOException{
+        Path path = Files.createTempFile("trace", ".bin");
+        try{
+            Sim6502 sim = TestPrograms.simulator(TestPrograms.FILL, true);
+            sim.startTrace(path);
+            Assertions.assertEquals(INSTRUCTIONS, sim.runFor(INSTRUCTIONS));
+            Assertions.assertEquals(0, sim.stopTrace());
+            // much smaller than 16 bytes per instruction
+            Assertions.assertTrue(Files.size(path) < INSTRUCTIONS * 5L);
+
+            Sim6502 reference = TestPrograms.simulator(TestPrograms.FILL, true);
+            reference.start();
+            try(TraceReader reader = new TraceReader(path)){
+                for(int i = 0; i < INSTRUCTIONS; i++){
+                    ByteBuffer state = state(reference);
+                    Assertions.assertTrue(reader.next());
+                    Assertions.assertEquals(i, reader.getInstructionCount());
+                    Assertions.assertEquals(state.getShort(11) & 0xffff, reader.getProgramCounter());
+                    Assertions.assertEquals(state.get(6) & 0xff, reader.getA());
+                    Assertions.assertEquals(state.get(7) & 0xff, reader.getX());
+                    Assertions.assertEquals(state.get(8) & 0xff, reader.getY());
+                    Assertions.assertEquals(state.get(9) & 0xff, reader.getStackPointer());
+                    Assertions.assertEquals(state.get(10) & 0xff, reader.getProcessorStatus());
+
+                    int pc = reader.getProgramCounter();
+                    Assertions.assertEquals(reference.getByteAtAddress((short) pc) & 0xff, reader.getOpCode());
+                    switch (reader.getOpCode()) {
+                        case 0x91 -> Assertions.assertEquals(
+                                ((reference.getByteAtAddress((short) 0x11) & 0xff) << 8) + reader.getY(),
+                                reader.getEffectiveAddress());
+                        case 0xd0 -> Assertions.assertEquals(0x020d, reader.getEffectiveAddress());
+                        case 0x20 -> Assertions.assertEquals(0x0230, reader.getEffectiveAddress());
+                        case 0xe6 -> Assertions.assertEquals(0x11, reader.getEffectiveAddress());
+                        case 0xa9, 0x98, 0xc8 -> Assertions.assertEquals(-1, reader.getEffectiveAddress());
+                        default -> {
+                            // the other ones are checked by the ones above.
+                        }
+                    }
+                    reference.step();
+                }
+                Assertions.assertFalse(reader.next());
+            }
+        } finally{
+            Files.deleteIfExists(path);
+        }
+    }
+
+    @Test
+    void triggerTest() throws IOException{
+        Path path = Files.createTempFile("trace", ".bin");
+        try{
+            Sim6502 sim = TestPrograms.simulator(TestPrograms.FILL, true);
+            sim.startTrace(path, (short) 0x0230, 10);
+            sim.runFor(INSTRUCTIONS);
+            sim.stopTrace();
+
+            try(TraceReader reader = new TraceReader(path)){
+                Assertions.assertTrue(reader.next());
+                Assertions.assertEquals(0x0230, reader.getProgramCounter());
+                // the fill loop of the first page and the jsr before it
+                Assertions.assertEquals(7 + 4 * 256 + 1, reader.getInstructionCount());
+                for(int i = 1; i < 10; i++){
+                    Assertions.assertTrue(reader.next());
+                    Assertions.assertEquals(7 + 4 * 256 + 1 + i, reader.getInstructionCount());
+                }
+                // the subroutine, the inc and the jmp
+                Assertions.assertEquals(0x4c, reader.getOpCode());
+                Assertions.assertEquals(0x0218, reader.getProgramCounter());
+                Assertions.assertEquals(0x020b, reader.getEffectiveAddress());
+                Assertions.assertFalse(reader.next());
+            }
+
+            // the other thread of the recorder has ended
+            Assertions.assertEquals(0, sim.stopTrace());
+        } finally{
+            Files.deleteIfExists(path);
+        }
+    }
+
+    @Test
+    void compactTraceTest() throws IOException{
+        Path full = Files.createTempFile("trace", ".bin");
+        Path compact = Files.createTempFile("compact", ".bin");
+        Path reconstructed = Files.createTempFile("reconstructed", ".bin");
+        try{
+            Sim6502 sim = new Sim6502();
+            sim.setDoOnExt(e -> {});
+            sim.attachDevice(randomDevice(), (short) 0xd000, (short) 0xd0ff);
+            sim.mirror((short) 0xe000, (short) 0xe0ff, (short) 0x0400);
+            sim.load((short) 0x01fc, DEVICE_PROGRAM);
+            sim.load((short) 0x0300, HANDLER);
+            sim.load((short) 0xfffa, "00 03 00 02 00 03");
+            sim.setProgramCounter((short) 0x01fc);
+            sim.setBlockCache(true);
+            sim.setTranslation(true);
+
+            sim.startTrace(full);
+            sim.startCompactTrace(compact);
+            sim.runFor(3000);
+            sim.interrupt();
+            sim.runFor(3000);
+            // changed from outside
+            sim.load((short) 0x0400, "80 80");
+            sim.runFor(3000);
+            sim.nonMaskableInterrupt();
+            sim.runFor(3000);
+            sim.stopCompactTrace();
+            Assertions.assertEquals(0, sim.stopTrace());
+            Assertions.assertEquals(12000, sim.getInstructionCount());
+            // the handler has run twice
+            Assertions.assertEquals(2, sim.getByteAtAddress((short) 0x20));
+
+            TraceReconstructor.reconstruct(compact, reconstructed);
+            Assertions.assertEquals(-1, Files.mismatch(full, reconstructed));
+            // the values read make most of it, one in every 5 instructions
+            Assertions.assertTrue(Files.size(compact) < Files.size(full) / 2);
+        } finally{
+            Files.deleteIfExists(full);
+            Files.deleteIfExists(compact);
+            Files.deleteIfExists(reconstructed);
+        }
+    }
+}